@@ -0,0 +1,53 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.benchmark;
+
+import com.google.inject.util.Providers;
+import org.mybatis.guice.MultiDbModule;
+import org.mybatis.guice.annotation.Database;
+import org.mybatis.guice.datasource.builtin.PooledDataSourceProvider;
+
+/**
+ * Registers a configurable number of in-memory HSQLDB environments named {@code env0 .. envN-1}
+ *
+ * @author ferenczil
+ */
+public class BenchmarkDbModule extends MultiDbModule {
+
+    private final int environments;
+
+    public BenchmarkDbModule(int environments) {
+        this.environments = environments;
+    }
+
+    @Override
+    public void internalConfigure() {
+        for (int i = 0; i < environments; i++) {
+            PooledDataSourceProvider p = new PooledDataSourceProvider("org.hsqldb.jdbcDriver", "jdbc:hsqldb:mem:bench" + i, getClass().getClassLoader());
+            p.setUser("sa");
+            p.setPassword("");
+
+            add(environment(i))
+                    .annotatedWith(Database.named(environment(i)))
+                    .addMapper(BenchmarkMapper.class)
+                    .dataSource(Providers.guicify(p));
+        }
+    }
+
+    public static String environment(int i) {
+        return "env" + i;
+    }
+}
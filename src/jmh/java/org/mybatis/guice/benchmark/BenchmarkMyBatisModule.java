@@ -0,0 +1,39 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.benchmark;
+
+import org.mybatis.guice.MyBatisModule;
+import org.mybatis.guice.datasource.builtin.PooledDataSourceProvider;
+
+/**
+ * Single in-memory HSQLDB environment configured through {@link MyBatisModule}, the counterpart of a
+ * {@link BenchmarkDbModule} with one environment
+ *
+ * @author ferenczil
+ */
+public class BenchmarkMyBatisModule extends MyBatisModule {
+
+    @Override
+    protected void initialize() {
+        PooledDataSourceProvider p = new PooledDataSourceProvider("org.hsqldb.jdbcDriver", "jdbc:hsqldb:mem:benchSingle", getClass().getClassLoader());
+        p.setUser("sa");
+        p.setPassword("");
+
+        environmentId("single");
+        bindDataSourceProvider(p);
+        addMapperClass(BenchmarkMapper.class);
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.benchmark;
+
+import org.apache.ibatis.session.ExecutorType;
+import org.mybatis.guice.transactional.Transactional;
+
+/**
+ * Transactional service selecting from each of its mappers, one method per executor type
+ *
+ * @author ferenczil
+ */
+public class BenchmarkService {
+
+    BenchmarkMapper[] mappers;
+
+    public int select(ExecutorType executorType) {
+        switch (executorType) {
+            case REUSE:
+                return selectReuse();
+            case BATCH:
+                return selectBatch();
+            default:
+                return selectSimple();
+        }
+    }
+
+    @Transactional(executorType = ExecutorType.SIMPLE)
+    public int selectSimple() {
+        return selectAll();
+    }
+
+    @Transactional(executorType = ExecutorType.REUSE)
+    public int selectReuse() {
+        return selectAll();
+    }
+
+    @Transactional(executorType = ExecutorType.BATCH)
+    public int selectBatch() {
+        return selectAll();
+    }
+
+    private int selectAll() {
+        int sum = 0;
+        for (BenchmarkMapper mapper : mappers) {
+            sum += mapper.selectOne();
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks once per thread count with the GC profiler, which reports the allocation rate
+ * next to the time of each benchmark. Results are written to {@code jmh-result-<threads>.json}.
+ *
+ * Arguments: {@code [include regex] [comma separated thread counts]}, by default every benchmark
+ * with 1, 4 and 16 threads.
+ *
+ * @author ferenczil
+ */
+public final class BenchmarkSuite {
+
+    private static final String DEFAULT_THREADS = "1,4,16";
+
+    private BenchmarkSuite() {
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        final String include = args.length > 0 ? args[0] : ".*";
+        final String threadCounts = args.length > 1 ? args[1] : DEFAULT_THREADS;
+        for (String threads : threadCounts.split(",")) {
+            final int count = Integer.parseInt(threads.trim());
+            new Runner(new OptionsBuilder()
+                    .include(include)
+                    .threads(count)
+                    .addProfiler(GCProfiler.class)
+                    .result("jmh-result-" + count + ".json")
+                    .resultFormat(ResultFormatType.JSON)
+                    .build()).run();
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.benchmark;
+
+import org.apache.ibatis.reflection.ExceptionUtil;
+import org.apache.ibatis.session.SqlSession;
+import org.mybatis.guice.session.DbSessionManager;
+import org.mybatis.guice.transactional.MultiTransactionManager;
+import org.mybatis.guice.transactional.Transactional;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Statement dispatch of {@code DbSessionManager} within a transactional context against the former
+ * {@code java.lang.reflect.Proxy} based dispatch. Both run on a {@link NoopSqlSession}, so only the
+ * dispatch overhead is measured.
+ *
+ * @author ferenczil
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DbSessionDispatchBenchmark {
+
+    static final String STATEMENT = "org.mybatis.guice.benchmark.BenchmarkMapper.selectOne";
+
+    static final Object PARAMETER = "parameter";
+
+    MultiTransactionManager txManager;
+    DbSessionManager direct;
+    SqlSession proxy;
+
+    @Setup
+    public void setup() throws Exception {
+        NoopSqlSession.Factory factory = new NoopSqlSession.Factory();
+        txManager = new MultiTransactionManager();
+        direct = new DbSessionManager(factory);
+        direct.setTxManager("bench", txManager);
+        proxy = (SqlSession) Proxy.newProxyInstance(
+                SqlSession.class.getClassLoader(),
+                new Class[]{SqlSession.class},
+                new LegacySqlSessionInterceptor(txManager, factory.openSession()));
+
+        txManager.startTransactionalContext(DbSessionDispatchBenchmark.class.getDeclaredMethod("marker").getAnnotation(Transactional.class));
+        direct.startManagedSession();
+    }
+
+    @TearDown
+    public void tearDown() {
+        txManager.close();
+    }
+
+    @Benchmark
+    public Object directSelectOne() {
+        return direct.selectOne(STATEMENT, PARAMETER);
+    }
+
+    @Benchmark
+    public Object proxySelectOne() {
+        return proxy.selectOne(STATEMENT, PARAMETER);
+    }
+
+    @Benchmark
+    public int directUpdate() {
+        return direct.update(STATEMENT, PARAMETER);
+    }
+
+    @Benchmark
+    public int proxyUpdate() {
+        return proxy.update(STATEMENT, PARAMETER);
+    }
+
+    @Transactional
+    void marker() {
+    }
+
+    /**
+     * Managed path of the former {@code DbSessionManager.SqlSessionInterceptor}
+     */
+    static final class LegacySqlSessionInterceptor implements InvocationHandler {
+
+        private final MultiTransactionManager txManager;
+        private final ThreadLocal<SqlSession> localSqlSession = new ThreadLocal<>();
+
+        LegacySqlSessionInterceptor(MultiTransactionManager txManager, SqlSession session) {
+            this.txManager = txManager;
+            this.localSqlSession.set(session);
+        }
+
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Transactional tx = txManager.getContext();
+            if (null != tx) {
+                try {
+                    return method.invoke(localSqlSession.get(), args);
+                }
+                catch (Throwable t) {
+                    throw ExceptionUtil.unwrapThrowable(t);
+                }
+            }
+            throw new IllegalStateException("No transactional context");
+        }
+    }
+
+}
@@ -0,0 +1,91 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.benchmark;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import org.apache.ibatis.session.SqlSessionManager;
+import org.mybatis.guice.annotation.Database;
+import org.mybatis.guice.mappers.MapperProvider;
+import org.mybatis.guice.session.DbSessionManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mapper lookups of {@code MyBatisModule} and {@code MultiDbModule}: the injector resolving the singleton
+ * mapper binding, and the provider creating a new mapper. {@code MultiMapperProvider} delegates to
+ * {@link DbSessionManager#getMapper(Class)}, which is measured directly.
+ *
+ * @author ferenczil
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MapperLookupBenchmark {
+
+    Injector singleInjector;
+    Injector multiInjector;
+    Key<BenchmarkMapper> multiKey;
+
+    MapperProvider<BenchmarkMapper> mapperProvider;
+    DbSessionManager sessionManager;
+
+    @Setup
+    public void setup() {
+        singleInjector = Guice.createInjector(new BenchmarkMyBatisModule());
+        mapperProvider = new MapperProvider<>(BenchmarkMapper.class);
+        mapperProvider.setSqlSessionManager(singleInjector.getInstance(SqlSessionManager.class));
+
+        multiInjector = Guice.createInjector(new BenchmarkDbModule(1));
+        multiKey = Key.get(BenchmarkMapper.class, Database.named(BenchmarkDbModule.environment(0)));
+        sessionManager = multiInjector.getInstance(Key.get(DbSessionManager.class, Database.named(BenchmarkDbModule.environment(0))));
+    }
+
+    @Benchmark
+    public BenchmarkMapper myBatisModuleInjector() {
+        return singleInjector.getInstance(BenchmarkMapper.class);
+    }
+
+    @Benchmark
+    public BenchmarkMapper multiDbModuleInjector() {
+        return multiInjector.getInstance(multiKey);
+    }
+
+    @Benchmark
+    public BenchmarkMapper mapperProvider() {
+        return mapperProvider.get();
+    }
+
+    @Benchmark
+    public BenchmarkMapper multiMapperProvider() {
+        return sessionManager.getMapper(BenchmarkMapper.class);
+    }
+
+}
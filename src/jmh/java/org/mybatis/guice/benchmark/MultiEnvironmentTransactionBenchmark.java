@@ -0,0 +1,74 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.benchmark;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import org.apache.ibatis.session.ExecutorType;
+import org.mybatis.guice.annotation.Database;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A transaction selecting once from every registered in-memory HSQLDB environment, as the number of
+ * environments enlisted and committed by {@code MultiTransactionManager} grows.
+ *
+ * @author ferenczil
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MultiEnvironmentTransactionBenchmark {
+
+    @Param({"1", "4", "8"})
+    int environments;
+
+    @Param({"SIMPLE", "REUSE", "BATCH"})
+    ExecutorType executorType;
+
+    BenchmarkService service;
+
+    @Setup
+    public void setup() {
+        Injector injector = Guice.createInjector(new BenchmarkDbModule(environments));
+        service = injector.getInstance(BenchmarkService.class);
+        service.mappers = new BenchmarkMapper[environments];
+        for (int i = 0; i < environments; i++) {
+            service.mappers[i] = injector.getInstance(Key.get(BenchmarkMapper.class, Database.named(BenchmarkDbModule.environment(i))));
+        }
+    }
+
+    @Benchmark
+    public int transaction() {
+        return service.select(executorType);
+    }
+
+}
@@ -0,0 +1,159 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.benchmark;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.mybatis.guice.annotation.Database;
+import org.mybatis.guice.session.DbSessionManager;
+import org.mybatis.guice.transactional.TransactionManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of completing a transaction which touched a single environment, as the number of registered
+ * environments grows.
+ *
+ * {@code legacy} reproduces the previous implementation, where every environment kept its own
+ * {@code ThreadLocal} and commit/close iterated all registered environments.
+ *
+ * @author ferenczil
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MultiTransactionManagerBenchmark {
+
+    @Param({"1", "8", "30"})
+    int environments;
+
+    TransactionManager tx;
+    DbSessionManager touched;
+
+    LegacyTransactionManager legacy;
+    LegacySessionManager legacyTouched;
+
+    @Setup
+    public void setup() {
+        Injector injector = Guice.createInjector(new BenchmarkDbModule(environments));
+
+        tx = injector.getInstance(TransactionManager.class);
+        legacy = new LegacyTransactionManager();
+        for (int i = 0; i < environments; i++) {
+            // Instantiating the managers registers them in the MultiTransactionManager
+            DbSessionManager manager = injector.getInstance(Key.get(DbSessionManager.class, Database.named(BenchmarkDbModule.environment(i))));
+            LegacySessionManager legacyManager = new LegacySessionManager(manager);
+            legacy.managerMap.put(BenchmarkDbModule.environment(i), legacyManager);
+            if (i == 0) {
+                touched = manager;
+                legacyTouched = legacyManager;
+            }
+        }
+    }
+
+    @Benchmark
+    public void enlisted() {
+        tx.begin();
+        touched.startManagedSession();
+        tx.commit();
+        tx.close();
+    }
+
+    @Benchmark
+    public void legacy() {
+        legacy.txContext.set(Boolean.TRUE);
+        legacyTouched.startManagedSession();
+        legacy.commit();
+        legacy.txContext.remove();
+        legacy.close();
+    }
+
+    /**
+     * Session handling of the former {@code DbSessionManager}
+     */
+    static final class LegacySessionManager {
+        final SqlSessionFactory sqlSessionFactory;
+        final ThreadLocal<SqlSession> localSqlSession = new ThreadLocal<>();
+
+        LegacySessionManager(SqlSessionFactory sqlSessionFactory) {
+            this.sqlSessionFactory = sqlSessionFactory;
+        }
+
+        void startManagedSession() {
+            localSqlSession.set(sqlSessionFactory.openSession());
+        }
+
+        boolean isManagedSessionStarted() {
+            return localSqlSession.get() != null;
+        }
+
+        void commit() {
+            localSqlSession.get().commit(false);
+        }
+
+        void close() {
+            try {
+                localSqlSession.get().close();
+            } finally {
+                localSqlSession.set(null);
+            }
+        }
+    }
+
+    /**
+     * Completion loops of the former {@code MultiTransactionManager}
+     */
+    static final class LegacyTransactionManager {
+        final Map<String, LegacySessionManager> managerMap = new HashMap<>();
+        final ThreadLocal<Object> txContext = new ThreadLocal<>();
+
+        void commit() {
+            for (Map.Entry<String, LegacySessionManager> entry : managerMap.entrySet()) {
+                if (entry.getValue().isManagedSessionStarted()) {
+                    entry.getValue().commit();
+                }
+            }
+        }
+
+        void close() {
+            for (Map.Entry<String, LegacySessionManager> entry : managerMap.entrySet()) {
+                if (entry.getValue().isManagedSessionStarted()) {
+                    entry.getValue().close();
+                }
+            }
+        }
+    }
+
+}
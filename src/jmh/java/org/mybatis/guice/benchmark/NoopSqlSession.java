@@ -0,0 +1,193 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.benchmark;
+
+import org.apache.ibatis.executor.BatchResult;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.TransactionIsolationLevel;
+
+import java.sql.Connection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@code SqlSession} returning constants, used to measure the dispatch overhead without any JDBC work
+ *
+ * @author ferenczil
+ */
+public class NoopSqlSession implements SqlSession {
+
+    private static final Integer ONE = 1;
+
+    private final Configuration configuration;
+
+    public NoopSqlSession(Configuration configuration) {
+        this.configuration = configuration;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T selectOne(String statement) {
+        return (T) ONE;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T selectOne(String statement, Object parameter) {
+        return (T) ONE;
+    }
+
+    public <E> List<E> selectList(String statement) {
+        return Collections.emptyList();
+    }
+
+    public <E> List<E> selectList(String statement, Object parameter) {
+        return Collections.emptyList();
+    }
+
+    public <E> List<E> selectList(String statement, Object parameter, RowBounds rowBounds) {
+        return Collections.emptyList();
+    }
+
+    public <K, V> Map<K, V> selectMap(String statement, String mapKey) {
+        return Collections.emptyMap();
+    }
+
+    public <K, V> Map<K, V> selectMap(String statement, Object parameter, String mapKey) {
+        return Collections.emptyMap();
+    }
+
+    public <K, V> Map<K, V> selectMap(String statement, Object parameter, String mapKey, RowBounds rowBounds) {
+        return Collections.emptyMap();
+    }
+
+    public void select(String statement, Object parameter, ResultHandler handler) {
+    }
+
+    public void select(String statement, ResultHandler handler) {
+    }
+
+    public void select(String statement, Object parameter, RowBounds rowBounds, ResultHandler handler) {
+    }
+
+    public int insert(String statement) {
+        return 1;
+    }
+
+    public int insert(String statement, Object parameter) {
+        return 1;
+    }
+
+    public int update(String statement) {
+        return 1;
+    }
+
+    public int update(String statement, Object parameter) {
+        return 1;
+    }
+
+    public int delete(String statement) {
+        return 1;
+    }
+
+    public int delete(String statement, Object parameter) {
+        return 1;
+    }
+
+    public void commit() {
+    }
+
+    public void commit(boolean force) {
+    }
+
+    public void rollback() {
+    }
+
+    public void rollback(boolean force) {
+    }
+
+    public List<BatchResult> flushStatements() {
+        return Collections.emptyList();
+    }
+
+    public void close() {
+    }
+
+    public void clearCache() {
+    }
+
+    public Configuration getConfiguration() {
+        return configuration;
+    }
+
+    public <T> T getMapper(Class<T> type) {
+        return configuration.getMapper(type, this);
+    }
+
+    public Connection getConnection() {
+        return null;
+    }
+
+    /**
+     * Factory handing out a single shared {@code NoopSqlSession}
+     */
+    public static class Factory implements SqlSessionFactory {
+
+        private final Configuration configuration = new Configuration();
+
+        private final NoopSqlSession session = new NoopSqlSession(configuration);
+
+        public SqlSession openSession() {
+            return session;
+        }
+
+        public SqlSession openSession(boolean autoCommit) {
+            return session;
+        }
+
+        public SqlSession openSession(Connection connection) {
+            return session;
+        }
+
+        public SqlSession openSession(TransactionIsolationLevel level) {
+            return session;
+        }
+
+        public SqlSession openSession(ExecutorType execType) {
+            return session;
+        }
+
+        public SqlSession openSession(ExecutorType execType, boolean autoCommit) {
+            return session;
+        }
+
+        public SqlSession openSession(ExecutorType execType, TransactionIsolationLevel level) {
+            return session;
+        }
+
+        public SqlSession openSession(ExecutorType execType, Connection connection) {
+            return session;
+        }
+
+        public Configuration getConfiguration() {
+            return configuration;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.benchmark;
+
+import org.apache.ibatis.builder.StaticSqlSource;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.session.Configuration;
+import org.mybatis.guice.metrics.LatencyHistogram;
+import org.mybatis.guice.metrics.StatementMetricsInterceptor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Overhead of the {@link StatementMetricsInterceptor} on a statement which does nothing, against calling
+ * the same statement without it, and the cost of recording into a {@link LatencyHistogram} shared by
+ * concurrent threads.
+ *
+ * @author ferenczil
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StatementMetricsBenchmark {
+
+    StatementMetricsInterceptor interceptor;
+    LatencyHistogram histogram;
+    Invocation invocation;
+
+    @Setup
+    public void setup() throws Exception {
+        Configuration configuration = new Configuration();
+        MappedStatement ms = new MappedStatement.Builder(configuration, DbSessionDispatchBenchmark.STATEMENT,
+                new StaticSqlSource(configuration, "SELECT 1"), SqlCommandType.SELECT).build();
+
+        interceptor = new StatementMetricsInterceptor("bench", false);
+        histogram = new LatencyHistogram();
+        invocation = new Invocation(new NoopExecutor(),
+                NoopExecutor.class.getMethod("query", MappedStatement.class, Object.class),
+                new Object[]{ ms, DbSessionDispatchBenchmark.PARAMETER });
+    }
+
+    @Benchmark
+    public Object plainStatement() throws Exception {
+        return invocation.proceed();
+    }
+
+    @Benchmark
+    public Object measuredStatement() throws Throwable {
+        return interceptor.intercept(invocation);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Object measuredStatementContended() throws Throwable {
+        return interceptor.intercept(invocation);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void recordContended() {
+        histogram.record(1234567L);
+    }
+
+    /**
+     * Stands in for the executor the interceptor wraps
+     */
+    public static final class NoopExecutor {
+
+        private static final List<Object> RESULT = Collections.<Object>singletonList("row");
+
+        public List<Object> query(MappedStatement ms, Object parameter) {
+            return RESULT;
+        }
+    }
+
+}
@@ -0,0 +1,81 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.benchmark;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import org.apache.ibatis.session.ExecutorType;
+import org.mybatis.guice.annotation.Database;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The same transactional select on in-memory HSQLDB through {@code MyBatisModule}, intercepted by the
+ * {@code TransactionalMethodInterceptor}, and through a {@code MultiDbModule} with a single environment,
+ * intercepted by the {@code MultiTransactionalMethodInterceptor}.
+ *
+ * @author ferenczil
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransactionalModuleBenchmark {
+
+    @Param({"SIMPLE", "REUSE", "BATCH"})
+    ExecutorType executorType;
+
+    BenchmarkService single;
+    BenchmarkService multi;
+
+    @Setup
+    public void setup() {
+        Injector singleInjector = Guice.createInjector(new BenchmarkMyBatisModule());
+        single = singleInjector.getInstance(BenchmarkService.class);
+        single.mappers = new BenchmarkMapper[]{ singleInjector.getInstance(BenchmarkMapper.class) };
+
+        Injector multiInjector = Guice.createInjector(new BenchmarkDbModule(1));
+        multi = multiInjector.getInstance(BenchmarkService.class);
+        multi.mappers = new BenchmarkMapper[]{
+                multiInjector.getInstance(Key.get(BenchmarkMapper.class, Database.named(BenchmarkDbModule.environment(0))))
+        };
+    }
+
+    @Benchmark
+    public int myBatisModule() {
+        return single.select(executorType);
+    }
+
+    @Benchmark
+    public int multiDbModule() {
+        return multi.select(executorType);
+    }
+
+}
@@ -18,13 +18,23 @@ package org.mybatis.guice;
 import com.google.inject.AbstractModule;
 import com.google.inject.Scopes;
 import com.google.inject.name.Names;
+import org.mybatis.guice.cache.CacheStages;
+import org.mybatis.guice.configuration.MapperCache;
+import org.mybatis.guice.configuration.ParallelStartup;
+import org.mybatis.guice.environment.Warmup;
 import org.mybatis.guice.module.DbBuilder;
 import org.mybatis.guice.module.DbModule;
+import org.mybatis.guice.module.ShardGroupBuilder;
+import org.mybatis.guice.module.ShardGroupModule;
+import org.mybatis.guice.shard.ScatterGather;
 import org.mybatis.guice.transactional.MultiTransactionManager;
 import org.mybatis.guice.transactional.MultiTransactionalMethodInterceptor;
+import org.mybatis.guice.transactional.TransactionContextStorage;
+import org.mybatis.guice.transactional.TransactionMetrics;
 import org.mybatis.guice.transactional.TransactionManager;
 import org.mybatis.guice.transactional.Transactional;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -41,12 +51,33 @@ public abstract class MultiDbModule extends AbstractModule {
 
     private List<DbModule> modules = new ArrayList<>();
 
+    private List<ShardGroupModule> shardGroups = new ArrayList<>();
+
     private boolean allowTransactionWithoutContext = false;
 
+    private int completionThreads = 0;
+
+    private long completionTimeoutMillis = 0;
+
+    private TransactionContextStorage contextStorage;
+
+    private boolean transactionMetrics = false;
+
+    private boolean allocatedBytes = false;
+
+    private int startupThreads = 0;
+
+    private MapperCache mapperCache;
+
+    private Warmup warmup;
+
+    private ScatterGather scatterGather;
+
     public void configure() {
         bind(ClassLoader.class).annotatedWith(named("JDBC.driverClassLoader")).toInstance(driverClassLoader);
 
         bind(MultiTransactionManager.class).in(Scopes.SINGLETON);
+        bind(CacheStages.class).to(MultiTransactionManager.class);
         bind(TransactionManager.class).in(Scopes.SINGLETON);
 
         MultiTransactionalMethodInterceptor interceptor = new MultiTransactionalMethodInterceptor();
@@ -55,11 +86,55 @@ public abstract class MultiDbModule extends AbstractModule {
 
         internalConfigure();
 
+        ParallelStartup startup = startupThreads > 0 ? new ParallelStartup(startupThreads) : null;
+
+        for (ShardGroupModule g : shardGroups) {
+            g.configureShards();
+        }
+
         // Install all private modules
         for (DbModule m : modules) {
+            if (transactionMetrics) {
+                m.withTransactionAccounting();
+            }
+            if (startup != null) {
+                m.withParallelStartup(startup);
+            }
+            if (warmup != null) {
+                m.withWarmup(warmup);
+            }
             install(m);
         }
+        for (ShardGroupModule g : shardGroups) {
+            install(g);
+        }
+        if (startup != null) {
+            bind(ParallelStartup.class).toInstance(startup);
+            bind(ParallelStartup.Starter.class).asEagerSingleton();
+        }
+        if (warmup != null) {
+            bind(Warmup.class).toInstance(warmup);
+            bind(Warmup.Starter.class).asEagerSingleton();
+        }
+        if (scatterGather != null) {
+            bind(ScatterGather.class).toInstance(scatterGather);
+        }
+        if (mapperCache != null) {
+            bind(MapperCache.class).toInstance(mapperCache);
+        }
+        if (transactionMetrics) {
+            bind(TransactionMetrics.class).toInstance(new TransactionMetrics(allocatedBytes, true));
+        }
         bindConstant().annotatedWith(Names.named("mybatis.configuration.allowTransactionWithoutContext")).to(allowTransactionWithoutContext);
+
+        if (contextStorage != null) {
+            bind(TransactionContextStorage.class).toInstance(contextStorage);
+        }
+
+        if (completionThreads > 0) {
+            bindConstant().annotatedWith(Names.named("mybatis.multi.completionThreads")).to(completionThreads);
+            bindConstant().annotatedWith(Names.named("mybatis.multi.completionTimeout")).to(completionTimeoutMillis);
+        }
     }
 
     public abstract void internalConfigure();
@@ -74,8 +149,102 @@ public abstract class MultiDbModule extends AbstractModule {
         return new DbBuilder(module);
     }
 
+    /**
+     * Create a group of shards, environments added with {@link #add(String)} holding the partitions of one
+     * logical database. The mappers of the group route each call to the shard owning its key.
+     *
+     * @param groupId Id of the group
+     * @return builder
+     */
+    protected ShardGroupBuilder shardGroup(String groupId) {
+        ShardGroupModule module = new ShardGroupModule(groupId);
+        shardGroups.add(module);
+        return new ShardGroupBuilder(module);
+    }
+
+    /**
+     * Bind a {@link ScatterGather} running the same select on several environments, e.g. every shard of a group,
+     * concurrently and merging their results.
+     *
+     * @param threads Maximum number of environments read at the same time
+     * @param queueSize Maximum number of environments waiting to be read, further ones are rejected
+     */
+    protected void scatterGather(int threads, int queueSize) {
+        this.scatterGather = new ScatterGather(threads, queueSize);
+    }
+
     protected void allowTransactionWithoutContext(boolean allow) {
         this.allowTransactionWithoutContext = allow;
     }
 
+    /**
+     * Commit and roll back transactions spanning multiple environments concurrently instead of one
+     * environment after the other.
+     *
+     * @param threads Maximum number of environments completed at the same time
+     * @param timeoutMillis Time to wait for all environments to complete, exceeding it counts as a failure
+     */
+    protected void parallelCompletion(int threads, long timeoutMillis) {
+        if (threads < 1 || timeoutMillis <= 0) {
+            throw new IllegalArgumentException("Parallel completion needs a positive thread count and timeout");
+        }
+        this.completionThreads = threads;
+        this.completionTimeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Build the configurations of the environments concurrently while the injector is created, instead of
+     * each one when it is first needed.
+     *
+     * @param threads Maximum number of environments built at the same time
+     */
+    protected void parallelStartup(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Parallel startup needs a positive thread count");
+        }
+        this.startupThreads = threads;
+    }
+
+    /**
+     * Warm up the environments while the injector is created: fill their pools and prepare, without executing,
+     * their mapped statements. The reports are available from the bound {@link Warmup}.
+     *
+     * @param threads Maximum number of environments warmed up at the same time
+     * @param failOnInvalidStatements Fail the injector creation if the database rejects a statement
+     */
+    protected void warmup(int threads, boolean failOnInvalidStatements) {
+        this.warmup = new Warmup(threads, failOnInvalidStatements);
+    }
+
+    /**
+     * Keep the parsed mapper XML files of all environments in a file, so the next startups skip parsing the
+     * ones that did not change.
+     *
+     * @param file File of the {@link MapperCache}, created if it does not exist
+     */
+    protected void mapperCache(File file) {
+        this.mapperCache = new MapperCache(file);
+    }
+
+    /**
+     * Replace the storage of the per-thread transactional contexts, e.g. with a {@code ScopedContextStorage}
+     * to keep no context bound to idle threads.
+     *
+     * @param contextStorage Storage of the transactional contexts
+     */
+    protected void contextStorage(TransactionContextStorage contextStorage) {
+        this.contextStorage = contextStorage;
+    }
+
+    /**
+     * Record the duration, statements, enlisted environments, commit latencies and outcome of every
+     * transactional method, published over JMX as {@code org.mybatis.guice:type=TransactionMetrics}.
+     *
+     * @param allocatedBytes Measure the bytes allocated by the thread running the method, if the JVM supports it
+     */
+    protected void transactionMetrics(boolean allocatedBytes) {
+        this.transactionMetrics = true;
+        this.allocatedBytes = allocatedBytes;
+    }
+
 }
@@ -17,6 +17,7 @@ package org.mybatis.guice;
 
 import javax.inject.Provider;
 import javax.sql.DataSource;
+import java.io.File;
 import java.util.Collection;
 import java.util.Set;
 
@@ -34,11 +35,18 @@ import org.apache.ibatis.transaction.TransactionFactory;
 import org.apache.ibatis.type.TypeHandler;
 import org.mybatis.guice.binder.AliasBinder;
 import org.mybatis.guice.binder.TypeHandlerBinder;
+import org.mybatis.guice.cache.CacheEviction;
+import org.mybatis.guice.cache.OffHeapCache;
+import org.mybatis.guice.cache.OffHeapStore;
 import org.mybatis.guice.configuration.ConfigurationProvider;
+import org.mybatis.guice.configuration.MapperCache;
 import org.mybatis.guice.configuration.Mappers;
 import org.mybatis.guice.configuration.MappingTypeHandlers;
 import org.mybatis.guice.configuration.TypeAliases;
 import org.mybatis.guice.environment.EnvironmentProvider;
+import org.mybatis.guice.environment.Warmup;
+import org.mybatis.guice.index.IndexedResolverUtil;
+import org.mybatis.guice.metrics.StatementMetricsInterceptor;
 import org.mybatis.guice.session.SqlSessionFactoryProvider;
 
 import com.google.inject.Scopes;
@@ -254,6 +262,70 @@ public abstract class MyBatisModule extends AbstractMyBatisModule {
         bind(DataSource.class).toProvider(dataSourceProvider).in(Scopes.SINGLETON);
     }
 
+    /**
+     * Cache prepared statements per physical connection across transactions,
+     * the bound DataSource is decorated when the Environment is built.
+     *
+     * @param maxStatementsPerConnection the number of idle statements kept open per connection
+     */
+    protected final void statementCacheSize(int maxStatementsPerConnection) {
+        checkArgument(maxStatementsPerConnection > 0, "Parameter 'maxStatementsPerConnection' must be positive");
+        bindConstant().annotatedWith(named("mybatis.statementCache.size")).to(maxStatementsPerConnection);
+    }
+
+    /**
+     * Keeps the second-level cache of the mappers using {@link OffHeapCache} outside of the heap,
+     * in a store shared by all their namespaces.
+     *
+     * @param capacityBytes the off-heap memory of the cached values
+     * @param eviction the entries evicted when the store is full
+     * @param compress whether values are compressed
+     */
+    protected final void offHeapCache(long capacityBytes, CacheEviction eviction, boolean compress) {
+        checkArgument(eviction != null, "Parameter 'eviction' must be not null");
+        bind(OffHeapStore.class).toInstance(new OffHeapStore(capacityBytes, eviction, compress));
+    }
+
+    /**
+     * Records the latency, row and error counts of every mapped statement, published as an MBean
+     * named by the environment id.
+     */
+    protected final void statementMetrics() {
+        bind(StatementMetricsInterceptor.class).in(Scopes.SINGLETON);
+        addInterceptorClass(StatementMetricsInterceptor.class);
+    }
+
+    /**
+     * Warms up the environment while the injector is created: fills the pool and prepares, without executing,
+     * the mapped statements. The report is available from the bound {@link Warmup}.
+     *
+     * @param failOnInvalidStatements whether the injector creation fails if the database rejects a statement
+     */
+    protected final void warmup(boolean failOnInvalidStatements) {
+        Warmup warmup = new Warmup(1, failOnInvalidStatements);
+        bind(Warmup.class).toInstance(warmup);
+        requestInjection(new Warmup.Registration(warmup));
+        bind(Warmup.Starter.class).asEagerSingleton();
+    }
+
+    /**
+     * Keeps the parsed mapper XML files in a file, so the next startups skip parsing the ones that did not change.
+     *
+     * @param file the file of the {@link MapperCache}, created if it does not exist
+     */
+    protected final void mapperCache(File file) {
+        checkArgument(file != null, "Parameter 'file' must be not null");
+        bind(MapperCache.class).toInstance(new MapperCache(file));
+    }
+
+    /**
+     * Records the checkout wait time, the active, idle and pending connections and the other statistics
+     * of the connection pool, published as an MBean named by the environment id.
+     */
+    protected final void poolMetrics() {
+        bindConstant().annotatedWith(named("mybatis.poolMetrics")).to(true);
+    }
+
     /**
      * Set the TransactionFactory type has to be bound.
      *
@@ -413,7 +485,7 @@ public abstract class MyBatisModule extends AbstractMyBatisModule {
      */
     protected final void addTypeHandlerClasses(String packageName) {
         checkArgument(packageName != null, "Parameter 'packageName' must not be null");
-        addTypeHandlersClasses(new ResolverUtil<TypeHandler<?>>()
+        addTypeHandlersClasses(new IndexedResolverUtil<TypeHandler<?>>()
                 .find(new ResolverUtil.IsA(TypeHandler.class), packageName)
                 .getClasses());
     }
@@ -451,7 +523,7 @@ public abstract class MyBatisModule extends AbstractMyBatisModule {
      */
     protected final void addInterceptorsClasses(String packageName) {
         checkArgument(packageName != null, "Parameter 'packageName' must not be null");
-        addInterceptorsClasses(new ResolverUtil<Interceptor>()
+        addInterceptorsClasses(new IndexedResolverUtil<Interceptor>()
                 .find(new ResolverUtil.IsA(Interceptor.class), packageName)
                 .getClasses());
     }
@@ -512,7 +584,9 @@ public abstract class MyBatisModule extends AbstractMyBatisModule {
 
     /**
      * Return a set of all classes contained in the given package that match with
-     * the given test requirement.
+     * the given test requirement. The classes are taken from the compile time
+     * {@link org.mybatis.guice.index.ClassIndex} if it has the package, the
+     * classpath is scanned otherwise.
      *
      * @param test the class filter on the given package.
      * @param packageName the package has to be analyzed.
@@ -521,7 +595,7 @@ public abstract class MyBatisModule extends AbstractMyBatisModule {
     private static Set<Class<?>> getClasses(ResolverUtil.Test test, String packageName) {
         checkArgument(test != null, "Parameter 'test' must not be null");
         checkArgument(packageName != null, "Parameter 'packageName' must not be null");
-        return new ResolverUtil<Object>().find(test, packageName).getClasses();
+        return new IndexedResolverUtil<Object>().find(test, packageName).getClasses();
     }
 
 }
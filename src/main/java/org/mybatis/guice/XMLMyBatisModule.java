@@ -17,17 +17,29 @@ package org.mybatis.guice;
 
 import static com.google.inject.internal.util.$Preconditions.checkArgument;
 import static org.apache.ibatis.io.Resources.getResourceAsReader;
+import static org.apache.ibatis.io.Resources.getResourceAsStream;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.Reader;
+import java.lang.reflect.Constructor;
 import java.util.Collection;
 import java.util.Properties;
 
+import org.apache.ibatis.builder.BuilderException;
+import org.apache.ibatis.builder.xml.XMLConfigBuilder;
+import org.apache.ibatis.executor.ErrorContext;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.parsing.XNode;
+import org.apache.ibatis.parsing.XPathParser;
 import org.apache.ibatis.plugin.Interceptor;
 import org.apache.ibatis.session.Configuration;
 import org.apache.ibatis.session.SqlSessionFactory;
 import org.apache.ibatis.session.SqlSessionFactoryBuilder;
 import org.apache.ibatis.type.TypeHandler;
+import org.mybatis.guice.configuration.MapperCache;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
 
 /**
  * Easy to use helper Module that alleviates users to write the boilerplate
@@ -41,12 +53,25 @@ public abstract class XMLMyBatisModule extends AbstractMyBatisModule {
 
     private static final String DEFAULT_ENVIRONMENT_ID = "development";
 
+    private static final Constructor<XMLConfigBuilder> CONFIG_BUILDER;
+
+    static {
+        try {
+            CONFIG_BUILDER = XMLConfigBuilder.class.getDeclaredConstructor(XPathParser.class, String.class, Properties.class);
+            CONFIG_BUILDER.setAccessible(true);
+        } catch (NoSuchMethodException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
     private String classPathResource = DEFAULT_CONFIG_RESOURCE;
 
     private String environmentId = DEFAULT_ENVIRONMENT_ID;
 
     private Properties properties = new Properties();
 
+    private MapperCache mapperCache;
+
     /**
      * Set the MyBatis configuration class path resource.
      *
@@ -78,6 +103,17 @@ public abstract class XMLMyBatisModule extends AbstractMyBatisModule {
         }
     }
 
+    /**
+     * Keeps the parsed configuration and mapper XML files in a file, so the next startups skip parsing the ones
+     * that did not change.
+     *
+     * @param file the file of the {@link MapperCache}, created if it does not exist
+     */
+    protected final void mapperCache(File file) {
+        checkArgument( file != null, "Parameter 'file' must be not null");
+        this.mapperCache = new MapperCache(file);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -87,10 +123,15 @@ public abstract class XMLMyBatisModule extends AbstractMyBatisModule {
 
         Reader reader = null;
         try {
-            reader = getResourceAsReader(getResourceClassLoader(), classPathResource);
-            SqlSessionFactory sessionFactory = new SqlSessionFactoryBuilder().build(reader,
-                    environmentId,
-                    properties);
+            SqlSessionFactory sessionFactory;
+            if (mapperCache != null) {
+                sessionFactory = buildWithCache();
+            } else {
+                reader = getResourceAsReader(getResourceClassLoader(), classPathResource);
+                sessionFactory = new SqlSessionFactoryBuilder().build(reader,
+                        environmentId,
+                        properties);
+            }
             bind(SqlSessionFactory.class).toInstance(sessionFactory);
 
             Configuration configuration = sessionFactory.getConfiguration();
@@ -127,4 +168,59 @@ public abstract class XMLMyBatisModule extends AbstractMyBatisModule {
         }
     }
 
+    /**
+     * Builds the session factory like {@code SqlSessionFactoryBuilder}, taking the configuration and mapper XML
+     * documents from the cache. The mappers element is detached before MyBatis parses the configuration, it is
+     * the last one processed, then its children are added here so resource and url mappers go through the cache.
+     */
+    private SqlSessionFactory buildWithCache() throws Exception {
+        final XPathParser parser = mapperCache.parser(classPathResource,
+                getResourceAsStream(getResourceClassLoader(), classPathResource),
+                properties);
+        final XNode mappers = parser.evalNode("/configuration/mappers");
+        if (mappers != null) {
+            mappers.getNode().getParentNode().removeChild(mappers.getNode());
+        }
+
+        final Configuration configuration;
+        try {
+            configuration = CONFIG_BUILDER.newInstance(parser, environmentId, properties).parse();
+            if (mappers != null) {
+                addMappers(parser, mappers.getNode(), configuration);
+            }
+        } finally {
+            ErrorContext.instance().reset();
+        }
+        mapperCache.flushQuietly();
+        return new SqlSessionFactoryBuilder().build(configuration);
+    }
+
+    private void addMappers(XPathParser parser, Node mappers, Configuration configuration) throws Exception {
+        final NodeList children = mappers.getChildNodes();
+        for (int i = 0; i < children.getLength(); i++) {
+            if (children.item(i).getNodeType() != Node.ELEMENT_NODE) {
+                continue;
+            }
+            final XNode child = new XNode(parser, children.item(i), configuration.getVariables());
+            if ("package".equals(child.getName())) {
+                configuration.addMappers(child.getStringAttribute("name"));
+                continue;
+            }
+            final String resource = child.getStringAttribute("resource");
+            final String url = child.getStringAttribute("url");
+            final String mapperClass = child.getStringAttribute("class");
+            if (resource != null && url == null && mapperClass == null) {
+                ErrorContext.instance().resource(resource);
+                mapperCache.mapperBuilder(resource, Resources.getResourceAsStream(resource), configuration).parse();
+            } else if (resource == null && url != null && mapperClass == null) {
+                ErrorContext.instance().resource(url);
+                mapperCache.mapperBuilder(url, Resources.getUrlAsStream(url), configuration).parse();
+            } else if (resource == null && url == null && mapperClass != null) {
+                configuration.addMapper(Resources.classForName(mapperClass));
+            } else {
+                throw new BuilderException("A mapper element may only specify a url, resource or class, but not more than one.");
+            }
+        }
+    }
+
 }
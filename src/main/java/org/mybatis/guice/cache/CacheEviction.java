@@ -0,0 +1,36 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.cache;
+
+/**
+ * Entry chosen to make room when an {@link OffHeapStore} is full
+ *
+ * @author ferenczil
+ */
+public enum CacheEviction {
+
+    /**
+     * Least recently read or written entry
+     */
+    LRU,
+
+    /**
+     * Least frequently read entry among the oldest ones, the frequencies of the entries passed over are halved
+     * so formerly popular entries age out
+     */
+    LFU
+
+}
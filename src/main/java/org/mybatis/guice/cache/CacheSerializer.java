@@ -0,0 +1,137 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.cache;
+
+import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.io.Resources;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Converts cached values to bytes and back, with optional deflate compression.
+ *
+ * Classes are resolved the way MyBatis resolves them for its {@code SerializedCache}.
+ *
+ * @author ferenczil
+ */
+final class CacheSerializer {
+
+    private CacheSerializer() {
+    }
+
+    static byte[] serialize(Object value) {
+        if (value != null && !(value instanceof Serializable)) {
+            throw new CacheException("Off-heap cache can not store the non-serializable object: " + value.getClass().getName());
+        }
+        try {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+            final ObjectOutputStream out = new ObjectOutputStream(bytes);
+            out.writeObject(value);
+            out.close();
+            return bytes.toByteArray();
+        }
+        catch (IOException e) {
+            throw new CacheException("Error serializing cached object.  Cause: " + e, e);
+        }
+    }
+
+    static Object deserialize(byte[] data) {
+        try {
+            final ObjectInputStream in = new ResourcesObjectInputStream(new ByteArrayInputStream(data));
+            try {
+                return in.readObject();
+            }
+            finally {
+                in.close();
+            }
+        }
+        catch (IOException | ClassNotFoundException e) {
+            throw new CacheException("Error deserializing cached object.  Cause: " + e, e);
+        }
+    }
+
+    /**
+     * @return Compressed bytes, or the input if compressing does not make it smaller
+     */
+    static byte[] compress(byte[] data) {
+        final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            final byte[] buffer = new byte[data.length];
+            int length = 0;
+            while (!deflater.finished() && length < buffer.length) {
+                length += deflater.deflate(buffer, length, buffer.length - length);
+            }
+            if (!deflater.finished()) {
+                return data;
+            }
+            final byte[] compressed = new byte[length];
+            System.arraycopy(buffer, 0, compressed, 0, length);
+            return compressed;
+        }
+        finally {
+            deflater.end();
+        }
+    }
+
+    static byte[] decompress(byte[] data, int length) {
+        final Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            final byte[] result = new byte[length];
+            int read = 0;
+            while (read < length && !inflater.finished()) {
+                read += inflater.inflate(result, read, length - read);
+            }
+            return result;
+        }
+        catch (DataFormatException e) {
+            throw new CacheException("Error decompressing cached object.  Cause: " + e, e);
+        }
+        finally {
+            inflater.end();
+        }
+    }
+
+    private static final class ResourcesObjectInputStream extends ObjectInputStream {
+
+        ResourcesObjectInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            try {
+                return Resources.classForName(desc.getName());
+            }
+            catch (ClassNotFoundException e) {
+                // primitive types
+                return super.resolveClass(desc);
+            }
+        }
+    }
+}
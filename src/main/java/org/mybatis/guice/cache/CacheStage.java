@@ -0,0 +1,94 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Second-level cache changes of the environments of a transaction, held back until the outcome of the whole
+ * transaction is known.
+ *
+ * Each session hands over its changes when its own commit succeeded. If every environment commits, the changes
+ * are published. Otherwise the cached results are dropped, but the invalidations are still applied, because
+ * the environments which did commit changed the data behind them. Sessions may commit on other threads
+ * than the one of the transaction, the stage is thread safe.
+ *
+ * @author ferenczil
+ */
+public final class CacheStage {
+    private static final Logger log = LoggerFactory.getLogger(CacheStage.class);
+
+    private final List<PendingCache> pending = new ArrayList<>();
+
+    synchronized void stage(Collection<PendingCache> caches) {
+        pending.addAll(caches);
+    }
+
+    /**
+     * @return Whether there are changes waiting for the outcome of the transaction
+     */
+    public synchronized boolean isEmpty() {
+        return pending.isEmpty();
+    }
+
+    /**
+     * Applies the staged changes, called when every environment of the transaction committed
+     *
+     * @throws RuntimeException the first failure of a cache, after the changes of the other caches were applied
+     */
+    public void publish() {
+        RuntimeException failure = null;
+        for (PendingCache cache : drain()) {
+            try {
+                cache.publish();
+            }
+            catch (RuntimeException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Drops the staged results and applies the staged invalidations, called when the transaction
+     * did not commit in every environment
+     */
+    public void discard() {
+        for (PendingCache cache : drain()) {
+            try {
+                cache.invalidate();
+            }
+            catch (RuntimeException e) {
+                log.error("Failed to invalidate second-level cache", e);
+            }
+        }
+    }
+
+    private synchronized List<PendingCache> drain() {
+        final List<PendingCache> drained = new ArrayList<>(pending);
+        pending.clear();
+        return drained;
+    }
+}
@@ -0,0 +1,30 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.cache;
+
+/**
+ * Locates the {@link CacheStage} of the transaction running on the current thread
+ *
+ * @author ferenczil
+ */
+public interface CacheStages {
+
+    /**
+     * @return Stage of the current transaction, {@code null} outside of a transactional context
+     */
+    CacheStage currentStage();
+
+}
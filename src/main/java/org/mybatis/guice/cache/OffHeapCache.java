@@ -0,0 +1,168 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.cache;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheException;
+
+import java.util.Locale;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * MyBatis second-level cache keeping the cached results outside of the Java heap.
+ *
+ * Selected per namespace with {@code @CacheNamespace(implementation = OffHeapCache.class)} or
+ * {@code <cache type="org.mybatis.guice.cache.OffHeapCache"/>}. The namespaces of an environment configured
+ * with an off-heap cache share its {@link OffHeapStore}. Otherwise every namespace creates a store of its own
+ * on first use, sized by the {@code capacity}, {@code eviction} and {@code compress} cache properties.
+ *
+ * Values are copies, like with a read-write MyBatis cache: each read deserializes a new object.
+ *
+ * @author ferenczil
+ */
+public class OffHeapCache implements Cache {
+
+    static final long DEFAULT_CAPACITY = 16L << 20;
+
+    private final String id;
+
+    private final ReadWriteLock readWriteLock = new ReentrantReadWriteLock();
+
+    private volatile OffHeapStore store;
+
+    private long capacity = DEFAULT_CAPACITY;
+
+    private CacheEviction eviction = CacheEviction.LRU;
+
+    private boolean compress;
+
+    /**
+     * Constructor used by MyBatis, takes the store of the environment whose Configuration is being built
+     *
+     * @param id Namespace
+     */
+    public OffHeapCache(String id) {
+        this(id, OffHeapStore.current());
+    }
+
+    /**
+     * @param id Namespace
+     * @param store Store shared with other namespaces, {@code null} to create one on first use
+     */
+    public OffHeapCache(String id, OffHeapStore store) {
+        this.id = id;
+        this.store = store;
+    }
+
+    /**
+     * @param capacity Bytes of the own store of the namespace, ignored if the environment has a store
+     */
+    public void setCapacity(long capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * @param eviction Name of a {@link CacheEviction} for the own store of the namespace
+     */
+    public void setEviction(String eviction) {
+        try {
+            this.eviction = CacheEviction.valueOf(eviction.toUpperCase(Locale.ENGLISH));
+        }
+        catch (IllegalArgumentException e) {
+            throw new CacheException("Unknown eviction policy '" + eviction + "' of cache " + id, e);
+        }
+    }
+
+    /**
+     * @param compress Whether the own store of the namespace compresses values
+     */
+    public void setCompress(boolean compress) {
+        this.compress = compress;
+    }
+
+    public OffHeapStore getStore() {
+        OffHeapStore result = store;
+        if (result == null) {
+            synchronized (this) {
+                result = store;
+                if (result == null) {
+                    result = new OffHeapStore(capacity, eviction, compress);
+                    store = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public int getSize() {
+        return getStore().size(id);
+    }
+
+    @Override
+    public void putObject(Object key, Object value) {
+        getStore().put(id, key, value);
+    }
+
+    @Override
+    public Object getObject(Object key) {
+        return getStore().get(id, key);
+    }
+
+    /**
+     * Removes an entry without reading it back from the store
+     *
+     * @return {@code null}
+     */
+    @Override
+    public Object removeObject(Object key) {
+        getStore().remove(id, key);
+        return null;
+    }
+
+    @Override
+    public void clear() {
+        getStore().clear(id);
+    }
+
+    @Override
+    public ReadWriteLock getReadWriteLock() {
+        return readWriteLock;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Cache)) {
+            return false;
+        }
+        return id.equals(((Cache) o).getId());
+    }
+
+    @Override
+    public int hashCode() {
+        return id.hashCode();
+    }
+
+}
@@ -0,0 +1,482 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.cache;
+
+import com.google.common.base.Preconditions;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Size-bounded storage of the {@link OffHeapCache} namespaces of an environment, outside of the Java heap.
+ *
+ * Values are serialized, optionally compressed, and written into fixed size blocks of direct {@code ByteBuffer}
+ * slabs, allocated when first needed. The blocks of a value are chained through a header holding the index of
+ * the next block, free blocks are chained the same way, so the heap only holds the keys and a small descriptor
+ * per entry. When there are not enough free blocks, entries are evicted according to the {@link CacheEviction}
+ * policy; values larger than half of the capacity are not stored.
+ *
+ * All namespaces share the capacity and the eviction order. Serialization runs outside of the lock of the store.
+ *
+ * @author ferenczil
+ */
+public final class OffHeapStore {
+
+    static final int BLOCK_SIZE = 512;
+
+    private static final int HEADER_SIZE = 4;
+
+    private static final int PAYLOAD_SIZE = BLOCK_SIZE - HEADER_SIZE;
+
+    private static final int NO_BLOCK = -1;
+
+    private static final long MAX_SLAB_SIZE = 64L << 20;
+
+    /**
+     * Number of the oldest entries compared by the LFU eviction
+     */
+    private static final int LFU_SAMPLE_SIZE = 16;
+
+    /**
+     * Values shorter than this are not worth compressing
+     */
+    private static final int COMPRESSION_THRESHOLD = 256;
+
+    private static final ThreadLocal<OffHeapStore> CURRENT = new ThreadLocal<>();
+
+    private final long capacity;
+
+    private final CacheEviction eviction;
+
+    private final boolean compress;
+
+    private final int totalBlocks;
+
+    private final int slabBlocks;
+
+    private final ByteBuffer[] slabs;
+
+    private final LinkedHashMap<Key, Entry> entries;
+
+    private final Map<String, Set<Key>> namespaces = new HashMap<>();
+
+    /**
+     * First block which has never been used, the blocks after it are not chained in the free list
+     */
+    private int unusedBlock;
+
+    private int freeHead = NO_BLOCK;
+
+    private int freeBlocks;
+
+    private long usedBytes;
+
+    private long hitCount;
+
+    private long missCount;
+
+    private long putCount;
+
+    private long evictionCount;
+
+    private long rejectedCount;
+
+    /**
+     * @param capacityBytes Off-heap memory the values may use, including the block headers
+     * @param eviction Policy choosing the entries to evict
+     * @param compress Whether values are compressed when it makes them smaller
+     */
+    public OffHeapStore(long capacityBytes, CacheEviction eviction, boolean compress) {
+        Preconditions.checkArgument(capacityBytes >= 2 * BLOCK_SIZE, "Off-heap cache capacity must be at least %s bytes", 2 * BLOCK_SIZE);
+        Preconditions.checkArgument(eviction != null, "Eviction policy must be not null");
+        this.totalBlocks = (int) Math.min(capacityBytes / BLOCK_SIZE, Integer.MAX_VALUE);
+        this.capacity = (long) totalBlocks * BLOCK_SIZE;
+        this.eviction = eviction;
+        this.compress = compress;
+        this.slabBlocks = (int) Math.min(totalBlocks, MAX_SLAB_SIZE / BLOCK_SIZE);
+        this.slabs = new ByteBuffer[(totalBlocks + slabBlocks - 1) / slabBlocks];
+        this.freeBlocks = totalBlocks;
+        this.entries = new LinkedHashMap<>(64, 0.75f, eviction == CacheEviction.LRU);
+    }
+
+    /**
+     * Sets the store used by the {@link OffHeapCache} instances which MyBatis creates on the current thread.
+     * Caches are instantiated by MyBatis while the mappers are parsed, the environment binds its store for
+     * the time its {@code Configuration} is built.
+     *
+     * @param store Store of the environment, {@code null} if its caches use stores of their own
+     * @return Store bound before, to be bound again afterwards
+     */
+    public static OffHeapStore bind(OffHeapStore store) {
+        final OffHeapStore previous = CURRENT.get();
+        if (store != null) {
+            CURRENT.set(store);
+        }
+        else {
+            CURRENT.remove();
+        }
+        return previous;
+    }
+
+    static OffHeapStore current() {
+        return CURRENT.get();
+    }
+
+    void put(String namespace, Object key, Object value) {
+        byte[] data = CacheSerializer.serialize(value);
+        final int length = data.length;
+        boolean compressed = false;
+        if (compress && length >= COMPRESSION_THRESHOLD) {
+            final byte[] smaller = CacheSerializer.compress(data);
+            compressed = smaller != data;
+            data = smaller;
+        }
+        final int blocks = Math.max(1, (data.length + PAYLOAD_SIZE - 1) / PAYLOAD_SIZE);
+        final Key storeKey = new Key(namespace, key);
+
+        synchronized (this) {
+            final Entry previous = entries.remove(storeKey);
+            if (previous != null) {
+                release(previous);
+            }
+            if (blocks > totalBlocks / 2) {
+                rejectedCount++;
+                if (previous != null) {
+                    unindex(storeKey);
+                }
+                return;
+            }
+            while (freeBlocks < blocks) {
+                evict();
+            }
+            entries.put(storeKey, new Entry(write(data, blocks), data.length, length, compressed));
+            if (previous == null) {
+                index(storeKey);
+            }
+            usedBytes += data.length;
+            putCount++;
+        }
+    }
+
+    Object get(String namespace, Object key) {
+        final byte[] data;
+        final Entry entry;
+        synchronized (this) {
+            entry = entries.get(new Key(namespace, key));
+            if (entry == null) {
+                missCount++;
+                return null;
+            }
+            hitCount++;
+            if (entry.frequency < Integer.MAX_VALUE) {
+                entry.frequency++;
+            }
+            data = read(entry);
+        }
+        return CacheSerializer.deserialize(entry.compressed ? CacheSerializer.decompress(data, entry.rawLength) : data);
+    }
+
+    synchronized boolean remove(String namespace, Object key) {
+        final Key storeKey = new Key(namespace, key);
+        final Entry entry = entries.remove(storeKey);
+        if (entry == null) {
+            return false;
+        }
+        release(entry);
+        unindex(storeKey);
+        return true;
+    }
+
+    synchronized void clear(String namespace) {
+        final Set<Key> keys = namespaces.remove(namespace);
+        if (keys != null) {
+            for (Key key : keys) {
+                release(entries.remove(key));
+            }
+        }
+    }
+
+    synchronized int size(String namespace) {
+        final Set<Key> keys = namespaces.get(namespace);
+        return keys != null ? keys.size() : 0;
+    }
+
+    /**
+     * Removes the entries of all namespaces, the slabs stay allocated
+     */
+    public synchronized void clear() {
+        entries.clear();
+        namespaces.clear();
+        unusedBlock = 0;
+        freeHead = NO_BLOCK;
+        freeBlocks = totalBlocks;
+        usedBytes = 0;
+    }
+
+    private void evict() {
+        final Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator();
+        Map.Entry<Key, Entry> victim = it.next();
+        if (eviction == CacheEviction.LFU) {
+            for (int i = 1; i < LFU_SAMPLE_SIZE && it.hasNext(); i++) {
+                final Map.Entry<Key, Entry> candidate = it.next();
+                if (candidate.getValue().frequency < victim.getValue().frequency) {
+                    victim.getValue().frequency >>>= 1;
+                    victim = candidate;
+                }
+                else {
+                    candidate.getValue().frequency >>>= 1;
+                }
+            }
+        }
+        final Key key = victim.getKey();
+        release(entries.remove(key));
+        unindex(key);
+        evictionCount++;
+    }
+
+    private void index(Key key) {
+        Set<Key> keys = namespaces.get(key.namespace);
+        if (keys == null) {
+            keys = new HashSet<>();
+            namespaces.put(key.namespace, keys);
+        }
+        keys.add(key);
+    }
+
+    private void unindex(Key key) {
+        final Set<Key> keys = namespaces.get(key.namespace);
+        if (keys != null) {
+            keys.remove(key);
+            if (keys.isEmpty()) {
+                namespaces.remove(key.namespace);
+            }
+        }
+    }
+
+    // --------------------------------------------------------------------
+    // Blocks
+    // --------------------------------------------------------------------
+
+    private int write(byte[] data, int blocks) {
+        int first = NO_BLOCK;
+        int previous = NO_BLOCK;
+        int offset = 0;
+        for (int i = 0; i < blocks; i++) {
+            final int block = allocate();
+            if (previous == NO_BLOCK) {
+                first = block;
+            }
+            else {
+                slab(previous).putInt(position(previous), block);
+            }
+            final ByteBuffer slab = slab(block);
+            final int position = position(block);
+            final int length = Math.min(PAYLOAD_SIZE, data.length - offset);
+            slab.putInt(position, NO_BLOCK);
+            slab.position(position + HEADER_SIZE);
+            slab.put(data, offset, length);
+            offset += length;
+            previous = block;
+        }
+        return first;
+    }
+
+    private byte[] read(Entry entry) {
+        final byte[] data = new byte[entry.length];
+        int offset = 0;
+        int block = entry.firstBlock;
+        while (block != NO_BLOCK) {
+            final ByteBuffer slab = slab(block);
+            final int position = position(block);
+            final int length = Math.min(PAYLOAD_SIZE, data.length - offset);
+            slab.position(position + HEADER_SIZE);
+            slab.get(data, offset, length);
+            offset += length;
+            block = slab.getInt(position);
+        }
+        return data;
+    }
+
+    private int allocate() {
+        final int block;
+        if (freeHead != NO_BLOCK) {
+            block = freeHead;
+            freeHead = slab(block).getInt(position(block));
+        }
+        else {
+            block = unusedBlock++;
+        }
+        freeBlocks--;
+        return block;
+    }
+
+    private void release(Entry entry) {
+        int block = entry.firstBlock;
+        while (block != NO_BLOCK) {
+            final ByteBuffer slab = slab(block);
+            final int position = position(block);
+            final int next = slab.getInt(position);
+            slab.putInt(position, freeHead);
+            freeHead = block;
+            freeBlocks++;
+            block = next;
+        }
+        usedBytes -= entry.length;
+    }
+
+    private ByteBuffer slab(int block) {
+        final int index = block / slabBlocks;
+        ByteBuffer slab = slabs[index];
+        if (slab == null) {
+            slab = ByteBuffer.allocateDirect(slabBlocks * BLOCK_SIZE);
+            slabs[index] = slab;
+        }
+        return slab;
+    }
+
+    private int position(int block) {
+        return (block % slabBlocks) * BLOCK_SIZE;
+    }
+
+    // --------------------------------------------------------------------
+    // Statistics
+    // --------------------------------------------------------------------
+
+    public long getCapacity() {
+        return capacity;
+    }
+
+    public CacheEviction getEviction() {
+        return eviction;
+    }
+
+    public boolean isCompress() {
+        return compress;
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * @return Hits per lookup, 0 if there was no lookup yet
+     */
+    public synchronized double getHitRatio() {
+        final long lookups = hitCount + missCount;
+        return lookups == 0 ? 0 : (double) hitCount / lookups;
+    }
+
+    public synchronized long getPutCount() {
+        return putCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * @return Number of values not stored because they were larger than half of the capacity
+     */
+    public synchronized long getRejectedCount() {
+        return rejectedCount;
+    }
+
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    /**
+     * @return Bytes of the stored, possibly compressed values, without block headers and unused block space
+     */
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * @return Bytes of the blocks holding values
+     */
+    public synchronized long getAllocatedBytes() {
+        return (long) (totalBlocks - freeBlocks) * BLOCK_SIZE;
+    }
+
+    /**
+     * Key of an entry, cache keys are only unique within their namespace
+     */
+    private static final class Key {
+
+        private final String namespace;
+
+        private final Object key;
+
+        private final int hash;
+
+        Key(String namespace, Object key) {
+            this.namespace = namespace;
+            this.key = key;
+            this.hash = 31 * namespace.hashCode() + (key != null ? key.hashCode() : 0);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) o;
+            return hash == other.hash && namespace.equals(other.namespace)
+                    && (key != null ? key.equals(other.key) : other.key == null);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * Location of a value, the only part of an entry kept on the heap besides its key
+     */
+    private static final class Entry {
+
+        private final int firstBlock;
+
+        private final int length;
+
+        private final int rawLength;
+
+        private final boolean compressed;
+
+        private int frequency = 1;
+
+        Entry(int firstBlock, int length, int rawLength, boolean compressed) {
+            this.firstBlock = firstBlock;
+            this.length = length;
+            this.rawLength = rawLength;
+            this.compressed = compressed;
+        }
+    }
+}
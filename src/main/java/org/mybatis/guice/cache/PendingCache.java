@@ -0,0 +1,87 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.cache;
+
+import org.apache.ibatis.cache.Cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Changes of a transaction to one namespace cache, applied when the transaction is known to be committed.
+ *
+ * @author ferenczil
+ */
+final class PendingCache {
+
+    private final Cache cache;
+
+    private final Map<Object, Object> puts = new LinkedHashMap<>();
+
+    /**
+     * Set when a statement of the transaction flushed the cache, its entries may be stale after the commit
+     */
+    private boolean clear;
+
+    PendingCache(Cache cache) {
+        this.cache = cache;
+    }
+
+    void putObject(Object key, Object value) {
+        puts.put(key, value);
+    }
+
+    void clear() {
+        clear = true;
+        puts.clear();
+    }
+
+    /**
+     * Applies the invalidation and the results read by the transaction
+     */
+    void publish() {
+        final Lock lock = cache.getReadWriteLock().writeLock();
+        lock.lock();
+        try {
+            if (clear) {
+                cache.clear();
+            }
+            for (Map.Entry<Object, Object> put : puts.entrySet()) {
+                cache.putObject(put.getKey(), put.getValue());
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Applies only the invalidation, the results read by the transaction are dropped
+     */
+    void invalidate() {
+        if (clear) {
+            final Lock lock = cache.getReadWriteLock().writeLock();
+            lock.lock();
+            try {
+                cache.clear();
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.cache;
+
+import org.apache.ibatis.executor.BatchExecutor;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.executor.ReuseExecutor;
+import org.apache.ibatis.executor.SimpleExecutor;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.transaction.Transaction;
+
+/**
+ * Configuration of an environment taking part in transactions spanning multiple environments. Its sessions
+ * stage their second-level cache changes in the transaction, which publishes them once every environment committed.
+ *
+ * @author ferenczil
+ */
+public class StagedCacheConfiguration extends Configuration {
+
+    private final CacheStages cacheStages;
+
+    public StagedCacheConfiguration(Environment environment, CacheStages cacheStages) {
+        super(environment);
+        this.cacheStages = cacheStages;
+    }
+
+    @Override
+    public Executor newExecutor(Transaction transaction, ExecutorType executorType, boolean autoCommit) {
+        executorType = executorType == null ? defaultExecutorType : executorType;
+        executorType = executorType == null ? ExecutorType.SIMPLE : executorType;
+        Executor executor;
+        if (ExecutorType.BATCH == executorType) {
+            executor = new BatchExecutor(this, transaction);
+        }
+        else if (ExecutorType.REUSE == executorType) {
+            executor = new ReuseExecutor(this, transaction);
+        }
+        else {
+            executor = new SimpleExecutor(this, transaction);
+        }
+        if (cacheEnabled) {
+            executor = new StagingCachingExecutor(executor, autoCommit, cacheStages.currentStage());
+        }
+        return (Executor) interceptorChain.pluginAll(executor);
+    }
+
+}
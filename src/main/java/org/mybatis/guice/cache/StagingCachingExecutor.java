@@ -0,0 +1,222 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.cache;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.executor.BatchResult;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.executor.ExecutorException;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.mapping.ParameterMode;
+import org.apache.ibatis.mapping.StatementType;
+import org.apache.ibatis.reflection.MetaObject;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+import org.apache.ibatis.transaction.Transaction;
+
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Variant of the {@code CachingExecutor} from MyBatis which hands the second-level cache changes of a committed
+ * session to the {@link CacheStage} of its transaction instead of applying them.
+ *
+ * Reads and invalidations follow the {@code CachingExecutor}. Sessions opened outside of a transactional context
+ * have no stage and apply their changes on commit.
+ *
+ * @author ferenczil
+ */
+final class StagingCachingExecutor implements Executor {
+
+    private final Executor delegate;
+
+    private final boolean autoCommit;
+
+    /**
+     * Stage of the transaction which opened the session, {@code null} outside of a transactional context
+     */
+    private final CacheStage stage;
+
+    private Map<Cache, PendingCache> pending = new HashMap<>();
+
+    private boolean dirty;
+
+    StagingCachingExecutor(Executor delegate, boolean autoCommit, CacheStage stage) {
+        this.delegate = delegate;
+        this.autoCommit = autoCommit;
+        this.stage = stage;
+    }
+
+    @Override
+    public Transaction getTransaction() {
+        return delegate.getTransaction();
+    }
+
+    @Override
+    public void close(boolean forceRollback) {
+        try {
+            if (stage != null || (dirty && !autoCommit)) {
+                // Changes of a transaction are only applied by its commit
+                pending.clear();
+            }
+            else {
+                publish();
+            }
+        }
+        finally {
+            delegate.close(forceRollback);
+        }
+    }
+
+    @Override
+    public boolean isClosed() {
+        return delegate.isClosed();
+    }
+
+    @Override
+    public int update(MappedStatement ms, Object parameterObject) throws SQLException {
+        flushCacheIfRequired(ms);
+        return delegate.update(ms, parameterObject);
+    }
+
+    @Override
+    public <E> List<E> query(MappedStatement ms, Object parameterObject, RowBounds rowBounds, ResultHandler resultHandler) throws SQLException {
+        final BoundSql boundSql = ms.getBoundSql(parameterObject);
+        final CacheKey key = createCacheKey(ms, parameterObject, rowBounds, boundSql);
+        return query(ms, parameterObject, rowBounds, resultHandler, key, boundSql);
+    }
+
+    @Override
+    public <E> List<E> query(MappedStatement ms, Object parameterObject, RowBounds rowBounds, ResultHandler resultHandler,
+                             CacheKey key, BoundSql boundSql) throws SQLException {
+        final Cache cache = ms.getCache();
+        if (cache != null) {
+            flushCacheIfRequired(ms);
+            if (ms.isUseCache() && resultHandler == null) {
+                ensureNoOutParams(ms, boundSql);
+                if (!dirty) {
+                    cache.getReadWriteLock().readLock().lock();
+                    try {
+                        @SuppressWarnings("unchecked")
+                        final List<E> cachedList = (List<E>) cache.getObject(key);
+                        if (cachedList != null) {
+                            return cachedList;
+                        }
+                    }
+                    finally {
+                        cache.getReadWriteLock().readLock().unlock();
+                    }
+                }
+                final List<E> list = delegate.query(ms, parameterObject, rowBounds, resultHandler, key, boundSql);
+                pendingCache(cache).putObject(key, list);
+                return list;
+            }
+        }
+        return delegate.query(ms, parameterObject, rowBounds, resultHandler, key, boundSql);
+    }
+
+    @Override
+    public List<BatchResult> flushStatements() throws SQLException {
+        return delegate.flushStatements();
+    }
+
+    @Override
+    public void commit(boolean required) throws SQLException {
+        delegate.commit(required);
+        if (stage != null) {
+            if (!pending.isEmpty()) {
+                stage.stage(pending.values());
+                pending = new HashMap<>();
+            }
+        }
+        else {
+            publish();
+        }
+        dirty = false;
+    }
+
+    @Override
+    public void rollback(boolean required) throws SQLException {
+        try {
+            delegate.rollback(required);
+            dirty = false;
+        }
+        finally {
+            if (required) {
+                pending.clear();
+            }
+        }
+    }
+
+    @Override
+    public CacheKey createCacheKey(MappedStatement ms, Object parameterObject, RowBounds rowBounds, BoundSql boundSql) {
+        return delegate.createCacheKey(ms, parameterObject, rowBounds, boundSql);
+    }
+
+    @Override
+    public boolean isCached(MappedStatement ms, CacheKey key) {
+        return delegate.isCached(ms, key);
+    }
+
+    @Override
+    public void deferLoad(MappedStatement ms, MetaObject resultObject, String property, CacheKey key, Class<?> targetType) {
+        delegate.deferLoad(ms, resultObject, property, key, targetType);
+    }
+
+    @Override
+    public void clearLocalCache() {
+        delegate.clearLocalCache();
+    }
+
+    private void publish() {
+        for (PendingCache cache : pending.values()) {
+            cache.publish();
+        }
+        pending.clear();
+    }
+
+    private PendingCache pendingCache(Cache cache) {
+        PendingCache result = pending.get(cache);
+        if (result == null) {
+            result = new PendingCache(cache);
+            pending.put(cache, result);
+        }
+        return result;
+    }
+
+    private void flushCacheIfRequired(MappedStatement ms) {
+        final Cache cache = ms.getCache();
+        if (cache != null && ms.isFlushCacheRequired()) {
+            dirty = true;
+            pendingCache(cache).clear();
+        }
+    }
+
+    private void ensureNoOutParams(MappedStatement ms, BoundSql boundSql) {
+        if (ms.getStatementType() == StatementType.CALLABLE) {
+            for (ParameterMapping parameterMapping : boundSql.getParameterMappings()) {
+                if (parameterMapping.getMode() != ParameterMode.IN) {
+                    throw new ExecutorException("Caching stored procedures with OUT params is not supported.  Please configure useCache=false in " + ms.getId() + " statement.");
+                }
+            }
+        }
+    }
+}
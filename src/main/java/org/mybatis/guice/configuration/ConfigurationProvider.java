@@ -35,6 +35,9 @@ import org.apache.ibatis.session.AutoMappingBehavior;
 import org.apache.ibatis.session.Configuration;
 import org.apache.ibatis.session.ExecutorType;
 import org.apache.ibatis.type.TypeHandler;
+import org.mybatis.guice.cache.CacheStages;
+import org.mybatis.guice.cache.OffHeapStore;
+import org.mybatis.guice.cache.StagedCacheConfiguration;
 
 import com.google.inject.ProvisionException;
 
@@ -116,6 +119,34 @@ public final class ConfigurationProvider implements Provider<Configuration> {
     @Named("mybatis.configuration.mapUnderscoreToCamelCase")
     private boolean mapUnderscoreToCamelCase = false;
 
+    /**
+     * Store shared by the off-heap caches of the mappers, {@code null} if each cache has its own
+     */
+    @com.google.inject.Inject(optional = true)
+    private OffHeapStore offHeapStore;
+
+    /**
+     * Stages of the cache changes of transactions spanning multiple environments, {@code null} without them
+     */
+    @com.google.inject.Inject(optional = true)
+    private CacheStages cacheStages;
+
+    /**
+     * Parsed mapper XML files kept between startups, {@code null} if every file is parsed
+     */
+    @com.google.inject.Inject(optional = true)
+    private MapperCache mapperCache;
+
+    /**
+     * Configuration built in advance by a {@link ParallelStartup}, {@code null} if it is built on demand
+     */
+    private volatile Configuration prebuilt;
+
+    /**
+     * Whether the configuration was provided already, so a {@link ParallelStartup} does not build it again
+     */
+    private volatile boolean provided;
+
     /**
      * @since 1.0.1
      */
@@ -264,7 +295,34 @@ public final class ConfigurationProvider implements Provider<Configuration> {
      * {@inheritDoc}
      */
     public Configuration get() {
-        final Configuration configuration = new Configuration(environment);
+        provided = true;
+        final Configuration configuration = prebuilt;
+        if (configuration != null) {
+            prebuilt = null;
+            return configuration;
+        }
+        return build();
+    }
+
+    boolean isProvided() {
+        return provided;
+    }
+
+    boolean isPrebuilt() {
+        return prebuilt != null;
+    }
+
+    void setPrebuilt(Configuration configuration) {
+        if (!provided) {
+            this.prebuilt = configuration;
+        }
+    }
+
+    /**
+     * Builds the configuration, parsing every mapper. Uses no injection, so it may run on any thread.
+     */
+    Configuration build() {
+        final Configuration configuration = cacheStages != null ? new StagedCacheConfiguration(environment, cacheStages) : new Configuration(environment);
         configuration.setLazyLoadingEnabled(lazyLoadingEnabled);
         configuration.setAggressiveLazyLoading(aggressiveLazyLoading);
         configuration.setMultipleResultSetsEnabled(multipleResultSetsEnabled);
@@ -276,6 +334,8 @@ public final class ConfigurationProvider implements Provider<Configuration> {
         configuration.setObjectFactory(objectFactory);
         configuration.setMapUnderscoreToCamelCase( mapUnderscoreToCamelCase );
 
+        // Caches of the mappers are created by MyBatis, they pick up the store of this environment
+        final OffHeapStore previousStore = OffHeapStore.bind(offHeapStore);
         try {
             for (Map.Entry<String,Class<?>> alias : typeAliases.entrySet()) {
                 configuration.getTypeAliasRegistry().registerAlias(alias.getKey(), alias.getValue());
@@ -297,10 +357,16 @@ public final class ConfigurationProvider implements Provider<Configuration> {
 
             for (String mapperXml : mapperXmls) {
                 InputStream inputStream = Resources.getResourceAsStream(mapperXml);
-                XMLMapperBuilder mapperParser = new XMLMapperBuilder(inputStream, configuration, mapperXml, configuration.getSqlFragments());
+                XMLMapperBuilder mapperParser = mapperCache != null
+                        ? mapperCache.mapperBuilder(mapperXml, inputStream, configuration)
+                        : new XMLMapperBuilder(inputStream, configuration, mapperXml, configuration.getSqlFragments());
                 mapperParser.parse();
             }
 
+            if (mapperCache != null) {
+                mapperCache.flushQuietly();
+            }
+
             for (Interceptor interceptor : plugins) {
                 configuration.addInterceptor(interceptor);
             }
@@ -311,6 +377,7 @@ public final class ConfigurationProvider implements Provider<Configuration> {
         } catch (Throwable cause) {
             throw new ProvisionException("An error occurred while building the org.apache.ibatis.session.Configuration", cause);
         } finally {
+            OffHeapStore.bind(previousStore);
             ErrorContext.instance().reset();
         }
 
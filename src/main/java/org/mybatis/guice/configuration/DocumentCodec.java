@@ -0,0 +1,185 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.configuration;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary form of the parsed XML documents kept by the {@link MapperCache}.
+ *
+ * Only what MyBatis reads is kept: elements with their attributes, text and CDATA sections. Element and attribute
+ * names are written once in a string table at the start of the document and referenced by index.
+ *
+ * @author ferenczil
+ */
+final class DocumentCodec {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final byte ELEMENT = 1;
+
+    private static final byte TEXT = 2;
+
+    private static final byte CDATA = 3;
+
+    private static final byte END = 0;
+
+    private static final DocumentBuilderFactory FACTORY = DocumentBuilderFactory.newInstance();
+
+    private DocumentCodec() {
+    }
+
+    static byte[] encode(Document document) throws IOException {
+        final Map<String, Integer> names = new HashMap<>();
+        final List<String> table = new ArrayList<>();
+        collectNames(document.getDocumentElement(), names, table);
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(4096);
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(table.size());
+        for (String name : table) {
+            writeString(out, name);
+        }
+        writeElement(out, document.getDocumentElement(), names);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    static Document decode(ByteBuffer in) {
+        final Document document;
+        try {
+            synchronized (FACTORY) {
+                document = FACTORY.newDocumentBuilder().newDocument();
+            }
+        }
+        catch (ParserConfigurationException e) {
+            throw new IllegalStateException("No XML document builder available", e);
+        }
+        final String[] table = new String[in.getInt()];
+        for (int i = 0; i < table.length; i++) {
+            table[i] = readString(in);
+        }
+        in.get(); // ELEMENT of the root
+        document.appendChild(readElement(in, document, table));
+        return document;
+    }
+
+    private static void collectNames(Element element, Map<String, Integer> names, List<String> table) {
+        addName(element.getTagName(), names, table);
+        final NamedNodeMap attributes = element.getAttributes();
+        for (int i = 0; i < attributes.getLength(); i++) {
+            addName(attributes.item(i).getNodeName(), names, table);
+        }
+        final NodeList children = element.getChildNodes();
+        for (int i = 0; i < children.getLength(); i++) {
+            if (children.item(i).getNodeType() == Node.ELEMENT_NODE) {
+                collectNames((Element) children.item(i), names, table);
+            }
+        }
+    }
+
+    private static void addName(String name, Map<String, Integer> names, List<String> table) {
+        if (!names.containsKey(name)) {
+            names.put(name, table.size());
+            table.add(name);
+        }
+    }
+
+    private static void writeElement(DataOutputStream out, Element element, Map<String, Integer> names) throws IOException {
+        out.writeByte(ELEMENT);
+        out.writeInt(names.get(element.getTagName()));
+        final NamedNodeMap attributes = element.getAttributes();
+        out.writeInt(attributes.getLength());
+        for (int i = 0; i < attributes.getLength(); i++) {
+            final Node attribute = attributes.item(i);
+            out.writeInt(names.get(attribute.getNodeName()));
+            writeString(out, attribute.getNodeValue());
+        }
+        final NodeList children = element.getChildNodes();
+        for (int i = 0; i < children.getLength(); i++) {
+            final Node child = children.item(i);
+            switch (child.getNodeType()) {
+                case Node.ELEMENT_NODE:
+                    writeElement(out, (Element) child, names);
+                    break;
+                case Node.TEXT_NODE:
+                    out.writeByte(TEXT);
+                    writeString(out, child.getNodeValue());
+                    break;
+                case Node.CDATA_SECTION_NODE:
+                    out.writeByte(CDATA);
+                    writeString(out, child.getNodeValue());
+                    break;
+                default:
+                    // comments and processing instructions are not read by MyBatis
+            }
+        }
+        out.writeByte(END);
+    }
+
+    private static Element readElement(ByteBuffer in, Document document, String[] table) {
+        final Element element = document.createElement(table[in.getInt()]);
+        final int attributes = in.getInt();
+        for (int i = 0; i < attributes; i++) {
+            final String name = table[in.getInt()];
+            element.setAttribute(name, readString(in));
+        }
+        for (byte type = in.get(); type != END; type = in.get()) {
+            switch (type) {
+                case ELEMENT:
+                    element.appendChild(readElement(in, document, table));
+                    break;
+                case TEXT:
+                    element.appendChild(document.createTextNode(readString(in)));
+                    break;
+                case CDATA:
+                    element.appendChild(document.createCDATASection(readString(in)));
+                    break;
+                default:
+                    throw new IllegalStateException("Corrupted cached document, unknown node type " + type);
+            }
+        }
+        return element;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        final byte[] bytes = value.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        final byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+}
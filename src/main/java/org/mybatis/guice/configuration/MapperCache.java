@@ -0,0 +1,324 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.configuration;
+
+import org.apache.ibatis.builder.xml.XMLMapperBuilder;
+import org.apache.ibatis.builder.xml.XMLMapperEntityResolver;
+import org.apache.ibatis.parsing.XNode;
+import org.apache.ibatis.parsing.XPathParser;
+import org.apache.ibatis.session.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Constructor;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the parsed mapper XML files in a memory-mapped file, so later startups skip tokenizing and validating them.
+ *
+ * The {@code Configuration} built by MyBatis holds statements, result maps and caches that can not be serialized,
+ * so the cache stores what every build starts from instead: the validated DOM of each mapper, in the compact form
+ * of {@link DocumentCodec}. Entries are keyed by the resource name and checked against the SHA-1 of its current
+ * content, a changed file is parsed again and replaces its entry on the next {@link #flush()}. Mapper classes
+ * configured by annotations are not parsed from XML and are not cached.
+ *
+ * The file is read once when the cache is created; a missing, truncated or foreign file leaves the cache empty and
+ * is rewritten on the first flush. Rewrites go through a temporary file moved over the old one, so a reader never
+ * sees a half written cache.
+ *
+ * @author ferenczil
+ */
+public final class MapperCache {
+    private static final Logger log = LoggerFactory.getLogger(MapperCache.class);
+
+    private static final int MAGIC = 0x4D424743;
+
+    private static final int VERSION = 1;
+
+    private static final int DIGEST_LENGTH = 20;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final Constructor<XMLMapperBuilder> MAPPER_BUILDER;
+
+    static {
+        try {
+            MAPPER_BUILDER = XMLMapperBuilder.class.getDeclaredConstructor(XPathParser.class, Configuration.class, String.class, Map.class);
+            MAPPER_BUILDER.setAccessible(true);
+        }
+        catch (NoSuchMethodException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final File file;
+
+    /**
+     * Entries by resource name, the loaded ones are views of the mapped file
+     */
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private boolean dirty;
+
+    /**
+     * @param file File keeping the parsed mappers, created on the first {@link #flush()} if it does not exist
+     */
+    public MapperCache(File file) {
+        if (file == null) {
+            throw new IllegalArgumentException("Parameter 'file' must be not null");
+        }
+        this.file = file;
+        if (file.isFile()) {
+            load();
+        }
+    }
+
+    /**
+     * Creates the builder of a mapper XML file, parsing it only if the cache has no entry for its current content.
+     *
+     * @param resource Name of the resource, the key of the entry
+     * @param input Content of the resource, closed when read
+     * @param configuration Configuration the mapper is added to
+     */
+    public XMLMapperBuilder mapperBuilder(String resource, InputStream input, Configuration configuration) throws IOException {
+        final XPathParser parser = parser(resource, input, configuration.getVariables());
+        try {
+            return MAPPER_BUILDER.newInstance(parser, configuration, resource, configuration.getSqlFragments());
+        }
+        catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Unable to create the builder of mapper " + resource, e);
+        }
+    }
+
+    /**
+     * Creates the parser of an XML file of MyBatis, validated by its DTD when it is parsed, reusing the cached
+     * document if the content did not change.
+     *
+     * @param resource Name of the resource, the key of the entry
+     * @param input Content of the resource, closed when read
+     * @param variables Values of the placeholders in the file
+     */
+    public XPathParser parser(String resource, InputStream input, Properties variables) throws IOException {
+        final byte[] content = readFully(input);
+        final byte[] digest = digest(content);
+        Document document = cached(resource, digest);
+        if (document != null) {
+            hits.incrementAndGet();
+        }
+        else {
+            misses.incrementAndGet();
+            final XPathParser parser = new XPathParser(new ByteArrayInputStream(content), true, variables, new XMLMapperEntityResolver());
+            final XNode root = parser.evalNode("/*");
+            document = root.getNode().getOwnerDocument();
+            store(resource, digest, DocumentCodec.encode(document));
+        }
+        return new XPathParser(document, false, variables, new XMLMapperEntityResolver());
+    }
+
+    /**
+     * Writes the file if any entry was added or replaced since it was read or last written.
+     */
+    public synchronized void flush() throws IOException {
+        if (!dirty) {
+            return;
+        }
+        final File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Unable to create the directory of " + file);
+        }
+        final File temp = File.createTempFile(file.getName(), ".tmp", parent);
+        try {
+            try (OutputStream out = new FileOutputStream(temp)) {
+                final DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+                data.writeInt(MAGIC);
+                data.writeInt(VERSION);
+                data.writeInt(entries.size());
+                for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                    final byte[] name = entry.getKey().getBytes(UTF_8);
+                    data.writeInt(name.length);
+                    data.write(name);
+                    data.write(entry.getValue().digest);
+                    final byte[] payload = new byte[entry.getValue().payload.remaining()];
+                    entry.getValue().payload.duplicate().get(payload);
+                    data.writeInt(payload.length);
+                    data.write(payload);
+                }
+                data.flush();
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            dirty = false;
+            log.debug("Wrote {} parsed mappers to {}", entries.size(), file);
+        }
+        finally {
+            Files.deleteIfExists(temp.toPath());
+        }
+    }
+
+    /**
+     * Flushes the cache, a failure only costs the parsing on the next startup so it is logged instead of thrown.
+     */
+    public void flushQuietly() {
+        try {
+            flush();
+        }
+        catch (IOException e) {
+            log.warn("Unable to write the mapper cache {}", file, e);
+        }
+    }
+
+    /**
+     * @return Number of files served from the cache
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return Number of files parsed because they were missing from the cache or changed
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return Number of cached files
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private synchronized Document cached(String resource, byte[] digest) {
+        final Entry entry = entries.get(resource);
+        if (entry == null || !Arrays.equals(entry.digest, digest)) {
+            return null;
+        }
+        try {
+            return DocumentCodec.decode(entry.payload.duplicate());
+        }
+        catch (RuntimeException e) {
+            log.warn("Ignoring the corrupted cache entry of {} in {}", resource, file, e);
+            entries.remove(resource);
+            return null;
+        }
+    }
+
+    private synchronized void store(String resource, byte[] digest, byte[] payload) {
+        entries.put(resource, new Entry(digest, ByteBuffer.wrap(payload)));
+        dirty = true;
+    }
+
+    private void load() {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            // The mapping stays valid once the channel is closed, and when a flush replaces the file
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                log.warn("Ignoring {}, it is not a mapper cache of this version", file);
+                return;
+            }
+            final int count = buffer.getInt();
+            for (int i = 0; i < count; i++) {
+                final byte[] name = new byte[length(buffer)];
+                buffer.get(name);
+                final byte[] digest = new byte[DIGEST_LENGTH];
+                buffer.get(digest);
+                final int length = length(buffer);
+                final ByteBuffer payload = buffer.slice();
+                payload.limit(length);
+                buffer.position(buffer.position() + length);
+                entries.put(new String(name, UTF_8), new Entry(digest, payload));
+            }
+            log.debug("Read {} parsed mappers from {}", count, file);
+        }
+        catch (IOException | BufferUnderflowException | BufferOverflowException | IllegalArgumentException e) {
+            log.warn("Ignoring the unreadable mapper cache {}", file, e);
+            entries.clear();
+        }
+    }
+
+    /**
+     * Reads the length of the next field, rejecting the ones a corrupted file would make exceed the remaining bytes
+     */
+    private static int length(ByteBuffer buffer) {
+        final int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        return length;
+    }
+
+    private static byte[] readFully(InputStream input) throws IOException {
+        try {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream(8192);
+            final byte[] buffer = new byte[8192];
+            for (int n = input.read(buffer); n != -1; n = input.read(buffer)) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        }
+        finally {
+            input.close();
+        }
+    }
+
+    private static byte[] digest(byte[] content) {
+        try {
+            return MessageDigest.getInstance("SHA-1").digest(content);
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is not available", e);
+        }
+    }
+
+    private static final class Entry {
+        final byte[] digest;
+
+        final ByteBuffer payload;
+
+        Entry(byte[] digest, ByteBuffer payload) {
+            this.digest = digest;
+            this.payload = payload;
+        }
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.configuration;
+
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.google.inject.ProvisionException;
+import com.google.inject.name.Named;
+import org.apache.ibatis.executor.ErrorContext;
+import org.apache.ibatis.session.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Builds the {@code Configuration} of every registered environment concurrently while the injector is created.
+ *
+ * Guice provisions singletons under a single lock, so the providers are instantiated on the injector thread and
+ * only the parsing of the mappers, which needs no injection, runs on the fork-join pool. Every environment
+ * registers itself through a {@link Registration} requested for injection, the {@link Starter} eager singleton
+ * then builds all of them before any other singleton asks for a configuration. Environments whose configuration
+ * was requested earlier are built on demand, as without the parallel startup, and skipped by it.
+ *
+ * Parsing records its progress in the {@code ErrorContext} of the thread, which is reset before and after each
+ * environment so a pooled thread never reports the state of a previous one.
+ *
+ * @author ferenczil
+ */
+public final class ParallelStartup {
+    private static final Logger log = LoggerFactory.getLogger(ParallelStartup.class);
+
+    private final int parallelism;
+
+    private final List<String> environmentIds = new ArrayList<>();
+
+    private final List<Provider<ConfigurationProvider>> providers = new ArrayList<>();
+
+    /**
+     * Providers of the environments built by the startup, in the order of {@link #builtIds}
+     */
+    private final List<ConfigurationProvider> built = new ArrayList<>();
+
+    private final List<String> builtIds = new ArrayList<>();
+
+    private boolean started;
+
+    private long elapsedMillis;
+
+    /**
+     * @param parallelism Maximum number of environments built at the same time
+     */
+    public ParallelStartup(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive, got " + parallelism);
+        }
+        this.parallelism = parallelism;
+    }
+
+    synchronized void register(String environmentId, Provider<ConfigurationProvider> provider) {
+        if (started) {
+            // Registered after the start, built on demand
+            return;
+        }
+        environmentIds.add(environmentId);
+        providers.add(provider);
+    }
+
+    /**
+     * Builds the registered configurations, unless they were built already. Called by the {@link Starter}, or by
+     * an eager singleton that needs the configurations first.
+     */
+    public synchronized void start() {
+        if (started) {
+            return;
+        }
+        started = true;
+        final long start = System.currentTimeMillis();
+
+        final List<ConfigurationProvider> instances = new ArrayList<>(providers.size());
+        final List<String> ids = new ArrayList<>(providers.size());
+        for (int i = 0; i < providers.size(); i++) {
+            final ConfigurationProvider provider = providers.get(i).get();
+            if (provider.isProvided()) {
+                log.debug("Configuration of environment {} was built on demand", environmentIds.get(i));
+                continue;
+            }
+            instances.add(provider);
+            ids.add(environmentIds.get(i));
+        }
+
+        final ForkJoinPool pool = new ForkJoinPool(Math.min(parallelism, Math.max(instances.size(), 1)));
+        try {
+            final List<Callable<Configuration>> tasks = new ArrayList<>(instances.size());
+            for (final ConfigurationProvider provider : instances) {
+                tasks.add(new Callable<Configuration>() {
+                    @Override
+                    public Configuration call() {
+                        ErrorContext.instance().reset();
+                        try {
+                            return provider.build();
+                        } finally {
+                            ErrorContext.instance().reset();
+                        }
+                    }
+                });
+            }
+            final List<Future<Configuration>> results = pool.invokeAll(tasks);
+
+            ProvisionException failure = null;
+            for (int i = 0; i < results.size(); i++) {
+                try {
+                    instances.get(i).setPrebuilt(results.get(i).get());
+                }
+                catch (ExecutionException e) {
+                    final ProvisionException environmentFailure = new ProvisionException(
+                            "Failed to build the configuration of environment " + ids.get(i), e.getCause());
+                    if (failure == null) {
+                        failure = environmentFailure;
+                    }
+                    else {
+                        failure.addSuppressed(environmentFailure);
+                    }
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new ProvisionException("Interrupted while building the configurations", e);
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            built.addAll(instances);
+            builtIds.addAll(ids);
+        } finally {
+            pool.shutdown();
+        }
+
+        elapsedMillis = System.currentTimeMillis() - start;
+        log.info("Built the configuration of {} environment(s) in {} ms", instances.size(), elapsedMillis);
+    }
+
+    /**
+     * @return Environments built in parallel, without the ones built on demand before the startup
+     */
+    public synchronized List<String> getEnvironmentIds() {
+        return new ArrayList<>(builtIds);
+    }
+
+    /**
+     * @return Environments built in parallel whose configuration was not provided yet
+     */
+    public synchronized List<String> getPendingEnvironmentIds() {
+        final List<String> pending = new ArrayList<>();
+        for (int i = 0; i < built.size(); i++) {
+            if (built.get(i).isPrebuilt()) {
+                pending.add(builtIds.get(i));
+            }
+        }
+        return pending;
+    }
+
+    /**
+     * @return Time spent building the configurations, 0 until they are built
+     */
+    public synchronized long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    /**
+     * Registers the configuration of an environment, requested for injection in its module
+     */
+    public static final class Registration {
+
+        private final ParallelStartup startup;
+
+        public Registration(ParallelStartup startup) {
+            this.startup = startup;
+        }
+
+        @Inject
+        void register(@Named("mybatis.environment.id") String environmentId, Provider<ConfigurationProvider> provider) {
+            startup.register(environmentId, provider);
+        }
+    }
+
+    /**
+     * Eager singleton building the registered configurations
+     */
+    public static final class Starter {
+
+        @Inject
+        Starter(ParallelStartup startup) {
+            startup.start();
+        }
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.datasource.pool;
+
+import org.mybatis.guice.datasource.delegate.DelegatingConnection;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Connection checked out through a {@link MeteredDataSource}, counted as active until the first close
+ *
+ * @author ferenczil
+ */
+final class MeteredConnection extends DelegatingConnection {
+
+    private final MeteredDataSource dataSource;
+
+    private final AtomicBoolean returned = new AtomicBoolean();
+
+    MeteredConnection(Connection delegate, MeteredDataSource dataSource) {
+        super(delegate);
+        this.dataSource = dataSource;
+    }
+
+    @Override
+    public void close() throws SQLException {
+        if (returned.compareAndSet(false, true)) {
+            dataSource.returned();
+        }
+        delegate.close();
+    }
+
+}
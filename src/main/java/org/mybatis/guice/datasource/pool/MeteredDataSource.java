@@ -0,0 +1,193 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.datasource.pool;
+
+import org.mybatis.guice.datasource.delegate.DelegatingDataSource;
+import org.mybatis.guice.metrics.LatencyHistogram;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@code DataSource} decorator measuring the checkouts of the pool it wraps, see {@link PoolMetrics}.
+ *
+ * Connections are handed out wrapped to count them as active until they are closed.
+ *
+ * @author ferenczil
+ */
+public class MeteredDataSource extends DelegatingDataSource implements PoolMetrics, PoolMetricsMXBean {
+
+    public static final String MBEAN_TYPE = "PoolMetrics";
+
+    private final PoolProbe probe;
+
+    private final LatencyHistogram checkoutWait = new LatencyHistogram();
+
+    private final AtomicInteger active = new AtomicInteger();
+
+    private final AtomicInteger pending = new AtomicInteger();
+
+    private final AtomicLong timeouts = new AtomicLong();
+
+    private final AtomicLong failures = new AtomicLong();
+
+    public MeteredDataSource(DataSource delegate) {
+        this(delegate, PoolProbes.forDataSource(delegate));
+    }
+
+    public MeteredDataSource(DataSource delegate, PoolProbe probe) {
+        super(delegate);
+        this.probe = probe;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        pending.incrementAndGet();
+        final long start = System.nanoTime();
+        try {
+            return checkedOut(delegate.getConnection(), start);
+        }
+        catch (SQLException e) {
+            return failed(e, start);
+        }
+        finally {
+            pending.decrementAndGet();
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        pending.incrementAndGet();
+        final long start = System.nanoTime();
+        try {
+            return checkedOut(delegate.getConnection(username, password), start);
+        }
+        catch (SQLException e) {
+            return failed(e, start);
+        }
+        finally {
+            pending.decrementAndGet();
+        }
+    }
+
+    private Connection checkedOut(Connection connection, long start) {
+        checkoutWait.record(System.nanoTime() - start);
+        active.incrementAndGet();
+        return new MeteredConnection(connection, this);
+    }
+
+    private Connection failed(SQLException e, long start) throws SQLException {
+        checkoutWait.record(System.nanoTime() - start);
+        if (probe.isTimeout(e)) {
+            timeouts.incrementAndGet();
+        }
+        else {
+            failures.incrementAndGet();
+        }
+        throw e;
+    }
+
+    void returned() {
+        active.decrementAndGet();
+    }
+
+    @Override
+    public String getPoolType() {
+        return probe.getPoolType();
+    }
+
+    @Override
+    public LatencyHistogram getCheckoutWait() {
+        return checkoutWait;
+    }
+
+    @Override
+    public long getCheckouts() {
+        return checkoutWait.getCount();
+    }
+
+    @Override
+    public long getMeanCheckoutNanos() {
+        return checkoutWait.getMeanNanos();
+    }
+
+    @Override
+    public long getP99CheckoutNanos() {
+        return checkoutWait.getPercentileNanos(99);
+    }
+
+    @Override
+    public long getMaxCheckoutNanos() {
+        return checkoutWait.getMaxNanos();
+    }
+
+    @Override
+    public int getActiveConnections() {
+        final int pooled = probe.getActiveConnections();
+        return pooled >= 0 ? pooled : active.get();
+    }
+
+    @Override
+    public int getIdleConnections() {
+        return probe.getIdleConnections();
+    }
+
+    @Override
+    public int getOpenConnections() {
+        return probe.getOpenConnections();
+    }
+
+    @Override
+    public int getPendingRequests() {
+        return pending.get();
+    }
+
+    @Override
+    public long getCreatedConnections() {
+        return probe.getCreatedConnections();
+    }
+
+    @Override
+    public long getValidationFailures() {
+        return probe.getValidationFailures();
+    }
+
+    @Override
+    public long getDestroyedConnections() {
+        return probe.getDestroyedConnections();
+    }
+
+    @Override
+    public long getTimeouts() {
+        return timeouts.get();
+    }
+
+    @Override
+    public long getCheckoutFailures() {
+        return failures.get();
+    }
+
+    @Override
+    public void reset() {
+        checkoutWait.reset();
+        timeouts.set(0);
+        failures.set(0);
+    }
+
+}
@@ -0,0 +1,81 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.datasource.pool;
+
+import org.mybatis.guice.metrics.LatencyHistogram;
+
+/**
+ * Statistics of a connection pool, comparable between pool implementations.
+ *
+ * Checkouts, their wait time, the pending count and the failures are measured in front of the pool
+ * and mean the same for every pool. The active count is read from the pool where it keeps one and counted in
+ * front of it otherwise. The other values are read from the pool and are {@code -1} if the pool does not
+ * report them; none of the bundled pools counts the connections it created or destroyed over time.
+ *
+ * @author ferenczil
+ */
+public interface PoolMetrics {
+
+    /**
+     * @return Implementation of the pool, e.g. {@code BasicDataSource}
+     */
+    String getPoolType();
+
+    /**
+     * @return Wait time of the connection checkouts, including the failed ones
+     */
+    LatencyHistogram getCheckoutWait();
+
+    long getCheckouts();
+
+    /**
+     * @return Connections checked out and not yet returned to the pool
+     */
+    int getActiveConnections();
+
+    int getIdleConnections();
+
+    /**
+     * @return Connections the pool holds open, checked out or idle
+     */
+    int getOpenConnections();
+
+    /**
+     * @return Threads waiting for a connection
+     */
+    int getPendingRequests();
+
+    long getCreatedConnections();
+
+    /**
+     * @return Connections which failed the validation of the pool
+     */
+    long getValidationFailures();
+
+    long getDestroyedConnections();
+
+    /**
+     * @return Checkouts which failed because no connection became free in time, as told apart by the
+     * {@link PoolProbe#isTimeout(java.sql.SQLException) probe} of the pool
+     */
+    long getTimeouts();
+
+    /**
+     * @return Checkouts which failed for any other reason, e.g. the database refused a new connection
+     */
+    long getCheckoutFailures();
+
+}
@@ -0,0 +1,58 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.datasource.pool;
+
+/**
+ * JMX view of the {@link PoolMetrics} of an environment
+ *
+ * @author ferenczil
+ */
+public interface PoolMetricsMXBean {
+
+    String getPoolType();
+
+    long getCheckouts();
+
+    long getMeanCheckoutNanos();
+
+    long getP99CheckoutNanos();
+
+    long getMaxCheckoutNanos();
+
+    int getActiveConnections();
+
+    int getIdleConnections();
+
+    int getOpenConnections();
+
+    int getPendingRequests();
+
+    long getCreatedConnections();
+
+    long getValidationFailures();
+
+    long getDestroyedConnections();
+
+    long getTimeouts();
+
+    long getCheckoutFailures();
+
+    /**
+     * Resets the checkout wait time, the timeouts and the failures, values read from the pool are not affected
+     */
+    void reset();
+
+}
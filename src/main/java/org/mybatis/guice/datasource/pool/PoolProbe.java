@@ -0,0 +1,79 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.datasource.pool;
+
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+
+/**
+ * Reads the values of {@link PoolMetrics} kept by a pool implementation.
+ * Every value is {@code -1} unless the probe of the pool reports it.
+ *
+ * @author ferenczil
+ */
+public abstract class PoolProbe {
+
+    /**
+     * @return Implementation of the pool
+     */
+    public abstract String getPoolType();
+
+    /**
+     * @return Connections the pool counts as checked out, including the ones not taken through the metrics
+     */
+    public int getActiveConnections() {
+        return -1;
+    }
+
+    public int getIdleConnections() {
+        return -1;
+    }
+
+    /**
+     * @return Connections the pool holds open, checked out or idle
+     */
+    public int getOpenConnections() {
+        return -1;
+    }
+
+    public long getCreatedConnections() {
+        return -1;
+    }
+
+    public long getValidationFailures() {
+        return -1;
+    }
+
+    public long getDestroyedConnections() {
+        return -1;
+    }
+
+    /**
+     * @param e Failure of a checkout
+     * @return Whether the checkout failed because no connection became free in time
+     */
+    public boolean isTimeout(SQLException e) {
+        return e instanceof SQLTimeoutException;
+    }
+
+    /**
+     * @return Connections the pool is configured to keep open, used by the warmup rather than the metrics
+     */
+    public int getMinimumConnections() {
+        return -1;
+    }
+
+}
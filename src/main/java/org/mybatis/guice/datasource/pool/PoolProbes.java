@@ -0,0 +1,349 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.datasource.pool;
+
+import org.apache.ibatis.datasource.pooled.PoolState;
+import org.apache.ibatis.datasource.pooled.PooledDataSource;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+
+/**
+ * Probes of the pools created by the bundled {@code DataSource} providers.
+ *
+ * The pool libraries are optional dependencies, their probes are only loaded once the data source was found
+ * to be an instance of the pool class.
+ *
+ * @author ferenczil
+ */
+public final class PoolProbes {
+
+    private PoolProbes() {
+    }
+
+    /**
+     * @param dataSource Data source of an environment
+     * @return Probe of the pool, a probe reporting no values if the pool is not known
+     */
+    public static PoolProbe forDataSource(DataSource dataSource) {
+        if (dataSource instanceof PooledDataSource) {
+            return new MyBatisProbe((PooledDataSource) dataSource);
+        }
+        if (isInstance(dataSource, "org.apache.commons.dbcp.BasicDataSource")) {
+            return new BasicProbe(dataSource);
+        }
+        if (isInstance(dataSource, "org.apache.commons.dbcp.datasources.SharedPoolDataSource")) {
+            return new SharedPoolProbe(dataSource);
+        }
+        if (isInstance(dataSource, "org.apache.commons.dbcp.datasources.PerUserPoolDataSource")) {
+            return new PerUserPoolProbe(dataSource);
+        }
+        if (isInstance(dataSource, "com.mchange.v2.c3p0.PooledDataSource")) {
+            return new C3p0Probe(dataSource);
+        }
+        if (isInstance(dataSource, "com.jolbox.bonecp.BoneCPDataSource")) {
+            return new BoneCPProbe(dataSource);
+        }
+        return unknown(dataSource);
+    }
+
+    /**
+     * @return Probe reporting the type of the data source only, for pools without a probe
+     */
+    public static PoolProbe unknown(DataSource dataSource) {
+        final String type = dataSource.getClass().getSimpleName();
+        return new PoolProbe() {
+            @Override
+            public String getPoolType() {
+                return type;
+            }
+        };
+    }
+
+    private static boolean isInstance(DataSource dataSource, String className) {
+        try {
+            return Class.forName(className, false, dataSource.getClass().getClassLoader()).isInstance(dataSource);
+        }
+        catch (ClassNotFoundException e) {
+            return false;
+        }
+        catch (LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return Whether the failure or one of its causes is an instance of the class, matched by name as the pool
+     * libraries are optional
+     */
+    private static boolean causedBy(Throwable e, String className) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause.getClass().getName().equals(className)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class MyBatisProbe extends PoolProbe {
+        private final PooledDataSource pool;
+
+        MyBatisProbe(PooledDataSource pool) {
+            this.pool = pool;
+        }
+
+        @Override
+        public String getPoolType() {
+            return "PooledDataSource";
+        }
+
+        @Override
+        public int getIdleConnections() {
+            return pool.getPoolState().getIdleConnectionCount();
+        }
+
+        @Override
+        public long getValidationFailures() {
+            return pool.getPoolState().getBadConnectionCount();
+        }
+
+        @Override
+        public int getActiveConnections() {
+            return pool.getPoolState().getActiveConnectionCount();
+        }
+
+        @Override
+        public int getOpenConnections() {
+            final PoolState state = pool.getPoolState();
+            return state.getActiveConnectionCount() + state.getIdleConnectionCount();
+        }
+    }
+
+    private static final class BasicProbe extends PoolProbe {
+        private final org.apache.commons.dbcp.BasicDataSource pool;
+
+        BasicProbe(DataSource pool) {
+            this.pool = (org.apache.commons.dbcp.BasicDataSource) pool;
+        }
+
+        @Override
+        public String getPoolType() {
+            return "BasicDataSource";
+        }
+
+        @Override
+        public int getIdleConnections() {
+            return pool.getNumIdle();
+        }
+
+        @Override
+        public int getMinimumConnections() {
+            return Math.max(pool.getMinIdle(), pool.getInitialSize());
+        }
+
+        /**
+         * The pool reports an exhausted wait as a {@code NoSuchElementException}
+         */
+        @Override
+        public boolean isTimeout(SQLException e) {
+            return super.isTimeout(e) || causedBy(e, "java.util.NoSuchElementException");
+        }
+
+        @Override
+        public int getActiveConnections() {
+            return pool.getNumActive();
+        }
+
+        @Override
+        public int getOpenConnections() {
+            return pool.getNumActive() + pool.getNumIdle();
+        }
+    }
+
+    private static final class SharedPoolProbe extends PoolProbe {
+        private final org.apache.commons.dbcp.datasources.SharedPoolDataSource pool;
+
+        SharedPoolProbe(DataSource pool) {
+            this.pool = (org.apache.commons.dbcp.datasources.SharedPoolDataSource) pool;
+        }
+
+        @Override
+        public String getPoolType() {
+            return "SharedPoolDataSource";
+        }
+
+        @Override
+        public int getIdleConnections() {
+            return pool.getNumIdle();
+        }
+
+        /**
+         * The pool reports an exhausted wait as a {@code NoSuchElementException}
+         */
+        @Override
+        public boolean isTimeout(SQLException e) {
+            return super.isTimeout(e) || causedBy(e, "java.util.NoSuchElementException");
+        }
+
+        @Override
+        public int getActiveConnections() {
+            return pool.getNumActive();
+        }
+
+        @Override
+        public int getOpenConnections() {
+            return pool.getNumActive() + pool.getNumIdle();
+        }
+    }
+
+    private static final class PerUserPoolProbe extends PoolProbe {
+        private final org.apache.commons.dbcp.datasources.PerUserPoolDataSource pool;
+
+        PerUserPoolProbe(DataSource pool) {
+            this.pool = (org.apache.commons.dbcp.datasources.PerUserPoolDataSource) pool;
+        }
+
+        @Override
+        public String getPoolType() {
+            return "PerUserPoolDataSource";
+        }
+
+        /**
+         * @return Idle connections of the default user
+         */
+        @Override
+        public int getIdleConnections() {
+            return pool.getNumIdle();
+        }
+
+        /**
+         * The pool reports an exhausted wait as a {@code NoSuchElementException}
+         */
+        @Override
+        public boolean isTimeout(SQLException e) {
+            return super.isTimeout(e) || causedBy(e, "java.util.NoSuchElementException");
+        }
+
+        /**
+         * @return Checked out connections of the default user
+         */
+        @Override
+        public int getActiveConnections() {
+            return pool.getNumActive();
+        }
+
+        /**
+         * @return Open connections of the default user
+         */
+        @Override
+        public int getOpenConnections() {
+            return pool.getNumActive() + pool.getNumIdle();
+        }
+    }
+
+    private static final class C3p0Probe extends PoolProbe {
+        private final com.mchange.v2.c3p0.PooledDataSource pool;
+
+        C3p0Probe(DataSource pool) {
+            this.pool = (com.mchange.v2.c3p0.PooledDataSource) pool;
+        }
+
+        @Override
+        public String getPoolType() {
+            return pool.getClass().getSimpleName();
+        }
+
+        @Override
+        public int getIdleConnections() {
+            try {
+                return pool.getNumIdleConnectionsDefaultUser();
+            }
+            catch (SQLException e) {
+                return -1;
+            }
+        }
+
+        @Override
+        public long getValidationFailures() {
+            try {
+                return pool.getNumFailedIdleTestsDefaultUser();
+            }
+            catch (SQLException e) {
+                return -1;
+            }
+        }
+
+        @Override
+        public boolean isTimeout(SQLException e) {
+            return super.isTimeout(e) || causedBy(e, "com.mchange.v2.resourcepool.TimeoutException");
+        }
+
+        @Override
+        public int getActiveConnections() {
+            try {
+                return pool.getNumBusyConnectionsDefaultUser();
+            }
+            catch (SQLException e) {
+                return -1;
+            }
+        }
+
+        @Override
+        public int getOpenConnections() {
+            try {
+                return pool.getNumConnectionsDefaultUser();
+            }
+            catch (SQLException e) {
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * The data source gives access to the leased connections of its pool only
+     */
+    private static final class BoneCPProbe extends PoolProbe {
+        private final com.jolbox.bonecp.BoneCPDataSource pool;
+
+        BoneCPProbe(DataSource pool) {
+            this.pool = (com.jolbox.bonecp.BoneCPDataSource) pool;
+        }
+
+        @Override
+        public String getPoolType() {
+            return "BoneCPDataSource";
+        }
+
+        @Override
+        public int getActiveConnections() {
+            try {
+                return pool.getTotalLeased();
+            }
+            catch (NullPointerException e) {
+                // The pool is only started by the first checkout
+                return -1;
+            }
+        }
+
+        /**
+         * The pool reports an exhausted wait by its message only
+         */
+        @Override
+        public boolean isTimeout(SQLException e) {
+            return super.isTimeout(e) || (e.getMessage() != null && e.getMessage().startsWith("Timed out waiting"));
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.datasource.replica;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bundled {@link LoadBalancingPolicy} implementations.
+ *
+ * Every call returns a new instance, do not share an instance between environments.
+ *
+ * @author ferenczil
+ */
+public final class LoadBalancingPolicies {
+
+    private LoadBalancingPolicies() {
+        // static factory
+    }
+
+    /**
+     * @return Policy using the replicas in turn
+     */
+    public static LoadBalancingPolicy roundRobin() {
+        return new RoundRobin();
+    }
+
+    /**
+     * @return Policy choosing the replica with the fewest connections in use
+     */
+    public static LoadBalancingPolicy leastOutstandingRequests() {
+        return new LeastOutstandingRequests();
+    }
+
+    /**
+     * @return Policy choosing the replica with the lowest average latency, replicas without samples are tried first
+     */
+    public static LoadBalancingPolicy lowestLatency() {
+        return new LowestLatency();
+    }
+
+    private static int next(AtomicInteger counter, int length) {
+        return (counter.getAndIncrement() & Integer.MAX_VALUE) % length;
+    }
+
+    private static final class RoundRobin implements LoadBalancingPolicy {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Replica select(Replica[] replicas) {
+            return replicas[next(counter, replicas.length)];
+        }
+    }
+
+    private static final class LeastOutstandingRequests implements LoadBalancingPolicy {
+        // Rotating start index, so ties are spread over the replicas
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Replica select(Replica[] replicas) {
+            final int start = next(counter, replicas.length);
+            Replica best = replicas[start];
+            for (int i = 1; i < replicas.length && best.getOutstandingRequests() > 0; i++) {
+                Replica candidate = replicas[(start + i) % replicas.length];
+                if (candidate.getOutstandingRequests() < best.getOutstandingRequests()) {
+                    best = candidate;
+                }
+            }
+            return best;
+        }
+    }
+
+    private static final class LowestLatency implements LoadBalancingPolicy {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Replica select(Replica[] replicas) {
+            final int start = next(counter, replicas.length);
+            Replica best = replicas[start];
+            for (int i = 1; i < replicas.length && best.getLatencyNanos() > 0; i++) {
+                Replica candidate = replicas[(start + i) % replicas.length];
+                if (candidate.getLatencyNanos() < best.getLatencyNanos()) {
+                    best = candidate;
+                }
+            }
+            return best;
+        }
+    }
+}
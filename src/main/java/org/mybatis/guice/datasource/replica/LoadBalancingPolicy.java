@@ -0,0 +1,34 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.datasource.replica;
+
+/**
+ * Chooses the replica serving the next read-only session.
+ *
+ * A policy instance belongs to a single environment and is called concurrently, see {@link LoadBalancingPolicies}
+ * for the bundled implementations.
+ *
+ * @author ferenczil
+ */
+public interface LoadBalancingPolicy {
+
+    /**
+     * @param replicas Replicas of the environment, never empty
+     * @return The chosen replica
+     */
+    Replica select(Replica[] replicas);
+
+}
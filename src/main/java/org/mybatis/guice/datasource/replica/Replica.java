@@ -0,0 +1,138 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.datasource.replica;
+
+import javax.sql.DataSource;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A read replica of an environment together with the load figures the {@link LoadBalancingPolicy} decides on.
+ *
+ * The latency is an exponentially weighted moving average of the time the statements run on the replica took
+ * to execute, without the time the sessions held their connections or spent fetching rows.
+ *
+ * When the {@link ReplicaSet} has a {@link ReplicaLagProbe} the replica also tracks its replication lag and the
+ * point in time up to which it has applied the writes of the primary.
+ *
+ * @author ferenczil
+ */
+public final class Replica {
+
+    private final int index;
+
+    private final DataSource dataSource;
+
+    private final AtomicInteger outstanding = new AtomicInteger();
+
+    private final AtomicLong requests = new AtomicLong();
+
+    private volatile long latencyNanos;
+
+    /**
+     * Writes committed on the primary before this time are visible on the replica
+     */
+    private volatile long caughtUpMillis;
+
+    private volatile long lagMillis = -1;
+
+    Replica(int index, DataSource dataSource, boolean probed) {
+        this.index = index;
+        this.dataSource = dataSource;
+        this.caughtUpMillis = probed ? 0 : Long.MAX_VALUE;
+    }
+
+    void acquired() {
+        outstanding.incrementAndGet();
+        requests.incrementAndGet();
+    }
+
+    void released() {
+        outstanding.decrementAndGet();
+    }
+
+    void executed(long nanos) {
+        // Racing updates may lose a sample, which is fine for an average
+        long current = latencyNanos;
+        latencyNanos = current == 0 ? nanos : current + ((nanos - current) >> 3);
+    }
+
+    void lagMeasured(long probeMillis, long lag) {
+        lagMillis = lag;
+        caughtUpMillis = probeMillis - lag;
+    }
+
+    void lagUnknown() {
+        lagMillis = -1;
+        caughtUpMillis = 0;
+    }
+
+    /**
+     * @return Position of the replica in the order it was added
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    public DataSource getDataSource() {
+        return dataSource;
+    }
+
+    /**
+     * @return Number of connections currently in use
+     */
+    public int getOutstandingRequests() {
+        return outstanding.get();
+    }
+
+    /**
+     * @return Total number of connections handed out
+     */
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    /**
+     * @return Average execution time of a statement, 0 if the replica has run none yet
+     */
+    public long getLatencyNanos() {
+        return latencyNanos;
+    }
+
+    /**
+     * @return Last measured replication lag, -1 if unknown or not measured
+     */
+    public long getLagMillis() {
+        return lagMillis;
+    }
+
+    /**
+     * @return Commit time up to which the replica has applied the writes of the primary, {@link Long#MAX_VALUE}
+     *         if the lag is not measured, 0 before the first measurement or if the last one failed
+     */
+    public long getCaughtUpMillis() {
+        return caughtUpMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "Replica[index: " + index
+                + ", outstanding: " + getOutstandingRequests()
+                + ", requests: " + getRequestCount()
+                + ", latencyNanos: " + getLatencyNanos()
+                + ", lagMillis: " + getLagMillis() + "]";
+    }
+}
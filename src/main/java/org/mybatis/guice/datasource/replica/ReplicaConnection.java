@@ -0,0 +1,176 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.datasource.replica;
+
+import org.mybatis.guice.datasource.delegate.DelegatingConnection;
+
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Connection of a replica. Its statements report their execution time to the replica, and closing it reports
+ * the release of the connection.
+ *
+ * The read-only flag, auto-commit mode and isolation level set by the session are restored before the connection
+ * returns to the pool of the replica, so the next user of the pooled connection gets the settings of the pool.
+ *
+ * @author ferenczil
+ */
+final class ReplicaConnection extends DelegatingConnection {
+
+    private final Replica replica;
+
+    private boolean released;
+
+    private Boolean previousReadOnly;
+
+    private Boolean previousAutoCommit;
+
+    private Integer previousIsolation;
+
+    ReplicaConnection(Connection delegate, Replica replica) {
+        super(delegate);
+        this.replica = replica;
+    }
+
+    @Override
+    public void setReadOnly(boolean readOnly) throws SQLException {
+        if (previousReadOnly == null) {
+            previousReadOnly = delegate.isReadOnly();
+        }
+        delegate.setReadOnly(readOnly);
+    }
+
+    @Override
+    public void setAutoCommit(boolean autoCommit) throws SQLException {
+        if (previousAutoCommit == null) {
+            previousAutoCommit = delegate.getAutoCommit();
+        }
+        delegate.setAutoCommit(autoCommit);
+    }
+
+    @Override
+    public void setTransactionIsolation(int level) throws SQLException {
+        if (previousIsolation == null) {
+            previousIsolation = delegate.getTransactionIsolation();
+        }
+        delegate.setTransactionIsolation(level);
+    }
+
+    @Override
+    public Statement createStatement() throws SQLException {
+        return wrap(delegate.createStatement());
+    }
+
+    @Override
+    public Statement createStatement(int resultSetType, int resultSetConcurrency) throws SQLException {
+        return wrap(delegate.createStatement(resultSetType, resultSetConcurrency));
+    }
+
+    @Override
+    public Statement createStatement(int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
+        return wrap(delegate.createStatement(resultSetType, resultSetConcurrency, resultSetHoldability));
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql) throws SQLException {
+        return wrap(delegate.prepareStatement(sql));
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
+        return wrap(delegate.prepareStatement(sql, resultSetType, resultSetConcurrency));
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
+        return wrap(delegate.prepareStatement(sql, resultSetType, resultSetConcurrency, resultSetHoldability));
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) throws SQLException {
+        return wrap(delegate.prepareStatement(sql, autoGeneratedKeys));
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, int[] columnIndexes) throws SQLException {
+        return wrap(delegate.prepareStatement(sql, columnIndexes));
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, String[] columnNames) throws SQLException {
+        return wrap(delegate.prepareStatement(sql, columnNames));
+    }
+
+    @Override
+    public CallableStatement prepareCall(String sql) throws SQLException {
+        return wrap(delegate.prepareCall(sql));
+    }
+
+    @Override
+    public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
+        return wrap(delegate.prepareCall(sql, resultSetType, resultSetConcurrency));
+    }
+
+    @Override
+    public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
+        return wrap(delegate.prepareCall(sql, resultSetType, resultSetConcurrency, resultSetHoldability));
+    }
+
+    private Statement wrap(Statement statement) {
+        return ReplicaStatement.newStatement(Statement.class, statement, this, replica);
+    }
+
+    private PreparedStatement wrap(PreparedStatement statement) {
+        return ReplicaStatement.newStatement(PreparedStatement.class, statement, this, replica);
+    }
+
+    private CallableStatement wrap(CallableStatement statement) {
+        return ReplicaStatement.newStatement(CallableStatement.class, statement, this, replica);
+    }
+
+    @Override
+    public void close() throws SQLException {
+        if (released) {
+            return;
+        }
+        released = true;
+        try {
+            restoreSettings();
+        } finally {
+            try {
+                delegate.close();
+            } finally {
+                replica.released();
+            }
+        }
+    }
+
+    private void restoreSettings() throws SQLException {
+        if (previousAutoCommit != null && delegate.getAutoCommit() != previousAutoCommit) {
+            delegate.setAutoCommit(previousAutoCommit);
+        }
+        if (previousReadOnly != null && delegate.isReadOnly() != previousReadOnly) {
+            delegate.setReadOnly(previousReadOnly);
+        }
+        if (previousIsolation != null && delegate.getTransactionIsolation() != previousIsolation) {
+            delegate.setTransactionIsolation(previousIsolation);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.datasource.replica;
+
+import java.sql.SQLException;
+
+/**
+ * Measures how far a replica is behind its primary.
+ *
+ * The {@link ReplicaSet} calls the probe periodically on a background thread for every replica and derives the point in time up to which
+ * the replica has applied the writes of the primary, see {@link Replica#getCaughtUpMillis()}.
+ * See {@link ReplicaLagProbes} for the bundled implementations.
+ *
+ * @author ferenczil
+ */
+public interface ReplicaLagProbe {
+
+    /**
+     * @param replica Replica to measure
+     * @return Replication lag in milliseconds
+     * @throws SQLException if the lag can not be determined, the replica is then treated as lagging
+     */
+    long getLagMillis(Replica replica) throws SQLException;
+
+}
@@ -0,0 +1,96 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.datasource.replica;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Factory of the bundled {@link ReplicaLagProbe} implementations
+ *
+ * @author ferenczil
+ */
+public final class ReplicaLagProbes {
+
+    private ReplicaLagProbes() {
+        // static factory
+    }
+
+    /**
+     * Assumes every replica lags exactly the given time behind the primary. A thread reads its own writes
+     * from the replicas only after this time has passed since its last commit.
+     *
+     * @param lagMillis Upper bound of the replication lag
+     * @return Probe returning the fixed lag
+     */
+    public static ReplicaLagProbe fixed(long lagMillis) {
+        if (lagMillis < 0) {
+            throw new IllegalArgumentException("Replication lag must not be negative, got " + lagMillis);
+        }
+        return new Fixed(lagMillis);
+    }
+
+    /**
+     * Runs a query on the replica returning its lag in milliseconds as the first column of the first row,
+     * e.g. derived from a heartbeat table written on the primary. An empty result or {@code NULL} means the lag
+     * is unknown and the replica is treated as lagging.
+     *
+     * @param sql Query returning the lag in milliseconds
+     * @return Probe running the query
+     */
+    public static ReplicaLagProbe query(String sql) {
+        return new Query(sql);
+    }
+
+    private static final class Fixed implements ReplicaLagProbe {
+        private final long lagMillis;
+
+        Fixed(long lagMillis) {
+            this.lagMillis = lagMillis;
+        }
+
+        @Override
+        public long getLagMillis(Replica replica) {
+            return lagMillis;
+        }
+    }
+
+    private static final class Query implements ReplicaLagProbe {
+        private final String sql;
+
+        Query(String sql) {
+            this.sql = sql;
+        }
+
+        @Override
+        public long getLagMillis(Replica replica) throws SQLException {
+            // The probe connection is taken directly from the pool, it does not count as a request of the replica
+            try (Connection connection = replica.getDataSource().getConnection();
+                 Statement statement = connection.createStatement();
+                 ResultSet rs = statement.executeQuery(sql)) {
+                if (rs.next()) {
+                    long lag = rs.getLong(1);
+                    if (!rs.wasNull()) {
+                        return lag;
+                    }
+                }
+                throw new SQLException("Replication lag query returned no value: " + sql);
+            }
+        }
+    }
+}
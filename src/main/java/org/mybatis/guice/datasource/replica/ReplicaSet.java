@@ -0,0 +1,215 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.datasource.replica;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The read replicas of an environment.
+ *
+ * Hands out connections of the replica chosen by the {@link LoadBalancingPolicy}. The returned connections
+ * report back to their replica when closed, which keeps the outstanding request count and latency figures
+ * up to date.
+ *
+ * With a {@link ReplicaLagProbe} the lag of the replicas is measured once per probe interval by a background
+ * thread, requesting threads only read the last figures. A replica counts as lagging until its first measurement,
+ * and a probe that hangs leaves its replica behind the later commits instead of blocking the reads. Callers needing
+ * to see writes committed at a given time use {@link #getConnection(long)}, which only considers the replicas that
+ * have caught up with that time.
+ *
+ * @author ferenczil
+ */
+public class ReplicaSet {
+    private static final Logger log = LoggerFactory.getLogger(ReplicaSet.class);
+
+    private static final AtomicInteger probeThreads = new AtomicInteger();
+
+    private final Replica[] replicas;
+
+    private final LoadBalancingPolicy policy;
+
+    /**
+     * Probe measuring the replication lag, {@code null} if the replicas are considered up to date
+     */
+    private final ReplicaLagProbe lagProbe;
+
+    private final long probeIntervalMillis;
+
+    /**
+     * Runs the lag probe once per interval, {@code null} without a probe
+     */
+    private final ScheduledExecutorService prober;
+
+    private final AtomicLong fallbacks = new AtomicLong();
+
+    public ReplicaSet(List<DataSource> dataSources, LoadBalancingPolicy policy) {
+        this(dataSources, policy, null, 0);
+    }
+
+    public ReplicaSet(List<DataSource> dataSources, LoadBalancingPolicy policy, ReplicaLagProbe lagProbe, long probeIntervalMillis) {
+        if (dataSources.isEmpty()) {
+            throw new IllegalArgumentException("At least one replica DataSource is required");
+        }
+        if (lagProbe != null && probeIntervalMillis <= 0) {
+            throw new IllegalArgumentException("Replication lag probe interval must be positive, got " + probeIntervalMillis);
+        }
+        this.replicas = new Replica[dataSources.size()];
+        for (int i = 0; i < replicas.length; i++) {
+            replicas[i] = new Replica(i, dataSources.get(i), lagProbe != null);
+        }
+        this.policy = policy;
+        this.lagProbe = lagProbe;
+        this.probeIntervalMillis = probeIntervalMillis;
+        if (lagProbe != null) {
+            this.prober = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "mybatis-replica-probe-" + probeThreads.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+            this.prober.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    probe();
+                }
+            }, 0, probeIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+        else {
+            this.prober = null;
+        }
+    }
+
+    /**
+     * Obtains a connection from the next replica
+     *
+     * @return Connection, closing it releases it to the pool of its replica
+     * @throws SQLException if the chosen replica fails to provide a connection
+     */
+    public Connection getConnection() throws SQLException {
+        return connect(policy.select(replicas));
+    }
+
+    /**
+     * Obtains a connection from the next replica which has applied the writes committed up to the given time
+     *
+     * @param committedMillis Commit time the reads must observe, 0 if any replica will do
+     * @return Connection, or {@code null} if no replica has caught up and the read has to go to the primary
+     * @throws SQLException if the chosen replica fails to provide a connection
+     */
+    public Connection getConnection(long committedMillis) throws SQLException {
+        if (committedMillis <= 0) {
+            return getConnection();
+        }
+
+        Replica[] candidates = replicas;
+        int count = 0;
+        for (Replica replica : replicas) {
+            if (replica.getCaughtUpMillis() >= committedMillis) {
+                count++;
+            }
+        }
+        if (count == 0) {
+            fallbacks.incrementAndGet();
+            return null;
+        }
+        if (count < replicas.length) {
+            candidates = new Replica[count];
+            count = 0;
+            for (Replica replica : replicas) {
+                if (replica.getCaughtUpMillis() >= committedMillis) {
+                    candidates[count++] = replica;
+                }
+            }
+        }
+        return connect(policy.select(candidates));
+    }
+
+    private Connection connect(Replica replica) throws SQLException {
+        final Connection connection = replica.getDataSource().getConnection();
+        replica.acquired();
+        return new ReplicaConnection(connection, replica);
+    }
+
+    /**
+     * Measures the lag of every replica now, in addition to the scheduled measurements
+     */
+    public void probe() {
+        if (lagProbe == null) {
+            return;
+        }
+        for (Replica replica : replicas) {
+            final long probeMillis = System.currentTimeMillis();
+            try {
+                replica.lagMeasured(probeMillis, lagProbe.getLagMillis(replica));
+            }
+            catch (Exception e) {
+                replica.lagUnknown();
+                log.warn("Failed to measure replication lag of {}", replica, e);
+            }
+        }
+    }
+
+    public List<Replica> getReplicas() {
+        return Collections.unmodifiableList(Arrays.asList(replicas));
+    }
+
+    public LoadBalancingPolicy getPolicy() {
+        return policy;
+    }
+
+    public ReplicaLagProbe getLagProbe() {
+        return lagProbe;
+    }
+
+    /**
+     * @return Interval between two measurements of the lag, 0 without a probe
+     */
+    public long getProbeIntervalMillis() {
+        return probeIntervalMillis;
+    }
+
+    /**
+     * Stops the scheduled lag measurements, the replicas keep their last figures
+     */
+    public void shutdown() {
+        if (prober != null) {
+            prober.shutdownNow();
+        }
+    }
+
+    /**
+     * @return Number of reads sent to the primary because no replica had caught up
+     */
+    public long getFallbackCount() {
+        return fallbacks.get();
+    }
+}
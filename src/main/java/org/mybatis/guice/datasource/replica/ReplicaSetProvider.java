@@ -0,0 +1,61 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.datasource.replica;
+
+import com.google.inject.Provider;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds the {@link ReplicaSet} of an environment from the replica {@code DataSource} providers.
+ *
+ * The replica providers are injected by the module binding this provider.
+ *
+ * @author ferenczil
+ */
+public final class ReplicaSetProvider implements Provider<ReplicaSet> {
+
+    private final List<Provider<DataSource>> dataSourceProviders;
+
+    private final LoadBalancingPolicy policy;
+
+    private final ReplicaLagProbe lagProbe;
+
+    private final long probeIntervalMillis;
+
+    public ReplicaSetProvider(List<Provider<DataSource>> dataSourceProviders, LoadBalancingPolicy policy) {
+        this(dataSourceProviders, policy, null, 0);
+    }
+
+    public ReplicaSetProvider(List<Provider<DataSource>> dataSourceProviders, LoadBalancingPolicy policy,
+                              ReplicaLagProbe lagProbe, long probeIntervalMillis) {
+        this.dataSourceProviders = dataSourceProviders;
+        this.policy = policy;
+        this.lagProbe = lagProbe;
+        this.probeIntervalMillis = probeIntervalMillis;
+    }
+
+    @Override
+    public ReplicaSet get() {
+        List<DataSource> dataSources = new ArrayList<>(dataSourceProviders.size());
+        for (Provider<DataSource> provider : dataSourceProviders) {
+            dataSources.add(provider.get());
+        }
+        return new ReplicaSet(dataSources, policy, lagProbe, probeIntervalMillis);
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.datasource.replica;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Statement;
+
+/**
+ * Statement of a replica connection, reports the time its {@code execute} calls took to the replica.
+ * Fetching the rows of a result is not included.
+ *
+ * @author ferenczil
+ */
+final class ReplicaStatement implements InvocationHandler {
+
+    private final Statement statement;
+
+    private final Connection connection;
+
+    private final Replica replica;
+
+    private ReplicaStatement(Statement statement, Connection connection, Replica replica) {
+        this.statement = statement;
+        this.connection = connection;
+        this.replica = replica;
+    }
+
+    static <S extends Statement> S newStatement(Class<S> type, S statement, Connection connection, Replica replica) {
+        return type.cast(Proxy.newProxyInstance(ReplicaStatement.class.getClassLoader(), new Class<?>[]{ type },
+                new ReplicaStatement(statement, connection, replica)));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        final String name = method.getName();
+        if ("getConnection".equals(name)) {
+            return connection;
+        }
+        if ("hashCode".equals(name)) {
+            return System.identityHashCode(proxy);
+        }
+        if ("equals".equals(name)) {
+            return proxy == args[0];
+        }
+        if (!name.startsWith("execute")) {
+            return invokeStatement(method, args);
+        }
+        final long start = System.nanoTime();
+        try {
+            return invokeStatement(method, args);
+        }
+        finally {
+            replica.executed(System.nanoTime() - start);
+        }
+    }
+
+    private Object invokeStatement(Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(statement, args);
+        }
+        catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
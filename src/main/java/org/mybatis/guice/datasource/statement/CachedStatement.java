@@ -0,0 +1,83 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.datasource.statement;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * A physical prepared statement kept in a {@link StatementCache}, with the settings it had when it was prepared.
+ *
+ * @author ferenczil
+ */
+final class CachedStatement {
+
+    final StatementKey key;
+
+    final PreparedStatement statement;
+
+    private final int maxRows;
+
+    private final int queryTimeout;
+
+    private final int fetchSize;
+
+    CachedStatement(StatementKey key, PreparedStatement statement) throws SQLException {
+        this.key = key;
+        this.statement = statement;
+        this.maxRows = statement.getMaxRows();
+        this.queryTimeout = statement.getQueryTimeout();
+        this.fetchSize = statement.getFetchSize();
+    }
+
+    /**
+     * Prepares the statement for the next user. A batch the last user did not execute, e.g. of a rolled back
+     * session, is dropped so it does not run in the next transaction.
+     *
+     * @param settingsChanged Whether the last user changed the row limit, timeout or fetch size
+     * @throws SQLException if the statement can not be reset, it must not be reused then
+     */
+    void reset(boolean settingsChanged) throws SQLException {
+        statement.clearBatch();
+        final ResultSet resultSet = statement.getResultSet();
+        if (resultSet != null) {
+            resultSet.close();
+        }
+        if (key.returnsGeneratedKeys()) {
+            final ResultSet generatedKeys = statement.getGeneratedKeys();
+            if (generatedKeys != null) {
+                generatedKeys.close();
+            }
+        }
+        statement.clearParameters();
+        statement.clearWarnings();
+        if (settingsChanged) {
+            statement.setMaxRows(maxRows);
+            statement.setQueryTimeout(queryTimeout);
+            statement.setFetchSize(fetchSize);
+        }
+    }
+
+    void closeQuietly() {
+        try {
+            statement.close();
+        }
+        catch (SQLException ignored) {
+            // the statement is discarded anyway
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.datasource.statement;
+
+import org.apache.ibatis.datasource.pooled.PooledDataSource;
+import org.mybatis.guice.datasource.delegate.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Objects;
+
+/**
+ * Resolves the physical connection behind a connection checked out from a pool. Pools hand out a new wrapper on
+ * every checkout, the statement cache is kept by the connection the wrapper stands for.
+ *
+ * The pool libraries are optional dependencies, their unwrappers are only loaded once the data source was found
+ * to be an instance of the pool class.
+ *
+ * @author ferenczil
+ */
+abstract class PhysicalConnections {
+
+    /**
+     * @param dataSource Data source of an environment, possibly decorated in front of its pool
+     * @return Unwrapper of the connections of the pool
+     * @throws IllegalArgumentException if the pool is not supported or hides its physical connections
+     */
+    static PhysicalConnections forDataSource(DataSource dataSource) {
+        DataSource pool = dataSource;
+        while (pool instanceof DelegatingDataSource) {
+            pool = ((DelegatingDataSource) pool).getDelegate();
+        }
+        if (pool instanceof PooledDataSource) {
+            return new MyBatisConnections();
+        }
+        if (isInstance(pool, "org.apache.commons.dbcp.BasicDataSource")) {
+            return new BasicConnections(pool);
+        }
+        if (isInstance(pool, "com.mchange.v2.c3p0.PooledDataSource")) {
+            return new C3p0Connections();
+        }
+        if (isInstance(pool, "com.jolbox.bonecp.BoneCPDataSource")) {
+            return new BoneCPConnections();
+        }
+        throw new IllegalArgumentException("Statement caching needs a MyBatis, DBCP BasicDataSource, c3p0 or BoneCP pool, got "
+                + pool.getClass().getName());
+    }
+
+    /**
+     * @param connection Connection checked out from the pool, without decorators in front of it
+     * @return Physical connection, the same for every checkout of it
+     * @throws SQLException if the pool does not give access to it
+     */
+    abstract Connection physical(Connection connection) throws SQLException;
+
+    private static boolean isInstance(DataSource dataSource, String className) {
+        try {
+            return Class.forName(className, false, dataSource.getClass().getClassLoader()).isInstance(dataSource);
+        }
+        catch (ClassNotFoundException e) {
+            return false;
+        }
+        catch (LinkageError e) {
+            return false;
+        }
+    }
+
+    private static final class MyBatisConnections extends PhysicalConnections {
+        @Override
+        Connection physical(Connection connection) {
+            return PooledDataSource.unwrapConnection(connection);
+        }
+    }
+
+    /**
+     * The pool hands out the delegate of its connections only when {@code accessToUnderlyingConnectionAllowed} is set
+     */
+    private static final class BasicConnections extends PhysicalConnections {
+
+        BasicConnections(DataSource pool) {
+            if (!((org.apache.commons.dbcp.BasicDataSource) pool).isAccessToUnderlyingConnectionAllowed()) {
+                throw new IllegalArgumentException("Statement caching needs accessToUnderlyingConnectionAllowed on the DBCP BasicDataSource");
+            }
+        }
+
+        @Override
+        Connection physical(Connection connection) throws SQLException {
+            final Connection physical = ((org.apache.commons.dbcp.DelegatingConnection) connection).getInnermostDelegate();
+            if (physical == null) {
+                throw new SQLException("DBCP does not give access to the connection behind " + connection);
+            }
+            return physical;
+        }
+    }
+
+    /**
+     * The pool passes its raw connection only to a method called through the proxy, which returns it unchanged
+     */
+    private static final class C3p0Connections extends PhysicalConnections {
+        private static final Method IDENTITY;
+
+        static {
+            try {
+                IDENTITY = Objects.class.getMethod("requireNonNull", Object.class);
+            }
+            catch (NoSuchMethodException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        @Override
+        Connection physical(Connection connection) throws SQLException {
+            try {
+                return (Connection) ((com.mchange.v2.c3p0.C3P0ProxyConnection) connection).rawConnectionOperation(
+                        IDENTITY, null, new Object[]{ com.mchange.v2.c3p0.C3P0ProxyConnection.RAW_CONNECTION });
+            }
+            catch (IllegalAccessException | InvocationTargetException e) {
+                throw new SQLException("c3p0 does not give access to the connection behind " + connection, e);
+            }
+        }
+    }
+
+    private static final class BoneCPConnections extends PhysicalConnections {
+        @Override
+        Connection physical(Connection connection) {
+            return ((com.jolbox.bonecp.ConnectionHandle) connection).getInternalConnection();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.datasource.statement;
+
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded LRU cache of the idle prepared statements of one physical connection.
+ *
+ * A statement is removed from the cache while it is in use and put back when its user closes it, so the
+ * iteration order is the order of last use and the eldest entry is the least recently used one. Only one thread
+ * uses a physical connection at a time, the lock is uncontended.
+ *
+ * @author ferenczil
+ */
+final class StatementCache {
+
+    private final LinkedHashMap<StatementKey, CachedStatement> idle;
+
+    private final int maxStatements;
+
+    private final StatementCachingDataSource owner;
+
+    StatementCache(int maxStatements, StatementCachingDataSource owner) {
+        this.idle = new LinkedHashMap<>(Math.min(maxStatements, 64) * 2);
+        this.maxStatements = maxStatements;
+        this.owner = owner;
+    }
+
+    /**
+     * Takes the idle statement of the key out of the cache
+     *
+     * @return Statement or {@code null} if there is no usable one
+     */
+    synchronized CachedStatement take(StatementKey key) throws SQLException {
+        CachedStatement cached = idle.remove(key);
+        if (cached != null && cached.statement.isClosed()) {
+            // closed together with the physical connection
+            return null;
+        }
+        return cached;
+    }
+
+    /**
+     * Returns a statement after use, evicting the least recently used one when the cache is full
+     */
+    synchronized void offer(CachedStatement cached) {
+        if (idle.containsKey(cached.key)) {
+            // The same SQL was in use twice at the same time, keep one of them
+            cached.closeQuietly();
+            return;
+        }
+        if (idle.size() >= maxStatements) {
+            Iterator<Map.Entry<StatementKey, CachedStatement>> eldest = idle.entrySet().iterator();
+            eldest.next().getValue().closeQuietly();
+            eldest.remove();
+            owner.evicted();
+        }
+        idle.put(cached.key, cached);
+    }
+
+    synchronized int size() {
+        return idle.size();
+    }
+
+    synchronized void clear() {
+        for (CachedStatement cached : idle.values()) {
+            cached.closeQuietly();
+        }
+        idle.clear();
+    }
+}
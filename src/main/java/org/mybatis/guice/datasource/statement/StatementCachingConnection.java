@@ -0,0 +1,86 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.datasource.statement;
+
+import org.mybatis.guice.datasource.delegate.DelegatingConnection;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * Connection serving prepared statements from the cache of its physical connection. Missing statements are
+ * prepared on the physical connection, so they outlive the wrapper the pool closes when the connection is returned.
+ *
+ * @author ferenczil
+ */
+final class StatementCachingConnection extends DelegatingConnection {
+
+    private final Connection physical;
+
+    private final StatementCache cache;
+
+    private final StatementCachingDataSource owner;
+
+    StatementCachingConnection(Connection delegate, Connection physical, StatementCache cache, StatementCachingDataSource owner) {
+        super(delegate);
+        this.physical = physical;
+        this.cache = cache;
+        this.owner = owner;
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql) throws SQLException {
+        return prepare(StatementKey.of(sql));
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
+        return prepare(StatementKey.of(sql, resultSetType, resultSetConcurrency));
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
+        return prepare(StatementKey.of(sql, resultSetType, resultSetConcurrency, resultSetHoldability));
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) throws SQLException {
+        return prepare(StatementKey.withGeneratedKeys(sql, autoGeneratedKeys));
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, int[] columnIndexes) throws SQLException {
+        return prepare(StatementKey.withGeneratedKeys(sql, columnIndexes));
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, String[] columnNames) throws SQLException {
+        return prepare(StatementKey.withGeneratedKeys(sql, columnNames));
+    }
+
+    private PreparedStatement prepare(StatementKey key) throws SQLException {
+        CachedStatement cached = cache.take(key);
+        if (cached != null) {
+            owner.hit();
+        }
+        else {
+            owner.miss();
+            cached = new CachedStatement(key, key.prepare(physical));
+        }
+        return StatementHandle.newStatement(cached, cache, this);
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.datasource.statement;
+
+import org.mybatis.guice.datasource.delegate.DelegatingConnection;
+import org.mybatis.guice.datasource.delegate.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@code DataSource} decorator keeping the prepared statements of each physical connection open after they are
+ * closed by MyBatis, so the next transaction borrowing the same pooled connection reuses them instead of
+ * preparing the SQL again.
+ *
+ * The cache of a physical connection is bounded, the least recently used statement is closed when it is full.
+ * The physical connection behind a pooled one is resolved by the pool library: the MyBatis pool, DBCP
+ * {@code BasicDataSource} with {@code accessToUnderlyingConnectionAllowed}, c3p0 and BoneCP are supported, other
+ * data sources are refused. Caches of physical connections closed by the pool are dropped when the next one is
+ * created.
+ *
+ * @author ferenczil
+ */
+public class StatementCachingDataSource extends DelegatingDataSource {
+
+    private final int maxStatementsPerConnection;
+
+    private final PhysicalConnections physicalConnections;
+
+    private final Map<Connection, StatementCache> caches = new IdentityHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    public StatementCachingDataSource(DataSource delegate, int maxStatementsPerConnection) {
+        super(delegate);
+        if (maxStatementsPerConnection < 1) {
+            throw new IllegalArgumentException("Statement cache size must be positive, got " + maxStatementsPerConnection);
+        }
+        this.maxStatementsPerConnection = maxStatementsPerConnection;
+        this.physicalConnections = PhysicalConnections.forDataSource(delegate);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return wrap(delegate.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return wrap(delegate.getConnection(username, password));
+    }
+
+    private Connection wrap(Connection connection) throws SQLException {
+        final Connection physical = physicalConnection(connection);
+        return new StatementCachingConnection(connection, physical, cacheOf(physical), this);
+    }
+
+    private synchronized StatementCache cacheOf(Connection physical) throws SQLException {
+        StatementCache cache = caches.get(physical);
+        if (cache == null) {
+            for (Iterator<Connection> i = caches.keySet().iterator(); i.hasNext(); ) {
+                if (i.next().isClosed()) {
+                    i.remove();
+                }
+            }
+            cache = new StatementCache(maxStatementsPerConnection, this);
+            caches.put(physical, cache);
+        }
+        return cache;
+    }
+
+    private Connection physicalConnection(Connection connection) throws SQLException {
+        while (connection instanceof DelegatingConnection) {
+            // Decorated in front of the pool, e.g. by a MeteredDataSource
+            connection = ((DelegatingConnection) connection).getDelegate();
+        }
+        return physicalConnections.physical(connection);
+    }
+
+    void hit() {
+        hits.incrementAndGet();
+    }
+
+    void miss() {
+        misses.incrementAndGet();
+    }
+
+    void evicted() {
+        evictions.incrementAndGet();
+    }
+
+    public int getMaxStatementsPerConnection() {
+        return maxStatementsPerConnection;
+    }
+
+    /**
+     * @return Number of statements served from the cache
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * @return Number of statements prepared because the cache had none
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * @return Number of statements closed to make room in a full cache
+     */
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    /**
+     * @return Number of idle statements kept open over all physical connections
+     */
+    public synchronized int getCachedStatementCount() {
+        int count = 0;
+        for (StatementCache cache : caches.values()) {
+            count += cache.size();
+        }
+        return count;
+    }
+
+    /**
+     * Closes every idle statement
+     */
+    public synchronized void clear() {
+        for (StatementCache cache : caches.values()) {
+            cache.clear();
+        }
+        caches.clear();
+    }
+
+    @Override
+    public String toString() {
+        return "StatementCachingDataSource[hits: " + getHitCount()
+                + ", misses: " + getMissCount()
+                + ", evictions: " + getEvictionCount() + "]";
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.datasource.statement;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * The prepared statement handed to one user of a cached statement. Closing it returns the physical statement
+ * to the cache instead of closing it, any later call fails as on a closed statement.
+ *
+ * @author ferenczil
+ */
+final class StatementHandle implements InvocationHandler {
+
+    private static final Class<?>[] INTERFACES = new Class<?>[]{ PreparedStatement.class };
+
+    private final CachedStatement cached;
+
+    private final StatementCache cache;
+
+    private final Connection connection;
+
+    private boolean closed;
+
+    private boolean settingsChanged;
+
+    private StatementHandle(CachedStatement cached, StatementCache cache, Connection connection) {
+        this.cached = cached;
+        this.cache = cache;
+        this.connection = connection;
+    }
+
+    static PreparedStatement newStatement(CachedStatement cached, StatementCache cache, Connection connection) {
+        return (PreparedStatement) Proxy.newProxyInstance(StatementHandle.class.getClassLoader(), INTERFACES,
+                new StatementHandle(cached, cache, connection));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        final String name = method.getName();
+        if ("close".equals(name) && method.getParameterTypes().length == 0) {
+            close();
+            return null;
+        }
+        if ("isClosed".equals(name)) {
+            return closed || cached.statement.isClosed();
+        }
+        if ("hashCode".equals(name)) {
+            return System.identityHashCode(proxy);
+        }
+        if ("equals".equals(name)) {
+            return proxy == args[0];
+        }
+        if ("toString".equals(name)) {
+            return "CachedStatement[" + cached.key.getSql() + "]";
+        }
+        if (closed) {
+            throw new SQLException("Statement is closed");
+        }
+        if ("getConnection".equals(name)) {
+            return connection;
+        }
+        if ("setMaxRows".equals(name) || "setQueryTimeout".equals(name) || "setFetchSize".equals(name)) {
+            settingsChanged = true;
+        }
+        try {
+            return method.invoke(cached.statement, args);
+        }
+        catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            cached.reset(settingsChanged);
+        }
+        catch (SQLException e) {
+            // a statement that can't be reset is not reused
+            cached.closeQuietly();
+            return;
+        }
+        cache.offer(cached);
+    }
+}
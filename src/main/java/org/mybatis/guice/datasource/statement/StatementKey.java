@@ -0,0 +1,154 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.datasource.statement;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+
+/**
+ * SQL and creation arguments of a prepared statement, statements are only reused for the same key
+ *
+ * @author ferenczil
+ */
+final class StatementKey {
+
+    private static final int NONE = -1;
+
+    private final String sql;
+
+    private final int resultSetType;
+
+    private final int resultSetConcurrency;
+
+    private final int resultSetHoldability;
+
+    private final int autoGeneratedKeys;
+
+    private final int[] columnIndexes;
+
+    private final String[] columnNames;
+
+    private final int hash;
+
+    private StatementKey(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability,
+                         int autoGeneratedKeys, int[] columnIndexes, String[] columnNames) {
+        this.sql = sql;
+        this.resultSetType = resultSetType;
+        this.resultSetConcurrency = resultSetConcurrency;
+        this.resultSetHoldability = resultSetHoldability;
+        this.autoGeneratedKeys = autoGeneratedKeys;
+        this.columnIndexes = columnIndexes;
+        this.columnNames = columnNames;
+
+        int h = sql.hashCode();
+        h = 31 * h + resultSetType;
+        h = 31 * h + resultSetConcurrency;
+        h = 31 * h + resultSetHoldability;
+        h = 31 * h + autoGeneratedKeys;
+        h = 31 * h + Arrays.hashCode(columnIndexes);
+        h = 31 * h + Arrays.hashCode(columnNames);
+        this.hash = h;
+    }
+
+    static StatementKey of(String sql) {
+        return new StatementKey(sql, NONE, NONE, NONE, NONE, null, null);
+    }
+
+    static StatementKey of(String sql, int resultSetType, int resultSetConcurrency) {
+        return new StatementKey(sql, resultSetType, resultSetConcurrency, NONE, NONE, null, null);
+    }
+
+    static StatementKey of(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) {
+        return new StatementKey(sql, resultSetType, resultSetConcurrency, resultSetHoldability, NONE, null, null);
+    }
+
+    static StatementKey withGeneratedKeys(String sql, int autoGeneratedKeys) {
+        return new StatementKey(sql, NONE, NONE, NONE, autoGeneratedKeys, null, null);
+    }
+
+    static StatementKey withGeneratedKeys(String sql, int[] columnIndexes) {
+        return new StatementKey(sql, NONE, NONE, NONE, NONE, columnIndexes.clone(), null);
+    }
+
+    static StatementKey withGeneratedKeys(String sql, String[] columnNames) {
+        return new StatementKey(sql, NONE, NONE, NONE, NONE, null, columnNames.clone());
+    }
+
+    /**
+     * Prepares a new statement on the connection with the arguments of the key
+     */
+    PreparedStatement prepare(Connection connection) throws SQLException {
+        if (columnIndexes != null) {
+            return connection.prepareStatement(sql, columnIndexes);
+        }
+        if (columnNames != null) {
+            return connection.prepareStatement(sql, columnNames);
+        }
+        if (autoGeneratedKeys != NONE) {
+            return connection.prepareStatement(sql, autoGeneratedKeys);
+        }
+        if (resultSetHoldability != NONE) {
+            return connection.prepareStatement(sql, resultSetType, resultSetConcurrency, resultSetHoldability);
+        }
+        if (resultSetType != NONE) {
+            return connection.prepareStatement(sql, resultSetType, resultSetConcurrency);
+        }
+        return connection.prepareStatement(sql);
+    }
+
+    /**
+     * @return Whether the statement was prepared to return the generated keys
+     */
+    boolean returnsGeneratedKeys() {
+        return columnIndexes != null || columnNames != null || autoGeneratedKeys == Statement.RETURN_GENERATED_KEYS;
+    }
+
+    String getSql() {
+        return sql;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof StatementKey)) {
+            return false;
+        }
+        StatementKey other = (StatementKey) o;
+        return hash == other.hash
+                && resultSetType == other.resultSetType
+                && resultSetConcurrency == other.resultSetConcurrency
+                && resultSetHoldability == other.resultSetHoldability
+                && autoGeneratedKeys == other.autoGeneratedKeys
+                && sql.equals(other.sql)
+                && Arrays.equals(columnIndexes, other.columnIndexes)
+                && Arrays.equals(columnNames, other.columnNames);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return "StatementKey[" + sql + "]";
+    }
+}
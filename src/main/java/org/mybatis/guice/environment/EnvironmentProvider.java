@@ -23,6 +23,9 @@ import javax.sql.DataSource;
 
 import org.apache.ibatis.mapping.Environment;
 import org.apache.ibatis.transaction.TransactionFactory;
+import org.mybatis.guice.datasource.pool.MeteredDataSource;
+import org.mybatis.guice.datasource.statement.StatementCachingDataSource;
+import org.mybatis.guice.metrics.MBeans;
 
 /**
  * Provides the myBatis Environment.
@@ -45,6 +48,16 @@ public final class EnvironmentProvider implements Provider<Environment> {
     @Inject
     private DataSource dataSource;
 
+    /**
+     * Prepared statements cached per physical connection, 0 if the cache is disabled.
+     */
+    private int statementCacheSize;
+
+    /**
+     * Measure the connection pool, published as an MBean named by the environment id.
+     */
+    private boolean poolMetrics;
+
     public void setId(String id) {
         this.id = id;
     }
@@ -57,11 +70,31 @@ public final class EnvironmentProvider implements Provider<Environment> {
         this.dataSource = dataSource;
     }
 
+    @com.google.inject.Inject(optional = true)
+    public void setStatementCacheSize(@Named("mybatis.statementCache.size") int statementCacheSize) {
+        this.statementCacheSize = statementCacheSize;
+    }
+
+    @com.google.inject.Inject(optional = true)
+    public void setPoolMetrics(@Named("mybatis.poolMetrics") boolean poolMetrics) {
+        this.poolMetrics = poolMetrics;
+    }
+
     /**
      * {@inheritDoc}
      */
     public Environment get() {
-        return new Environment(id, transactionFactory, dataSource);
+        DataSource environmentDataSource = dataSource;
+        if (poolMetrics) {
+            // Closest to the pool, the checkouts are measured without the decorators
+            MeteredDataSource metered = new MeteredDataSource(dataSource);
+            MBeans.register(MeteredDataSource.MBEAN_TYPE, id, metered);
+            environmentDataSource = metered;
+        }
+        if (statementCacheSize > 0) {
+            environmentDataSource = new StatementCachingDataSource(environmentDataSource, statementCacheSize);
+        }
+        return new Environment(id, transactionFactory, environmentDataSource);
     }
 
 }
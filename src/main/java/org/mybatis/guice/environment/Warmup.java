@@ -0,0 +1,379 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.environment;
+
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.google.inject.ProvisionException;
+import com.google.inject.name.Named;
+import org.apache.ibatis.builder.StaticSqlSource;
+import org.apache.ibatis.executor.keygen.Jdbc3KeyGenerator;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.SqlSource;
+import org.apache.ibatis.mapping.StatementType;
+import org.apache.ibatis.scripting.defaults.RawSqlSource;
+import org.apache.ibatis.scripting.xmltags.DynamicSqlSource;
+import org.apache.ibatis.scripting.xmltags.MixedSqlNode;
+import org.apache.ibatis.scripting.xmltags.SqlNode;
+import org.apache.ibatis.scripting.xmltags.TextSqlNode;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.mybatis.guice.configuration.ParallelStartup;
+import org.mybatis.guice.datasource.pool.PoolProbes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.lang.reflect.Field;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Warms up every registered environment while the injector is created, so the first requests do not pay for
+ * opening connections, loading the driver and preparing statements on the server.
+ *
+ * Environments are warmed up concurrently. Each one first opens as many connections at the same time as its
+ * pool keeps at least, one if the pool has no minimum, and returns them to the pool. Then it prepares, without
+ * executing, every mapped statement of its configuration on a single pooled connection, through the statement
+ * cache of the environment if it has one. Statements whose SQL is built from the parameters, with conditional
+ * elements or {@code ${}} substitutions, can not be prepared without them and are skipped, as are plain
+ * {@code STATEMENT}s.
+ *
+ * Statements rejected by the database are logged and reported, and fail the injector creation if requested.
+ * The warmup is a stronger {@code failFast}: it checks the SQL against the database rather than only building
+ * the statements.
+ *
+ * @author ferenczil
+ */
+public final class Warmup {
+    private static final Logger log = LoggerFactory.getLogger(Warmup.class);
+
+    private static final Field ROOT_SQL_NODE = field(DynamicSqlSource.class, "rootSqlNode");
+
+    private static final Field TEXT = field(TextSqlNode.class, "text");
+
+    private static final Field CONTENTS = field(MixedSqlNode.class, "contents");
+
+    private final int parallelism;
+
+    private final boolean failOnInvalidStatements;
+
+    private final List<String> environmentIds = new ArrayList<>();
+
+    private final List<DataSource> pools = new ArrayList<>();
+
+    private final List<Provider<SqlSessionFactory>> factories = new ArrayList<>();
+
+    private final Map<String, WarmupReport> reports = new TreeMap<>();
+
+    private boolean started;
+
+    /**
+     * @param parallelism Maximum number of environments warmed up at the same time
+     * @param failOnInvalidStatements Fail the injector creation if a statement is rejected by the database
+     */
+    public Warmup(int parallelism, boolean failOnInvalidStatements) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive, got " + parallelism);
+        }
+        this.parallelism = parallelism;
+        this.failOnInvalidStatements = failOnInvalidStatements;
+    }
+
+    synchronized void register(String environmentId, DataSource pool, Provider<SqlSessionFactory> factory) {
+        if (started) {
+            log.warn("Environment {} registered after the warmup, it is not warmed up", environmentId);
+            return;
+        }
+        environmentIds.add(environmentId);
+        pools.add(pool);
+        factories.add(factory);
+    }
+
+    /**
+     * Warms up the registered environments, unless they were warmed up already.
+     */
+    public synchronized void start() {
+        if (started) {
+            return;
+        }
+        started = true;
+        final long start = System.currentTimeMillis();
+
+        // Singletons are provisioned on the injector thread, the pool only talks to the databases
+        final List<Configuration> configurations = new ArrayList<>(factories.size());
+        for (Provider<SqlSessionFactory> factory : factories) {
+            configurations.add(factory.get().getConfiguration());
+        }
+
+        final ForkJoinPool pool = new ForkJoinPool(Math.min(parallelism, Math.max(configurations.size(), 1)));
+        try {
+            final List<Callable<WarmupReport>> tasks = new ArrayList<>(configurations.size());
+            for (int i = 0; i < configurations.size(); i++) {
+                final String environmentId = environmentIds.get(i);
+                final DataSource environmentPool = pools.get(i);
+                final Configuration configuration = configurations.get(i);
+                tasks.add(new Callable<WarmupReport>() {
+                    @Override
+                    public WarmupReport call() throws SQLException {
+                        return warmup(environmentId, environmentPool, configuration);
+                    }
+                });
+            }
+            final List<Future<WarmupReport>> results = pool.invokeAll(tasks);
+
+            ProvisionException failure = null;
+            for (int i = 0; i < results.size(); i++) {
+                ProvisionException environmentFailure = null;
+                try {
+                    final WarmupReport report = results.get(i).get();
+                    reports.put(report.getEnvironmentId(), report);
+                    if (failOnInvalidStatements && !report.getInvalidStatements().isEmpty()) {
+                        environmentFailure = new ProvisionException("Invalid statements in environment "
+                                + environmentIds.get(i) + ": " + report.getInvalidStatements());
+                    }
+                }
+                catch (ExecutionException e) {
+                    environmentFailure = new ProvisionException(
+                            "Failed to warm up environment " + environmentIds.get(i), e.getCause());
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new ProvisionException("Interrupted while warming up the environments", e);
+                }
+                if (environmentFailure == null) {
+                    continue;
+                }
+                if (failure == null) {
+                    failure = environmentFailure;
+                }
+                else {
+                    failure.addSuppressed(environmentFailure);
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        log.info("Warmed up {} environment(s) in {} ms", configurations.size(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * @return Reports of the environments warmed up, by environment id
+     */
+    public synchronized Map<String, WarmupReport> getReports() {
+        return new TreeMap<>(reports);
+    }
+
+    /**
+     * @return Report of the environment, {@code null} if it was not warmed up
+     */
+    public synchronized WarmupReport getReport(String environmentId) {
+        return reports.get(environmentId);
+    }
+
+    private static WarmupReport warmup(String environmentId, DataSource pool, Configuration configuration) throws SQLException {
+        final long start = System.currentTimeMillis();
+
+        final int connections = Math.max(PoolProbes.forDataSource(pool).getMinimumConnections(), 1);
+        fill(pool, connections);
+
+        int prepared = 0;
+        int skipped = 0;
+        final Map<String, String> invalid = new TreeMap<>();
+        final Set<String> ids = new HashSet<>();
+        try (Connection connection = configuration.getEnvironment().getDataSource().getConnection()) {
+            for (String name : new ArrayList<>(configuration.getMappedStatementNames())) {
+                // Short names are aliases of the qualified ones, or ambiguous
+                if (name.indexOf('.') < 0 || !ids.add(name)) {
+                    continue;
+                }
+                final MappedStatement statement = configuration.getMappedStatement(name);
+                if (statement.getStatementType() == StatementType.STATEMENT || !isStatic(statement.getSqlSource())) {
+                    skipped++;
+                    continue;
+                }
+                try {
+                    prepare(connection, statement).close();
+                    prepared++;
+                }
+                catch (SQLException e) {
+                    invalid.put(name, e.getMessage());
+                }
+            }
+        }
+
+        final WarmupReport report = new WarmupReport(environmentId, System.currentTimeMillis() - start,
+                connections, prepared, skipped, invalid);
+        if (invalid.isEmpty()) {
+            log.info("Warmed up environment {}", report);
+        }
+        else {
+            log.warn("Warmed up environment {}, invalid statements: {}", report, invalid);
+        }
+        return report;
+    }
+
+    /**
+     * Holds the connections open together, so the pool creates them instead of handing out the same one
+     */
+    private static void fill(DataSource pool, int connections) throws SQLException {
+        final List<Connection> opened = new ArrayList<>(connections);
+        try {
+            for (int i = 0; i < connections; i++) {
+                opened.add(pool.getConnection());
+            }
+        } finally {
+            for (Connection connection : opened) {
+                try {
+                    connection.close();
+                }
+                catch (SQLException e) {
+                    log.debug("Failed to return a warmup connection", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * MyBatis parses every statement of a mapper into a {@code DynamicSqlSource}, static ones are told apart by
+     * their nodes: only text without {@code ${}} substitutions.
+     */
+    private static boolean isStatic(SqlSource source) {
+        if (source instanceof RawSqlSource || source instanceof StaticSqlSource) {
+            return true;
+        }
+        if (!(source instanceof DynamicSqlSource) || ROOT_SQL_NODE == null || TEXT == null || CONTENTS == null) {
+            return false;
+        }
+        try {
+            return isStatic((SqlNode) ROOT_SQL_NODE.get(source));
+        }
+        catch (IllegalAccessException e) {
+            return false;
+        }
+    }
+
+    private static boolean isStatic(SqlNode node) throws IllegalAccessException {
+        if (node instanceof TextSqlNode) {
+            return !((String) TEXT.get(node)).contains("${");
+        }
+        if (node instanceof MixedSqlNode) {
+            for (Object content : (List<?>) CONTENTS.get(node)) {
+                if (!isStatic((SqlNode) content)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static Field field(Class<?> type, String name) {
+        try {
+            final Field field = type.getDeclaredField(name);
+            field.setAccessible(true);
+            return field;
+        }
+        catch (NoSuchFieldException | SecurityException e) {
+            log.warn("Statements built by this MyBatis version are not prepared by the warmup", e);
+            return null;
+        }
+    }
+
+    /**
+     * Prepares the statement as the MyBatis statement handlers do, so a statement cache keeps the same entry
+     */
+    private static PreparedStatement prepare(Connection connection, MappedStatement statement) throws SQLException {
+        final BoundSql boundSql = statement.getBoundSql(null);
+        final String sql = boundSql.getSql();
+        if (statement.getStatementType() == StatementType.CALLABLE) {
+            if (statement.getResultSetType() != null) {
+                return connection.prepareCall(sql, statement.getResultSetType().getValue(), ResultSet.CONCUR_READ_ONLY);
+            }
+            return connection.prepareCall(sql);
+        }
+        if (statement.getKeyGenerator() instanceof Jdbc3KeyGenerator) {
+            final String[] keyColumnNames = statement.getKeyColumns();
+            if (keyColumnNames == null) {
+                return connection.prepareStatement(sql, PreparedStatement.RETURN_GENERATED_KEYS);
+            }
+            return connection.prepareStatement(sql, keyColumnNames);
+        }
+        if (statement.getResultSetType() != null) {
+            return connection.prepareStatement(sql, statement.getResultSetType().getValue(), ResultSet.CONCUR_READ_ONLY);
+        }
+        return connection.prepareStatement(sql);
+    }
+
+    /**
+     * Registers the environment, requested for injection in its module
+     */
+    public static final class Registration {
+
+        private final Warmup warmup;
+
+        public Registration(Warmup warmup) {
+            this.warmup = warmup;
+        }
+
+        @Inject
+        void register(@Named("mybatis.environment.id") String environmentId, DataSource pool,
+                      Provider<SqlSessionFactory> factory) {
+            warmup.register(environmentId, pool, factory);
+        }
+    }
+
+    /**
+     * Eager singleton warming up the registered environments, once a parallel startup built their configurations
+     */
+    public static final class Starter {
+
+        @Inject(optional = true)
+        private ParallelStartup startup;
+
+        private final Warmup warmup;
+
+        @Inject
+        Starter(Warmup warmup) {
+            this.warmup = warmup;
+        }
+
+        @Inject
+        void start() {
+            if (startup != null) {
+                startup.start();
+            }
+            warmup.start();
+        }
+    }
+}
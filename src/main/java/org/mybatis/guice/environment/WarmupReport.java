@@ -0,0 +1,95 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.environment;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Outcome of the {@link Warmup} of an environment.
+ *
+ * @author ferenczil
+ */
+public final class WarmupReport {
+
+    private final String environmentId;
+
+    private final long elapsedMillis;
+
+    private final int connections;
+
+    private final int preparedStatements;
+
+    private final int skippedStatements;
+
+    private final Map<String, String> invalidStatements;
+
+    WarmupReport(String environmentId, long elapsedMillis, int connections, int preparedStatements,
+                 int skippedStatements, Map<String, String> invalidStatements) {
+        this.environmentId = environmentId;
+        this.elapsedMillis = elapsedMillis;
+        this.connections = connections;
+        this.preparedStatements = preparedStatements;
+        this.skippedStatements = skippedStatements;
+        this.invalidStatements = Collections.unmodifiableMap(invalidStatements);
+    }
+
+    public String getEnvironmentId() {
+        return environmentId;
+    }
+
+    /**
+     * @return Time spent filling the pool and preparing the statements
+     */
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    /**
+     * @return Connections opened at the same time to fill the pool
+     */
+    public int getConnections() {
+        return connections;
+    }
+
+    /**
+     * @return Statements prepared successfully
+     */
+    public int getPreparedStatements() {
+        return preparedStatements;
+    }
+
+    /**
+     * @return Statements not prepared, their SQL depends on the parameters or is not sent as a prepared statement
+     */
+    public int getSkippedStatements() {
+        return skippedStatements;
+    }
+
+    /**
+     * @return Error reported by the database for each statement id it could not prepare
+     */
+    public Map<String, String> getInvalidStatements() {
+        return invalidStatements;
+    }
+
+    @Override
+    public String toString() {
+        return environmentId + ": " + elapsedMillis + " ms, " + connections + " connection(s), "
+                + preparedStatements + " prepared, " + skippedStatements + " skipped, "
+                + invalidStatements.size() + " invalid statement(s)";
+    }
+}
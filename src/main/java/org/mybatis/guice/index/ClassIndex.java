@@ -0,0 +1,236 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.index;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.WeakHashMap;
+
+/**
+ * Index of the classes written at compile time by the {@link ClassIndexProcessor}, one {@link #RESOURCE} per jar
+ * or class directory.
+ *
+ * The indexes of all roots visible to a class loader are read once and kept for the lifetime of the class loader,
+ * each with the root it belongs to. A package is reported as indexed only if every root holding it has an index
+ * covering the package, otherwise the caller falls back to scanning it: the index is an optimization and never
+ * hides classes of jars or directories built without the processor. A fat jar has to append the resources of the
+ * jars it merges instead of keeping only one of them.
+ *
+ * @author ferenczil
+ */
+public final class ClassIndex {
+    private static final Logger log = LoggerFactory.getLogger(ClassIndex.class);
+
+    /**
+     * Location of the index in the jar, a UTF-8 file with the binary name of a class on each line
+     */
+    public static final String RESOURCE = "META-INF/mybatis-guice/classes.index";
+
+    /**
+     * Comment line of the index listing the packages it covers, {@code *} for all of them
+     */
+    static final String PACKAGES_HEADER = "# Packages: ";
+
+    private static final String ALL_PACKAGES = "*";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final Map<ClassLoader, ClassIndex> INDEXES = new WeakHashMap<>();
+
+    private final ClassLoader classLoader;
+
+    /**
+     * Index of each root by its URL, ending with a '/'
+     */
+    private final Map<String, RootIndex> roots;
+
+    private ClassIndex(ClassLoader classLoader, Map<String, RootIndex> roots) {
+        this.classLoader = classLoader;
+        this.roots = roots;
+    }
+
+    /**
+     * @param classLoader Class loader whose resources are read
+     * @return The indexes of the roots visible to the class loader, empty if none was built with the processor
+     */
+    public static ClassIndex forClassLoader(ClassLoader classLoader) {
+        synchronized (INDEXES) {
+            ClassIndex index = INDEXES.get(classLoader);
+            if (index == null) {
+                index = new ClassIndex(classLoader, read(classLoader));
+                INDEXES.put(classLoader, index);
+            }
+            return index;
+        }
+    }
+
+    /**
+     * @param packageName Package searched, with its sub-packages
+     * @return Binary names of the indexed classes of the package, {@code null} if any root holding the package
+     *         is not indexed for it
+     */
+    public List<String> getClasses(String packageName) {
+        if (roots.isEmpty()) {
+            return null;
+        }
+        final String path = packageName.replace('.', '/');
+        final NavigableSet<String> names = new TreeSet<>();
+        try {
+            final Enumeration<URL> directories = classLoader.getResources(path);
+            if (!directories.hasMoreElements()) {
+                return null;
+            }
+            while (directories.hasMoreElements()) {
+                final RootIndex root = roots.get(root(directories.nextElement(), path));
+                if (root == null || !root.covers(packageName)) {
+                    return null;
+                }
+                names.addAll(root.getClasses(packageName));
+            }
+        }
+        catch (IOException e) {
+            log.debug("Unable to list the roots of package {}, it is scanned", packageName, e);
+            return null;
+        }
+        return Collections.unmodifiableList(new ArrayList<>(names));
+    }
+
+    /**
+     * @return Number of indexed classes
+     */
+    public int size() {
+        int size = 0;
+        for (RootIndex root : roots.values()) {
+            size += root.classes.size();
+        }
+        return size;
+    }
+
+    static boolean inPackages(String className, List<String> packages) {
+        if (packages == null || packages.isEmpty()) {
+            return true;
+        }
+        for (String packageName : packages) {
+            if (className.startsWith(packageName + '.')) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return URL of the root a resource was found in, ending with a '/', {@code null} if it is not below the path
+     */
+    private static String root(URL resource, String path) {
+        String url = resource.toExternalForm();
+        if (url.endsWith("/")) {
+            url = url.substring(0, url.length() - 1);
+        }
+        return url.endsWith(path) ? url.substring(0, url.length() - path.length()) : null;
+    }
+
+    private static Map<String, RootIndex> read(ClassLoader classLoader) {
+        final Map<String, RootIndex> roots = new HashMap<>();
+        try {
+            final Enumeration<URL> resources = classLoader.getResources(RESOURCE);
+            while (resources.hasMoreElements()) {
+                final URL url = resources.nextElement();
+                final RootIndex root = new RootIndex();
+                try (BufferedReader in = new BufferedReader(new InputStreamReader(url.openStream(), UTF_8))) {
+                    for (String line = in.readLine(); line != null; line = in.readLine()) {
+                        line = line.trim();
+                        if (line.startsWith(PACKAGES_HEADER)) {
+                            root.addPackages(line.substring(PACKAGES_HEADER.length()));
+                        }
+                        else if (!line.isEmpty() && !line.startsWith("#")) {
+                            root.classes.add(line);
+                        }
+                    }
+                }
+                final String rootUrl = root(url, RESOURCE);
+                if (rootUrl != null) {
+                    roots.put(rootUrl, root);
+                }
+                log.debug("Read the class index {}", url);
+            }
+        }
+        catch (IOException e) {
+            log.warn("Unable to read the class indexes, packages are scanned", e);
+            roots.clear();
+        }
+        return roots;
+    }
+
+    /**
+     * Index of a single jar or class directory
+     */
+    private static final class RootIndex {
+
+        private final NavigableSet<String> classes = new TreeSet<>();
+
+        /**
+         * Packages the index was restricted to, {@code null} if the index does not list them
+         */
+        private List<String> packages;
+
+        private boolean allPackages;
+
+        void addPackages(String header) {
+            if (packages == null) {
+                packages = new ArrayList<>();
+            }
+            for (String name : header.split(",")) {
+                name = name.trim();
+                if (ALL_PACKAGES.equals(name)) {
+                    allPackages = true;
+                }
+                else if (!name.isEmpty()) {
+                    packages.add(name);
+                }
+            }
+        }
+
+        /**
+         * An index listing no packages was written by an earlier processor, which may have been restricted to
+         * other packages, it covers a package only if it has classes in it.
+         */
+        boolean covers(String packageName) {
+            if (packages == null) {
+                return !getClasses(packageName).isEmpty();
+            }
+            return allPackages || packages.contains(packageName) || inPackages(packageName, packages);
+        }
+
+        NavigableSet<String> getClasses(String packageName) {
+            // Every name of the package and its sub-packages starts with "packageName.", '/' is the next character
+            return classes.subSet(packageName + '.', true, packageName + '/', false);
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.index;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.annotation.processing.SupportedOptions;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Annotation processor writing the {@link ClassIndex} of the compiled classes into the class output, so the jar
+ * carries it.
+ *
+ * The processor is not registered as a service, it runs only where it is enabled explicitly, e.g. with
+ * {@code -processor org.mybatis.guice.index.ClassIndexProcessor} or the {@code annotationProcessors} of the
+ * compiler plugin. The {@code mybatis.index.packages} option restricts the index to a comma separated list of
+ * packages and their sub-packages, by default every class is indexed. The index lists the packages it covers,
+ * the others are scanned. Classes of an earlier, incremental
+ * compilation are kept, a class since deleted is skipped when the index is read.
+ *
+ * @author ferenczil
+ */
+@SupportedAnnotationTypes("*")
+@SupportedOptions(ClassIndexProcessor.PACKAGES_OPTION)
+public final class ClassIndexProcessor extends AbstractProcessor {
+
+    /**
+     * Option restricting the indexed packages
+     */
+    public static final String PACKAGES_OPTION = "mybatis.index.packages";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final Set<String> classes = new TreeSet<>();
+
+    private List<String> packages;
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        if (packages == null) {
+            packages = packages(processingEnv.getOptions().get(PACKAGES_OPTION));
+        }
+        for (TypeElement type : ElementFilter.typesIn(roundEnv.getRootElements())) {
+            collect(type);
+        }
+        if (roundEnv.processingOver()) {
+            write();
+        }
+        // Never claims the annotations, other processors still see them
+        return false;
+    }
+
+    private void collect(TypeElement type) {
+        final String name = processingEnv.getElementUtils().getBinaryName(type).toString();
+        if (ClassIndex.inPackages(name, packages)) {
+            classes.add(name);
+        }
+        for (Element member : ElementFilter.typesIn(type.getEnclosedElements())) {
+            collect((TypeElement) member);
+        }
+    }
+
+    private void write() {
+        try {
+            readPrevious();
+            final FileObject file = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", ClassIndex.RESOURCE);
+            try (Writer out = new OutputStreamWriter(file.openOutputStream(), UTF_8)) {
+                out.write("# Classes indexed by " + ClassIndexProcessor.class.getName() + "\n");
+                out.write(ClassIndex.PACKAGES_HEADER + (packages.isEmpty() ? "*" : join(packages)) + "\n");
+                for (String name : classes) {
+                    out.write(name);
+                    out.write('\n');
+                }
+            }
+        }
+        catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Unable to write " + ClassIndex.RESOURCE + ": " + e);
+        }
+    }
+
+    private void readPrevious() {
+        try {
+            final FileObject file = processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "", ClassIndex.RESOURCE);
+            try (BufferedReader in = new BufferedReader(new InputStreamReader(file.openInputStream(), UTF_8))) {
+                for (String line = in.readLine(); line != null; line = in.readLine()) {
+                    line = line.trim();
+                    if (!line.isEmpty() && !line.startsWith("#") && ClassIndex.inPackages(line, packages)) {
+                        classes.add(line);
+                    }
+                }
+            }
+        }
+        catch (IOException e) {
+            // No index of an earlier compilation
+        }
+    }
+
+    private static String join(List<String> packages) {
+        final StringBuilder joined = new StringBuilder();
+        for (String name : packages) {
+            if (joined.length() > 0) {
+                joined.append(',');
+            }
+            joined.append(name);
+        }
+        return joined.toString();
+    }
+
+    private static List<String> packages(String option) {
+        final List<String> packages = new ArrayList<>();
+        if (option != null) {
+            for (String name : option.split(",")) {
+                if (!name.trim().isEmpty()) {
+                    packages.add(name.trim());
+                }
+            }
+        }
+        return packages;
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.index;
+
+import org.apache.ibatis.io.ResolverUtil;
+
+import java.util.List;
+
+/**
+ * {@link ResolverUtil} looking up the classes of a package in the {@link ClassIndex} and scanning the classpath
+ * for the packages with a root that has no index for them. The test of the caller is applied to the indexed classes as it is to the
+ * scanned ones.
+ *
+ * @author ferenczil
+ */
+public class IndexedResolverUtil<T> extends ResolverUtil<T> {
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ResolverUtil<T> find(Test test, String packageName) {
+        final List<String> classes = ClassIndex.forClassLoader(getClassLoader()).getClasses(packageName);
+        if (classes == null) {
+            return super.find(test, packageName);
+        }
+        for (String name : classes) {
+            // The path form expected by the scanner, the class is loaded from the part before the first dot
+            addIfMatching(test, name.replace('.', '/') + ".class");
+        }
+        return this;
+    }
+}
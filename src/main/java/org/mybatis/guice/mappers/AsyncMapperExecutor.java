@@ -0,0 +1,130 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.mappers;
+
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded executor running the asynchronous mapper calls of one environment.
+ *
+ * At most {@code threads} calls run concurrently and at most {@code queueSize} wait, further calls are rejected
+ * with a {@code RejectedExecutionException} instead of piling up.
+ *
+ * @author ferenczil
+ */
+public final class AsyncMapperExecutor {
+
+    private final String environmentId;
+
+    private final ThreadPoolExecutor executor;
+
+    private final AtomicLong rejected = new AtomicLong();
+
+    @Inject
+    public AsyncMapperExecutor(@Named("mybatis.environment.id") String environmentId,
+                               @Named("mybatis.async.threads") int threads,
+                               @Named("mybatis.async.queueSize") int queueSize) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Asynchronous mapper execution needs at least one thread, got " + threads);
+        }
+        if (queueSize < 1) {
+            throw new IllegalArgumentException("Asynchronous mapper queue size must be positive, got " + queueSize);
+        }
+        this.environmentId = environmentId;
+
+        final String prefix = "mybatis-async-" + environmentId + "-";
+        this.executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(queueSize),
+                new ThreadFactory() {
+                    private final AtomicInteger counter = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, prefix + counter.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Queues a call
+     *
+     * @param call Mapper call
+     * @return Future of the result, cancelling it interrupts the call if it is already running
+     * @throws RejectedExecutionException if the queue is full
+     */
+    public <T> Future<T> submit(Callable<T> call) {
+        try {
+            return executor.submit(call);
+        }
+        catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            throw new RejectedExecutionException("Asynchronous mapper queue of environment " + environmentId + " is full", e);
+        }
+    }
+
+    public String getEnvironmentId() {
+        return environmentId;
+    }
+
+    /**
+     * @return Number of calls running now
+     */
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * @return Number of calls waiting for a thread
+     */
+    public int getQueuedCount() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * @return Number of finished calls
+     */
+    public long getCompletedCount() {
+        return executor.getCompletedTaskCount();
+    }
+
+    /**
+     * @return Number of calls rejected because the queue was full
+     */
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    /**
+     * Stops accepting calls, queued calls still run
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.mappers;
+
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSession;
+import org.mybatis.guice.session.DbSessionManager;
+import org.mybatis.guice.session.SessionCallback;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+/**
+ * Provides the asynchronous variant of a MyBatis mapper.
+ *
+ * The asynchronous interface declares the methods of the mapper it calls, with the same name and parameters,
+ * returning a {@code Future} of the mapper result. Every call runs on the {@link AsyncMapperExecutor} of the
+ * environment in its own session, which is committed and closed when the call returns, independently of
+ * the transactional context of the calling thread. The session holds a permit of the bulkhead of the environment,
+ * and the commit of a write is recorded so the following reads of the calling thread observe it.
+ *
+ * @author ferenczil
+ */
+public final class AsyncMapperProvider<T> implements Provider<T> {
+
+    private final Class<T> asyncType;
+
+    private final Class<?> mapperType;
+
+    /**
+     * Mapper method called by each method of the asynchronous interface
+     */
+    private final Map<Method, Method> mapperMethods;
+
+    @Inject
+    private Provider<DbSessionManager> sessionManager;
+
+    @Inject
+    private Provider<AsyncMapperExecutor> executor;
+
+    public AsyncMapperProvider(Class<T> asyncType, Class<?> mapperType) {
+        if (!asyncType.isInterface()) {
+            throw new IllegalArgumentException("Asynchronous mapper " + asyncType.getName() + " is not an interface");
+        }
+        this.asyncType = asyncType;
+        this.mapperType = mapperType;
+        this.mapperMethods = new HashMap<>();
+        for (Method method : asyncType.getMethods()) {
+            if (!Future.class.equals(method.getReturnType())) {
+                throw new IllegalArgumentException("Method " + method + " of asynchronous mapper must return a Future");
+            }
+            try {
+                mapperMethods.put(method, mapperType.getMethod(method.getName(), method.getParameterTypes()));
+            }
+            catch (NoSuchMethodException e) {
+                throw new IllegalArgumentException("Method " + method + " has no counterpart in mapper " + mapperType.getName(), e);
+            }
+        }
+    }
+
+    public T get() {
+        return asyncType.cast(Proxy.newProxyInstance(asyncType.getClassLoader(), new Class<?>[]{ asyncType },
+                new AsyncHandler(sessionManager.get(), executor.get())));
+    }
+
+    private final class AsyncHandler implements InvocationHandler {
+
+        private final DbSessionManager manager;
+
+        private final AsyncMapperExecutor executor;
+
+        AsyncHandler(DbSessionManager manager, AsyncMapperExecutor executor) {
+            this.manager = manager;
+            this.executor = executor;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, final Object[] args) throws Throwable {
+            final Method mapperMethod = mapperMethods.get(method);
+            if (mapperMethod == null) {
+                // Object methods
+                if ("equals".equals(method.getName())) {
+                    return proxy == args[0];
+                }
+                if ("hashCode".equals(method.getName())) {
+                    return System.identityHashCode(proxy);
+                }
+                return method.invoke(this, args);
+            }
+            return executor.submit(manager.detachedTask(new SessionCallback<Object>() {
+                @Override
+                public Object execute(SqlSession session) throws Exception {
+                    try {
+                        return mapperMethod.invoke(session.getMapper(mapperType), args);
+                    }
+                    catch (InvocationTargetException e) {
+                        final Throwable cause = e.getCause();
+                        if (cause instanceof Error) {
+                            throw (Error) cause;
+                        }
+                        throw (Exception) cause;
+                    }
+                }
+            }, isWrite(mapperMethod)));
+        }
+
+        /**
+         * A method without a mapped statement of its own, e.g. one with a statement provider, counts as a write
+         */
+        private boolean isWrite(Method mapperMethod) {
+            final Configuration configuration = manager.getConfiguration();
+            final String statementId = mapperType.getName() + "." + mapperMethod.getName();
+            return !configuration.hasStatement(statementId)
+                    || configuration.getMappedStatement(statementId).getSqlCommandType() != SqlCommandType.SELECT;
+        }
+
+        @Override
+        public String toString() {
+            return "AsyncMapper[" + asyncType.getName() + "]";
+        }
+    }
+}
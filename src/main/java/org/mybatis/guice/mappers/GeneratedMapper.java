@@ -0,0 +1,154 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.mappers;
+
+import org.apache.ibatis.binding.BindingException;
+import org.apache.ibatis.binding.MapperMethod;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.session.SqlSession;
+
+import java.lang.reflect.Method;
+
+/**
+ * Base of the mapper implementations generated by the {@link MapperImplementationProcessor}.
+ *
+ * The constructor of the generated class resolves the statement of each method once, as the {@code MapperMethod}
+ * of MyBatis would on the first call. A method whose statement is missing, or whose command does not fit its
+ * return type, is delegated to the MyBatis proxy, which reports the error or handles the case as before.
+ *
+ * @author ferenczil
+ */
+public abstract class GeneratedMapper<T> {
+
+    /**
+     * Method returning a single mapped result, only a select is called directly
+     */
+    protected static final int RETURNS_ONE = 0;
+
+    /**
+     * Method returning a {@code List} or {@code Collection}, only a select is called directly
+     */
+    protected static final int RETURNS_LIST = 1;
+
+    /**
+     * Method returning an int, a long or a boolean: the result of a select, or the updated rows of any other command
+     */
+    protected static final int RETURNS_ROWS = 2;
+
+    /**
+     * Method returning nothing, a select needs a result handler and is left to the proxy
+     */
+    protected static final int RETURNS_NOTHING = 3;
+
+    protected final SqlSession sqlSession;
+
+    /**
+     * MyBatis proxy of the mapper, called by the methods the generated code does not handle
+     */
+    protected final T fallbackMapper;
+
+    protected final String[] statementIds;
+
+    protected final SqlCommandType[] commandTypes;
+
+    /**
+     * Whether the generated code calls the session for each method
+     */
+    protected final boolean[] direct;
+
+    private final Class<T> mapperType;
+
+    protected GeneratedMapper(Class<T> mapperType, SqlSession sqlSession, T fallbackMapper, int methods) {
+        this.mapperType = mapperType;
+        this.sqlSession = sqlSession;
+        this.fallbackMapper = fallbackMapper;
+        this.statementIds = new String[methods];
+        this.commandTypes = new SqlCommandType[methods];
+        this.direct = new boolean[methods];
+    }
+
+    /**
+     * Resolves the statement of a method
+     *
+     * @param index Index of the method in the generated class
+     * @param returns How the method returns its result, one of the {@code RETURNS_} constants
+     * @param name Name of the method
+     * @param parameterTypes Erased parameter types of the method, as declared
+     */
+    protected final void resolve(int index, int returns, String name, Class<?>... parameterTypes) {
+        final MapperMethod.SqlCommand command;
+        try {
+            final Method method = mapperType.getMethod(name, parameterTypes);
+            command = new MapperMethod.SqlCommand(sqlSession.getConfiguration(), mapperType, method);
+        }
+        catch (NoSuchMethodException e) {
+            throw new IllegalStateException("Generated mapper of " + mapperType.getName() + " does not match the interface, recompile it", e);
+        }
+        catch (BindingException e) {
+            // Left to the proxy, which reports the missing statement when the method is called
+            return;
+        }
+        statementIds[index] = command.getName();
+        commandTypes[index] = command.getType();
+        final boolean select = command.getType() == SqlCommandType.SELECT;
+        final boolean write = command.getType() == SqlCommandType.INSERT
+                || command.getType() == SqlCommandType.UPDATE
+                || command.getType() == SqlCommandType.DELETE;
+        switch (returns) {
+            case RETURNS_ONE:
+            case RETURNS_LIST:
+                direct[index] = select;
+                break;
+            case RETURNS_ROWS:
+                direct[index] = select || write;
+                break;
+            default:
+                direct[index] = write;
+        }
+    }
+
+    /**
+     * Runs an insert, update or delete
+     *
+     * @return Number of updated rows
+     */
+    protected final int write(int index, Object parameter) {
+        switch (commandTypes[index]) {
+            case INSERT:
+                return sqlSession.insert(statementIds[index], parameter);
+            case UPDATE:
+                return sqlSession.update(statementIds[index], parameter);
+            default:
+                return sqlSession.delete(statementIds[index], parameter);
+        }
+    }
+
+    /**
+     * @return The result of the select of a method returning a primitive, which can not be {@code null}
+     */
+    protected final Object primitive(int index, Object result) {
+        if (result == null) {
+            throw new BindingException("Mapper method '" + statementIds[index]
+                    + "' attempted to return null from a method with a primitive return type");
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "Generated mapper of " + mapperType.getName();
+    }
+}
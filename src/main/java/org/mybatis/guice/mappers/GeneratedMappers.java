@@ -0,0 +1,82 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.mappers;
+
+import org.apache.ibatis.session.SqlSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ * Finds the implementations generated for the mappers annotated with {@link GenerateMapper}.
+ *
+ * @author ferenczil
+ */
+public final class GeneratedMappers {
+    private static final Logger log = LoggerFactory.getLogger(GeneratedMappers.class);
+
+    private static final String SUFFIX = "_GeneratedImpl";
+
+    private GeneratedMappers() {
+    }
+
+    /**
+     * @param binaryName Binary name of the mapper interface
+     * @return Name of the generated class, in the package of the interface, e.g. {@code Outer_InnerMapper_GeneratedImpl}
+     */
+    public static String implementationName(String binaryName) {
+        final int packageEnd = binaryName.lastIndexOf('.');
+        return binaryName.substring(0, packageEnd + 1) + binaryName.substring(packageEnd + 1).replace('$', '_') + SUFFIX;
+    }
+
+    /**
+     * Creates the generated implementation of a mapper
+     *
+     * @param mapperType Mapper interface
+     * @param sqlSession Session called by the generated methods
+     * @param proxy MyBatis proxy of the mapper, called by the methods not generated
+     * @return The generated implementation, the proxy if the mapper is not annotated or was compiled without the
+     * processor
+     */
+    public static <T> T create(Class<T> mapperType, SqlSession sqlSession, T proxy) {
+        if (!mapperType.isAnnotationPresent(GenerateMapper.class)) {
+            return proxy;
+        }
+        final Class<?> implementation;
+        try {
+            implementation = Class.forName(implementationName(mapperType.getName()), true, mapperType.getClassLoader());
+        }
+        catch (ClassNotFoundException e) {
+            log.warn("Mapper {} is annotated with @GenerateMapper but was compiled without the processor, it is bound to the proxy", mapperType.getName());
+            return proxy;
+        }
+        try {
+            final Constructor<?> constructor = implementation.getConstructor(SqlSession.class, mapperType);
+            return mapperType.cast(constructor.newInstance(sqlSession, proxy));
+        }
+        catch (InvocationTargetException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Unable to create the generated mapper of " + mapperType.getName(), e.getCause());
+        }
+        catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Unable to create the generated mapper of " + mapperType.getName(), e);
+        }
+    }
+}
@@ -0,0 +1,355 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.mappers;
+
+import org.apache.ibatis.annotations.MapKey;
+import org.apache.ibatis.annotations.Param;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.ExecutableType;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Annotation processor generating the implementation of every mapper interface annotated with
+ * {@link GenerateMapper}, found at runtime by {@link GeneratedMappers}.
+ *
+ * A generated method calls the session with the statement id resolved when the mapper is created, and passes its
+ * arguments the way {@code MapperMethod} does: nothing, the single argument, or a {@link ParameterMap} with the
+ * names computed here. Methods returning a single result, a {@code List} or {@code Collection}, an update count or
+ * nothing are generated. The others, taking a {@code RowBounds} or a {@code ResultHandler}, returning an array, a
+ * {@code @MapKey} map, another collection or a cursor, generic or variable arity methods, call the MyBatis proxy.
+ *
+ * Like the {@link org.mybatis.guice.index.ClassIndexProcessor} it is not registered as a service, it is enabled
+ * with {@code -processor org.mybatis.guice.mappers.MapperImplementationProcessor}.
+ *
+ * @author ferenczil
+ */
+@SupportedAnnotationTypes("org.mybatis.guice.mappers.GenerateMapper")
+public final class MapperImplementationProcessor extends AbstractProcessor {
+
+    private static final int UNSUPPORTED = -1;
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (Element element : roundEnv.getElementsAnnotatedWith(GenerateMapper.class)) {
+            if (element.getKind() != ElementKind.INTERFACE) {
+                error(element, "@GenerateMapper is only allowed on mapper interfaces");
+                continue;
+            }
+            final TypeElement type = (TypeElement) element;
+            if (!type.getTypeParameters().isEmpty()) {
+                error(element, "The implementation of a generic mapper can not be generated");
+                continue;
+            }
+            if (type.getModifiers().contains(Modifier.PRIVATE)) {
+                error(element, "The implementation of a private mapper can not be generated");
+                continue;
+            }
+            try {
+                generate(type);
+            }
+            catch (IOException e) {
+                error(element, "Unable to write the implementation of the mapper: " + e);
+            }
+        }
+        return true;
+    }
+
+    private void generate(TypeElement type) throws IOException {
+        final Elements elements = processingEnv.getElementUtils();
+        final String implementation = GeneratedMappers.implementationName(elements.getBinaryName(type).toString());
+        final int packageEnd = implementation.lastIndexOf('.');
+        final String mapper = type.getQualifiedName().toString();
+
+        final StringBuilder fields = new StringBuilder();
+        final StringBuilder constructor = new StringBuilder();
+        final StringBuilder methods = new StringBuilder();
+        final List<ExecutableElement> abstractMethods = abstractMethods(type);
+        for (int i = 0; i < abstractMethods.size(); i++) {
+            method(i, (DeclaredType) type.asType(), abstractMethods.get(i), fields, constructor, methods);
+        }
+
+        try (Writer out = processingEnv.getFiler().createSourceFile(implementation, type).openWriter()) {
+            if (packageEnd > 0) {
+                out.write("package " + implementation.substring(0, packageEnd) + ";\n\n");
+            }
+            out.write("/**\n * Implementation of {@link " + mapper + "} generated by " + getClass().getName() + ", do not edit.\n */\n");
+            out.write("@SuppressWarnings({ \"unchecked\", \"rawtypes\" })\n");
+            out.write("public final class " + implementation.substring(packageEnd + 1)
+                    + " extends " + GeneratedMapper.class.getName() + "<" + mapper + "> implements " + mapper + " {\n");
+            out.write(fields.toString());
+            out.write("\n    public " + implementation.substring(packageEnd + 1) + "(org.apache.ibatis.session.SqlSession sqlSession, "
+                    + mapper + " fallbackMapper) {\n");
+            out.write("        super(" + mapper + ".class, sqlSession, fallbackMapper, " + abstractMethods.size() + ");\n");
+            out.write(constructor.toString());
+            out.write("    }\n");
+            out.write(methods.toString());
+            out.write("}\n");
+        }
+    }
+
+    /**
+     * @return Methods to implement, declared or inherited, once per signature
+     */
+    private List<ExecutableElement> abstractMethods(TypeElement type) {
+        final Types types = processingEnv.getTypeUtils();
+        final Map<String, ExecutableElement> methods = new LinkedHashMap<>();
+        for (ExecutableElement method : ElementFilter.methodsIn(processingEnv.getElementUtils().getAllMembers(type))) {
+            if (!method.getModifiers().contains(Modifier.ABSTRACT)) {
+                continue;
+            }
+            final ExecutableType member = (ExecutableType) types.asMemberOf((DeclaredType) type.asType(), method);
+            final StringBuilder signature = new StringBuilder(method.getSimpleName());
+            for (TypeMirror parameter : member.getParameterTypes()) {
+                signature.append(',').append(types.erasure(parameter));
+            }
+            if (!methods.containsKey(signature.toString())) {
+                methods.put(signature.toString(), method);
+            }
+        }
+        return new ArrayList<>(methods.values());
+    }
+
+    private void method(int index, DeclaredType mapper, ExecutableElement method,
+                        StringBuilder fields, StringBuilder constructor, StringBuilder out) {
+        final Types types = processingEnv.getTypeUtils();
+        final ExecutableType member = (ExecutableType) types.asMemberOf(mapper, method);
+        final TypeMirror returnType = member.getReturnType();
+        final List<? extends TypeMirror> parameterTypes = member.getParameterTypes();
+        final String name = method.getSimpleName().toString();
+        final int returns = returns(method, returnType);
+
+        out.append("\n    @Override\n    public ").append(returnType).append(' ').append(name).append('(');
+        final StringBuilder arguments = new StringBuilder();
+        for (int i = 0; i < parameterTypes.size(); i++) {
+            if (i > 0) {
+                out.append(", ");
+                arguments.append(", ");
+            }
+            out.append(parameterTypes.get(i)).append(" p").append(i);
+            arguments.append('p').append(i);
+        }
+        out.append(')');
+        if (!member.getThrownTypes().isEmpty()) {
+            out.append(" throws ");
+            for (int i = 0; i < member.getThrownTypes().size(); i++) {
+                out.append(i > 0 ? ", " : "").append(member.getThrownTypes().get(i));
+            }
+        }
+        out.append(" {\n");
+
+        final String fallback = (returnType.getKind() == TypeKind.VOID ? "" : "return ")
+                + "fallbackMapper." + name + "(" + arguments + ");";
+        if (returns == UNSUPPORTED || !method.getTypeParameters().isEmpty() || method.isVarArgs() || hasSpecialParameter(parameterTypes)) {
+            out.append("        ").append(fallback).append("\n    }\n");
+            return;
+        }
+
+        constructor.append("        resolve(").append(index).append(", ").append(returnsConstant(returns))
+                .append(", \"").append(name).append('"');
+        for (VariableElement parameter : method.getParameters()) {
+            constructor.append(", ").append(types.erasure(parameter.asType())).append(".class");
+        }
+        constructor.append(");\n");
+
+        out.append("        if (!direct[").append(index).append("]) {\n            ").append(fallback)
+                .append(returnType.getKind() == TypeKind.VOID ? "\n            return;" : "").append("\n        }\n");
+        out.append("        final Object parameter = ").append(parameter(index, method, fields)).append(";\n");
+
+        final String statement = "statementIds[" + index + "], parameter";
+        switch (returns) {
+            case GeneratedMapper.RETURNS_LIST:
+                out.append("        return (").append(returnType).append(") (Object) sqlSession.selectList(").append(statement).append(");\n");
+                break;
+            case GeneratedMapper.RETURNS_NOTHING:
+                out.append("        write(").append(index).append(", parameter);\n");
+                break;
+            case GeneratedMapper.RETURNS_ROWS:
+                out.append("        if (commandTypes[").append(index).append("] == org.apache.ibatis.mapping.SqlCommandType.SELECT) {\n    ");
+                out.append(selectOne(index, returnType, statement));
+                out.append("        }\n");
+                out.append("        return ").append(rows(index, returnType)).append(";\n");
+                break;
+            default:
+                out.append(selectOne(index, returnType, statement));
+        }
+        out.append("    }\n");
+    }
+
+    private String selectOne(int index, TypeMirror returnType, String statement) {
+        if (returnType.getKind().isPrimitive()) {
+            final String box = processingEnv.getTypeUtils().boxedClass((PrimitiveType) returnType).getQualifiedName().toString();
+            return "        return (" + box + ") primitive(" + index + ", sqlSession.selectOne(" + statement + "));\n";
+        }
+        return "        return (" + returnType + ") (Object) sqlSession.selectOne(" + statement + ");\n";
+    }
+
+    private String rows(int index, TypeMirror returnType) {
+        final String type = boxedName(returnType);
+        if (type.equals(Long.class.getName())) {
+            return "(long) write(" + index + ", parameter)";
+        }
+        if (type.equals(Boolean.class.getName())) {
+            return "write(" + index + ", parameter) > 0";
+        }
+        return "write(" + index + ", parameter)";
+    }
+
+    /**
+     * The parameter object built by {@code MapperMethod.MethodSignature} in MyBatis
+     */
+    private String parameter(int index, ExecutableElement method, StringBuilder fields) {
+        final List<? extends VariableElement> parameters = method.getParameters();
+        boolean named = false;
+        for (VariableElement parameter : parameters) {
+            named |= parameter.getAnnotation(Param.class) != null;
+        }
+        if (parameters.isEmpty()) {
+            return "null";
+        }
+        if (parameters.size() == 1 && !named) {
+            return "p0";
+        }
+
+        final List<String> names = new ArrayList<>();
+        final List<String> values = new ArrayList<>();
+        for (int i = 0; i < parameters.size(); i++) {
+            final Param param = parameters.get(i).getAnnotation(Param.class);
+            names.add(param != null ? param.value() : String.valueOf(i));
+            values.add("p" + i);
+        }
+        for (int i = 0; i < parameters.size(); i++) {
+            final String generic = "param" + (i + 1);
+            if (!names.contains(generic)) {
+                names.add(generic);
+                values.add("p" + i);
+            }
+        }
+
+        fields.append("\n    private static final String[] PARAMETERS_").append(index).append(" = { ");
+        for (int i = 0; i < names.size(); i++) {
+            fields.append(i > 0 ? ", " : "").append(literal(names.get(i)));
+        }
+        fields.append(" };\n");
+        final StringBuilder array = new StringBuilder("new " + ParameterMap.class.getName() + "(PARAMETERS_" + index + ", new Object[] { ");
+        for (int i = 0; i < values.size(); i++) {
+            array.append(i > 0 ? ", " : "").append(values.get(i));
+        }
+        return array.append(" })").toString();
+    }
+
+    private int returns(ExecutableElement method, TypeMirror returnType) {
+        final Types types = processingEnv.getTypeUtils();
+        final TypeKind kind = returnType.getKind();
+        if (kind == TypeKind.VOID) {
+            return GeneratedMapper.RETURNS_NOTHING;
+        }
+        if (kind == TypeKind.INT || kind == TypeKind.LONG || kind == TypeKind.BOOLEAN) {
+            return GeneratedMapper.RETURNS_ROWS;
+        }
+        if (kind.isPrimitive()) {
+            return GeneratedMapper.RETURNS_ONE;
+        }
+        if (kind != TypeKind.DECLARED) {
+            // Arrays, and type variables of generic methods
+            return UNSUPPORTED;
+        }
+        final String erasure = types.erasure(returnType).toString();
+        if (erasure.equals(Integer.class.getName()) || erasure.equals(Long.class.getName()) || erasure.equals(Boolean.class.getName())) {
+            return GeneratedMapper.RETURNS_ROWS;
+        }
+        if (erasure.equals("java.util.List") || erasure.equals("java.util.Collection")) {
+            return GeneratedMapper.RETURNS_LIST;
+        }
+        if (isA(returnType, "java.util.Collection") || isA(returnType, "java.lang.Iterable") || isA(returnType, "java.util.Iterator")
+                || method.getAnnotation(MapKey.class) != null) {
+            // Other collections are converted by MyBatis, cursors are opened by the session manager
+            return UNSUPPORTED;
+        }
+        return GeneratedMapper.RETURNS_ONE;
+    }
+
+    private boolean hasSpecialParameter(List<? extends TypeMirror> parameterTypes) {
+        for (TypeMirror parameterType : parameterTypes) {
+            if (isA(parameterType, "org.apache.ibatis.session.RowBounds") || isA(parameterType, "org.apache.ibatis.session.ResultHandler")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isA(TypeMirror type, String className) {
+        final TypeElement element = processingEnv.getElementUtils().getTypeElement(className);
+        final Types types = processingEnv.getTypeUtils();
+        return element != null && types.isAssignable(types.erasure(type), types.erasure(element.asType()));
+    }
+
+    private String boxedName(TypeMirror type) {
+        if (type.getKind().isPrimitive()) {
+            return processingEnv.getTypeUtils().boxedClass((PrimitiveType) type).getQualifiedName().toString();
+        }
+        return processingEnv.getTypeUtils().erasure(type).toString();
+    }
+
+    private static String returnsConstant(int returns) {
+        switch (returns) {
+            case GeneratedMapper.RETURNS_LIST:
+                return "RETURNS_LIST";
+            case GeneratedMapper.RETURNS_ROWS:
+                return "RETURNS_ROWS";
+            case GeneratedMapper.RETURNS_NOTHING:
+                return "RETURNS_NOTHING";
+            default:
+                return "RETURNS_ONE";
+        }
+    }
+
+    private static String literal(String value) {
+        return '"' + value.replace("\\", "\\\\").replace("\"", "\\\"") + '"';
+    }
+
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+}
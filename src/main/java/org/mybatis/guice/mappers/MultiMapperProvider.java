@@ -36,7 +36,8 @@ public final class MultiMapperProvider<T> implements Provider<T> {
     }
 
     public T get() {
-        return sessionManager.get().getMapper(mapperType);
+        final DbSessionManager manager = sessionManager.get();
+        return GeneratedMappers.create(mapperType, manager, manager.getMapper(mapperType));
     }
 
 }
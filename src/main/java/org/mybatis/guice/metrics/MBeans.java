@@ -0,0 +1,84 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Registers the metrics of the environments in the platform MBean server
+ * under {@code org.mybatis.guice:type=<type>,environment=<environment id>}, metrics spanning
+ * every environment under {@code org.mybatis.guice:type=<type>}.
+ *
+ * @author ferenczil
+ */
+public final class MBeans {
+    private static final Logger log = LoggerFactory.getLogger(MBeans.class);
+
+    public static final String DOMAIN = "org.mybatis.guice";
+
+    private MBeans() {
+    }
+
+    public static ObjectName name(String type) {
+        try {
+            return new ObjectName(DOMAIN + ":type=" + type);
+        }
+        catch (Exception e) {
+            throw new IllegalArgumentException("Invalid MBean type " + type, e);
+        }
+    }
+
+    public static ObjectName name(String type, String environmentId) {
+        try {
+            return new ObjectName(DOMAIN + ":type=" + type + ",environment=" + ObjectName.quote(environmentId));
+        }
+        catch (Exception e) {
+            throw new IllegalArgumentException("Invalid MBean name for environment " + environmentId, e);
+        }
+    }
+
+    /**
+     * Registers an MBean, replacing the one registered under the same name, e.g. by an earlier injector
+     * of the same application. Failures are logged, metrics are not worth failing the environment for.
+     */
+    public static void register(String type, String environmentId, Object mbean) {
+        register(name(type, environmentId), mbean);
+    }
+
+    public static void register(String type, Object mbean) {
+        register(name(type), mbean);
+    }
+
+    private static void register(ObjectName name, Object mbean) {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            synchronized (MBeans.class) {
+                if (server.isRegistered(name)) {
+                    server.unregisterMBean(name);
+                }
+                server.registerMBean(mbean, name);
+            }
+        }
+        catch (Exception e) {
+            log.warn("Failed to register MBean {}", name, e);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latency, row and error counts of one mapped statement in one environment
+ *
+ * @author ferenczil
+ */
+public final class StatementMetrics {
+
+    private final String statementId;
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    private final AtomicLong rows = new AtomicLong();
+
+    private final AtomicLong errors = new AtomicLong();
+
+    StatementMetrics(String statementId) {
+        this.statementId = statementId;
+    }
+
+    void recordSuccess(long nanos, int rowCount) {
+        latency.record(nanos);
+        if (rowCount > 0) {
+            rows.addAndGet(rowCount);
+        }
+    }
+
+    void recordError(long nanos) {
+        latency.record(nanos);
+        errors.incrementAndGet();
+    }
+
+    public String getStatementId() {
+        return statementId;
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    /**
+     * @return Rows returned by queries or affected by updates, batched updates report no row counts
+     */
+    public long getRows() {
+        return rows.get();
+    }
+
+    public long getErrors() {
+        return errors.get();
+    }
+
+    void reset() {
+        latency.reset();
+        rows.set(0);
+        errors.set(0);
+    }
+
+    StatementStatistics snapshot() {
+        return new StatementStatistics(statementId,
+                latency.getCount(),
+                errors.get(),
+                rows.get(),
+                latency.getMeanNanos(),
+                latency.getPercentileNanos(50),
+                latency.getPercentileNanos(90),
+                latency.getPercentileNanos(99),
+                latency.getPercentileNanos(99.9),
+                latency.getMaxNanos());
+    }
+}
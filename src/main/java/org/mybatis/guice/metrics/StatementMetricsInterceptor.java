@@ -0,0 +1,153 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.metrics;
+
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Plugin;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Records the latency, the row count and the failures of every mapped statement of an environment,
+ * published as the {@value #MBEAN_TYPE} MBean of the environment.
+ *
+ * The time includes the execution and the mapping of the results as seen by the session, cache hits included.
+ *
+ * @author ferenczil
+ */
+@Intercepts({
+        @Signature(type = Executor.class, method = "update", args = {MappedStatement.class, Object.class}),
+        @Signature(type = Executor.class, method = "query", args = {MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class})
+})
+public final class StatementMetricsInterceptor implements Interceptor, StatementMetricsMXBean {
+
+    public static final String MBEAN_TYPE = "StatementMetrics";
+
+    private final String environmentId;
+
+    private final ConcurrentMap<String, StatementMetrics> statements = new ConcurrentHashMap<>();
+
+    /**
+     * @param environmentId Environment of the intercepted sessions
+     */
+    @Inject
+    public StatementMetricsInterceptor(@Named("mybatis.environment.id") String environmentId) {
+        this(environmentId, true);
+    }
+
+    public StatementMetricsInterceptor(String environmentId, boolean exportMBean) {
+        this.environmentId = environmentId;
+        if (exportMBean) {
+            MBeans.register(MBEAN_TYPE, environmentId, this);
+        }
+    }
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+        final StatementMetrics metrics = metrics(((MappedStatement) invocation.getArgs()[0]).getId());
+        final long start = System.nanoTime();
+        final Object result;
+        try {
+            result = invocation.proceed();
+        }
+        catch (Throwable t) {
+            metrics.recordError(System.nanoTime() - start);
+            throw t;
+        }
+        final long elapsed = System.nanoTime() - start;
+        if (result instanceof Integer) {
+            metrics.recordSuccess(elapsed, (Integer) result);
+        }
+        else if (result instanceof Collection) {
+            metrics.recordSuccess(elapsed, ((Collection<?>) result).size());
+        }
+        else {
+            metrics.recordSuccess(elapsed, 0);
+        }
+        return result;
+    }
+
+    private StatementMetrics metrics(String statementId) {
+        StatementMetrics metrics = statements.get(statementId);
+        if (metrics == null) {
+            final StatementMetrics created = new StatementMetrics(statementId);
+            metrics = statements.putIfAbsent(statementId, created);
+            if (metrics == null) {
+                metrics = created;
+            }
+        }
+        return metrics;
+    }
+
+    @Override
+    public Object plugin(Object target) {
+        return Plugin.wrap(target, this);
+    }
+
+    @Override
+    public void setProperties(Properties properties) {
+        // nothing to configure
+    }
+
+    /**
+     * @param statementId Id of the mapped statement
+     * @return Metrics of the statement, {@code null} if it was not executed
+     */
+    public StatementMetrics getMetrics(String statementId) {
+        return statements.get(statementId);
+    }
+
+    @Override
+    public String getEnvironmentId() {
+        return environmentId;
+    }
+
+    @Override
+    public List<StatementStatistics> getStatements() {
+        final List<StatementStatistics> result = new ArrayList<>(statements.size());
+        for (StatementMetrics metrics : statements.values()) {
+            result.add(metrics.snapshot());
+        }
+        return result;
+    }
+
+    @Override
+    public StatementStatistics getStatement(String statementId) {
+        final StatementMetrics metrics = statements.get(statementId);
+        return metrics != null ? metrics.snapshot() : null;
+    }
+
+    @Override
+    public void reset() {
+        for (StatementMetrics metrics : statements.values()) {
+            metrics.reset();
+        }
+    }
+}
@@ -17,6 +17,10 @@ package org.mybatis.guice.module;
 
 import com.google.inject.Provider;
 import org.apache.ibatis.type.TypeHandler;
+import org.mybatis.guice.cache.CacheEviction;
+import org.mybatis.guice.cache.OffHeapCache;
+import org.mybatis.guice.datasource.replica.LoadBalancingPolicy;
+import org.mybatis.guice.datasource.replica.ReplicaLagProbe;
 
 import javax.sql.DataSource;
 import java.lang.annotation.Annotation;
@@ -63,6 +67,120 @@ public class DbBuilder {
         return this;
     }
 
+    /**
+     * Cache prepared statements per physical connection across transactions. Useful with data sources
+     * without a statement cache of their own, like the MyBatis built-in pools. The pool must be the MyBatis one,
+     * DBCP {@code BasicDataSource} with {@code accessToUnderlyingConnectionAllowed}, c3p0 or BoneCP
+     *
+     * @param maxStatementsPerConnection Idle statements kept open per connection, least recently used are closed first
+     * @return builder
+     */
+    public DbBuilder statementCache(int maxStatementsPerConnection) {
+        module.withStatementCache(maxStatementsPerConnection);
+        return this;
+    }
+
+    /**
+     * Keep the second-level cache of the mappers using {@link OffHeapCache} outside of the heap, in a store
+     * shared by all namespaces of the environment. Least recently used entries are evicted, values are not compressed.
+     *
+     * @param capacityBytes Off-heap memory of the cached values
+     * @return builder
+     */
+    public DbBuilder offHeapCache(long capacityBytes) {
+        module.withOffHeapCache(capacityBytes, CacheEviction.LRU, false);
+        return this;
+    }
+
+    /**
+     * Keep the second-level cache of the mappers using {@link OffHeapCache} outside of the heap, in a store
+     * shared by all namespaces of the environment.
+     *
+     * @param capacityBytes Off-heap memory of the cached values
+     * @param eviction Entries evicted when the store is full
+     * @param compress Whether values are compressed
+     * @return builder
+     */
+    public DbBuilder offHeapCache(long capacityBytes, CacheEviction eviction, boolean compress) {
+        module.withOffHeapCache(capacityBytes, eviction, compress);
+        return this;
+    }
+
+    /**
+     * Record the latency, row and error counts of every mapped statement of the environment,
+     * published as an MBean named by the environment id
+     *
+     * @return builder
+     */
+    public DbBuilder statementMetrics() {
+        module.withStatementMetrics();
+        return this;
+    }
+
+    /**
+     * Record the checkout wait time, the active, idle and pending connections and the other statistics
+     * of the connection pool of the environment, published as an MBean named by the environment id
+     *
+     * @return builder
+     */
+    public DbBuilder poolMetrics() {
+        module.withPoolMetrics();
+        return this;
+    }
+
+    /**
+     * Limit the managed and auto-sessions the environment holds at the same time, so threads needing a slow
+     * database do not pile up on its connection pool. A thread refused a session gets a
+     * {@code BulkheadFullException}, the refusals are published as an MBean named by the environment id
+     *
+     * @param maxSessions Maximum number of sessions held at the same time
+     * @param maxWaiting Maximum number of threads waiting for a session, further ones are refused at once
+     * @param timeoutMillis Maximum time to wait for a session
+     * @return builder
+     */
+    public DbBuilder bulkhead(int maxSessions, int maxWaiting, long timeoutMillis) {
+        module.withBulkhead(maxSessions, maxWaiting, timeoutMillis);
+        return this;
+    }
+
+    /**
+     * Add a read replica {@code DataSource} to the environment.
+     * Method can be invoked more than once, sessions of {@code @Transactional(readOnly = true)} methods
+     * are spread over all replicas
+     *
+     * @param replicaProvider Provider of the replica DataSource
+     * @return builder
+     */
+    public DbBuilder addReplica(Provider<DataSource> replicaProvider) {
+        module.addReplica(replicaProvider);
+        return this;
+    }
+
+    /**
+     * Set the policy choosing the replica of a read-only session, round-robin if not set
+     *
+     * @param policy Load balancing policy, see {@code LoadBalancingPolicies}
+     * @return builder
+     */
+    public DbBuilder loadBalancing(LoadBalancingPolicy policy) {
+        module.withLoadBalancing(policy);
+        return this;
+    }
+
+    /**
+     * Track the replication lag of the replicas. A thread reading after its own commit, or after
+     * requiring a {@code ConsistencyToken}, only uses replicas which have caught up, otherwise the primary.
+     * Without a probe the replicas are considered up to date
+     *
+     * @param probe Lag probe, see {@code ReplicaLagProbes}
+     * @param intervalMillis Time between the end of a measurement and the start of the next one, on a background thread
+     * @return builder
+     */
+    public DbBuilder replicaLagProbe(ReplicaLagProbe probe, long intervalMillis) {
+        module.withReplicaLagProbe(probe, intervalMillis);
+        return this;
+    }
+
     /**
      * Add a mapper to the given environment
      * Method can be invoked more than once, all mappers will be configured
@@ -89,6 +207,32 @@ public class DbBuilder {
         return this;
     }
 
+    /**
+     * Add the asynchronous variant of a mapper. Its methods have the name and parameters of the mapper methods
+     * and return a {@code Future} of their result. Each call runs on the executor of the environment in its own
+     * session, see {@link #asyncExecutor(int, int)}. The mapper is added as well
+     *
+     * @param asyncType Asynchronous mapper interface
+     * @param mapper Mapper interface called by it
+     * @return builder
+     */
+    public DbBuilder addAsyncMapper(Class<?> asyncType, Class<?> mapper) {
+        this.module.addAsyncMapper(asyncType, mapper);
+        return this;
+    }
+
+    /**
+     * Set the limits of the executor running the asynchronous mapper calls, 4 threads and 100 queued calls by default
+     *
+     * @param threads Maximum number of concurrent calls
+     * @param queueSize Maximum number of waiting calls, further calls are rejected
+     * @return builder
+     */
+    public DbBuilder asyncExecutor(int threads, int queueSize) {
+        this.module.withAsyncExecutor(threads, queueSize);
+        return this;
+    }
+
     /**
      * Add a mapper xml mapping
      * Method can be invoked more than once, all mappers will be configured
@@ -30,20 +30,36 @@ import org.apache.ibatis.session.SqlSessionFactory;
 import org.apache.ibatis.transaction.TransactionFactory;
 import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
 import org.apache.ibatis.type.TypeHandler;
+import org.mybatis.guice.cache.CacheEviction;
+import org.mybatis.guice.cache.OffHeapStore;
 import org.mybatis.guice.configuration.ConfigurationProvider;
+import org.mybatis.guice.configuration.ParallelStartup;
 import org.mybatis.guice.configuration.Mappers;
 import org.mybatis.guice.configuration.MappingTypeHandlers;
 import org.mybatis.guice.configuration.TypeAliases;
+import org.mybatis.guice.datasource.replica.LoadBalancingPolicies;
+import org.mybatis.guice.datasource.replica.LoadBalancingPolicy;
+import org.mybatis.guice.datasource.replica.ReplicaLagProbe;
+import org.mybatis.guice.datasource.replica.ReplicaSet;
+import org.mybatis.guice.datasource.replica.ReplicaSetProvider;
 import org.mybatis.guice.environment.EnvironmentProvider;
+import org.mybatis.guice.environment.Warmup;
+import org.mybatis.guice.mappers.AsyncMapperExecutor;
+import org.mybatis.guice.mappers.AsyncMapperProvider;
 import org.mybatis.guice.mappers.MultiMapperProvider;
+import org.mybatis.guice.metrics.StatementMetricsInterceptor;
 import org.mybatis.guice.session.DbSessionManager;
+import org.mybatis.guice.session.SessionBulkhead;
 import org.mybatis.guice.session.SqlSessionFactoryProvider;
+import org.mybatis.guice.transactional.TransactionAccountingInterceptor;
 
 import javax.sql.DataSource;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Constructor;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -71,8 +87,25 @@ public class DbModule extends PrivateModule {
     private String environmentId;
     private Annotation annotatedWith = null;
     private Provider<DataSource> dataSourceProvider;
+    private List<Provider<DataSource>> replicaProviders;
+    private LoadBalancingPolicy loadBalancingPolicy;
+    private ReplicaLagProbe replicaLagProbe;
+    private long replicaLagProbeInterval;
+    private int statementCacheSize;
+    private OffHeapStore offHeapStore;
+    private boolean statementMetrics;
+    private boolean transactionAccounting;
+    private boolean poolMetrics;
+    private ParallelStartup parallelStartup;
+    private Warmup warmup;
+    private int asyncThreads = 4;
+    private int asyncQueueSize = 100;
+    private int bulkheadSessions;
+    private int bulkheadWaiting;
+    private long bulkheadTimeoutMillis;
 
     private Set<Class<?>> mappersSet;
+    private Map<Class<?>, Class<?>> asyncMappersMap;
     private Set<String> mapperXmlSet;
     private Map<String, Class> aliasesMap;
     private Map<Class<?>, Class<? extends TypeHandler<?>>> handlersMap;
@@ -85,9 +118,11 @@ public class DbModule extends PrivateModule {
         this.environmentId = environmentId;
 
         this.mappersSet = new HashSet<>();
+        this.asyncMappersMap = new HashMap<>();
         this.mapperXmlSet = new HashSet<>();
         this.aliasesMap = new HashMap<>();
         this.handlersMap = new HashMap<>();
+        this.replicaProviders = new ArrayList<>();
     }
 
     @Override
@@ -100,6 +135,12 @@ public class DbModule extends PrivateModule {
         mapperXmls = newSetBinder(binder(), String.class, Mappers.class);
 
         bindConstant().annotatedWith(Names.named("mybatis.environment.id")).to(environmentId);
+        if (statementCacheSize > 0) {
+            bindConstant().annotatedWith(Names.named("mybatis.statementCache.size")).to(statementCacheSize);
+        }
+        if (poolMetrics) {
+            bindConstant().annotatedWith(Names.named("mybatis.poolMetrics")).to(true);
+        }
 
         bind(TransactionFactory.class).to(JdbcTransactionFactory.class).in(Scopes.SINGLETON);
 
@@ -107,10 +148,49 @@ public class DbModule extends PrivateModule {
         bind(DbSessionManager.class).in(Scopes.SINGLETON);
         bind(SqlSession.class).to(DbSessionManager.class).in(Scopes.SINGLETON);
         bind(Environment.class).toProvider(EnvironmentProvider.class).in(Scopes.SINGLETON);
+        bind(ConfigurationProvider.class).in(Scopes.SINGLETON);
         bind(Configuration.class).toProvider(ConfigurationProvider.class).in(Scopes.SINGLETON);
+        if (parallelStartup != null) {
+            requestInjection(new ParallelStartup.Registration(parallelStartup));
+        }
         bind(SqlSessionFactory.class).toProvider(SqlSessionFactoryProvider.class).in(Scopes.SINGLETON);
 
         bind(DataSource.class).toProvider(dataSourceProvider).in(Scopes.SINGLETON);
+        if (warmup != null) {
+            requestInjection(new Warmup.Registration(warmup));
+        }
+
+        // Bulkhead
+        if (bulkheadSessions > 0) {
+            bind(SessionBulkhead.class).toInstance(new SessionBulkhead(environmentId, bulkheadSessions, bulkheadWaiting, bulkheadTimeoutMillis, true));
+            bindWithKey(SessionBulkhead.class);
+        }
+
+        // Read replicas
+        if (!replicaProviders.isEmpty()) {
+            for (Provider<DataSource> replicaProvider : replicaProviders) {
+                requestInjection(replicaProvider);
+            }
+            LoadBalancingPolicy policy = loadBalancingPolicy != null ? loadBalancingPolicy : LoadBalancingPolicies.roundRobin();
+            bind(ReplicaSet.class).toProvider(new ReplicaSetProvider(replicaProviders, policy, replicaLagProbe, replicaLagProbeInterval)).in(Scopes.SINGLETON);
+            bindWithKey(ReplicaSet.class);
+        }
+
+        // Second-level cache
+        if (offHeapStore != null) {
+            bind(OffHeapStore.class).toInstance(offHeapStore);
+            bindWithKey(OffHeapStore.class);
+        }
+
+        // Metrics
+        if (statementMetrics) {
+            bind(StatementMetricsInterceptor.class).in(Scopes.SINGLETON);
+            interceptors.addBinding().to(StatementMetricsInterceptor.class);
+            bindWithKey(StatementMetricsInterceptor.class);
+        }
+        if (transactionAccounting) {
+            interceptors.addBinding().to(TransactionAccountingInterceptor.class).in(Scopes.SINGLETON);
+        }
 
         bind(ObjectFactory.class).to(objectFactoryType).in(Scopes.SINGLETON);
 
@@ -128,6 +208,18 @@ public class DbModule extends PrivateModule {
             mapperXmls.addBinding().toInstance(mapperXml);
         }
 
+        // Asynchronous mappers
+        if (!asyncMappersMap.isEmpty()) {
+            bindConstant().annotatedWith(Names.named("mybatis.async.threads")).to(asyncThreads);
+            bindConstant().annotatedWith(Names.named("mybatis.async.queueSize")).to(asyncQueueSize);
+            bind(AsyncMapperExecutor.class).in(Scopes.SINGLETON);
+            bindWithKey(AsyncMapperExecutor.class);
+            for (Map.Entry<Class<?>, Class<?>> e : asyncMappersMap.entrySet()) {
+                bindAsyncMapper(e.getKey(), e.getValue());
+                bindWithKey(e.getKey());
+            }
+        }
+
         // Type handlers
         for (Map.Entry<Class<?>, Class<? extends TypeHandler<?>>> e : handlersMap.entrySet()) {
             handlers.addBinding(e.getKey()).toInstance(createTypeHandler(e.getKey(), e.getValue()));
@@ -138,10 +230,30 @@ public class DbModule extends PrivateModule {
         bindWithKey(DbSessionManager.class);
     }
 
+    public String getEnvironmentId() {
+        return environmentId;
+    }
+
+    public Annotation getAnnotation() {
+        return annotatedWith;
+    }
+
     public <T> void addMapper(Class<T> type) {
         mappersSet.add(type);
     }
 
+    public void addAsyncMapper(Class<?> asyncType, Class<?> mapperType) {
+        mappersSet.add(mapperType);
+        asyncMappersMap.put(asyncType, mapperType);
+    }
+
+    public void withAsyncExecutor(int threads, int queueSize) {
+        Preconditions.checkArgument(threads > 0, "Asynchronous mapper threads must be positive");
+        Preconditions.checkArgument(queueSize > 0, "Asynchronous mapper queue size must be positive");
+        this.asyncThreads = threads;
+        this.asyncQueueSize = queueSize;
+    }
+
     public void addMapperXml(String resource) {
         mapperXmlSet.add(resource);
     }
@@ -163,6 +275,57 @@ public class DbModule extends PrivateModule {
         this.dataSourceProvider = dataSourceProvider;
     }
 
+    public void addReplica(Provider<DataSource> replicaProvider) {
+        this.replicaProviders.add(replicaProvider);
+    }
+
+    public void withLoadBalancing(LoadBalancingPolicy loadBalancingPolicy) {
+        this.loadBalancingPolicy = loadBalancingPolicy;
+    }
+
+    public void withStatementCache(int maxStatementsPerConnection) {
+        Preconditions.checkArgument(maxStatementsPerConnection > 0, "Statement cache size must be positive");
+        this.statementCacheSize = maxStatementsPerConnection;
+    }
+
+    public void withOffHeapCache(long capacityBytes, CacheEviction eviction, boolean compress) {
+        this.offHeapStore = new OffHeapStore(capacityBytes, eviction, compress);
+    }
+
+    public void withBulkhead(int maxSessions, int maxWaiting, long timeoutMillis) {
+        Preconditions.checkArgument(maxSessions > 0, "Bulkhead sessions must be positive");
+        Preconditions.checkArgument(maxWaiting >= 0, "Bulkhead waiting threads can not be negative");
+        Preconditions.checkArgument(timeoutMillis >= 0, "Bulkhead timeout can not be negative");
+        this.bulkheadSessions = maxSessions;
+        this.bulkheadWaiting = maxWaiting;
+        this.bulkheadTimeoutMillis = timeoutMillis;
+    }
+
+    public void withStatementMetrics() {
+        this.statementMetrics = true;
+    }
+
+    public void withParallelStartup(ParallelStartup parallelStartup) {
+        this.parallelStartup = parallelStartup;
+    }
+
+    public void withWarmup(Warmup warmup) {
+        this.warmup = warmup;
+    }
+
+    public void withPoolMetrics() {
+        this.poolMetrics = true;
+    }
+
+    public void withTransactionAccounting() {
+        this.transactionAccounting = true;
+    }
+
+    public void withReplicaLagProbe(ReplicaLagProbe replicaLagProbe, long intervalMillis) {
+        this.replicaLagProbe = replicaLagProbe;
+        this.replicaLagProbeInterval = intervalMillis;
+    }
+
 
     // --------------------------------------------------------------------
     // Internal
@@ -180,6 +343,10 @@ public class DbModule extends PrivateModule {
         mappers.addBinding().toInstance(mapperType);
     }
 
+    private <T> void bindAsyncMapper(Class<T> asyncType, Class<?> mapperType) {
+        bind(asyncType).toProvider(new AsyncMapperProvider<>(asyncType, mapperType)).in(Scopes.SINGLETON);
+    }
+
     /**
      * Internal helper method to bind a class to a specific key (constructed with type + annotatedWith)
      *
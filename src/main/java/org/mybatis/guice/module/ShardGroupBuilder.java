@@ -0,0 +1,110 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.module;
+
+import org.mybatis.guice.shard.ShardKeyExtractor;
+import org.mybatis.guice.shard.ShardRouter;
+
+import java.lang.annotation.Annotation;
+
+/**
+ * EDSL for building a group of shards, environments holding the partitions of one logical database
+ *
+ * @author ferenczil
+ */
+public class ShardGroupBuilder {
+
+    ShardGroupModule module;
+
+    /**
+     * Constructs a new shard group
+     *
+     * @param module {@code ShardGroupModule} of the group
+     */
+    public ShardGroupBuilder(ShardGroupModule module) {
+        this.module = module;
+    }
+
+    /**
+     * Specify the annotation of the group mappers and of its {@code ShardGroup}, {@code Database.named(groupId)}
+     * if not set
+     *
+     * @param annotatedWith Annotation of the group
+     * @return builder
+     */
+    public ShardGroupBuilder annotatedWith(Annotation annotatedWith) {
+        module.withAnnotation(annotatedWith);
+        return this;
+    }
+
+    /**
+     * Add an environment to the group as its next shard. Shards without an annotation of their own are
+     * annotated with {@code Database.named(environmentId)}
+     *
+     * @param shard Builder returned by {@code MultiDbModule.add(environmentId)}
+     * @return builder
+     */
+    public ShardGroupBuilder addShard(DbBuilder shard) {
+        module.addShard(shard.module);
+        return this;
+    }
+
+    /**
+     * Add a mapper to every shard, and bind the mapper of the group routing each call to the shard owning its key
+     *
+     * @param mapper Mapper interface
+     * @return builder
+     */
+    public ShardGroupBuilder addMapper(Class<?> mapper) {
+        module.addMapper(mapper);
+        return this;
+    }
+
+    /**
+     * Add a list of mappers to every shard, see {@link #addMapper(Class)}
+     *
+     * @param mappers Mapper interfaces
+     * @return builder
+     */
+    public ShardGroupBuilder addMappers(Class<?>... mappers) {
+        for (Class<?> mapper : mappers) {
+            module.addMapper(mapper);
+        }
+        return this;
+    }
+
+    /**
+     * Set how the key of a mapper call is found, the parameter annotated with {@code ShardKey} if not set
+     *
+     * @param shardKeyExtractor Extractor, see {@code ShardKeys}
+     * @return builder
+     */
+    public ShardGroupBuilder shardKey(ShardKeyExtractor shardKeyExtractor) {
+        module.withShardKeyExtractor(shardKeyExtractor);
+        return this;
+    }
+
+    /**
+     * Set the router choosing the shard owning a key, consistent hashing if not set
+     *
+     * @param router Router, see {@code ShardRouters}
+     * @return builder
+     */
+    public ShardGroupBuilder router(ShardRouter router) {
+        module.withRouter(router);
+        return this;
+    }
+}
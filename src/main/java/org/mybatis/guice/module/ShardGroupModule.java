@@ -0,0 +1,121 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.module;
+
+import com.google.common.base.Preconditions;
+import com.google.inject.AbstractModule;
+import com.google.inject.Key;
+import com.google.inject.Scopes;
+import org.mybatis.guice.annotation.Database;
+import org.mybatis.guice.session.DbSessionManager;
+import org.mybatis.guice.shard.ShardGroup;
+import org.mybatis.guice.shard.ShardGroupProvider;
+import org.mybatis.guice.shard.ShardKeyExtractor;
+import org.mybatis.guice.shard.ShardKeys;
+import org.mybatis.guice.shard.ShardRouter;
+import org.mybatis.guice.shard.ShardRouters;
+import org.mybatis.guice.shard.ShardedMapperProvider;
+
+import java.lang.annotation.Annotation;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Internal module binding a shard group over the environments of its shards
+ *
+ * @author ferenczil
+ */
+public class ShardGroupModule extends AbstractModule {
+
+    private final String groupId;
+    private Annotation annotatedWith;
+    private ShardKeyExtractor shardKeyExtractor = ShardKeys.annotated();
+    private ShardRouter router = ShardRouters.consistentHash();
+
+    private final Set<Class<?>> mappersSet;
+    private final List<DbModule> shards;
+
+    /**
+     * Constructs a new ShardGroupModule
+     * @param groupId Id of the group
+     */
+    public ShardGroupModule(String groupId) {
+        this.groupId = groupId;
+        this.mappersSet = new LinkedHashSet<>();
+        this.shards = new ArrayList<>();
+    }
+
+    /**
+     * Adds the mappers of the group to every shard, and annotates the shards without an annotation with their
+     * environment id. Must be called before the modules of the shards are installed.
+     */
+    public void configureShards() {
+        for (DbModule shard : shards) {
+            for (Class<?> mapper : mappersSet) {
+                shard.addMapper(mapper);
+            }
+            if (shard.getAnnotation() == null) {
+                shard.withAnnotation(Database.named(shard.getEnvironmentId()));
+            }
+        }
+    }
+
+    @Override
+    protected void configure() {
+        Preconditions.checkState(!shards.isEmpty(), "Shard group %s has no shards", groupId);
+
+        final List<String> environmentIds = new ArrayList<>();
+        final List<Key<DbSessionManager>> sessionManagerKeys = new ArrayList<>();
+        for (DbModule shard : shards) {
+            environmentIds.add(shard.getEnvironmentId());
+            sessionManagerKeys.add(Key.get(DbSessionManager.class, shard.getAnnotation()));
+        }
+
+        final Annotation annotation = annotatedWith != null ? annotatedWith : Database.named(groupId);
+        final Key<ShardGroup> groupKey = Key.get(ShardGroup.class, annotation);
+        bind(groupKey).toProvider(new ShardGroupProvider(groupId, environmentIds, sessionManagerKeys, shardKeyExtractor, router))
+                .in(Scopes.SINGLETON);
+        for (Class<?> mapper : mappersSet) {
+            bindMapper(mapper, annotation, groupKey);
+        }
+    }
+
+    public void withAnnotation(Annotation annotatedWith) {
+        this.annotatedWith = annotatedWith;
+    }
+
+    public void addMapper(Class<?> mapper) {
+        mappersSet.add(mapper);
+    }
+
+    public void addShard(DbModule shard) {
+        shards.add(shard);
+    }
+
+    public void withShardKeyExtractor(ShardKeyExtractor shardKeyExtractor) {
+        this.shardKeyExtractor = Preconditions.checkNotNull(shardKeyExtractor, "Shard key extractor");
+    }
+
+    public void withRouter(ShardRouter router) {
+        this.router = Preconditions.checkNotNull(router, "Shard router");
+    }
+
+    private <T> void bindMapper(Class<T> mapperType, Annotation annotation, Key<ShardGroup> groupKey) {
+        bind(Key.get(mapperType, annotation)).toProvider(new ShardedMapperProvider<>(mapperType, groupKey)).in(Scopes.SINGLETON);
+    }
+}
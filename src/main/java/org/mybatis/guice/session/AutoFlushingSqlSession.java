@@ -0,0 +1,407 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.session;
+
+import org.apache.ibatis.executor.BatchResult;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.reflection.MetaObject;
+import org.apache.ibatis.reflection.SystemMetaObject;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+import org.apache.ibatis.session.SqlSession;
+
+import java.lang.reflect.Array;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Session of the {@code BATCH} executor which flushes the pending statements every {@code batchSize} statements
+ * or when the estimated size of the pending parameters reaches {@code batchBytes}, so the executor never holds
+ * more than one batch of parameter objects.
+ *
+ * The update counts of the automatic flushes are merged per statement and returned, together with the pending
+ * statements, by the next {@link #flushStatements()}. Pending statements are flushed before every query here
+ * rather than by the executor, which would drop their update counts. A commit flushes them as well and keeps
+ * them until the next commit, see {@link #getCommittedResults()}. The merged results carry no parameter objects.
+ *
+ * @author ferenczil
+ */
+final class AutoFlushingSqlSession implements SqlSession {
+
+    /**
+     * Estimated size of parameter objects of unknown type
+     */
+    private static final int OBJECT_BYTES = 64;
+
+    private final SqlSession delegate;
+
+    private final int batchSize;
+
+    private final long batchBytes;
+
+    private int pendingStatements;
+
+    private long pendingBytes;
+
+    /**
+     * Merged results of the automatic flushes since the last explicit flush
+     */
+    private final List<MergedResult> results = new ArrayList<>();
+
+    /**
+     * Merged results flushed by the last commit
+     */
+    private List<BatchResult> committed = Collections.emptyList();
+
+    AutoFlushingSqlSession(SqlSession delegate, int batchSize, long batchBytes) {
+        this.delegate = delegate;
+        this.batchSize = batchSize;
+        this.batchBytes = batchBytes;
+    }
+
+    @Override
+    public int insert(String statement) {
+        return added(delegate.insert(statement), null);
+    }
+
+    @Override
+    public int insert(String statement, Object parameter) {
+        return added(delegate.insert(statement, parameter), parameter);
+    }
+
+    @Override
+    public int update(String statement) {
+        return added(delegate.update(statement), null);
+    }
+
+    @Override
+    public int update(String statement, Object parameter) {
+        return added(delegate.update(statement, parameter), parameter);
+    }
+
+    @Override
+    public int delete(String statement) {
+        return added(delegate.delete(statement), null);
+    }
+
+    @Override
+    public int delete(String statement, Object parameter) {
+        return added(delegate.delete(statement, parameter), parameter);
+    }
+
+    private int added(int result, Object parameter) {
+        pendingStatements++;
+        if (batchBytes > 0) {
+            pendingBytes += estimateBytes(parameter);
+        }
+        if ((batchSize > 0 && pendingStatements >= batchSize) || (batchBytes > 0 && pendingBytes >= batchBytes)) {
+            merge(delegate.flushStatements());
+        }
+        return result;
+    }
+
+    @Override
+    public List<BatchResult> flushStatements() {
+        merge(delegate.flushStatements());
+        if (results.isEmpty()) {
+            return Collections.emptyList();
+        }
+        final List<BatchResult> flushed = new ArrayList<>(results.size());
+        for (MergedResult result : results) {
+            flushed.add(result.toBatchResult());
+        }
+        results.clear();
+        return flushed;
+    }
+
+    /**
+     * Flushes the pending statements before a query, which the executor would flush itself and drop the
+     * update counts of
+     */
+    void flushPending() {
+        if (pendingStatements > 0) {
+            merge(delegate.flushStatements());
+        }
+    }
+
+    @Override
+    public void commit() {
+        final List<BatchResult> flushed = flushStatements();
+        delegate.commit();
+        committed = flushed;
+    }
+
+    @Override
+    public void commit(boolean force) {
+        final List<BatchResult> flushed = flushStatements();
+        delegate.commit(force);
+        committed = flushed;
+    }
+
+    /**
+     * @return Merged results of the statements flushed by the last commit, including the automatic flushes
+     * since the previous explicit flush
+     */
+    List<BatchResult> getCommittedResults() {
+        return committed;
+    }
+
+    @Override
+    public void rollback() {
+        reset();
+        delegate.rollback();
+    }
+
+    @Override
+    public void rollback(boolean force) {
+        reset();
+        delegate.rollback(force);
+    }
+
+    @Override
+    public void close() {
+        reset();
+        delegate.close();
+    }
+
+    private void reset() {
+        results.clear();
+        committed = Collections.emptyList();
+        pendingStatements = 0;
+        pendingBytes = 0;
+    }
+
+    /**
+     * Adds the update counts of a flush to the merged results, consecutive flushes of the same statement
+     * extend the same result
+     */
+    private void merge(List<BatchResult> flushed) {
+        pendingStatements = 0;
+        pendingBytes = 0;
+        for (BatchResult result : flushed) {
+            final MergedResult last = results.isEmpty() ? null : results.get(results.size() - 1);
+            if (last != null && last.mappedStatement == result.getMappedStatement() && last.sql.equals(result.getSql())) {
+                last.add(result.getUpdateCounts());
+            }
+            else {
+                final MergedResult merged = new MergedResult(result.getMappedStatement(), result.getSql());
+                merged.add(result.getUpdateCounts());
+                results.add(merged);
+            }
+        }
+    }
+
+    /**
+     * Update counts of consecutive flushes of a statement, kept as the arrays of the flushes and joined once
+     * when they are returned
+     */
+    private static final class MergedResult {
+
+        private final MappedStatement mappedStatement;
+
+        private final String sql;
+
+        private final List<int[]> chunks = new ArrayList<>();
+
+        private int size;
+
+        MergedResult(MappedStatement mappedStatement, String sql) {
+            this.mappedStatement = mappedStatement;
+            this.sql = sql;
+        }
+
+        void add(int[] counts) {
+            chunks.add(counts);
+            size += counts.length;
+        }
+
+        BatchResult toBatchResult() {
+            final int[] counts = new int[size];
+            int offset = 0;
+            for (int[] chunk : chunks) {
+                System.arraycopy(chunk, 0, counts, offset, chunk.length);
+                offset += chunk.length;
+            }
+            final BatchResult result = new BatchResult(mappedStatement, sql);
+            result.setUpdateCounts(counts);
+            return result;
+        }
+    }
+
+    /**
+     * Rough size of a parameter object: exact for strings, byte arrays and numbers, collections, maps and beans
+     * count their direct elements or properties, any nested object counts as {@value #OBJECT_BYTES} bytes.
+     */
+    static long estimateBytes(Object parameter) {
+        if (parameter == null) {
+            return 0;
+        }
+        if (parameter instanceof Collection) {
+            long bytes = OBJECT_BYTES;
+            for (Object element : (Collection<?>) parameter) {
+                bytes += estimateValueBytes(element);
+            }
+            return bytes;
+        }
+        if (parameter instanceof Map) {
+            long bytes = OBJECT_BYTES;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) parameter).entrySet()) {
+                bytes += estimateValueBytes(entry.getKey()) + estimateValueBytes(entry.getValue());
+            }
+            return bytes;
+        }
+        if (isScalar(parameter) || parameter.getClass().isArray()) {
+            return estimateValueBytes(parameter);
+        }
+        return estimateBeanBytes(parameter);
+    }
+
+    private static long estimateBeanBytes(Object bean) {
+        long bytes = 16;
+        try {
+            final MetaObject metaObject = SystemMetaObject.forObject(bean);
+            for (String property : metaObject.getGetterNames()) {
+                if (!"class".equals(property)) {
+                    bytes += estimateValueBytes(metaObject.getValue(property));
+                }
+            }
+        }
+        catch (RuntimeException e) {
+            // A getter failed, the bean is sized as an opaque object
+            return OBJECT_BYTES;
+        }
+        return bytes;
+    }
+
+    private static boolean isScalar(Object value) {
+        return value instanceof CharSequence || value instanceof Number || value instanceof Boolean
+                || value instanceof Character || value instanceof Date || value instanceof Enum;
+    }
+
+    private static long estimateValueBytes(Object value) {
+        if (value == null) {
+            return 0;
+        }
+        if (value instanceof CharSequence) {
+            return 40 + 2L * ((CharSequence) value).length();
+        }
+        if (value instanceof byte[]) {
+            return 16 + ((byte[]) value).length;
+        }
+        if (value instanceof Number || value instanceof Boolean || value instanceof Character || value instanceof Enum) {
+            return 16;
+        }
+        if (value instanceof Date) {
+            return 24;
+        }
+        if (value.getClass().isArray()) {
+            return 16 + 8L * Array.getLength(value);
+        }
+        return OBJECT_BYTES;
+    }
+
+    @Override
+    public <T> T selectOne(String statement) {
+        flushPending();
+        return delegate.selectOne(statement);
+    }
+
+    @Override
+    public <T> T selectOne(String statement, Object parameter) {
+        flushPending();
+        return delegate.selectOne(statement, parameter);
+    }
+
+    @Override
+    public <E> List<E> selectList(String statement) {
+        flushPending();
+        return delegate.selectList(statement);
+    }
+
+    @Override
+    public <E> List<E> selectList(String statement, Object parameter) {
+        flushPending();
+        return delegate.selectList(statement, parameter);
+    }
+
+    @Override
+    public <E> List<E> selectList(String statement, Object parameter, RowBounds rowBounds) {
+        flushPending();
+        return delegate.selectList(statement, parameter, rowBounds);
+    }
+
+    @Override
+    public <K, V> Map<K, V> selectMap(String statement, String mapKey) {
+        flushPending();
+        return delegate.selectMap(statement, mapKey);
+    }
+
+    @Override
+    public <K, V> Map<K, V> selectMap(String statement, Object parameter, String mapKey) {
+        flushPending();
+        return delegate.selectMap(statement, parameter, mapKey);
+    }
+
+    @Override
+    public <K, V> Map<K, V> selectMap(String statement, Object parameter, String mapKey, RowBounds rowBounds) {
+        flushPending();
+        return delegate.selectMap(statement, parameter, mapKey, rowBounds);
+    }
+
+    @Override
+    public void select(String statement, Object parameter, ResultHandler handler) {
+        flushPending();
+        delegate.select(statement, parameter, handler);
+    }
+
+    @Override
+    public void select(String statement, ResultHandler handler) {
+        flushPending();
+        delegate.select(statement, handler);
+    }
+
+    @Override
+    public void select(String statement, Object parameter, RowBounds rowBounds, ResultHandler handler) {
+        flushPending();
+        delegate.select(statement, parameter, rowBounds, handler);
+    }
+
+    @Override
+    public void clearCache() {
+        delegate.clearCache();
+    }
+
+    @Override
+    public Configuration getConfiguration() {
+        return delegate.getConfiguration();
+    }
+
+    @Override
+    public <T> T getMapper(Class<T> type) {
+        return getConfiguration().getMapper(type, this);
+    }
+
+    @Override
+    public Connection getConnection() {
+        return delegate.getConnection();
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.session;
+
+import org.apache.ibatis.session.SqlSessionException;
+
+/**
+ * Thrown when the {@link SessionBulkhead} of an environment refuses a session: too many threads already wait
+ * for one, or none was released within the acquisition timeout.
+ *
+ * @author ferenczil
+ */
+public class BulkheadFullException extends SqlSessionException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String environmentId;
+
+    public BulkheadFullException(String environmentId, String message) {
+        super(message);
+        this.environmentId = environmentId;
+    }
+
+    /**
+     * @return Environment which refused the session
+     */
+    public String getEnvironmentId() {
+        return environmentId;
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.session;
+
+import org.apache.ibatis.binding.BindingException;
+import org.apache.ibatis.binding.MapperMethod;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.session.Configuration;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Runs the select methods of a mapper returning {@code Iterable}, {@code Iterator} or {@link ResultCursor}
+ * as cursors of the {@link DbSessionManager}, every other method is passed to the MyBatis mapper.
+ *
+ * The rows a cursor method fetches in one round trip are set by the {@code fetchSize} of its statement, e.g.
+ * {@code @Options(fetchSize = 500)} or the {@code fetchSize} attribute of the XML select. Without it the driver
+ * default applies; {@link DbSessionManager#selectCursor(String, Object, int)} overrides it per call.
+ *
+ * @author ferenczil
+ */
+final class CursorMapperHandler implements InvocationHandler {
+
+    private final Object mapper;
+
+    private final DbSessionManager manager;
+
+    private final Map<Method, CursorMethod> cursorMethods;
+
+    CursorMapperHandler(Object mapper, DbSessionManager manager, Map<Method, CursorMethod> cursorMethods) {
+        this.mapper = mapper;
+        this.manager = manager;
+        this.cursorMethods = cursorMethods;
+    }
+
+    /**
+     * Resolves the cursor methods of a mapper interface
+     *
+     * @return Cursor methods, empty if the mapper has none
+     */
+    static Map<Method, CursorMethod> resolve(Configuration configuration, Class<?> mapperType) {
+        Map<Method, CursorMethod> methods = null;
+        for (Method method : mapperType.getMethods()) {
+            final Class<?> returnType = method.getReturnType();
+            if (returnType != Iterable.class && returnType != Iterator.class && returnType != ResultCursor.class) {
+                continue;
+            }
+            final MapperMethod.SqlCommand command;
+            try {
+                command = new MapperMethod.SqlCommand(configuration, mapperType, method);
+            }
+            catch (BindingException e) {
+                // Left to MyBatis, which reports the missing statement when the method is called
+                continue;
+            }
+            if (command.getType() != SqlCommandType.SELECT) {
+                continue;
+            }
+            if (methods == null) {
+                methods = new HashMap<>();
+            }
+            methods.put(method, new CursorMethod(command.getName(),
+                    new MapperMethod.MethodSignature(configuration, method),
+                    elementType(method.getGenericReturnType())));
+        }
+        return methods != null ? methods : Collections.<Method, CursorMethod>emptyMap();
+    }
+
+    private static Class<?> elementType(Type returnType) {
+        if (returnType instanceof ParameterizedType) {
+            final Type argument = ((ParameterizedType) returnType).getActualTypeArguments()[0];
+            if (argument instanceof Class) {
+                return (Class<?>) argument;
+            }
+            if (argument instanceof ParameterizedType) {
+                return (Class<?>) ((ParameterizedType) argument).getRawType();
+            }
+        }
+        return Object.class;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        final CursorMethod cursorMethod = cursorMethods.get(method);
+        if (cursorMethod != null) {
+            // The fetch size comes from the statement
+            return manager.selectCursor(cursorMethod.statement,
+                    cursorMethod.signature.convertArgsToSqlCommandParam(args), 0, cursorMethod.elementType);
+        }
+        try {
+            return method.invoke(mapper, args);
+        }
+        catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    static final class CursorMethod {
+
+        private final String statement;
+
+        private final MapperMethod.MethodSignature signature;
+
+        private final Class<?> elementType;
+
+        CursorMethod(String statement, MapperMethod.MethodSignature signature, Class<?> elementType) {
+            this.statement = statement;
+            this.signature = signature;
+            this.elementType = elementType;
+        }
+    }
+}
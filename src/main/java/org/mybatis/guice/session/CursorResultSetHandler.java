@@ -0,0 +1,80 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.session;
+
+import org.apache.ibatis.executor.ExecutorException;
+import org.apache.ibatis.executor.parameter.ParameterHandler;
+import org.apache.ibatis.executor.resultset.FastResultSetHandler;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ResultMap;
+import org.apache.ibatis.session.RowBounds;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+
+/**
+ * Maps the rows of a {@link ResultCursor} one at a time with the result map of the statement.
+ *
+ * Nested result maps join rows into one result and nested selects need the executor of the session,
+ * neither is supported.
+ *
+ * @author ferenczil
+ */
+// FastResultSetHandler implements the generic handleResultSets of the interface with List<Object>, javac reports
+// the unchecked conversion on every subclass and only honours a suppression on the class
+@SuppressWarnings("unchecked")
+final class CursorResultSetHandler extends FastResultSetHandler {
+
+    private final ResultMap resultMap;
+
+    private ResultColumnCache columnCache;
+
+    CursorResultSetHandler(MappedStatement mappedStatement, ParameterHandler parameterHandler, BoundSql boundSql,
+                           Class<?> elementType) {
+        super(null, mappedStatement, parameterHandler, null, boundSql, RowBounds.DEFAULT);
+        if (mappedStatement.getResultMaps().size() != 1) {
+            throw new ExecutorException("Cursor of statement " + mappedStatement.getId() + " needs exactly one result map");
+        }
+        if (mappedStatement.hasNestedResultMaps()) {
+            throw new ExecutorException("Cursor of statement " + mappedStatement.getId() + " does not support nested result maps");
+        }
+        ResultMap statementResultMap = mappedStatement.getResultMaps().get(0);
+        if (statementResultMap.hasNestedQueries()) {
+            throw new ExecutorException("Cursor of statement " + mappedStatement.getId() + " does not support nested selects");
+        }
+        if (elementType != null && isCursorType(statementResultMap.getType())) {
+            // Annotated mappers declare the cursor type as result type, map the rows to its element type
+            statementResultMap = new ResultMap.Builder(configuration, statementResultMap.getId() + "-cursor",
+                    elementType, statementResultMap.getResultMappings()).build();
+        }
+        this.resultMap = statementResultMap;
+    }
+
+    private static boolean isCursorType(Class<?> type) {
+        return Iterable.class.isAssignableFrom(type) || Iterator.class.isAssignableFrom(type);
+    }
+
+    Object map(ResultSet rs) throws SQLException {
+        if (columnCache == null) {
+            columnCache = new ResultColumnCache(rs.getMetaData(), configuration) {
+            };
+        }
+        final ResultMap discriminated = resolveDiscriminatedResultMap(rs, resultMap, null);
+        return getRowValue(rs, discriminated, null, columnCache);
+    }
+}
@@ -17,20 +17,34 @@ package org.mybatis.guice.session;
 
 import com.google.inject.Inject;
 import com.google.inject.name.Named;
+import org.apache.ibatis.exceptions.ExceptionFactory;
 import org.apache.ibatis.executor.BatchResult;
-import org.apache.ibatis.reflection.ExceptionUtil;
+import org.apache.ibatis.executor.statement.StatementHandler;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
 import org.apache.ibatis.session.*;
+import org.apache.ibatis.session.defaults.DefaultSqlSession;
+import org.mybatis.guice.datasource.replica.ReplicaSet;
 import org.mybatis.guice.transactional.MultiTransactionManager;
+import org.mybatis.guice.transactional.TransactionContext;
 import org.mybatis.guice.transactional.Transactional;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Variant of the {@code SqlSessionManager} from MyBatis.
@@ -40,8 +54,18 @@ import java.util.Map;
  *
  * The main difference is how transactions are created and closed.
  *
- * {@code SqlSessionInterceptor} uses a slightly different approach now:
+ * Statements are dispatched directly to the session of the transactional context, which is started on demand.
+ * Outside of a context each statement runs in its own auto-session if {@code allowTransactionWithoutContext}
+ * is set, otherwise a {@code SqlSessionException} is thrown.
  *
+ * Selects can also be read as a {@link ResultCursor} within a context, either with {@code selectCursor} or through
+ * mapper methods returning {@code Iterable}, {@code Iterator} or {@code ResultCursor}. Mapper methods use the
+ * fetch size of their statement.
+ *
+ * Managed sessions are not kept in a {@code ThreadLocal} of this class but in the slot of this environment
+ * in the transactional context of the {@link MultiTransactionManager}.
+ *
+ * An optional {@link SessionBulkhead} limits the managed and auto-sessions held at the same time.
  *
  * @author ferenczil
  */
@@ -49,9 +73,6 @@ public class DbSessionManager implements SqlSessionFactory, SqlSession {
     private static final Logger log = LoggerFactory.getLogger(DbSessionManager.class);
 
     private final SqlSessionFactory sqlSessionFactory;
-    private final SqlSession sqlSessionProxy;
-
-    private ThreadLocal<SqlSession> localSqlSession = new ThreadLocal<>();
 
     @Inject @Named("mybatis.configuration.allowTransactionWithoutContext")
     boolean allowTransactionWithoutContext;
@@ -59,56 +80,108 @@ public class DbSessionManager implements SqlSessionFactory, SqlSession {
     String environmentId;
     MultiTransactionManager txManager;
 
+    /**
+     * Slot of this environment in the transactional context of the {@code MultiTransactionManager}
+     */
+    int ordinal;
+
+    /**
+     * Read replicas of the environment, {@code null} if all sessions use the primary
+     */
+    ReplicaSet replicas;
+
+    /**
+     * Limit of the sessions held at the same time, {@code null} if unlimited
+     */
+    SessionBulkhead bulkhead;
+
+    /**
+     * Cursor methods of each mapper type, resolved on the first {@link #getMapper(Class)}
+     */
+    private final ConcurrentMap<Class<?>, Map<Method, CursorMapperHandler.CursorMethod>> mapperCursorMethods = new ConcurrentHashMap<>();
+
     @Inject
     public DbSessionManager(SqlSessionFactory sqlSessionFactory) {
         this.sqlSessionFactory = sqlSessionFactory;
-        this.sqlSessionProxy = (SqlSession) Proxy.newProxyInstance(
-                SqlSessionFactory.class.getClassLoader(),
-                new Class[]{SqlSession.class},
-                new SqlSessionInterceptor());
     }
 
     @Inject
     public void setTxManager(@Named("mybatis.environment.id") String environmentId, MultiTransactionManager txManager) {
         this.environmentId = environmentId;
         this.txManager = txManager;
-        txManager.register(environmentId, this);
+        this.ordinal = txManager.register(environmentId, this);
+    }
+
+    /**
+     * Sets the read replicas, read-only transactions open their sessions on them
+     *
+     * @param replicas Replicas of the environment
+     */
+    @Inject(optional = true)
+    public void setReplicas(ReplicaSet replicas) {
+        this.replicas = replicas;
+    }
+
+    /**
+     * Sets the bulkhead limiting the managed and auto-sessions of the environment held at the same time
+     *
+     * @param bulkhead Bulkhead of the environment
+     */
+    @Inject(optional = true)
+    public void setBulkhead(SessionBulkhead bulkhead) {
+        this.bulkhead = bulkhead;
     }
 
     public void startManagedSession() {
-        this.localSqlSession.set(openSession());
+        startManagedSession(openSession());
     }
 
     public void startManagedSession(boolean autoCommit) {
-        this.localSqlSession.set(openSession(autoCommit));
+        startManagedSession(openSession(autoCommit));
     }
 
     public void startManagedSession(Connection connection) {
-        this.localSqlSession.set(openSession(connection));
+        startManagedSession(openSession(connection));
     }
 
     public void startManagedSession(TransactionIsolationLevel level) {
-        this.localSqlSession.set(openSession(level));
+        startManagedSession(openSession(level));
     }
 
     public void startManagedSession(ExecutorType execType) {
-        this.localSqlSession.set(openSession(execType));
+        startManagedSession(openSession(execType));
     }
 
     public void startManagedSession(ExecutorType execType, boolean autoCommit) {
-        this.localSqlSession.set(openSession(execType, autoCommit));
+        startManagedSession(openSession(execType, autoCommit));
     }
 
     public void startManagedSession(ExecutorType execType, TransactionIsolationLevel level) {
-        this.localSqlSession.set(openSession(execType, level));
+        startManagedSession(openSession(execType, level));
     }
 
     public void startManagedSession(ExecutorType execType, Connection connection) {
-        this.localSqlSession.set(openSession(execType, connection));
+        startManagedSession(openSession(execType, connection));
+    }
+
+    /**
+     * Holds a session opened by one of the public {@code startManagedSession} methods, once the bulkhead lets it
+     */
+    private void startManagedSession(SqlSession sqlSession) {
+        if (bulkhead != null) {
+            try {
+                bulkhead.acquire();
+            }
+            catch (RuntimeException e) {
+                sqlSession.close();
+                throw e;
+            }
+        }
+        setManagedSession(sqlSession);
     }
 
     public boolean isManagedSessionStarted() {
-        return this.localSqlSession.get() != null;
+        return managedSession() != null;
     }
 
     public SqlSession openSession() {
@@ -147,171 +220,619 @@ public class DbSessionManager implements SqlSessionFactory, SqlSession {
         return sqlSessionFactory.getConfiguration();
     }
 
-    public <T> T selectOne(String statement) {
-        return sqlSessionProxy.<T> selectOne(statement);
+    public <T> T selectOne(final String statement) {
+        final SqlSession sqlSession = contextSession();
+        if (sqlSession != null) {
+            return sqlSession.<T> selectOne(statement);
+        }
+        return executeInAutoSession(new Operation<T>() {
+            @Override
+            T execute(SqlSession session) {
+                return session.<T> selectOne(statement);
+            }
+        });
     }
 
-    public <T> T selectOne(String statement, Object parameter) {
-        return sqlSessionProxy.<T> selectOne(statement, parameter);
+    public <T> T selectOne(final String statement, final Object parameter) {
+        final SqlSession sqlSession = contextSession();
+        if (sqlSession != null) {
+            return sqlSession.<T> selectOne(statement, parameter);
+        }
+        return executeInAutoSession(new Operation<T>() {
+            @Override
+            T execute(SqlSession session) {
+                return session.<T> selectOne(statement, parameter);
+            }
+        });
     }
 
-    public <K, V> Map<K, V> selectMap(String statement, String mapKey) {
-        return sqlSessionProxy.<K, V> selectMap(statement, mapKey);
+    public <K, V> Map<K, V> selectMap(final String statement, final String mapKey) {
+        final SqlSession sqlSession = contextSession();
+        if (sqlSession != null) {
+            return sqlSession.<K, V> selectMap(statement, mapKey);
+        }
+        return executeInAutoSession(new Operation<Map<K, V>>() {
+            @Override
+            Map<K, V> execute(SqlSession session) {
+                return session.<K, V> selectMap(statement, mapKey);
+            }
+        });
     }
 
-    public <K, V> Map<K, V> selectMap(String statement, Object parameter, String mapKey) {
-        return sqlSessionProxy.<K, V> selectMap(statement, parameter, mapKey);
+    public <K, V> Map<K, V> selectMap(final String statement, final Object parameter, final String mapKey) {
+        final SqlSession sqlSession = contextSession();
+        if (sqlSession != null) {
+            return sqlSession.<K, V> selectMap(statement, parameter, mapKey);
+        }
+        return executeInAutoSession(new Operation<Map<K, V>>() {
+            @Override
+            Map<K, V> execute(SqlSession session) {
+                return session.<K, V> selectMap(statement, parameter, mapKey);
+            }
+        });
     }
 
-    public <K, V> Map<K, V> selectMap(String statement, Object parameter, String mapKey, RowBounds rowBounds) {
-        return sqlSessionProxy.<K, V> selectMap(statement, parameter, mapKey, rowBounds);
+    public <K, V> Map<K, V> selectMap(final String statement, final Object parameter, final String mapKey, final RowBounds rowBounds) {
+        final SqlSession sqlSession = contextSession();
+        if (sqlSession != null) {
+            return sqlSession.<K, V> selectMap(statement, parameter, mapKey, rowBounds);
+        }
+        return executeInAutoSession(new Operation<Map<K, V>>() {
+            @Override
+            Map<K, V> execute(SqlSession session) {
+                return session.<K, V> selectMap(statement, parameter, mapKey, rowBounds);
+            }
+        });
     }
 
-    public <E> List<E> selectList(String statement) {
-        return sqlSessionProxy.<E> selectList(statement);
+    public <E> List<E> selectList(final String statement) {
+        final SqlSession sqlSession = contextSession();
+        if (sqlSession != null) {
+            return sqlSession.<E> selectList(statement);
+        }
+        return executeInAutoSession(new Operation<List<E>>() {
+            @Override
+            List<E> execute(SqlSession session) {
+                return session.<E> selectList(statement);
+            }
+        });
     }
 
-    public <E> List<E> selectList(String statement, Object parameter) {
-        return sqlSessionProxy.<E> selectList(statement, parameter);
+    public <E> List<E> selectList(final String statement, final Object parameter) {
+        final SqlSession sqlSession = contextSession();
+        if (sqlSession != null) {
+            return sqlSession.<E> selectList(statement, parameter);
+        }
+        return executeInAutoSession(new Operation<List<E>>() {
+            @Override
+            List<E> execute(SqlSession session) {
+                return session.<E> selectList(statement, parameter);
+            }
+        });
     }
 
-    public <E> List<E> selectList(String statement, Object parameter, RowBounds rowBounds) {
-        return sqlSessionProxy.<E> selectList(statement, parameter, rowBounds);
+    public <E> List<E> selectList(final String statement, final Object parameter, final RowBounds rowBounds) {
+        final SqlSession sqlSession = contextSession();
+        if (sqlSession != null) {
+            return sqlSession.<E> selectList(statement, parameter, rowBounds);
+        }
+        return executeInAutoSession(new Operation<List<E>>() {
+            @Override
+            List<E> execute(SqlSession session) {
+                return session.<E> selectList(statement, parameter, rowBounds);
+            }
+        });
     }
 
-    public void select(String statement, ResultHandler handler) {
-        sqlSessionProxy.select(statement, handler);
+    public void select(final String statement, final ResultHandler handler) {
+        final SqlSession sqlSession = contextSession();
+        if (sqlSession != null) {
+            sqlSession.select(statement, handler);
+        }
+        else {
+            executeInAutoSession(new Operation<Void>() {
+                @Override
+                Void execute(SqlSession session) {
+                    session.select(statement, handler);
+                    return null;
+                }
+            });
+        }
     }
 
-    public void select(String statement, Object parameter, ResultHandler handler) {
-        sqlSessionProxy.select(statement, parameter, handler);
+    public void select(final String statement, final Object parameter, final ResultHandler handler) {
+        final SqlSession sqlSession = contextSession();
+        if (sqlSession != null) {
+            sqlSession.select(statement, parameter, handler);
+        }
+        else {
+            executeInAutoSession(new Operation<Void>() {
+                @Override
+                Void execute(SqlSession session) {
+                    session.select(statement, parameter, handler);
+                    return null;
+                }
+            });
+        }
     }
 
-    public void select(String statement, Object parameter, RowBounds rowBounds, ResultHandler handler) {
-        sqlSessionProxy.select(statement, parameter, rowBounds, handler);
+    public void select(final String statement, final Object parameter, final RowBounds rowBounds, final ResultHandler handler) {
+        final SqlSession sqlSession = contextSession();
+        if (sqlSession != null) {
+            sqlSession.select(statement, parameter, rowBounds, handler);
+        }
+        else {
+            executeInAutoSession(new Operation<Void>() {
+                @Override
+                Void execute(SqlSession session) {
+                    session.select(statement, parameter, rowBounds, handler);
+                    return null;
+                }
+            });
+        }
     }
 
-    public int insert(String statement) {
-        return sqlSessionProxy.insert(statement);
+    public int insert(final String statement) {
+        final SqlSession sqlSession = contextSession();
+        if (sqlSession != null) {
+            return sqlSession.insert(statement);
+        }
+        return executeInAutoSession(new WriteOperation<Integer>() {
+            @Override
+            Integer execute(SqlSession session) {
+                return session.insert(statement);
+            }
+        });
     }
 
-    public int insert(String statement, Object parameter) {
-        return sqlSessionProxy.insert(statement, parameter);
+    public int insert(final String statement, final Object parameter) {
+        final SqlSession sqlSession = contextSession();
+        if (sqlSession != null) {
+            return sqlSession.insert(statement, parameter);
+        }
+        return executeInAutoSession(new WriteOperation<Integer>() {
+            @Override
+            Integer execute(SqlSession session) {
+                return session.insert(statement, parameter);
+            }
+        });
     }
 
-    public int update(String statement) {
-        return sqlSessionProxy.update(statement);
+    public int update(final String statement) {
+        final SqlSession sqlSession = contextSession();
+        if (sqlSession != null) {
+            return sqlSession.update(statement);
+        }
+        return executeInAutoSession(new WriteOperation<Integer>() {
+            @Override
+            Integer execute(SqlSession session) {
+                return session.update(statement);
+            }
+        });
     }
 
-    public int update(String statement, Object parameter) {
-        return sqlSessionProxy.update(statement, parameter);
+    public int update(final String statement, final Object parameter) {
+        final SqlSession sqlSession = contextSession();
+        if (sqlSession != null) {
+            return sqlSession.update(statement, parameter);
+        }
+        return executeInAutoSession(new WriteOperation<Integer>() {
+            @Override
+            Integer execute(SqlSession session) {
+                return session.update(statement, parameter);
+            }
+        });
     }
 
-    public int delete(String statement) {
-        return sqlSessionProxy.delete(statement);
+    public int delete(final String statement) {
+        final SqlSession sqlSession = contextSession();
+        if (sqlSession != null) {
+            return sqlSession.delete(statement);
+        }
+        return executeInAutoSession(new WriteOperation<Integer>() {
+            @Override
+            Integer execute(SqlSession session) {
+                return session.delete(statement);
+            }
+        });
     }
 
-    public int delete(String statement, Object parameter) {
-        return sqlSessionProxy.delete(statement, parameter);
+    public int delete(final String statement, final Object parameter) {
+        final SqlSession sqlSession = contextSession();
+        if (sqlSession != null) {
+            return sqlSession.delete(statement, parameter);
+        }
+        return executeInAutoSession(new WriteOperation<Integer>() {
+            @Override
+            Integer execute(SqlSession session) {
+                return session.delete(statement, parameter);
+            }
+        });
     }
 
     public <T> T getMapper(Class<T> type) {
-        return getConfiguration().getMapper(type, this);
+        final T mapper = getConfiguration().getMapper(type, this);
+        Map<Method, CursorMapperHandler.CursorMethod> cursorMethods = mapperCursorMethods.get(type);
+        if (cursorMethods == null) {
+            final Map<Method, CursorMapperHandler.CursorMethod> resolved = CursorMapperHandler.resolve(getConfiguration(), type);
+            cursorMethods = mapperCursorMethods.putIfAbsent(type, resolved);
+            if (cursorMethods == null) {
+                cursorMethods = resolved;
+            }
+        }
+        if (cursorMethods.isEmpty()) {
+            return mapper;
+        }
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{ type },
+                new CursorMapperHandler(mapper, this, cursorMethods)));
+    }
+
+    /**
+     * Opens a cursor over the results of a select in the managed session of the current transactional context.
+     * The rows are mapped one at a time while iterating, the fetch size of the statement is used.
+     *
+     * The statement is created by the {@code StatementHandler} of the configuration, with the statement type of
+     * the mapped statement and the plugins of the handler. The query itself and the result set handler are not
+     * intercepted: the rows are read while iterating rather than by the executor.
+     *
+     * @param statement Unique identifier matching the statement to use
+     * @param parameter A parameter object to pass to the statement
+     * @return Cursor, closed at the latest when the transaction closes its sessions
+     * @throws SqlSessionException if there is no transactional context
+     */
+    public <T> ResultCursor<T> selectCursor(String statement, Object parameter) {
+        return selectCursor(statement, parameter, 0, null);
+    }
+
+    /**
+     * Opens a cursor over the results of a select in the managed session of the current transactional context.
+     *
+     * @param statement Unique identifier matching the statement to use
+     * @param parameter A parameter object to pass to the statement
+     * @param fetchSize Rows fetched from the database in one round trip, 0 to use the fetch size of the statement
+     * @return Cursor, closed at the latest when the transaction closes its sessions
+     * @throws SqlSessionException if there is no transactional context
+     */
+    public <T> ResultCursor<T> selectCursor(String statement, Object parameter, int fetchSize) {
+        return selectCursor(statement, parameter, fetchSize, null);
+    }
+
+    <T> ResultCursor<T> selectCursor(String statement, Object parameter, int fetchSize, Class<?> elementType) {
+        if (txManager.getContext() == null) {
+            // An auto-session would be closed before the first row is read
+            throw new SqlSessionException("Cursors need a transactional context in environment: " + environmentId);
+        }
+        final SqlSession sqlSession = contextSession();
+        // Pending batch statements must be visible to the query
+        if (sqlSession instanceof AutoFlushingSqlSession) {
+            ((AutoFlushingSqlSession) sqlSession).flushPending();
+        }
+        else {
+            sqlSession.flushStatements();
+        }
+
+        final Configuration configuration = getConfiguration();
+        final MappedStatement ms = configuration.getMappedStatement(statement);
+        final Object parameterObject = wrapCollection(parameter);
+        final BoundSql boundSql = ms.getBoundSql(parameterObject);
+        // Prepared like the executor does, the plugins of the statement handler apply to prepare and parameterize
+        final StatementHandler statementHandler = configuration.newStatementHandler(null, ms, parameterObject,
+                RowBounds.DEFAULT, null, boundSql);
+        Statement stmt = null;
+        try {
+            stmt = statementHandler.prepare(sqlSession.getConnection());
+            if (fetchSize > 0) {
+                stmt.setFetchSize(fetchSize);
+            }
+            statementHandler.parameterize(stmt);
+            final CursorResultSetHandler handler = new CursorResultSetHandler(ms, statementHandler.getParameterHandler(),
+                    boundSql, elementType);
+            final ResultSet resultSet = stmt instanceof PreparedStatement
+                    ? ((PreparedStatement) stmt).executeQuery()
+                    : stmt.executeQuery(boundSql.getSql());
+            final ResultCursor<T> cursor = new ResultCursor<>(stmt, resultSet, handler);
+            txManager.addResource(cursor);
+            return cursor;
+        }
+        catch (Exception e) {
+            if (stmt != null) {
+                try {
+                    stmt.close();
+                }
+                catch (SQLException ignored) {
+                    // the original failure is reported
+                }
+            }
+            throw ExceptionFactory.wrapException("Error opening cursor for statement " + statement + ".  Cause: " + e, e);
+        }
+    }
+
+    /**
+     * Wraps collection parameters the way {@code DefaultSqlSession} does
+     */
+    private static Object wrapCollection(Object parameter) {
+        if (parameter instanceof Collection) {
+            final DefaultSqlSession.StrictMap<Object> map = new DefaultSqlSession.StrictMap<>();
+            map.put("collection", parameter);
+            if (parameter instanceof List) {
+                map.put("list", parameter);
+            }
+            return map;
+        }
+        if (parameter != null && parameter.getClass().isArray()) {
+            final DefaultSqlSession.StrictMap<Object> map = new DefaultSqlSession.StrictMap<>();
+            map.put("array", parameter);
+            return map;
+        }
+        return parameter;
     }
 
     public Connection getConnection() {
-        final SqlSession sqlSession = localSqlSession.get();
+        final SqlSession sqlSession = managedSession();
         if (sqlSession == null) throw new SqlSessionException("Error:  Cannot get connection.  No managed session is started.");
         return sqlSession.getConnection();
     }
 
     public void clearCache() {
-        final SqlSession sqlSession = localSqlSession.get();
+        final SqlSession sqlSession = managedSession();
         if (sqlSession == null) throw new SqlSessionException("Error:  Cannot clear the cache.  No managed session is started.");
         sqlSession.clearCache();
     }
 
     public void commit() {
-        final SqlSession sqlSession = localSqlSession.get();
+        final SqlSession sqlSession = managedSession();
         if (sqlSession == null) throw new SqlSessionException("Error:  Cannot commit.  No managed session is started.");
         sqlSession.commit();
     }
 
     public void commit(boolean force) {
-        final SqlSession sqlSession = localSqlSession.get();
+        final SqlSession sqlSession = managedSession();
         if (sqlSession == null) throw new SqlSessionException("Error:  Cannot commit.  No managed session is started.");
         sqlSession.commit(force);
     }
 
     public void rollback() {
-        final SqlSession sqlSession = localSqlSession.get();
+        final SqlSession sqlSession = managedSession();
         if (sqlSession == null) throw new SqlSessionException("Error:  Cannot rollback.  No managed session is started.");
         sqlSession.rollback();
     }
 
     public void rollback(boolean force) {
-        final SqlSession sqlSession = localSqlSession.get();
+        final SqlSession sqlSession = managedSession();
         if (sqlSession == null) throw new SqlSessionException("Error:  Cannot rollback.  No managed session is started.");
         sqlSession.rollback(force);
     }
 
+    /**
+     * Returns the update counts flushed by the last commit of the managed session, including the automatic
+     * flushes of a {@code BATCH} transaction with a {@code batchSize} or {@code batchBytes}. They stay available
+     * until the session is closed.
+     *
+     * @return Merged batch results, empty unless the session flushes automatically
+     * @throws SqlSessionException if no managed session is started
+     */
+    public List<BatchResult> getCommittedBatchResults() {
+        final SqlSession sqlSession = managedSession();
+        if (sqlSession == null) throw new SqlSessionException("Error:  Cannot get the batch results.  No managed session is started.");
+        return sqlSession instanceof AutoFlushingSqlSession
+                ? ((AutoFlushingSqlSession) sqlSession).getCommittedResults()
+                : Collections.<BatchResult>emptyList();
+    }
+
     public List<BatchResult> flushStatements() {
-        final SqlSession sqlSession = localSqlSession.get();
+        final SqlSession sqlSession = managedSession();
         if (sqlSession == null) throw new SqlSessionException("Error:  Cannot rollback.  No managed session is started.");
         return sqlSession.flushStatements();
     }
 
     public void close() {
-        final SqlSession sqlSession = localSqlSession.get();
+        final SqlSession sqlSession = managedSession();
         if (sqlSession == null) throw new SqlSessionException("Error:  Cannot close.  No managed session is started.");
+        try {
+            closeDetached(sqlSession);
+        } finally {
+            setManagedSession(null);
+        }
+    }
+
+    /**
+     * Closes a managed session that was already detached from its transactional context, such as one whose
+     * parallel completion timed out and finishes on the completion executor.
+     *
+     * @param sqlSession Managed session of this environment
+     */
+    public void closeDetached(SqlSession sqlSession) {
         try {
             sqlSession.close();
         } finally {
-            localSqlSession.set(null);
+            if (bulkhead != null) {
+                bulkhead.release();
+            }
         }
     }
 
-    private class SqlSessionInterceptor implements InvocationHandler {
-        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+    private SqlSession managedSession() {
+        return txManager.getSession(ordinal);
+    }
+
+    private void setManagedSession(SqlSession sqlSession) {
+        txManager.setSession(ordinal, sqlSession);
+    }
 
-            Transactional tx = txManager.getContext();
-            log.debug("Transactional context: {}", tx);
-            if (null != tx) {
+    /**
+     * Resolves the session a statement runs on. Within a transactional context it is the managed session
+     * of this environment, started on demand with the settings of the context.
+     *
+     * @return Managed session or {@code null} if the statement has to run in an auto-session
+     * @throws SqlSessionException if there is no context and auto-sessions are not allowed
+     */
+    private SqlSession contextSession() {
+        final Transactional tx = txManager.getContext();
+        if (null != tx) {
+            SqlSession sqlSession = managedSession();
 
-                // Creating sessions on demand
-                if (DbSessionManager.this.localSqlSession.get() == null) {
-                    log.debug("Starting managed session for environment: {}", environmentId);
-                    DbSessionManager.this.startManagedSession(tx.executorType(), tx.isolation().getTransactionIsolationLevel());
+            // Creating sessions on demand
+            if (sqlSession == null) {
+                log.debug("Starting managed session for environment: {}", environmentId);
+                if (bulkhead != null) {
+                    bulkhead.acquire();
                 }
                 try {
-                    return method.invoke(DbSessionManager.this.localSqlSession.get(), args);
+                    if (tx.readOnly() && replicas != null) {
+                        sqlSession = openReplicaSession(tx.executorType(), tx.isolation().getTransactionIsolationLevel());
+                    }
+                    if (sqlSession == null) {
+                        sqlSession = openSession(tx.executorType(), tx.isolation().getTransactionIsolationLevel());
+                    }
                 }
-                catch (Throwable t) {
-                    throw ExceptionUtil.unwrapThrowable(t);
+                catch (RuntimeException e) {
+                    if (bulkhead != null) {
+                        bulkhead.release();
+                    }
+                    throw e;
+                }
+                if (tx.executorType() == ExecutorType.BATCH && (tx.batchSize() > 0 || tx.batchBytes() > 0)) {
+                    sqlSession = new AutoFlushingSqlSession(sqlSession, tx.batchSize(), tx.batchBytes());
                 }
+                setManagedSession(sqlSession);
             }
-            else {
-                if (allowTransactionWithoutContext) {
-                    log.warn("No transactional context, starting one anyway");
-                    final SqlSession autoSqlSession = openSession();
-                    try {
-                        final Object result = method.invoke(autoSqlSession, args);
-                        autoSqlSession.commit();
-                        return result;
-                    }
-                    catch (Throwable t) {
-                        autoSqlSession.rollback();
-                        throw ExceptionUtil.unwrapThrowable(t);
-                    }
-                    finally {
-                        autoSqlSession.close();
-                        log.debug("Auto-session closed");
+            return sqlSession;
+        }
+        if (allowTransactionWithoutContext) {
+            return null;
+        }
+        throw new SqlSessionException("Trying to execute transaction without a context in environment: " + environmentId);
+    }
+
+    /**
+     * Opens a session on a read-only connection of one of the replicas which has applied the commits
+     * the current thread has to observe. The connection is returned to the pool of the replica when the session is closed.
+     *
+     * @return Session or {@code null} if no replica has caught up and the primary has to serve the reads
+     */
+    private SqlSession openReplicaSession(ExecutorType execType, TransactionIsolationLevel level) {
+        Connection connection = null;
+        try {
+            connection = replicas.getConnection(txManager.getRequiredCommitMillis(ordinal));
+            if (connection == null) {
+                log.debug("No replica caught up with the last commit, reading from the primary of environment: {}", environmentId);
+                return null;
+            }
+            connection.setReadOnly(true);
+            connection.setAutoCommit(false);
+            if (level != null) {
+                connection.setTransactionIsolation(level.getLevel());
+            }
+            return openSession(execType, connection);
+        }
+        catch (SQLException e) {
+            if (connection != null) {
+                try {
+                    connection.close();
+                }
+                catch (SQLException ignored) {
+                    // the original failure is reported
+                }
+            }
+            throw ExceptionFactory.wrapException("Error opening replica session for environment " + environmentId + ".  Cause: " + e, e);
+        }
+    }
+
+    /**
+     * Wraps work to run on another thread in a session of its own, independently of the transactional context of
+     * the current thread. The session holds a permit of the bulkhead, it is committed on success, rolled back on
+     * failure and closed. The commit of a write is recorded for the reads of the current thread.
+     *
+     * @param work Work done in the session
+     * @param write Whether the work writes, so replica routing has to observe its commit
+     * @return Task to submit to an executor
+     */
+    public <T> Callable<T> detachedTask(final SessionCallback<T> work, boolean write) {
+        final TransactionContext commitTarget = write ? txManager.commitTarget() : null;
+        return new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                final SqlSession session = openAutoSession();
+                try {
+                    final T result = work.execute(session);
+                    session.commit();
+                    if (commitTarget != null) {
+                        txManager.markCommitted(commitTarget, ordinal);
                     }
+                    return result;
+                }
+                catch (Throwable t) {
+                    session.rollback();
+                    throw t;
                 }
-                else {
-                    throw new SqlSessionException("Trying to execute transaction without a context in environment: " + environmentId);
+                finally {
+                    closeDetached(session);
                 }
             }
+        };
+    }
+
+    /**
+     * Runs a single operation in its own session, committed on success and rolled back on failure
+     */
+    private <T> T executeInAutoSession(Operation<T> operation) {
+        log.warn("No transactional context, starting one anyway");
+        final SqlSession autoSqlSession = openAutoSession();
+        try {
+            final T result = operation.execute(autoSqlSession);
+            autoSqlSession.commit();
+            if (operation.isWrite()) {
+                txManager.markCommitted(ordinal);
+            }
+            return result;
+        }
+        catch (Throwable t) {
+            autoSqlSession.rollback();
+            throw t;
+        }
+        finally {
+            closeDetached(autoSqlSession);
+            log.debug("Auto-session closed");
+        }
+    }
+
+    /**
+     * Opens a session outside of any transactional context, holding a permit of the bulkhead until
+     * {@link #closeDetached(SqlSession)}
+     */
+    private SqlSession openAutoSession() {
+        if (bulkhead != null) {
+            bulkhead.acquire();
+        }
+        try {
+            return openSession();
+        }
+        catch (RuntimeException e) {
+            if (bulkhead != null) {
+                bulkhead.release();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Statement executed in an auto-session
+     */
+    private abstract static class Operation<T> {
+        abstract T execute(SqlSession session);
+
+        boolean isWrite() {
+            return false;
+        }
+    }
+
+    /**
+     * Insert, update or delete executed in an auto-session, its commit is recorded for replica routing
+     */
+    private abstract static class WriteOperation<T> extends Operation<T> {
+        @Override
+        boolean isWrite() {
+            return true;
         }
     }
 
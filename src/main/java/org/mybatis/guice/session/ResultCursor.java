@@ -0,0 +1,160 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.session;
+
+import org.apache.ibatis.exceptions.ExceptionFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Rows of a query mapped one at a time while iterating over a forward-only {@code ResultSet}, so the heap use
+ * does not depend on the number of rows.
+ *
+ * A cursor belongs to the session of the transaction which opened it. It is closed when all rows are read,
+ * when {@link #close()} is called or at the latest when the transaction closes its sessions. It can be
+ * iterated only once. Iterating a cursor closed before all rows were read, e.g. by the end of its transaction,
+ * fails with an {@code IllegalStateException} instead of reporting a truncated result as complete.
+ *
+ * @author ferenczil
+ */
+public final class ResultCursor<T> implements Iterable<T>, Iterator<T>, Closeable {
+    private static final Logger log = LoggerFactory.getLogger(ResultCursor.class);
+
+    private final Statement statement;
+
+    private final ResultSet resultSet;
+
+    private final CursorResultSetHandler handler;
+
+    private T next;
+
+    private boolean fetched;
+
+    private boolean closed;
+
+    /**
+     * Whether all rows were read, so the cursor was closed by its own iteration
+     */
+    private boolean exhausted;
+
+    private boolean iterated;
+
+    private int position;
+
+    ResultCursor(Statement statement, ResultSet resultSet, CursorResultSetHandler handler) {
+        this.statement = statement;
+        this.resultSet = resultSet;
+        this.handler = handler;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        if (iterated) {
+            throw new IllegalStateException("A cursor can only be iterated once");
+        }
+        iterated = true;
+        return this;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (closed) {
+            if (!exhausted) {
+                throw new IllegalStateException("Cursor was closed after " + position + " row(s), before all rows were read");
+            }
+            return false;
+        }
+        if (!fetched) {
+            fetch();
+        }
+        return fetched;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        final T result = next;
+        next = null;
+        fetched = false;
+        position++;
+        return result;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("Rows of a cursor can not be removed");
+    }
+
+    @SuppressWarnings("unchecked")
+    private void fetch() {
+        try {
+            if (resultSet.next()) {
+                next = (T) handler.map(resultSet);
+                fetched = true;
+            }
+            else {
+                exhausted = true;
+                close();
+            }
+        }
+        catch (SQLException e) {
+            close();
+            throw ExceptionFactory.wrapException("Error fetching row " + (position + 1) + " of cursor.  Cause: " + e, e);
+        }
+    }
+
+    /**
+     * @return Number of rows returned so far
+     */
+    public int getPosition() {
+        return position;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        next = null;
+        fetched = false;
+        try {
+            resultSet.close();
+        }
+        catch (SQLException e) {
+            log.debug("Failed to close cursor result set", e);
+        }
+        try {
+            statement.close();
+        }
+        catch (SQLException e) {
+            log.debug("Failed to close cursor statement", e);
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.session;
+
+import org.mybatis.guice.metrics.MBeans;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits the managed and auto-sessions an environment holds at the same time.
+ *
+ * A thread needing a session while all are taken waits, unless {@code maxWaiting} threads already do, at most
+ * for the acquisition timeout. A refused session fails with a {@link BulkheadFullException} instead of blocking
+ * the thread on the connection pool of a slow database. Published as an MBean named by the environment id.
+ *
+ * @author ferenczil
+ */
+public final class SessionBulkhead implements SessionBulkheadMXBean {
+
+    public static final String MBEAN_TYPE = "SessionBulkhead";
+
+    private final String environmentId;
+
+    private final int maxSessions;
+
+    private final int maxWaiting;
+
+    private final long timeoutNanos;
+
+    private final Semaphore sessions;
+
+    private final AtomicInteger waiting = new AtomicInteger();
+
+    private final AtomicLong acquired = new AtomicLong();
+
+    private final AtomicLong rejected = new AtomicLong();
+
+    private final AtomicLong timedOut = new AtomicLong();
+
+    /**
+     * @param environmentId Id of the environment
+     * @param maxSessions Maximum number of sessions held at the same time
+     * @param maxWaiting Maximum number of threads waiting for a session, further ones are refused at once
+     * @param timeoutMillis Maximum time to wait for a session
+     * @param exportMBean Whether to register the bulkhead in the platform MBean server
+     */
+    public SessionBulkhead(String environmentId, int maxSessions, int maxWaiting, long timeoutMillis, boolean exportMBean) {
+        if (maxSessions < 1) {
+            throw new IllegalArgumentException("Bulkhead of environment " + environmentId + " needs at least one session, got " + maxSessions);
+        }
+        if (maxWaiting < 0 || timeoutMillis < 0) {
+            throw new IllegalArgumentException("Bulkhead waiting threads and timeout of environment " + environmentId + " can not be negative");
+        }
+        this.environmentId = environmentId;
+        this.maxSessions = maxSessions;
+        this.maxWaiting = maxWaiting;
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        this.sessions = new Semaphore(maxSessions, true);
+        if (exportMBean) {
+            MBeans.register(MBEAN_TYPE, environmentId, this);
+        }
+    }
+
+    /**
+     * Takes a session, waiting for one if all are held
+     *
+     * @throws BulkheadFullException if too many threads wait, the timeout elapsed or the thread was interrupted
+     */
+    public void acquire() {
+        // Timed, unlike tryAcquire(), so the waiting threads keep their turn
+        boolean taken = false;
+        try {
+            taken = sessions.tryAcquire(0, TimeUnit.NANOSECONDS);
+            if (!taken) {
+                if (waiting.incrementAndGet() > maxWaiting) {
+                    waiting.decrementAndGet();
+                    rejected.incrementAndGet();
+                    throw new BulkheadFullException(environmentId, "All " + maxSessions + " sessions of environment " + environmentId
+                            + " are in use and " + maxWaiting + " threads already wait");
+                }
+                try {
+                    taken = sessions.tryAcquire(timeoutNanos, TimeUnit.NANOSECONDS);
+                }
+                finally {
+                    waiting.decrementAndGet();
+                }
+                if (!taken) {
+                    timedOut.incrementAndGet();
+                    throw new BulkheadFullException(environmentId, "No session of environment " + environmentId + " was released within "
+                            + TimeUnit.NANOSECONDS.toMillis(timeoutNanos) + " ms");
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BulkheadFullException(environmentId, "Interrupted while waiting for a session of environment " + environmentId);
+        }
+        acquired.incrementAndGet();
+    }
+
+    /**
+     * Returns a session taken by {@link #acquire()}
+     */
+    public void release() {
+        sessions.release();
+    }
+
+    public String getEnvironmentId() {
+        return environmentId;
+    }
+
+    @Override
+    public int getMaxSessions() {
+        return maxSessions;
+    }
+
+    @Override
+    public int getMaxWaiting() {
+        return maxWaiting;
+    }
+
+    @Override
+    public long getTimeoutMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(timeoutNanos);
+    }
+
+    @Override
+    public int getActiveSessions() {
+        return maxSessions - sessions.availablePermits();
+    }
+
+    @Override
+    public int getWaitingThreads() {
+        return waiting.get();
+    }
+
+    @Override
+    public long getAcquiredCount() {
+        return acquired.get();
+    }
+
+    @Override
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    @Override
+    public long getTimedOutCount() {
+        return timedOut.get();
+    }
+
+    @Override
+    public String toString() {
+        return "SessionBulkhead[" + environmentId + ", active: " + getActiveSessions() + "/" + maxSessions
+                + ", waiting: " + getWaitingThreads() + "/" + maxWaiting + "]";
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.session;
+
+import org.apache.ibatis.session.SqlSession;
+
+/**
+ * Work done in a session opened for it, see {@link DbSessionManager#detachedTask(SessionCallback, boolean)}.
+ *
+ * @author ferenczil
+ */
+public interface SessionCallback<T> {
+
+    /**
+     * @param session Session of the work, committed and closed by the caller
+     * @return Result of the work
+     * @throws Exception if the work fails, the session is rolled back
+     */
+    T execute(SqlSession session) throws Exception;
+
+}
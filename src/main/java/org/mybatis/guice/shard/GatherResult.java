@@ -0,0 +1,67 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.shard;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Merged result of a scatter-gather query, with the shards which did not contribute to it
+ *
+ * @author ferenczil
+ */
+public final class GatherResult<R> {
+
+    private final R value;
+
+    private final Map<String, Throwable> failures;
+
+    private final long elapsedMillis;
+
+    GatherResult(R value, Map<String, Throwable> failures, long elapsedMillis) {
+        this.value = value;
+        this.failures = Collections.unmodifiableMap(failures);
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public R getValue() {
+        return value;
+    }
+
+    /**
+     * @return Cause of the failure of each failed shard by environment id, a {@code TimeoutException} if the shard
+     * did not answer in time and a {@code RejectedExecutionException} if the executor was saturated
+     */
+    public Map<String, Throwable> getFailures() {
+        return failures;
+    }
+
+    /**
+     * @return Whether every shard contributed to the result
+     */
+    public boolean isComplete() {
+        return failures.isEmpty();
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "GatherResult[elapsed: " + elapsedMillis + " ms, failed shards: " + failures.keySet() + "]";
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.shard;
+
+/**
+ * What a scatter-gather query does when some of its shards fail or do not answer in time.
+ *
+ * @author ferenczil
+ */
+public enum PartialResultPolicy {
+
+    /**
+     * The query fails if any shard failed
+     */
+    FAIL,
+
+    /**
+     * The results of the shards which answered are merged, the failed shards are reported by the {@link GatherResult}
+     */
+    RETURN_AVAILABLE
+
+}
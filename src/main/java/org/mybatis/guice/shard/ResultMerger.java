@@ -0,0 +1,35 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.shard;
+
+import java.util.List;
+
+/**
+ * Merges the results of a scatter-gather query.
+ *
+ * See {@link ResultMergers} for the bundled implementations.
+ *
+ * @author ferenczil
+ */
+public interface ResultMerger<E, R> {
+
+    /**
+     * @param shardResults Rows of each shard which answered, in the order of the shards
+     * @return Merged result
+     */
+    R merge(List<List<E>> shardResults);
+
+}
@@ -0,0 +1,111 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.shard;
+
+import com.google.common.base.Preconditions;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Bundled {@link ResultMerger} implementations.
+ *
+ * @author ferenczil
+ */
+public final class ResultMergers {
+
+    private ResultMergers() {
+        // static factory
+    }
+
+    /**
+     * @return Merger concatenating the rows of the shards, in the order of the shards
+     */
+    public static <E> ResultMerger<E, List<E>> concat() {
+        return new ResultMerger<E, List<E>>() {
+            @Override
+            public List<E> merge(List<List<E>> shardResults) {
+                int size = 0;
+                for (List<E> rows : shardResults) {
+                    size += rows.size();
+                }
+                final List<E> merged = new ArrayList<>(size);
+                for (List<E> rows : shardResults) {
+                    merged.addAll(rows);
+                }
+                return merged;
+            }
+        };
+    }
+
+    /**
+     * Merges rows which every shard returns sorted by the same order, e.g. the {@code ORDER BY} of the statement.
+     * Only the first {@code limit} rows are merged, rows of equal order are taken from the shards in their order.
+     *
+     * @param comparator Order of the rows of every shard
+     * @param limit Maximum number of merged rows
+     * @return Merger
+     */
+    public static <E> ResultMerger<E, List<E>> sorted(final Comparator<? super E> comparator, final int limit) {
+        Preconditions.checkArgument(limit > 0, "Limit of the merged rows must be positive");
+        return new ResultMerger<E, List<E>>() {
+            @Override
+            public List<E> merge(List<List<E>> shardResults) {
+                final PriorityQueue<Head<E>> heads = new PriorityQueue<>(Math.max(1, shardResults.size()), new Comparator<Head<E>>() {
+                    @Override
+                    public int compare(Head<E> a, Head<E> b) {
+                        final int order = comparator.compare(a.row, b.row);
+                        return order != 0 ? order : a.shard - b.shard;
+                    }
+                });
+                for (int i = 0; i < shardResults.size(); i++) {
+                    final Iterator<E> rows = shardResults.get(i).iterator();
+                    if (rows.hasNext()) {
+                        heads.add(new Head<>(i, rows));
+                    }
+                }
+                final List<E> merged = new ArrayList<>();
+                while (merged.size() < limit && !heads.isEmpty()) {
+                    final Head<E> head = heads.poll();
+                    merged.add(head.row);
+                    if (head.rows.hasNext()) {
+                        head.row = head.rows.next();
+                        heads.add(head);
+                    }
+                }
+                return merged;
+            }
+        };
+    }
+
+    /**
+     * Next row of a shard in the k-way merge
+     */
+    private static final class Head<E> {
+        private final int shard;
+        private final Iterator<E> rows;
+        private E row;
+
+        Head(int shard, Iterator<E> rows) {
+            this.shard = shard;
+            this.rows = rows;
+            this.row = rows.next();
+        }
+    }
+}
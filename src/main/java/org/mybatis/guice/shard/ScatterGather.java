@@ -0,0 +1,146 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.shard;
+
+import org.apache.ibatis.session.RowBounds;
+import org.apache.ibatis.session.SqlSession;
+import org.mybatis.guice.session.DbSessionManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded executor running the same mapped statement on several environments concurrently, typically on every
+ * shard of a {@link ShardGroup}, see {@link #select(String, Object)}.
+ *
+ * Each shard is read in its own session opened on a thread of the executor, outside of the transactional context
+ * of the calling thread. At most {@code threads} shards are read at the same time and at most {@code queueSize}
+ * wait, further shards are rejected and count as failed.
+ *
+ * @author ferenczil
+ */
+public final class ScatterGather {
+    private static final Logger log = LoggerFactory.getLogger(ScatterGather.class);
+
+    private static final AtomicInteger poolCounter = new AtomicInteger();
+
+    private final ThreadPoolExecutor executor;
+
+    private final AtomicLong rejected = new AtomicLong();
+
+    private final AtomicLong timedOut = new AtomicLong();
+
+    public ScatterGather(int threads, int queueSize) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Scatter-gather needs at least one thread, got " + threads);
+        }
+        if (queueSize < 1) {
+            throw new IllegalArgumentException("Scatter-gather queue size must be positive, got " + queueSize);
+        }
+        final String prefix = "mybatis-scatter-" + poolCounter.incrementAndGet() + "-";
+        this.executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(queueSize),
+                new ThreadFactory() {
+                    private final AtomicInteger counter = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, prefix + counter.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Starts building a query running a select on several environments
+     *
+     * @param statement Unique identifier matching the statement to use
+     * @param parameter A parameter object to pass to the statement
+     * @return Query, the shards to read are added with {@code on}
+     */
+    public <E> ScatterQuery<E> select(String statement, Object parameter) {
+        return new ScatterQuery<>(this, statement, parameter);
+    }
+
+    /**
+     * Queues the read of one shard
+     */
+    <E> Future<List<E>> submit(final DbSessionManager sessionManager, final String statement, final Object parameter, final int rowLimit) {
+        try {
+            return executor.submit(new Callable<List<E>>() {
+                @Override
+                public List<E> call() {
+                    final SqlSession session = sessionManager.openSession();
+                    try {
+                        if (rowLimit > 0) {
+                            return session.selectList(statement, parameter, new RowBounds(0, rowLimit));
+                        }
+                        return session.selectList(statement, parameter);
+                    }
+                    finally {
+                        session.close();
+                    }
+                }
+            });
+        }
+        catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            log.warn("Scatter-gather queue is full, rejected statement {}", statement);
+            throw e;
+        }
+    }
+
+    void recordTimeout() {
+        timedOut.incrementAndGet();
+    }
+
+    /**
+     * @return Number of shard reads running now
+     */
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * @return Number of shard reads rejected because the queue was full
+     */
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    /**
+     * @return Number of shard reads which did not finish within the timeout of their query
+     */
+    public long getTimedOutCount() {
+        return timedOut.get();
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.shard;
+
+import com.google.common.base.Preconditions;
+import org.apache.ibatis.exceptions.PersistenceException;
+import org.mybatis.guice.session.DbSessionManager;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Select running on several environments concurrently, built by {@link ScatterGather#select(String, Object)}.
+ *
+ * A query is not thread safe, build one per call.
+ *
+ * @author ferenczil
+ */
+public final class ScatterQuery<E> {
+
+    private final ScatterGather scatterGather;
+
+    private final String statement;
+
+    private final Object parameter;
+
+    private final List<String> environmentIds = new ArrayList<>();
+
+    private final List<DbSessionManager> sessionManagers = new ArrayList<>();
+
+    private long timeoutNanos;
+
+    private int rowLimit;
+
+    private PartialResultPolicy partialResultPolicy = PartialResultPolicy.FAIL;
+
+    ScatterQuery(ScatterGather scatterGather, String statement, Object parameter) {
+        this.scatterGather = scatterGather;
+        this.statement = statement;
+        this.parameter = parameter;
+    }
+
+    /**
+     * Reads every shard of a group
+     *
+     * @param group Shard group
+     * @return query
+     */
+    public ScatterQuery<E> on(ShardGroup group) {
+        for (int i = 0; i < group.size(); i++) {
+            on(group.getEnvironmentIds().get(i), group.getSessionManager(i));
+        }
+        return this;
+    }
+
+    /**
+     * Reads an environment
+     *
+     * @param environmentId Id of the environment, used to report its failure
+     * @param sessionManager Session manager of the environment
+     * @return query
+     */
+    public ScatterQuery<E> on(String environmentId, DbSessionManager sessionManager) {
+        environmentIds.add(environmentId);
+        sessionManagers.add(sessionManager);
+        return this;
+    }
+
+    /**
+     * Set the time every shard has to answer, counted from the start of the query. The read of a late shard is
+     * interrupted, without a timeout the query waits for all shards
+     *
+     * @param timeout Timeout of each shard
+     * @param unit Unit of the timeout
+     * @return query
+     */
+    public ScatterQuery<E> timeout(long timeout, TimeUnit unit) {
+        Preconditions.checkArgument(timeout > 0, "Scatter-gather timeout must be positive");
+        this.timeoutNanos = unit.toNanos(timeout);
+        return this;
+    }
+
+    /**
+     * Set what happens when some shards fail or time out, {@link PartialResultPolicy#FAIL} if not set
+     *
+     * @param policy Policy
+     * @return query
+     */
+    public ScatterQuery<E> partialResults(PartialResultPolicy policy) {
+        this.partialResultPolicy = Preconditions.checkNotNull(policy, "Partial result policy");
+        return this;
+    }
+
+    /**
+     * Stop reading the rows of a shard after the first {@code limit}
+     *
+     * @param limit Maximum number of rows read from each shard
+     * @return query
+     */
+    public ScatterQuery<E> limitPerShard(int limit) {
+        Preconditions.checkArgument(limit > 0, "Row limit must be positive");
+        this.rowLimit = limit;
+        return this;
+    }
+
+    /**
+     * Runs the query and concatenates the rows of the shards, in the order of the shards
+     *
+     * @return Result
+     */
+    public GatherResult<List<E>> concat() {
+        return gather(ResultMergers.<E> concat());
+    }
+
+    /**
+     * Runs the query and merges the first {@code limit} rows by their order. Every shard must return its rows
+     * in that order, e.g. with the {@code ORDER BY} of the statement, and no shard reads more than {@code limit} rows.
+     *
+     * @param comparator Order of the rows of every shard
+     * @param limit Maximum number of merged rows
+     * @return Result
+     */
+    public GatherResult<List<E>> mergeSorted(Comparator<? super E> comparator, int limit) {
+        limitPerShard(limit);
+        return gather(ResultMergers.sorted(comparator, limit));
+    }
+
+    /**
+     * Runs the query and merges the results with a custom merger
+     *
+     * @param merger Merger of the rows of the shards
+     * @return Result
+     * @throws PersistenceException if a shard failed and the partial result policy is {@code FAIL}
+     */
+    public <R> GatherResult<R> gather(ResultMerger<E, R> merger) {
+        Preconditions.checkState(!sessionManagers.isEmpty(), "Scatter-gather query of %s has no shards", statement);
+        final long start = System.nanoTime();
+        final int count = sessionManagers.size();
+        final Map<String, Throwable> failures = new LinkedHashMap<>();
+
+        final List<Future<List<E>>> futures = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            try {
+                futures.add(scatterGather.<E> submit(sessionManagers.get(i), statement, parameter, rowLimit));
+            }
+            catch (RejectedExecutionException e) {
+                futures.add(null);
+                failures.put(environmentIds.get(i), e);
+            }
+        }
+
+        final List<List<E>> results = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final Future<List<E>> future = futures.get(i);
+            if (future == null) {
+                continue;
+            }
+            try {
+                if (timeoutNanos > 0) {
+                    results.add(future.get(Math.max(0L, start + timeoutNanos - System.nanoTime()), TimeUnit.NANOSECONDS));
+                }
+                else {
+                    results.add(future.get());
+                }
+            }
+            catch (TimeoutException e) {
+                future.cancel(true);
+                scatterGather.recordTimeout();
+                failures.put(environmentIds.get(i), new TimeoutException("Shard " + environmentIds.get(i) + " did not answer within "
+                        + TimeUnit.NANOSECONDS.toMillis(timeoutNanos) + " ms"));
+            }
+            catch (ExecutionException e) {
+                failures.put(environmentIds.get(i), e.getCause());
+            }
+            catch (InterruptedException e) {
+                for (Future<List<E>> f : futures) {
+                    if (f != null) {
+                        f.cancel(true);
+                    }
+                }
+                Thread.currentThread().interrupt();
+                throw new PersistenceException("Interrupted while gathering the results of " + statement, e);
+            }
+        }
+
+        if (!failures.isEmpty() && partialResultPolicy == PartialResultPolicy.FAIL) {
+            throw new PersistenceException("Scatter-gather of " + statement + " failed on shards " + failures.keySet(),
+                    failures.values().iterator().next());
+        }
+        return new GatherResult<>(merger.merge(results), failures, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+}
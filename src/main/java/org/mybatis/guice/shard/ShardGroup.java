@@ -0,0 +1,151 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.shard;
+
+import org.mybatis.guice.mappers.GeneratedMappers;
+import org.mybatis.guice.session.DbSessionManager;
+
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Environments holding the partitions of one logical database, with the same mappers.
+ *
+ * The mapper of the group routes every call to the shard owning the key of the call, see
+ * {@link #getMapper(Class)}. Managed sessions are started on demand per environment, so a transaction only
+ * enlists the shards it touched.
+ *
+ * @author ferenczil
+ */
+public final class ShardGroup {
+
+    private final String id;
+
+    private final String[] environmentIds;
+
+    private final DbSessionManager[] sessionManagers;
+
+    private final ShardKeyExtractor shardKeyExtractor;
+
+    private final ShardRouter router;
+
+    /**
+     * @param id Id of the group
+     * @param environmentIds Environment ids of the shards
+     * @param sessionManagers Session managers of the shards, in the order of the ids
+     * @param shardKeyExtractor Extractor of the key of the mapper calls
+     * @param router Router choosing the shard of a key
+     */
+    public ShardGroup(String id, String[] environmentIds, DbSessionManager[] sessionManagers,
+                      ShardKeyExtractor shardKeyExtractor, ShardRouter router) {
+        if (environmentIds.length == 0 || environmentIds.length != sessionManagers.length) {
+            throw new IllegalArgumentException("Shard group " + id + " needs one session manager per shard");
+        }
+        this.id = id;
+        this.environmentIds = environmentIds.clone();
+        this.sessionManagers = sessionManagers.clone();
+        this.shardKeyExtractor = shardKeyExtractor;
+        this.router = router;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * @return Number of shards
+     */
+    public int size() {
+        return environmentIds.length;
+    }
+
+    /**
+     * @return Environment ids of the shards, in the order they were added
+     */
+    public List<String> getEnvironmentIds() {
+        return Collections.unmodifiableList(Arrays.asList(environmentIds));
+    }
+
+    public ShardKeyExtractor getShardKeyExtractor() {
+        return shardKeyExtractor;
+    }
+
+    /**
+     * @param shardKey Key
+     * @return Index of the shard owning the key
+     */
+    public int shardOf(Object shardKey) {
+        if (shardKey == null) {
+            throw new IllegalArgumentException("Shard key of group " + id + " can not be null");
+        }
+        final int shard = router.route(shardKey, environmentIds);
+        if (shard < 0 || shard >= environmentIds.length) {
+            throw new IllegalStateException("Router of shard group " + id + " returned shard " + shard + " for key " + shardKey);
+        }
+        return shard;
+    }
+
+    /**
+     * @param shard Index of the shard
+     * @return Session manager of the shard
+     */
+    public DbSessionManager getSessionManager(int shard) {
+        return sessionManagers[shard];
+    }
+
+    /**
+     * @param shardKey Key
+     * @return Session manager of the shard owning the key
+     */
+    public DbSessionManager sessionManagerFor(Object shardKey) {
+        return sessionManagers[shardOf(shardKey)];
+    }
+
+    /**
+     * Returns the mapper of a single shard, e.g. to run statements without a key or to maintain the schema
+     *
+     * @param type Mapper interface
+     * @param shard Index of the shard
+     * @return Mapper calling the shard
+     */
+    public <T> T getMapper(Class<T> type, int shard) {
+        final DbSessionManager manager = sessionManagers[shard];
+        return GeneratedMappers.create(type, manager, manager.getMapper(type));
+    }
+
+    /**
+     * Returns a mapper routing each call to the shard owning its key. A call without a key fails with an
+     * {@code IllegalArgumentException}.
+     *
+     * @param type Mapper interface
+     * @return Routing mapper
+     */
+    public <T> T getMapper(Class<T> type) {
+        final Object[] targets = new Object[sessionManagers.length];
+        for (int i = 0; i < targets.length; i++) {
+            targets[i] = getMapper(type, i);
+        }
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{ type },
+                new ShardedMapperHandler(this, type, targets)));
+    }
+
+    @Override
+    public String toString() {
+        return "ShardGroup[" + id + ", shards: " + Arrays.toString(environmentIds) + "]";
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.shard;
+
+import com.google.inject.Inject;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.Provider;
+import org.mybatis.guice.session.DbSessionManager;
+
+import java.util.List;
+
+/**
+ * Provides a {@link ShardGroup} with the session managers exposed by the environments of its shards.
+ *
+ * @author ferenczil
+ */
+public final class ShardGroupProvider implements Provider<ShardGroup> {
+
+    private final String groupId;
+
+    private final List<String> environmentIds;
+
+    private final List<Key<DbSessionManager>> sessionManagerKeys;
+
+    private final ShardKeyExtractor shardKeyExtractor;
+
+    private final ShardRouter router;
+
+    @Inject
+    private Injector injector;
+
+    /**
+     * @param groupId Id of the group
+     * @param environmentIds Environment ids of the shards
+     * @param sessionManagerKeys Keys of the session managers of the shards, in the order of the ids
+     * @param shardKeyExtractor Extractor of the key of the mapper calls
+     * @param router Router choosing the shard of a key
+     */
+    public ShardGroupProvider(String groupId, List<String> environmentIds, List<Key<DbSessionManager>> sessionManagerKeys,
+                              ShardKeyExtractor shardKeyExtractor, ShardRouter router) {
+        this.groupId = groupId;
+        this.environmentIds = environmentIds;
+        this.sessionManagerKeys = sessionManagerKeys;
+        this.shardKeyExtractor = shardKeyExtractor;
+        this.router = router;
+    }
+
+    public ShardGroup get() {
+        final DbSessionManager[] sessionManagers = new DbSessionManager[sessionManagerKeys.size()];
+        for (int i = 0; i < sessionManagers.length; i++) {
+            sessionManagers[i] = injector.getInstance(sessionManagerKeys.get(i));
+        }
+        return new ShardGroup(groupId, environmentIds.toArray(new String[environmentIds.size()]), sessionManagers,
+                shardKeyExtractor, router);
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.shard;
+
+import java.lang.reflect.Method;
+
+/**
+ * Extracts the shard key from a call of a sharded mapper.
+ *
+ * An extractor instance belongs to a single shard group and is called concurrently, see {@link ShardKeys}
+ * for the bundled implementations.
+ *
+ * @author ferenczil
+ */
+public interface ShardKeyExtractor {
+
+    /**
+     * @param method Mapper method called
+     * @param args Arguments of the call, {@code null} if the method has no parameters
+     * @return Key of the call, {@code null} if it has none
+     */
+    Object shardKey(Method method, Object[] args);
+
+}
@@ -0,0 +1,109 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.shard;
+
+import org.apache.ibatis.reflection.SystemMetaObject;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Bundled {@link ShardKeyExtractor} implementations.
+ *
+ * @author ferenczil
+ */
+public final class ShardKeys {
+
+    private ShardKeys() {
+        // static factory
+    }
+
+    /**
+     * @return Extractor reading the parameter annotated with {@link ShardKey}, resolved once per method.
+     * Methods without an annotated parameter have no key
+     */
+    public static ShardKeyExtractor annotated() {
+        return new Annotated();
+    }
+
+    /**
+     * @param index Index of the parameter holding the key
+     * @return Extractor reading the same parameter of every method, methods with fewer parameters have no key
+     */
+    public static ShardKeyExtractor parameter(int index) {
+        return new Parameter(index, "");
+    }
+
+    /**
+     * @param index Index of the parameter
+     * @param property Property of the parameter holding the key, as in the mapped statements, e.g. {@code customer.id}
+     * @return Extractor reading the same property of the same parameter of every method
+     */
+    public static ShardKeyExtractor property(int index, String property) {
+        return new Parameter(index, property);
+    }
+
+    private static final class Parameter implements ShardKeyExtractor {
+        private static final Parameter NONE = new Parameter(-1, "");
+
+        private final int index;
+        private final String property;
+
+        Parameter(int index, String property) {
+            this.index = index;
+            this.property = property;
+        }
+
+        @Override
+        public Object shardKey(Method method, Object[] args) {
+            if (index < 0 || args == null || index >= args.length || args[index] == null) {
+                return null;
+            }
+            if (property.isEmpty()) {
+                return args[index];
+            }
+            return SystemMetaObject.forObject(args[index]).getValue(property);
+        }
+    }
+
+    private static final class Annotated implements ShardKeyExtractor {
+        private final ConcurrentMap<Method, Parameter> parameters = new ConcurrentHashMap<>();
+
+        @Override
+        public Object shardKey(Method method, Object[] args) {
+            Parameter parameter = parameters.get(method);
+            if (parameter == null) {
+                parameter = resolve(method);
+                parameters.putIfAbsent(method, parameter);
+            }
+            return parameter.shardKey(method, args);
+        }
+
+        private static Parameter resolve(Method method) {
+            final Annotation[][] annotations = method.getParameterAnnotations();
+            for (int i = 0; i < annotations.length; i++) {
+                for (Annotation annotation : annotations[i]) {
+                    if (annotation instanceof ShardKey) {
+                        return new Parameter(i, ((ShardKey) annotation).value());
+                    }
+                }
+            }
+            return Parameter.NONE;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.shard;
+
+/**
+ * Chooses the shard owning a key.
+ *
+ * A router instance belongs to a single shard group and is called concurrently, see {@link ShardRouters}
+ * for the bundled implementations.
+ *
+ * @author ferenczil
+ */
+public interface ShardRouter {
+
+    /**
+     * @param shardKey Key of the call, never {@code null}
+     * @param shardIds Environment ids of the shards, in the order they were added to the group, never empty
+     * @return Index of the shard owning the key
+     */
+    int route(Object shardKey, String[] shardIds);
+
+}
@@ -0,0 +1,190 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.shard;
+
+import com.google.common.base.Preconditions;
+
+import java.util.Arrays;
+
+/**
+ * Bundled {@link ShardRouter} implementations.
+ *
+ * Every call returns a new instance, do not share an instance between shard groups.
+ *
+ * @author ferenczil
+ */
+public final class ShardRouters {
+
+    private static final int DEFAULT_VIRTUAL_NODES = 128;
+
+    private ShardRouters() {
+        // static factory
+    }
+
+    /**
+     * @return Consistent hash router with 128 points per shard
+     * @see #consistentHash(int)
+     */
+    public static ShardRouter consistentHash() {
+        return new ConsistentHash(DEFAULT_VIRTUAL_NODES);
+    }
+
+    /**
+     * Places every shard on a hash ring at points derived from its environment id, a key belongs to the shard of
+     * the next point. Adding a shard only moves the keys taken over by the new one, and the placement does not
+     * depend on the order of the shards.
+     *
+     * Strings, enums and the types with a value based {@code hashCode}, like numbers or {@code UUID}, are
+     * routed the same way by every JVM.
+     *
+     * @param virtualNodes Points per shard, more points spread the keys more evenly
+     * @return Router
+     */
+    public static ShardRouter consistentHash(int virtualNodes) {
+        Preconditions.checkArgument(virtualNodes > 0, "Virtual nodes per shard must be positive");
+        return new ConsistentHash(virtualNodes);
+    }
+
+    /**
+     * Splits the keys into ranges: the first shard holds the keys below the first split point, shard {@code i}
+     * the keys from split point {@code i - 1} up to split point {@code i}, the last shard the rest.
+     *
+     * @param splitPoints Ascending split points, one less than the shards of the group
+     * @return Router
+     */
+    @SuppressWarnings("unchecked")
+    public static ShardRouter range(Comparable<?>... splitPoints) {
+        for (int i = 0; i < splitPoints.length; i++) {
+            Preconditions.checkArgument(splitPoints[i] != null, "Split points can not be null");
+            Preconditions.checkArgument(i == 0 || ((Comparable<Object>) splitPoints[i - 1]).compareTo(splitPoints[i]) < 0,
+                    "Split points must be ascending");
+        }
+        return new Range(splitPoints.clone());
+    }
+
+    /**
+     * FNV-1a of the characters, finished with the MurmurHash3 mix
+     */
+    static int hash(CharSequence value) {
+        int h = 0x811c9dc5;
+        for (int i = 0; i < value.length(); i++) {
+            h ^= value.charAt(i);
+            h *= 0x01000193;
+        }
+        return mix(h);
+    }
+
+    static int hashKey(Object key) {
+        if (key instanceof CharSequence) {
+            return hash((CharSequence) key);
+        }
+        if (key instanceof Enum) {
+            return hash(((Enum<?>) key).name());
+        }
+        return mix(key.hashCode());
+    }
+
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private static final class ConsistentHash implements ShardRouter {
+        private final int virtualNodes;
+
+        /**
+         * Ring of the last shard ids routed over, the group passes the same array on every call
+         */
+        private volatile Ring ring;
+
+        ConsistentHash(int virtualNodes) {
+            this.virtualNodes = virtualNodes;
+        }
+
+        @Override
+        public int route(Object shardKey, String[] shardIds) {
+            Ring current = ring;
+            if (current == null || current.shardIds != shardIds) {
+                current = new Ring(shardIds, virtualNodes);
+                ring = current;
+            }
+            return current.owner(hashKey(shardKey));
+        }
+    }
+
+    private static final class Ring {
+        private final String[] shardIds;
+
+        /**
+         * Point of the ring in the high, index of its shard in the low 32 bits, ordered by point
+         */
+        private final long[] entries;
+
+        Ring(String[] shardIds, int virtualNodes) {
+            this.shardIds = shardIds;
+            this.entries = new long[shardIds.length * virtualNodes];
+            int n = 0;
+            for (int shard = 0; shard < shardIds.length; shard++) {
+                for (int node = 0; node < virtualNodes; node++) {
+                    entries[n++] = ((long) hash(shardIds[shard] + '#' + node) << 32) | shard;
+                }
+            }
+            Arrays.sort(entries);
+        }
+
+        int owner(int hash) {
+            int index = Arrays.binarySearch(entries, (long) hash << 32);
+            if (index < 0) {
+                index = -index - 1;
+            }
+            return (int) entries[index == entries.length ? 0 : index];
+        }
+    }
+
+    private static final class Range implements ShardRouter {
+        private final Comparable<?>[] splitPoints;
+
+        Range(Comparable<?>[] splitPoints) {
+            this.splitPoints = splitPoints;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public int route(Object shardKey, String[] shardIds) {
+            if (splitPoints.length != shardIds.length - 1) {
+                throw new IllegalStateException("Range router with " + splitPoints.length + " split points can not route over "
+                        + shardIds.length + " shards");
+            }
+            final Comparable<Object> key = (Comparable<Object>) shardKey;
+            int low = 0;
+            int high = splitPoints.length;
+            while (low < high) {
+                final int mid = (low + high) >>> 1;
+                if (key.compareTo(splitPoints[mid]) >= 0) {
+                    low = mid + 1;
+                }
+                else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+}
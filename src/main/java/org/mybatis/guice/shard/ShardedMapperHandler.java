@@ -0,0 +1,66 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.shard;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * Calls the mapper of the shard owning the key of each call
+ *
+ * @author ferenczil
+ */
+final class ShardedMapperHandler implements InvocationHandler {
+
+    private final ShardGroup group;
+
+    private final Class<?> mapperType;
+
+    /**
+     * Mappers of the shards, in the order of the group
+     */
+    private final Object[] targets;
+
+    ShardedMapperHandler(ShardGroup group, Class<?> mapperType, Object[] targets) {
+        this.group = group;
+        this.mapperType = mapperType;
+        this.targets = targets;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if (method.getDeclaringClass() == Object.class) {
+            return method.invoke(this, args);
+        }
+        final Object shardKey = group.getShardKeyExtractor().shardKey(method, args);
+        if (shardKey == null) {
+            throw new IllegalArgumentException("No shard key in the call of " + mapperType.getName() + "." + method.getName()
+                    + " on shard group " + group.getId());
+        }
+        try {
+            return method.invoke(targets[group.shardOf(shardKey)], args);
+        }
+        catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Sharded mapper " + mapperType.getName() + " of group " + group.getId();
+    }
+}
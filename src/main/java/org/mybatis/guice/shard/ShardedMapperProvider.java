@@ -0,0 +1,45 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.shard;
+
+import com.google.inject.Inject;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.Provider;
+
+/**
+ * Provides the mapper of a shard group, routing each call to the shard owning its key.
+ *
+ * @author ferenczil
+ */
+public final class ShardedMapperProvider<T> implements Provider<T> {
+
+    private final Class<T> mapperType;
+
+    private final Key<ShardGroup> groupKey;
+
+    @Inject
+    private Injector injector;
+
+    public ShardedMapperProvider(Class<T> mapperType, Key<ShardGroup> groupKey) {
+        this.mapperType = mapperType;
+        this.groupKey = groupKey;
+    }
+
+    public T get() {
+        return injector.getInstance(groupKey).getMapper(mapperType);
+    }
+}
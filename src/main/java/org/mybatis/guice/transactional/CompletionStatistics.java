@@ -0,0 +1,103 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.transactional;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Commit and rollback counters of a single environment, maintained by the {@link MultiTransactionManager}
+ *
+ * @author ferenczil
+ */
+public final class CompletionStatistics {
+
+    private final String environmentId;
+
+    private final AtomicLong commits = new AtomicLong();
+    private final AtomicLong rollbacks = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong totalCommitNanos = new AtomicLong();
+    private final AtomicLong maxCommitNanos = new AtomicLong();
+
+    CompletionStatistics(String environmentId) {
+        this.environmentId = environmentId;
+    }
+
+    void recordCommit(long nanos) {
+        commits.incrementAndGet();
+        totalCommitNanos.addAndGet(nanos);
+        long max = maxCommitNanos.get();
+        while (nanos > max && !maxCommitNanos.compareAndSet(max, nanos)) {
+            max = maxCommitNanos.get();
+        }
+    }
+
+    void recordRollback() {
+        rollbacks.incrementAndGet();
+    }
+
+    void recordFailure() {
+        failures.incrementAndGet();
+    }
+
+    public String getEnvironmentId() {
+        return environmentId;
+    }
+
+    /**
+     * @return Number of successful commits
+     */
+    public long getCommitCount() {
+        return commits.get();
+    }
+
+    /**
+     * @return Number of successful rollbacks
+     */
+    public long getRollbackCount() {
+        return rollbacks.get();
+    }
+
+    /**
+     * @return Number of failed or timed out commits and rollbacks
+     */
+    public long getFailureCount() {
+        return failures.get();
+    }
+
+    public long getTotalCommitNanos() {
+        return totalCommitNanos.get();
+    }
+
+    public long getMaxCommitNanos() {
+        return maxCommitNanos.get();
+    }
+
+    public long getAverageCommitNanos() {
+        long count = commits.get();
+        return count == 0 ? 0 : totalCommitNanos.get() / count;
+    }
+
+    @Override
+    public String toString() {
+        return "CompletionStatistics[environment: " + environmentId
+                + ", commits: " + getCommitCount()
+                + ", rollbacks: " + getRollbackCount()
+                + ", failures: " + getFailureCount()
+                + ", avgCommitNanos: " + getAverageCommitNanos()
+                + ", maxCommitNanos: " + getMaxCommitNanos() + "]";
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.transactional;
+
+/**
+ * Commit time a read has to observe.
+ *
+ * A token obtained after a transaction committed can be handed to another thread or, in its encoded form,
+ * to a later request of the same client. Reads made after {@link MultiTransactionManager#requireConsistency(ConsistencyToken)}
+ * are only routed to replicas that have applied the writes up to the token, or to the primary.
+ *
+ * @author ferenczil
+ */
+public final class ConsistencyToken {
+
+    /**
+     * Token without requirements, any replica will do
+     */
+    public static final ConsistencyToken NONE = new ConsistencyToken(0);
+
+    private final long committedMillis;
+
+    private ConsistencyToken(long committedMillis) {
+        this.committedMillis = committedMillis;
+    }
+
+    static ConsistencyToken of(long committedMillis) {
+        return committedMillis <= 0 ? NONE : new ConsistencyToken(committedMillis);
+    }
+
+    /**
+     * Restores a token from its encoded form
+     *
+     * @param encoded Value returned by {@link #encode()}
+     * @return Token
+     * @throws IllegalArgumentException if the value is not a valid token
+     */
+    public static ConsistencyToken decode(String encoded) {
+        try {
+            return of(Long.parseLong(encoded, Character.MAX_RADIX));
+        }
+        catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid consistency token: " + encoded, e);
+        }
+    }
+
+    /**
+     * @return Compact string form of the token, e.g. to pass it in a cookie or header
+     */
+    public String encode() {
+        return Long.toString(committedMillis, Character.MAX_RADIX);
+    }
+
+    /**
+     * @return Commit time the reads have to observe, 0 if there is no requirement
+     */
+    public long getCommittedMillis() {
+        return committedMillis;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof ConsistencyToken && ((ConsistencyToken) o).committedMillis == committedMillis;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (committedMillis ^ (committedMillis >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        return "ConsistencyToken[committedMillis: " + committedMillis + "]";
+    }
+}
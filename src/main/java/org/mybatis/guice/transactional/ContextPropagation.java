@@ -0,0 +1,39 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.transactional;
+
+/**
+ * How a task handed to another thread takes part in the transaction of the thread that created it,
+ * see {@link MultiTransactionManager#wrap(java.util.concurrent.Callable, ContextPropagation)}.
+ *
+ * @author ferenczil
+ */
+public enum ContextPropagation {
+
+    /**
+     * The task uses the sessions of the creating thread and is committed or rolled back with its transaction.
+     * Sessions are not thread safe, so the joined tasks of a transaction run one at a time and the creating
+     * thread must not use its sessions until they finished.
+     */
+    JOIN,
+
+    /**
+     * The task runs in its own transaction with the settings of the creating thread's transaction, started on
+     * the first statement and committed when the task returns or rolled back when it throws.
+     */
+    INDEPENDENT
+
+}
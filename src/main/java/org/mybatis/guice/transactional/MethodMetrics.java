@@ -0,0 +1,191 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.transactional;
+
+import org.mybatis.guice.metrics.LatencyHistogram;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Duration, statement, environment and outcome counts of the outermost invocations of one transactional method
+ *
+ * @author ferenczil
+ */
+public final class MethodMetrics {
+
+    private final String method;
+
+    private final LatencyHistogram duration = new LatencyHistogram();
+
+    private final AtomicLong jdbcNanos = new AtomicLong();
+
+    private final AtomicLong completionNanos = new AtomicLong();
+
+    private final AtomicLong statements = new AtomicLong();
+
+    private final AtomicLong environments = new AtomicLong();
+
+    private final AtomicLong commits = new AtomicLong();
+
+    private final AtomicLong rollbacks = new AtomicLong();
+
+    private final AtomicLong allocatedBytes = new AtomicLong();
+
+    private final ConcurrentMap<String, LatencyHistogram> commitLatency = new ConcurrentHashMap<>();
+
+    MethodMetrics(String method) {
+        this.method = method;
+    }
+
+    void record(TransactionContext ctx, String[] environmentIds, long nanos, long allocated, boolean committed) {
+        duration.record(nanos);
+        jdbcNanos.addAndGet(ctx.statementNanos);
+        completionNanos.addAndGet(ctx.completionNanos);
+        statements.addAndGet(ctx.statementCount);
+        environments.addAndGet(ctx.enlistedCount);
+        if (allocated > 0) {
+            allocatedBytes.addAndGet(allocated);
+        }
+        if (committed) {
+            commits.incrementAndGet();
+        }
+        else {
+            rollbacks.incrementAndGet();
+        }
+        for (int i = 0; i < ctx.enlistedCount; i++) {
+            final int ordinal = ctx.enlisted[i];
+            final long commitNanos = ctx.commitNanos[ordinal];
+            if (commitNanos > 0) {
+                commitLatency(environmentIds[ordinal]).record(commitNanos);
+            }
+        }
+    }
+
+    private LatencyHistogram commitLatency(String environmentId) {
+        LatencyHistogram latency = commitLatency.get(environmentId);
+        if (latency == null) {
+            final LatencyHistogram created = new LatencyHistogram();
+            latency = commitLatency.putIfAbsent(environmentId, created);
+            if (latency == null) {
+                latency = created;
+            }
+        }
+        return latency;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    /**
+     * @return Duration of the invocations from the start of the context to the end of the completion
+     */
+    public LatencyHistogram getDuration() {
+        return duration;
+    }
+
+    /**
+     * @return Time spent executing statements, as seen by the sessions
+     */
+    public long getJdbcNanos() {
+        return jdbcNanos.get();
+    }
+
+    /**
+     * @return Time spent committing and rolling back, including the flush of batched statements
+     */
+    public long getCompletionNanos() {
+        return completionNanos.get();
+    }
+
+    public long getStatements() {
+        return statements.get();
+    }
+
+    /**
+     * @return Sum of the environments enlisted by the invocations
+     */
+    public long getEnvironments() {
+        return environments.get();
+    }
+
+    public long getCommits() {
+        return commits.get();
+    }
+
+    /**
+     * @return Invocations rolled back because of an exception, a failed commit or {@link Transactional#rollbackOnly()}
+     */
+    public long getRollbacks() {
+        return rollbacks.get();
+    }
+
+    public long getAllocatedBytes() {
+        return allocatedBytes.get();
+    }
+
+    /**
+     * @param environmentId Id of the environment
+     * @return Commit latency of the environment, {@code null} if the method never committed it
+     */
+    public LatencyHistogram getCommitLatency(String environmentId) {
+        return commitLatency.get(environmentId);
+    }
+
+    void reset() {
+        duration.reset();
+        jdbcNanos.set(0);
+        completionNanos.set(0);
+        statements.set(0);
+        environments.set(0);
+        commits.set(0);
+        rollbacks.set(0);
+        allocatedBytes.set(0);
+        for (LatencyHistogram latency : commitLatency.values()) {
+            latency.reset();
+        }
+    }
+
+    TransactionStatistics snapshot() {
+        final long count = duration.getCount();
+        final long divisor = Math.max(count, 1);
+        final long meanJdbc = jdbcNanos.get() / divisor;
+        final long meanCompletion = completionNanos.get() / divisor;
+        final Map<String, Long> meanCommit = new TreeMap<>();
+        for (Map.Entry<String, LatencyHistogram> e : commitLatency.entrySet()) {
+            meanCommit.put(e.getKey(), e.getValue().getMeanNanos());
+        }
+        return new TransactionStatistics(method,
+                count,
+                commits.get(),
+                rollbacks.get(),
+                duration.getTotalNanos(),
+                duration.getMeanNanos(),
+                duration.getPercentileNanos(99),
+                duration.getMaxNanos(),
+                meanJdbc,
+                meanCompletion,
+                Math.max(0, duration.getMeanNanos() - meanJdbc - meanCompletion),
+                (double) statements.get() / divisor,
+                (double) environments.get() / divisor,
+                allocatedBytes.get() / divisor,
+                meanCommit);
+    }
+}
@@ -0,0 +1,812 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.transactional;
+
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+import org.apache.ibatis.exceptions.PersistenceException;
+import org.apache.ibatis.session.SqlSession;
+import org.mybatis.guice.cache.CacheStage;
+import org.mybatis.guice.cache.CacheStages;
+import org.mybatis.guice.session.DbSessionManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Coordinates transactions over every registered environment.
+ *
+ * Each registered {@link DbSessionManager} receives an ordinal, the sessions of the current thread are
+ * kept in a single {@link TransactionContext} indexed by that ordinal. Commit, rollback and close only
+ * visit the environments enlisted in the current transaction instead of every registered one.
+ *
+ * Optionally the enlisted environments are committed or rolled back concurrently, see
+ * {@link #setParallelCompletion(int, long)}.
+ *
+ * The time of the last commit of each thread is remembered per environment, so read-only transactions
+ * of the same thread are only routed to replicas which already applied its writes. The requirement can be
+ * carried to other threads or requests with a {@link ConsistencyToken}.
+ *
+ * The contexts are held by a replaceable {@link TransactionContextStorage}. A context can be carried to another
+ * thread explicitly with {@link #capture()} and {@link #restore(TransactionContext)}, or by wrapping the tasks
+ * handed to other threads, see {@link ContextPropagation}.
+ *
+ * Second-level cache changes of the sessions are staged in the {@link CacheStage} of the context and only
+ * published when every environment committed.
+ *
+ * @author ferenczil
+ */
+public class MultiTransactionManager implements CacheStages {
+    private static final Logger log = LoggerFactory.getLogger(MultiTransactionManager.class);
+
+    Map<String, DbSessionManager> managerMap;
+
+    /**
+     * Registered managers indexed by ordinal, replaced on every registration
+     */
+    volatile DbSessionManager[] managers;
+
+    volatile String[] environmentIds;
+
+    volatile CompletionStatistics[] statistics;
+
+    volatile TransactionContextStorage contextStorage;
+
+    /**
+     * Executor completing the enlisted environments concurrently, {@code null} for sequential completion
+     */
+    ParallelCompletion parallelCompletion;
+
+    public MultiTransactionManager() {
+        managerMap = new HashMap<>();
+        managers = new DbSessionManager[0];
+        environmentIds = new String[0];
+        statistics = new CompletionStatistics[0];
+        contextStorage = new ThreadLocalContextStorage();
+    }
+
+    /**
+     * Registers the session manager of an environment.
+     *
+     * @param environmentId Id of the environment
+     * @param manager Session manager of the environment
+     * @return Ordinal of the environment, used to address the session slot in the transactional context
+     */
+    public synchronized int register(String environmentId, DbSessionManager manager) {
+        log.info("Registered DbSessionManager for environment {}", environmentId);
+        managerMap.put(environmentId, manager);
+
+        int ordinal = managers.length;
+        DbSessionManager[] newManagers = Arrays.copyOf(managers, ordinal + 1);
+        newManagers[ordinal] = manager;
+        String[] newIds = Arrays.copyOf(environmentIds, ordinal + 1);
+        newIds[ordinal] = environmentId;
+        CompletionStatistics[] newStatistics = Arrays.copyOf(statistics, ordinal + 1);
+        newStatistics[ordinal] = new CompletionStatistics(environmentId);
+
+        environmentIds = newIds;
+        statistics = newStatistics;
+        managers = newManagers;
+        return ordinal;
+    }
+
+    /**
+     * Enables parallel completion: commits and rollbacks of transactions spanning more than one environment
+     * are issued concurrently on a bounded pool.
+     *
+     * @param threads Number of completion threads
+     * @param timeoutMillis Time to wait for all environments to complete before reporting a failure
+     */
+    @Inject(optional = true)
+    public void setParallelCompletion(@Named("mybatis.multi.completionThreads") int threads,
+                                      @Named("mybatis.multi.completionTimeout") long timeoutMillis) {
+        if (parallelCompletion != null) {
+            parallelCompletion.shutdown();
+        }
+        parallelCompletion = new ParallelCompletion(threads, timeoutMillis);
+        log.info("Parallel transaction completion enabled [threads: {}, timeout: {} ms]", threads, timeoutMillis);
+    }
+
+    /**
+     * Replaces the storage of the per-thread transactional contexts. Must be set before the first transaction.
+     *
+     * @param contextStorage Storage, e.g. {@link ScopedContextStorage}
+     */
+    @Inject(optional = true)
+    public void setContextStorage(TransactionContextStorage contextStorage) {
+        this.contextStorage = contextStorage;
+    }
+
+    /**
+     * @return Context of the current thread, bound on first use
+     */
+    private TransactionContext context() {
+        final TransactionContextStorage storage = contextStorage;
+        TransactionContext ctx = storage.get();
+        if (ctx == null) {
+            ctx = new TransactionContext(managers.length);
+            storage.set(ctx);
+        }
+        return ctx;
+    }
+
+    /**
+     * Returns the commit and rollback statistics of an environment
+     *
+     * @param environmentId Id of the environment
+     * @return Statistics or {@code null} if the environment is not registered
+     */
+    public CompletionStatistics getCompletionStatistics(String environmentId) {
+        final String[] ids = environmentIds;
+        for (int i = 0; i < ids.length; i++) {
+            if (ids[i].equals(environmentId)) {
+                return statistics[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return Commit and rollback statistics of all registered environments
+     */
+    public List<CompletionStatistics> getCompletionStatistics() {
+        return Collections.unmodifiableList(Arrays.asList(statistics));
+    }
+
+    public void startTransactionalContext(Transactional tx) {
+        TransactionContext ctx = context();
+        if (ctx.transactional != null) {
+            // If we already have a context do not override the settings
+            return;
+        }
+        ctx.transactional = tx;
+        ctx.generation++;
+        ctx.resetAccounting();
+    }
+
+    public Transactional getContext() {
+        final TransactionContext ctx = contextStorage.get();
+        return ctx != null ? ctx.transactional : null;
+    }
+
+    public void stopTransactionalContext() {
+        final TransactionContext ctx = contextStorage.get();
+        if (ctx != null) {
+            ctx.transactional = null;
+        }
+    }
+
+    public boolean isWithinTransactionalContext() {
+        return getContext() != null;
+    }
+
+    /**
+     * Returns the session the current thread holds for an environment.
+     *
+     * @param ordinal Ordinal of the environment
+     * @return Managed session or {@code null} if none is started
+     */
+    public SqlSession getSession(int ordinal) {
+        final TransactionContext ctx = contextStorage.get();
+        return ctx != null ? ctx.getSession(ordinal) : null;
+    }
+
+    /**
+     * Stores the managed session of an environment for the current thread, enlisting the environment
+     * in the current transaction.
+     *
+     * @param ordinal Ordinal of the environment
+     * @param session Managed session, {@code null} to release the slot
+     */
+    public void setSession(int ordinal, SqlSession session) {
+        context().setSession(ordinal, session);
+    }
+
+    public void commit(boolean force) {
+        final TransactionContext ctx = context();
+        final long start = System.nanoTime();
+        final boolean errors = complete(ctx, true, force);
+        ctx.completionNanos += System.nanoTime() - start;
+        if (ctx.cacheStage != null) {
+            if (errors) {
+                ctx.cacheStage.discard();
+            }
+            else {
+                ctx.cacheStage.publish();
+            }
+        }
+        if (ctx.transactional == null || !ctx.transactional.readOnly()) {
+            // Recorded even after failures, a partial commit must be visible to the next reads as well
+            final long now = System.currentTimeMillis();
+            for (int i = 0; i < ctx.enlistedCount; i++) {
+                ctx.committed(ctx.enlisted[i], now);
+            }
+        }
+        if (errors) {
+            throw new PersistenceException("One or more environments failed to commit. See log for details");
+        }
+    }
+
+    public void rollback(boolean force) {
+        final TransactionContext ctx = context();
+        final long start = System.nanoTime();
+        final boolean errors = complete(ctx, false, force);
+        ctx.completionNanos += System.nanoTime() - start;
+        if (ctx.cacheStage != null) {
+            // Sessions committed earlier in the transaction may have staged invalidations
+            ctx.cacheStage.discard();
+        }
+        if (errors) {
+            throw new PersistenceException("One or more environments failed to roll back. See log for details");
+        }
+    }
+
+    /**
+     * Returns the stage collecting the second-level cache changes of the current transaction
+     *
+     * @return Stage or {@code null} if there is no transactional context
+     */
+    @Override
+    public CacheStage currentStage() {
+        final TransactionContext ctx = contextStorage.get();
+        if (ctx == null || ctx.transactional == null) {
+            return null;
+        }
+        if (ctx.cacheStage == null) {
+            ctx.cacheStage = new CacheStage();
+        }
+        return ctx.cacheStage;
+    }
+
+    /**
+     * Registers a resource which depends on the sessions of the current transactional context, like an open cursor.
+     * It is closed by {@link #close()} before the sessions, unless it was closed earlier.
+     *
+     * @param resource Resource to close with the transaction
+     * @throws IllegalStateException if there is no transactional context
+     */
+    public void addResource(Closeable resource) {
+        final TransactionContext ctx = contextStorage.get();
+        if (ctx == null || ctx.transactional == null) {
+            throw new IllegalStateException("No transactional context to bind the resource to");
+        }
+        ctx.addResource(resource);
+    }
+
+    /**
+     * Accounts a statement executed in the current transactional context, see {@link TransactionMetrics}.
+     * Statements executed outside of a context are ignored.
+     *
+     * @param nanos Time spent executing the statement
+     */
+    public void recordStatement(long nanos) {
+        final TransactionContext ctx = contextStorage.get();
+        if (ctx != null && ctx.transactional != null) {
+            ctx.statementCount++;
+            ctx.statementNanos += nanos;
+        }
+    }
+
+    /**
+     * @return Context of the current thread, {@code null} if it has none
+     */
+    TransactionContext currentContext() {
+        return contextStorage.get();
+    }
+
+    /**
+     * Records a commit of the current thread made outside of a transactional context
+     *
+     * @param ordinal Ordinal of the environment
+     */
+    public void markCommitted(int ordinal) {
+        final TransactionContext ctx = context();
+        ctx.committed(ordinal, System.currentTimeMillis());
+        if (ctx.transactional == null && ctx.enlistedCount == 0) {
+            contextStorage.release();
+        }
+    }
+
+    /**
+     * Returns the context the commits made on behalf of the current thread by other threads are recorded in,
+     * with {@link #markCommitted(TransactionContext, int)}. It is bound like {@link #markCommitted(int)} binds one.
+     *
+     * @return Context of the current thread
+     */
+    public TransactionContext commitTarget() {
+        final TransactionContext ctx = context();
+        if (ctx.transactional == null && ctx.enlistedCount == 0) {
+            contextStorage.release();
+        }
+        return ctx;
+    }
+
+    /**
+     * Records a commit made on behalf of another thread
+     *
+     * @param context Context returned by {@link #commitTarget()} on that thread
+     * @param ordinal Ordinal of the environment
+     */
+    public void markCommitted(TransactionContext context, int ordinal) {
+        context.committed(ordinal, System.currentTimeMillis());
+    }
+
+    /**
+     * Returns the commit time the reads of the current thread have to observe in an environment:
+     * the later of its own last commit and the required consistency token.
+     *
+     * @param ordinal Ordinal of the environment
+     * @return Commit time in milliseconds, 0 if there is no requirement
+     */
+    public long getRequiredCommitMillis(int ordinal) {
+        final TransactionContext ctx = contextStorage.get();
+        return ctx != null ? ctx.getRequiredMillis(ordinal) : 0;
+    }
+
+    /**
+     * @return Token covering every commit of the current thread and the token it requires itself
+     */
+    public ConsistencyToken getConsistencyToken() {
+        final TransactionContext ctx = contextStorage.get();
+        if (ctx == null) {
+            return ConsistencyToken.NONE;
+        }
+        long latest = ctx.requiredMillis;
+        for (long millis : ctx.committedMillis) {
+            latest = Math.max(latest, millis);
+        }
+        return ConsistencyToken.of(latest);
+    }
+
+    /**
+     * Makes the following reads of the current thread observe the writes covered by the token,
+     * in addition to its own commits.
+     *
+     * @param token Token obtained from {@link #getConsistencyToken()}
+     */
+    public void requireConsistency(ConsistencyToken token) {
+        final TransactionContext ctx = context();
+        ctx.requiredMillis = Math.max(ctx.requiredMillis, token.getCommittedMillis());
+    }
+
+    /**
+     * Forgets the commits and required token of the current thread, e.g. when a pooled thread starts
+     * serving an unrelated request.
+     */
+    public void clearConsistency() {
+        final TransactionContext ctx = context();
+        ctx.requiredMillis = 0;
+        Arrays.fill(ctx.committedMillis, 0);
+    }
+
+    /**
+     * Captures the transactional context of the current thread, to be bound to another thread with
+     * {@link #restore(TransactionContext)}. The threads share the sessions, which are not thread safe:
+     * only one of them may use them at a time.
+     *
+     * @return Context of the current thread, {@code null} if it has none
+     */
+    public TransactionContext capture() {
+        return contextStorage.get();
+    }
+
+    /**
+     * Binds a captured context to the current thread
+     *
+     * @param context Context returned by {@link #capture()} or by a previous restore, {@code null} unbinds
+     * @return Context bound before, to be restored when the thread is done with the captured one
+     */
+    public TransactionContext restore(TransactionContext context) {
+        final TransactionContextStorage storage = contextStorage;
+        final TransactionContext previous = storage.get();
+        storage.set(context);
+        return previous;
+    }
+
+    /**
+     * Wraps a task so it takes part in the transaction of the current thread when it runs on another thread.
+     * Outside of a transactional context the task runs unchanged.
+     *
+     * A joining task fails with an {@code IllegalStateException} if the transaction it was wrapped in has ended
+     * before it runs. An independent task hands its commit times back to the context of the current thread, so
+     * its reads observe the writes of the task once it waited for it.
+     *
+     * @param task Task to wrap
+     * @param propagation Whether the task joins the sessions of the current thread or runs its own transaction
+     * @return Wrapped task
+     */
+    public <T> Callable<T> wrap(final Callable<T> task, ContextPropagation propagation) {
+        final TransactionContext captured = contextStorage.get();
+        final Transactional tx = captured != null ? captured.transactional : null;
+        if (tx == null) {
+            return task;
+        }
+        if (propagation == ContextPropagation.JOIN) {
+            final int generation = captured.generation;
+            return new Callable<T>() {
+                @Override
+                public T call() throws Exception {
+                    final TransactionContext previous = restore(captured);
+                    captured.joinLock.lock();
+                    try {
+                        if (captured.generation != generation) {
+                            // The context is reused by the next transaction of its thread
+                            throw new IllegalStateException("The transaction joined by the task has already ended");
+                        }
+                        return task.call();
+                    }
+                    finally {
+                        captured.joinLock.unlock();
+                        restore(previous);
+                    }
+                }
+            };
+        }
+        return new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                final TransactionContext ctx = new TransactionContext(managers.length);
+                ctx.transactional = tx;
+                final TransactionContext previous = restore(ctx);
+                try {
+                    final T result = task.call();
+                    if (tx.rollbackOnly()) {
+                        rollback(true);
+                    }
+                    else {
+                        commit(tx.force());
+                    }
+                    return result;
+                }
+                catch (Exception | Error e) {
+                    rollback(tx.force());
+                    throw e;
+                }
+                finally {
+                    try {
+                        close();
+                    }
+                    finally {
+                        restore(previous);
+                        captured.committedAll(ctx);
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * Wraps a task so it takes part in the transaction of the current thread when it runs on another thread,
+     * see {@link #wrap(Callable, ContextPropagation)}.
+     *
+     * @param task Task to wrap
+     * @param propagation Whether the task joins the sessions of the current thread or runs its own transaction
+     * @return Wrapped task, exceptions thrown by the task are re-thrown unchecked
+     */
+    public Runnable wrap(final Runnable task, ContextPropagation propagation) {
+        if (getContext() == null) {
+            return task;
+        }
+        final Callable<Object> wrapped = wrap(Executors.callable(task), propagation);
+        return new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    wrapped.call();
+                }
+                catch (RuntimeException e) {
+                    throw e;
+                }
+                catch (Exception e) {
+                    throw new PersistenceException(e);
+                }
+            }
+        };
+    }
+
+    /**
+     * Wraps an executor so every task submitted from a transactional context takes part in the transaction of
+     * the submitting thread.
+     *
+     * @param executor Executor to wrap
+     * @param propagation Whether the tasks join the sessions of the submitting thread or run their own transactions
+     * @return Wrapped executor
+     */
+    public Executor wrap(final Executor executor, final ContextPropagation propagation) {
+        return new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                executor.execute(wrap(command, propagation));
+            }
+        };
+    }
+
+    public void close() {
+        final TransactionContext ctx = context();
+        final DbSessionManager[] registered = managers;
+        boolean errors = false;
+        if (ctx.resources != null && !ctx.resources.isEmpty()) {
+            // Resources use the connections of the sessions, release them first
+            for (Closeable resource : ctx.resources) {
+                try {
+                    resource.close();
+                }
+                catch (Exception e) {
+                    errors = true;
+                    log.error("Failed to close resource of the transaction: {}", resource, e);
+                }
+            }
+            ctx.resources.clear();
+        }
+        for (int i = 0; i < ctx.enlistedCount; i++) {
+            final int ordinal = ctx.enlisted[i];
+            final DbSessionManager man = registered[ordinal];
+            if (man.isManagedSessionStarted()) {
+                log.debug("Closing session [environment: {}]", environmentIds[ordinal]);
+                try {
+                    man.close();
+                }
+                catch (Exception e) {
+                    errors = true;
+                    log.error("Failed to close session for [environment: {}]", environmentIds[ordinal], e);
+                }
+            }
+        }
+        ctx.clearEnlisted();
+        if (ctx.cacheStage != null && !ctx.cacheStage.isEmpty()) {
+            // Neither committed nor rolled back through the manager
+            ctx.cacheStage.discard();
+        }
+
+        // Ensure the context is reset on finishing
+        ctx.transactional = null;
+        ctx.generation++;
+        contextStorage.release();
+
+        if (errors) {
+            throw new PersistenceException("One or more environments failed to close. See log for details");
+        }
+    }
+
+    /**
+     * Commits or rolls back every enlisted environment of the context
+     *
+     * @return {@code true} if any of the environments failed
+     */
+    private boolean complete(TransactionContext ctx, boolean commit, boolean force) {
+        if (parallelCompletion != null && ctx.enlistedCount > 1) {
+            return completeInParallel(ctx, commit, force);
+        }
+        boolean errors = false;
+        for (int i = 0; i < ctx.enlistedCount; i++) {
+            final int ordinal = ctx.enlisted[i];
+            final SqlSession session = ctx.sessions[ordinal];
+            if (session != null && !completeSession(ctx, session, ordinal, commit, force)) {
+                errors = true;
+            }
+        }
+        return errors;
+    }
+
+    /**
+     * Submits the completion of every enlisted environment to the completion executor and waits for
+     * all of them within the configured timeout. Timed out completions are reported as failures; one that
+     * is still running keeps its session, which is closed on the completion executor once the driver returns.
+     *
+     * @return {@code true} if any of the environments failed
+     */
+    private boolean completeInParallel(final TransactionContext ctx, final boolean commit, final boolean force) {
+        final int count = ctx.enlistedCount;
+        final Completion[] completions = new Completion[count];
+        final Future<?>[] futures = new Future<?>[count];
+        for (int i = 0; i < count; i++) {
+            final int ordinal = ctx.enlisted[i];
+            final SqlSession session = ctx.sessions[ordinal];
+            if (session != null) {
+                completions[i] = new Completion(ctx, session, ordinal, commit, force);
+                futures[i] = parallelCompletion.submit(completions[i]);
+            }
+        }
+
+        boolean errors = false;
+        final long deadline = System.nanoTime() + parallelCompletion.getTimeoutNanos();
+        for (int i = 0; i < count; i++) {
+            if (futures[i] == null) {
+                continue;
+            }
+            final int ordinal = ctx.enlisted[i];
+            try {
+                if (!(Boolean) futures[i].get(Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                    errors = true;
+                }
+            }
+            catch (TimeoutException e) {
+                errors = true;
+                abandon(ctx, futures[i], completions[i]);
+                log.error("Timed out completing transaction for [environment: {}]", environmentIds[ordinal]);
+            }
+            catch (InterruptedException e) {
+                errors = true;
+                abandon(ctx, futures[i], completions[i]);
+                Thread.currentThread().interrupt();
+                log.error("Interrupted while completing transaction for [environment: {}]", environmentIds[ordinal]);
+            }
+            catch (ExecutionException e) {
+                errors = true;
+                statistics[ordinal].recordFailure();
+                log.error("Failed to complete transaction for [environment: {}]", environmentIds[ordinal], e.getCause());
+            }
+        }
+        return errors;
+    }
+
+    /**
+     * Gives up waiting for a completion. A completion that did not start yet never will, its session is closed
+     * with the context. A running one is detached from the context, so the session is never used by two threads;
+     * the completion closes it when it returns. One that finished in the meantime recorded its outcome.
+     */
+    private void abandon(TransactionContext ctx, Future<?> future, Completion completion) {
+        switch (completion.abandon()) {
+            case Completion.PENDING:
+                future.cancel(false);
+                statistics[completion.ordinal].recordFailure();
+                break;
+            case Completion.RUNNING:
+                statistics[completion.ordinal].recordFailure();
+                ctx.sessions[completion.ordinal] = null;
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Completion of a single environment on the completion executor. Either the completion settles its
+     * outcome or the waiting thread abandons it, whichever comes first, so the outcome is recorded once.
+     * The state is kept here rather than read from the future, which reports a running task as cancellable.
+     */
+    private final class Completion implements Callable<Boolean> {
+
+        private static final int PENDING = 0;
+
+        private static final int RUNNING = 1;
+
+        private static final int SETTLED = 2;
+
+        private static final int ABANDONED = 3;
+
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+
+        private final TransactionContext ctx;
+
+        private final SqlSession session;
+
+        private final int ordinal;
+
+        private final boolean commit;
+
+        private final boolean force;
+
+        Completion(TransactionContext ctx, SqlSession session, int ordinal, boolean commit, boolean force) {
+            this.ctx = ctx;
+            this.session = session;
+            this.ordinal = ordinal;
+            this.commit = commit;
+            this.force = force;
+        }
+
+        @Override
+        public Boolean call() {
+            if (!state.compareAndSet(PENDING, RUNNING)) {
+                // Abandoned before it started, the session stays with the context
+                return false;
+            }
+            try {
+                return completeSession(ctx, session, ordinal, commit, force, this);
+            }
+            finally {
+                if (state.get() == ABANDONED) {
+                    log.debug("Closing abandoned session [environment: {}]", environmentIds[ordinal]);
+                    try {
+                        managers[ordinal].closeDetached(session);
+                    }
+                    catch (Exception e) {
+                        log.error("Failed to close abandoned session for [environment: {}]", environmentIds[ordinal], e);
+                    }
+                }
+            }
+        }
+
+        boolean settle() {
+            return state.compareAndSet(RUNNING, SETTLED);
+        }
+
+        /**
+         * @return State the completion was abandoned in, {@link #SETTLED} if it could not be abandoned any more
+         */
+        int abandon() {
+            while (true) {
+                final int current = state.get();
+                if (current == SETTLED || current == ABANDONED) {
+                    return SETTLED;
+                }
+                if (state.compareAndSet(current, ABANDONED)) {
+                    return current;
+                }
+            }
+        }
+    }
+
+    private boolean completeSession(TransactionContext ctx, SqlSession session, int ordinal, boolean commit, boolean force) {
+        return completeSession(ctx, session, ordinal, commit, force, null);
+    }
+
+    /**
+     * @param completion Completion on the completion executor, the outcome is only recorded if it was not
+     *                   abandoned; {@code null} when completing on the calling thread
+     */
+    private boolean completeSession(TransactionContext ctx, SqlSession session, int ordinal, boolean commit, boolean force,
+                                    Completion completion) {
+        final CompletionStatistics stats = statistics[ordinal];
+        try {
+            if (commit) {
+                log.debug("Committing transaction [environment: {}]", environmentIds[ordinal]);
+                final long start = System.nanoTime();
+                session.commit(force);
+                final long elapsed = System.nanoTime() - start;
+                if (completion == null || completion.settle()) {
+                    stats.recordCommit(elapsed);
+                    // Each environment has its own slot, concurrent completions don't share them
+                    ctx.commitNanos[ordinal] = elapsed;
+                }
+            }
+            else {
+                log.debug("Rolling back transaction [environment: {}]", environmentIds[ordinal]);
+                session.rollback(force);
+                if (completion == null || completion.settle()) {
+                    stats.recordRollback();
+                }
+            }
+            return true;
+        }
+        catch (Exception e) {
+            if (completion == null || completion.settle()) {
+                stats.recordFailure();
+            }
+            if (commit) {
+                log.error("Failed to commit transaction for [environment: {}]", environmentIds[ordinal], e);
+            }
+            else {
+                log.error("Failed to rollback transaction for [environment: {}]", environmentIds[ordinal], e);
+            }
+            return false;
+        }
+    }
+}
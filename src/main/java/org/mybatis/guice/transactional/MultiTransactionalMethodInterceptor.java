@@ -21,9 +21,6 @@ import org.apache.ibatis.logging.Log;
 import org.apache.ibatis.logging.LogFactory;
 
 import javax.inject.Inject;
-import java.lang.reflect.Constructor;
-import java.lang.reflect.Method;
-import java.util.Arrays;
 
 import static java.lang.String.format;
 import static java.lang.Thread.currentThread;
@@ -33,33 +30,40 @@ import static java.lang.Thread.currentThread;
  */
 public class MultiTransactionalMethodInterceptor implements MethodInterceptor {
 
-    private static final Class<?>[] CAUSE_TYPES = new Class[]{ Throwable.class };
-
-    private static final Class<?>[] MESSAGE_CAUSE_TYPES = new Class[]{ String.class, Throwable.class };
+    /**
+     * Resolved settings of the intercepted methods.
+     */
+    private final TransactionAttributeCache attributes = new TransactionAttributeCache();
 
     private final Log log = LogFactory.getLog(getClass());
 
     @Inject
     private MultiTransactionManager txManager;
 
+    /**
+     * Metrics of the transactional methods, {@code null} if they are not recorded
+     */
+    private TransactionMetrics metrics;
+
+    @com.google.inject.Inject(optional = true)
+    public void setMetrics(TransactionMetrics metrics) {
+        this.metrics = metrics;
+    }
+
     /**
      * {@inheritDoc}
      */
     public Object invoke(MethodInvocation invocation) throws Throwable {
-        Method interceptedMethod = invocation.getMethod();
-        Transactional transactional = interceptedMethod.getAnnotation(Transactional.class);
+        TransactionAttribute attribute = attributes.get(invocation.getMethod());
 
         // To determine if the session is inherited we check the super transaction manager
         // if a context already exist just re-use that.
         // By storing the annotation in the context it's possible to properly handle configuration of the
         // transaction for each connection
         boolean isSessionInherited = txManager.isWithinTransactionalContext();
-        txManager.startTransactionalContext(transactional);
+        txManager.startTransactionalContext(attribute.getTransactional());
 
-        String debugPrefix = null;
-        if (this.log.isDebugEnabled()) {
-            debugPrefix = format("[Intercepted method: %s]", interceptedMethod.toGenericString());
-        }
+        String debugPrefix = attribute.getDebugPrefix();
 
         if (isSessionInherited) {
             if (log.isDebugEnabled()) {
@@ -76,69 +80,29 @@ public class MultiTransactionalMethodInterceptor implements MethodInterceptor {
 
         }
 
+        // Only the outermost method owns the transaction, nested ones are part of its metrics
+        final TransactionMetrics metrics = isSessionInherited ? null : this.metrics;
+        final long start = metrics != null ? System.nanoTime() : 0;
+        final long allocated = metrics != null ? metrics.allocatedBytes() : 0;
+        boolean committed = false;
+
         Object object = null;
         try {
             object = invocation.proceed();
 
-            if (!isSessionInherited && !transactional.rollbackOnly()) {
-                txManager.commit(transactional.force());
+            if (!isSessionInherited && !attribute.isRollbackOnly()) {
+                txManager.commit(attribute.isForce());
+                committed = true;
             }
         } catch (Throwable t) {
             // rollback the transaction
-            txManager.rollback(transactional.force());
-
-            // check the caught exception is declared in the invoked method
-            for (Class<?> exceptionClass : interceptedMethod.getExceptionTypes()) {
-                if (exceptionClass.isAssignableFrom(t.getClass())) {
-                    throw t;
-                }
-            }
-
-            // check the caught exception is of same rethrow type
-            if (transactional.rethrowExceptionsAs().isAssignableFrom(t.getClass())) {
-                throw t;
-            }
-
-            // rethrow the exception as new exception
-            String errorMessage;
-            Object[] initargs;
-            Class<?>[] initargsType;
-
-            if (transactional.exceptionMessage().length() != 0) {
-                errorMessage = format(transactional.exceptionMessage(), invocation.getArguments());
-                initargs = new Object[]{ errorMessage, t };
-                initargsType = MESSAGE_CAUSE_TYPES;
-            } else {
-                initargs = new Object[]{ t };
-                initargsType = CAUSE_TYPES;
-            }
+            txManager.rollback(attribute.isForce());
 
-            Constructor<? extends Throwable> exceptionConstructor = getMatchingConstructor(transactional.rethrowExceptionsAs(), initargsType);
-            Throwable rethrowEx = null;
-            if (exceptionConstructor != null) {
-                try {
-                    rethrowEx = exceptionConstructor.newInstance(initargs);
-                } catch (Exception e) {
-                    errorMessage = format("Impossible to re-throw '%s', it needs the constructor with %s argument(s).",
-                            transactional.rethrowExceptionsAs().getName(),
-                            Arrays.toString(initargsType));
-                    log.error(errorMessage, e);
-                    rethrowEx = new RuntimeException(errorMessage, e);
-                }
-            } else {
-                errorMessage = format("Impossible to re-throw '%s', it needs the constructor with %s or %s argument(s).",
-                        transactional.rethrowExceptionsAs().getName(),
-                        Arrays.toString(CAUSE_TYPES),
-                        Arrays.toString(MESSAGE_CAUSE_TYPES));
-                log.error(errorMessage);
-                rethrowEx = new RuntimeException(errorMessage);
-            }
-
-            throw rethrowEx;
+            throw attribute.translate(t, invocation.getArguments());
         } finally {
             // skip close when the session is inherited from another Transactional method
             if (!isSessionInherited) {
-                if (transactional.rollbackOnly()) {
+                if (attribute.isRollbackOnly()) {
                     if (log.isDebugEnabled()) {
                         log.debug(debugPrefix
                                 + " - SqlSession of thread: "
@@ -149,6 +113,14 @@ public class MultiTransactionalMethodInterceptor implements MethodInterceptor {
                     txManager.rollback(true);
                 }
 
+                if (metrics != null) {
+                    final TransactionContext ctx = txManager.currentContext();
+                    if (ctx != null) {
+                        metrics.record(invocation.getMethod(), ctx, txManager.environmentIds,
+                                System.nanoTime() - start, metrics.allocatedBytes() - allocated, committed);
+                    }
+                }
+
                 if (log.isDebugEnabled()) {
                     log.debug(format("%s - SqlSession of thread: %s terminated its life-cycle, closing it",
                             debugPrefix,
@@ -167,19 +139,4 @@ public class MultiTransactionalMethodInterceptor implements MethodInterceptor {
         return object;
     }
 
-    @SuppressWarnings("unchecked")
-    private static <E extends Throwable> Constructor<E> getMatchingConstructor(Class<E> type,
-            Class<?>[] argumentsType) {
-        Class<? super E> currentType = type;
-        while (Object.class != currentType) {
-            for (Constructor<?> constructor : currentType.getConstructors()) {
-                if (Arrays.equals(argumentsType, constructor.getParameterTypes())) {
-                    return (Constructor<E>) constructor;
-                }
-            }
-            currentType = currentType.getSuperclass();
-        }
-        return null;
-    }
-
 }
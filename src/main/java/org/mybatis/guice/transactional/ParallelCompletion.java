@@ -0,0 +1,80 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.transactional;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded executor used by the {@link MultiTransactionManager} to commit or roll back the enlisted
+ * environments concurrently.
+ *
+ * When the pool and its queue are saturated the completion runs on the calling thread, so a burst of
+ * transactions degrades to sequential completion instead of failing.
+ *
+ * @author ferenczil
+ */
+final class ParallelCompletion {
+
+    private static final AtomicInteger poolCounter = new AtomicInteger();
+
+    private final ThreadPoolExecutor executor;
+
+    private final long timeoutNanos;
+
+    ParallelCompletion(int threads, long timeoutMillis) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Parallel completion needs at least one thread, got " + threads);
+        }
+        if (timeoutMillis <= 0) {
+            throw new IllegalArgumentException("Parallel completion timeout must be positive, got " + timeoutMillis);
+        }
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+
+        final String prefix = "mybatis-tx-completion-" + poolCounter.incrementAndGet() + "-";
+        this.executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(threads * 4),
+                new ThreadFactory() {
+                    private final AtomicInteger counter = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, prefix + counter.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    }
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    <T> Future<T> submit(Callable<T> task) {
+        return executor.submit(task);
+    }
+
+    long getTimeoutNanos() {
+        return timeoutNanos;
+    }
+
+    void shutdown() {
+        executor.shutdown();
+    }
+}
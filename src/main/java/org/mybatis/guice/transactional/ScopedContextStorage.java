@@ -0,0 +1,51 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.transactional;
+
+/**
+ * {@link TransactionContextStorage} binding a context only for the extent of a transaction or a propagated task,
+ * in the manner of a scoped value. Nothing is left bound to a thread once its outermost transaction ended, which
+ * suits large numbers of short lived threads.
+ *
+ * The commit times remembered for replica routing are dropped with the context, a thread only reads its own writes
+ * within the same transaction or by requiring a {@link ConsistencyToken}.
+ *
+ * @author ferenczil
+ */
+public final class ScopedContextStorage implements TransactionContextStorage {
+
+    private final ThreadLocal<TransactionContext> contexts = new ThreadLocal<>();
+
+    @Override
+    public TransactionContext get() {
+        return contexts.get();
+    }
+
+    @Override
+    public void set(TransactionContext context) {
+        if (context == null) {
+            contexts.remove();
+        }
+        else {
+            contexts.set(context);
+        }
+    }
+
+    @Override
+    public void release() {
+        contexts.remove();
+    }
+}
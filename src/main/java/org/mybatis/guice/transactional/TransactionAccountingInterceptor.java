@@ -0,0 +1,72 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.transactional;
+
+import com.google.inject.Inject;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Plugin;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+
+import java.util.Properties;
+
+/**
+ * Accounts the statements of an environment to the transactional context of the executing thread,
+ * see {@link TransactionMetrics}.
+ *
+ * Batched updates account the time spent queuing them, the batch itself is executed as part of the commit.
+ *
+ * @author ferenczil
+ */
+@Intercepts({
+        @Signature(type = Executor.class, method = "update", args = {MappedStatement.class, Object.class}),
+        @Signature(type = Executor.class, method = "query", args = {MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class})
+})
+public final class TransactionAccountingInterceptor implements Interceptor {
+
+    private final MultiTransactionManager txManager;
+
+    @Inject
+    public TransactionAccountingInterceptor(MultiTransactionManager txManager) {
+        this.txManager = txManager;
+    }
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+        final long start = System.nanoTime();
+        try {
+            return invocation.proceed();
+        }
+        finally {
+            txManager.recordStatement(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public Object plugin(Object target) {
+        return Plugin.wrap(target, this);
+    }
+
+    @Override
+    public void setProperties(Properties properties) {
+        // nothing to configure
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.transactional;
+
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.TransactionIsolationLevel;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+
+import static java.lang.String.format;
+
+/**
+ * Settings of a {@link Transactional} method, resolved once when the method is first intercepted.
+ *
+ * Besides the annotation values it holds the exception types declared by the method and the constructors
+ * used to re-throw exceptions as {@link Transactional#rethrowExceptionsAs()}, so the interceptors don't need
+ * any reflection after the first invocation.
+ *
+ * @author ferenczil
+ */
+final class TransactionAttribute {
+
+    private static final Class<?>[] CAUSE_TYPES = new Class[]{ Throwable.class };
+
+    private static final Class<?>[] MESSAGE_CAUSE_TYPES = new Class[]{ String.class, Throwable.class };
+
+    private static final Log log = LogFactory.getLog(TransactionAttribute.class);
+
+    private final Transactional transactional;
+
+    private final ExecutorType executorType;
+
+    private final TransactionIsolationLevel isolationLevel;
+
+    private final boolean force;
+
+    private final boolean rollbackOnly;
+
+    private final Class<?>[] declaredExceptions;
+
+    private final Class<? extends Throwable> rethrowType;
+
+    /**
+     * Custom message format, {@code null} if the cause is passed alone
+     */
+    private final String exceptionMessage;
+
+    /**
+     * Constructor of the re-throw type matching the arguments, {@code null} if there is none
+     */
+    private final Constructor<? extends Throwable> rethrowConstructor;
+
+    private final String rethrowFailureMessage;
+
+    private final String debugPrefix;
+
+    TransactionAttribute(Method method, Transactional transactional) {
+        this.transactional = transactional;
+        this.executorType = transactional.executorType();
+        this.isolationLevel = transactional.isolation().getTransactionIsolationLevel();
+        this.force = transactional.force();
+        this.rollbackOnly = transactional.rollbackOnly();
+        this.declaredExceptions = method.getExceptionTypes();
+        this.rethrowType = transactional.rethrowExceptionsAs();
+        this.exceptionMessage = transactional.exceptionMessage().length() != 0 ? transactional.exceptionMessage() : null;
+
+        Class<?>[] argumentTypes = exceptionMessage != null ? MESSAGE_CAUSE_TYPES : CAUSE_TYPES;
+        this.rethrowConstructor = getMatchingConstructor(rethrowType, argumentTypes);
+        if (rethrowConstructor != null) {
+            this.rethrowFailureMessage = format("Impossible to re-throw '%s', it needs the constructor with %s argument(s).",
+                    rethrowType.getName(),
+                    Arrays.toString(argumentTypes));
+        } else {
+            this.rethrowFailureMessage = format("Impossible to re-throw '%s', it needs the constructor with %s or %s argument(s).",
+                    rethrowType.getName(),
+                    Arrays.toString(CAUSE_TYPES),
+                    Arrays.toString(MESSAGE_CAUSE_TYPES));
+        }
+        this.debugPrefix = format("[Intercepted method: %s]", method.toGenericString());
+    }
+
+    Transactional getTransactional() {
+        return transactional;
+    }
+
+    ExecutorType getExecutorType() {
+        return executorType;
+    }
+
+    TransactionIsolationLevel getIsolationLevel() {
+        return isolationLevel;
+    }
+
+    boolean isForce() {
+        return force;
+    }
+
+    boolean isRollbackOnly() {
+        return rollbackOnly;
+    }
+
+    String getDebugPrefix() {
+        return debugPrefix;
+    }
+
+    /**
+     * Translates an exception thrown by the intercepted method.
+     *
+     * Exceptions declared by the method or already of the re-throw type are returned as they are, anything else
+     * is wrapped in a new instance of the re-throw type.
+     *
+     * @param t Exception thrown by the method
+     * @param arguments Arguments of the invocation, used to format the custom exception message
+     * @return Exception to throw
+     */
+    Throwable translate(Throwable t, Object[] arguments) {
+        // check the caught exception is declared in the invoked method
+        for (Class<?> exceptionClass : declaredExceptions) {
+            if (exceptionClass.isAssignableFrom(t.getClass())) {
+                return t;
+            }
+        }
+
+        // check the caught exception is of same rethrow type
+        if (rethrowType.isAssignableFrom(t.getClass())) {
+            return t;
+        }
+
+        if (rethrowConstructor == null) {
+            log.error(rethrowFailureMessage);
+            return new RuntimeException(rethrowFailureMessage);
+        }
+
+        try {
+            if (exceptionMessage != null) {
+                return rethrowConstructor.newInstance(format(exceptionMessage, arguments), t);
+            }
+            return rethrowConstructor.newInstance(t);
+        } catch (Exception e) {
+            log.error(rethrowFailureMessage, e);
+            return new RuntimeException(rethrowFailureMessage, e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E extends Throwable> Constructor<E> getMatchingConstructor(Class<E> type,
+            Class<?>[] argumentsType) {
+        Class<? super E> currentType = type;
+        while (Object.class != currentType) {
+            for (Constructor<?> constructor : currentType.getConstructors()) {
+                if (Arrays.equals(argumentsType, constructor.getParameterTypes())) {
+                    return (Constructor<E>) constructor;
+                }
+            }
+            currentType = currentType.getSuperclass();
+        }
+        return null;
+    }
+
+}
@@ -0,0 +1,44 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.transactional;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Lock-free cache of the {@link TransactionAttribute} of each intercepted method
+ *
+ * @author ferenczil
+ */
+final class TransactionAttributeCache {
+
+    private final ConcurrentMap<Method, TransactionAttribute> attributes = new ConcurrentHashMap<>();
+
+    TransactionAttribute get(Method method) {
+        TransactionAttribute attribute = attributes.get(method);
+        if (attribute == null) {
+            // Racing threads resolve the same immutable value, keep the first one
+            TransactionAttribute resolved = new TransactionAttribute(method, method.getAnnotation(Transactional.class));
+            attribute = attributes.putIfAbsent(method, resolved);
+            if (attribute == null) {
+                attribute = resolved;
+            }
+        }
+        return attribute;
+    }
+
+}
@@ -0,0 +1,201 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.transactional;
+
+import org.apache.ibatis.session.SqlSession;
+import org.mybatis.guice.cache.CacheStage;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Per-thread state of a transaction spanning multiple environments.
+ *
+ * Sessions are stored in slots indexed by the ordinal the environment received when it was registered
+ * in the {@link MultiTransactionManager}. Every environment which opens a session is recorded in the
+ * enlistment list, so completing the transaction only visits the environments that were actually used.
+ *
+ * One instance is kept per thread and reused between transactions, the arrays only grow when
+ * new environments are registered. The commit times of the thread outlive the transactions, they decide
+ * which replicas may serve its later reads.
+ *
+ * @author ferenczil
+ */
+public final class TransactionContext {
+
+    private static final int INITIAL_CAPACITY = 4;
+
+    /**
+     * Settings of the outermost transactional method, {@code null} if there is no active context
+     */
+    Transactional transactional;
+
+    /**
+     * Incremented whenever a transaction starts or ends on this context, so a task joining the context can tell
+     * whether the transaction it was submitted from is still the one running
+     */
+    volatile int generation;
+
+    /**
+     * Open sessions indexed by environment ordinal
+     */
+    SqlSession[] sessions;
+
+    /**
+     * Ordinals of enlisted environments in order of enlistment
+     */
+    int[] enlisted;
+
+    int enlistedCount;
+
+    /**
+     * Time of the last commit of this thread indexed by environment ordinal
+     */
+    long[] committedMillis;
+
+    /**
+     * Commit time required by a consistency token, applies to every environment
+     */
+    long requiredMillis;
+
+    /**
+     * Serializes the tasks of other threads joining the sessions of this context
+     */
+    final ReentrantLock joinLock = new ReentrantLock();
+
+    /**
+     * Resources held on the sessions, such as open cursors, {@code null} until the first one is added
+     */
+    List<Closeable> resources;
+
+    /**
+     * Second-level cache changes of committed sessions, {@code null} until the first session is opened in a context
+     */
+    CacheStage cacheStage;
+
+    /**
+     * Statements executed in the current context and their total time, only counted with transaction metrics
+     */
+    int statementCount;
+
+    long statementNanos;
+
+    /**
+     * Time spent committing and rolling back in the current context
+     */
+    long completionNanos;
+
+    /**
+     * Commit latency of the current context indexed by environment ordinal, 0 if the environment was not committed
+     */
+    long[] commitNanos;
+
+    TransactionContext(int environments) {
+        sessions = new SqlSession[Math.max(environments, INITIAL_CAPACITY)];
+        enlisted = new int[sessions.length];
+        committedMillis = new long[sessions.length];
+        commitNanos = new long[sessions.length];
+    }
+
+    SqlSession getSession(int ordinal) {
+        return ordinal < sessions.length ? sessions[ordinal] : null;
+    }
+
+    void setSession(int ordinal, SqlSession session) {
+        ensureCapacity(ordinal);
+        sessions[ordinal] = session;
+        if (session != null) {
+            enlist(ordinal);
+        }
+    }
+
+    /**
+     * Takes over the commit times of another context, e.g. of a task which ran its own transaction for this one
+     */
+    void committedAll(TransactionContext other) {
+        for (int i = 0; i < other.committedMillis.length; i++) {
+            if (other.committedMillis[i] > getCommittedMillis(i)) {
+                committed(i, other.committedMillis[i]);
+            }
+        }
+    }
+
+    private long getCommittedMillis(int ordinal) {
+        return ordinal < committedMillis.length ? committedMillis[ordinal] : 0;
+    }
+
+    void committed(int ordinal, long millis) {
+        ensureCapacity(ordinal);
+        committedMillis[ordinal] = millis;
+    }
+
+    /**
+     * @return Commit time the reads of the environment have to observe, 0 if there is no requirement
+     */
+    long getRequiredMillis(int ordinal) {
+        return ordinal < committedMillis.length ? Math.max(committedMillis[ordinal], requiredMillis) : requiredMillis;
+    }
+
+    private void ensureCapacity(int ordinal) {
+        if (ordinal >= sessions.length) {
+            int capacity = Math.max(ordinal + 1, sessions.length << 1);
+            sessions = Arrays.copyOf(sessions, capacity);
+            enlisted = Arrays.copyOf(enlisted, capacity);
+            committedMillis = Arrays.copyOf(committedMillis, capacity);
+            commitNanos = Arrays.copyOf(commitNanos, capacity);
+        }
+    }
+
+    private void enlist(int ordinal) {
+        for (int i = 0; i < enlistedCount; i++) {
+            if (enlisted[i] == ordinal) {
+                return;
+            }
+        }
+        enlisted[enlistedCount++] = ordinal;
+    }
+
+    void addResource(Closeable resource) {
+        if (resources == null) {
+            resources = new ArrayList<>();
+        }
+        resources.add(resource);
+    }
+
+    /**
+     * Resets the accounting of the statements and completions when a new context starts
+     */
+    void resetAccounting() {
+        statementCount = 0;
+        statementNanos = 0;
+        completionNanos = 0;
+    }
+
+    /**
+     * Forgets all enlisted environments. Sessions must already be closed.
+     */
+    void clearEnlisted() {
+        for (int i = 0; i < enlistedCount; i++) {
+            sessions[enlisted[i]] = null;
+            commitNanos[enlisted[i]] = 0;
+        }
+        enlistedCount = 0;
+    }
+
+}
@@ -0,0 +1,46 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.transactional;
+
+/**
+ * Holds the {@link TransactionContext} of the current thread for the {@link MultiTransactionManager}.
+ *
+ * {@link ThreadLocalContextStorage} keeps one context per thread and reuses it, which suits a fixed set of
+ * pooled platform threads. {@link ScopedContextStorage} only binds a context while a transaction or a
+ * propagated task runs, so short lived threads don't keep contexts alive once they are idle.
+ *
+ * @author ferenczil
+ */
+public interface TransactionContextStorage {
+
+    /**
+     * @return Context bound to the current thread, {@code null} if there is none
+     */
+    TransactionContext get();
+
+    /**
+     * Binds a context to the current thread
+     *
+     * @param context Context, {@code null} unbinds the current one
+     */
+    void set(TransactionContext context);
+
+    /**
+     * Called when the outermost transaction of the current thread ended and its sessions are closed
+     */
+    void release();
+
+}
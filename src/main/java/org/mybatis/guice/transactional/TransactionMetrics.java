@@ -0,0 +1,162 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.transactional;
+
+import org.mybatis.guice.metrics.MBeans;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Metrics of the outermost invocations of every {@link Transactional} method, recorded by the
+ * {@link MultiTransactionalMethodInterceptor} and published as the {@value #MBEAN_TYPE} MBean.
+ *
+ * Statements are accounted by the {@link TransactionAccountingInterceptor} of each environment. Allocated bytes
+ * are measured on the invoking thread when requested and supported by the JVM, work handed to other threads is
+ * not included.
+ *
+ * @author ferenczil
+ */
+public final class TransactionMetrics implements TransactionMetricsMXBean {
+
+    public static final String MBEAN_TYPE = "TransactionMetrics";
+
+    private static final Comparator<TransactionStatistics> LONGEST_HELD = new Comparator<TransactionStatistics>() {
+        @Override
+        public int compare(TransactionStatistics o1, TransactionStatistics o2) {
+            return Long.compare(o2.getTotalNanos(), o1.getTotalNanos());
+        }
+    };
+
+    private final ConcurrentMap<Method, MethodMetrics> methods = new ConcurrentHashMap<>();
+
+    /**
+     * Allocation counters of the threads, {@code null} if allocations are not measured
+     */
+    private final com.sun.management.ThreadMXBean threads;
+
+    /**
+     * @param allocatedBytes Measure the bytes allocated by the invoking thread
+     * @param exportMBean Register the metrics in the platform MBean server
+     */
+    public TransactionMetrics(boolean allocatedBytes, boolean exportMBean) {
+        this.threads = allocatedBytes ? allocationCounters() : null;
+        if (exportMBean) {
+            MBeans.register(MBEAN_TYPE, this);
+        }
+    }
+
+    private static com.sun.management.ThreadMXBean allocationCounters() {
+        final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+            if (threads.isThreadAllocatedMemorySupported()) {
+                if (!threads.isThreadAllocatedMemoryEnabled()) {
+                    threads.setThreadAllocatedMemoryEnabled(true);
+                }
+                return threads;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return Bytes allocated so far by the current thread, 0 if allocations are not measured
+     */
+    long allocatedBytes() {
+        return threads != null ? threads.getThreadAllocatedBytes(Thread.currentThread().getId()) : 0;
+    }
+
+    void record(Method method, TransactionContext ctx, String[] environmentIds, long nanos, long allocated,
+                boolean committed) {
+        metrics(method).record(ctx, environmentIds, nanos, allocated, committed);
+    }
+
+    private MethodMetrics metrics(Method method) {
+        MethodMetrics metrics = methods.get(method);
+        if (metrics == null) {
+            final MethodMetrics created = new MethodMetrics(name(method));
+            metrics = methods.putIfAbsent(method, created);
+            if (metrics == null) {
+                metrics = created;
+            }
+        }
+        return metrics;
+    }
+
+    /**
+     * @return Name of the method qualified by its class, with the simple names of the parameter types
+     */
+    static String name(Method method) {
+        final StringBuilder name = new StringBuilder(method.getDeclaringClass().getName())
+                .append('.').append(method.getName()).append('(');
+        final Class<?>[] parameters = method.getParameterTypes();
+        for (int i = 0; i < parameters.length; i++) {
+            if (i > 0) {
+                name.append(',');
+            }
+            name.append(parameters[i].getSimpleName());
+        }
+        return name.append(')').toString();
+    }
+
+    /**
+     * @param method Transactional method
+     * @return Metrics of the method, {@code null} if it was not invoked as the outermost transactional method
+     */
+    public MethodMetrics getMetrics(Method method) {
+        return methods.get(method);
+    }
+
+    @Override
+    public List<TransactionStatistics> getMethods() {
+        final List<TransactionStatistics> result = new ArrayList<>(methods.size());
+        for (MethodMetrics metrics : methods.values()) {
+            result.add(metrics.snapshot());
+        }
+        Collections.sort(result, LONGEST_HELD);
+        return result;
+    }
+
+    @Override
+    public TransactionStatistics getMethod(String method) {
+        for (MethodMetrics metrics : methods.values()) {
+            if (metrics.getMethod().equals(method)) {
+                return metrics.snapshot();
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public boolean isAllocatedBytesMeasured() {
+        return threads != null;
+    }
+
+    @Override
+    public void reset() {
+        for (MethodMetrics metrics : methods.values()) {
+            metrics.reset();
+        }
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.transactional;
+
+import java.util.List;
+
+/**
+ * JMX view of the metrics of the transactional methods
+ *
+ * @author ferenczil
+ */
+public interface TransactionMetricsMXBean {
+
+    /**
+     * @return Statistics of every method invoked since the start or the last reset, longest held transactions first
+     */
+    List<TransactionStatistics> getMethods();
+
+    /**
+     * @param method Name of the method as in {@link TransactionStatistics#getMethod()}
+     * @return Statistics of the method, {@code null} if it was not invoked
+     */
+    TransactionStatistics getMethod(String method);
+
+    boolean isAllocatedBytesMeasured();
+
+    void reset();
+
+}
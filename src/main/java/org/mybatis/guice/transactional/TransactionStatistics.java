@@ -0,0 +1,153 @@
+/*
+ *    Copyright 2010-2012 The MyBatis Team
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.transactional;
+
+import java.beans.ConstructorProperties;
+import java.util.Map;
+
+/**
+ * Snapshot of the {@link MethodMetrics} of a transactional method, published over JMX as composite data.
+ *
+ * The time of a transaction is split into the time spent executing statements, the time spent committing
+ * or rolling back and the rest, spent in the application code while the connections are held.
+ *
+ * @author ferenczil
+ */
+public final class TransactionStatistics {
+
+    private final String method;
+
+    private final long count;
+
+    private final long commits;
+
+    private final long rollbacks;
+
+    private final long totalNanos;
+
+    private final long meanNanos;
+
+    private final long p99Nanos;
+
+    private final long maxNanos;
+
+    private final long meanJdbcNanos;
+
+    private final long meanCompletionNanos;
+
+    private final long meanApplicationNanos;
+
+    private final double meanStatements;
+
+    private final double meanEnvironments;
+
+    private final long meanAllocatedBytes;
+
+    private final Map<String, Long> meanCommitNanos;
+
+    @ConstructorProperties({"method", "count", "commits", "rollbacks", "totalNanos", "meanNanos", "p99Nanos", "maxNanos",
+            "meanJdbcNanos", "meanCompletionNanos", "meanApplicationNanos", "meanStatements", "meanEnvironments",
+            "meanAllocatedBytes", "meanCommitNanos"})
+    public TransactionStatistics(String method, long count, long commits, long rollbacks, long totalNanos,
+                                 long meanNanos, long p99Nanos, long maxNanos, long meanJdbcNanos,
+                                 long meanCompletionNanos, long meanApplicationNanos, double meanStatements,
+                                 double meanEnvironments, long meanAllocatedBytes, Map<String, Long> meanCommitNanos) {
+        this.method = method;
+        this.count = count;
+        this.commits = commits;
+        this.rollbacks = rollbacks;
+        this.totalNanos = totalNanos;
+        this.meanNanos = meanNanos;
+        this.p99Nanos = p99Nanos;
+        this.maxNanos = maxNanos;
+        this.meanJdbcNanos = meanJdbcNanos;
+        this.meanCompletionNanos = meanCompletionNanos;
+        this.meanApplicationNanos = meanApplicationNanos;
+        this.meanStatements = meanStatements;
+        this.meanEnvironments = meanEnvironments;
+        this.meanAllocatedBytes = meanAllocatedBytes;
+        this.meanCommitNanos = meanCommitNanos;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getCommits() {
+        return commits;
+    }
+
+    public long getRollbacks() {
+        return rollbacks;
+    }
+
+    /**
+     * @return Time all invocations held the transaction, the methods holding connections longest have the largest
+     */
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    public long getMeanNanos() {
+        return meanNanos;
+    }
+
+    public long getP99Nanos() {
+        return p99Nanos;
+    }
+
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+
+    public long getMeanJdbcNanos() {
+        return meanJdbcNanos;
+    }
+
+    public long getMeanCompletionNanos() {
+        return meanCompletionNanos;
+    }
+
+    public long getMeanApplicationNanos() {
+        return meanApplicationNanos;
+    }
+
+    public double getMeanStatements() {
+        return meanStatements;
+    }
+
+    public double getMeanEnvironments() {
+        return meanEnvironments;
+    }
+
+    /**
+     * @return Bytes allocated by the thread per invocation, 0 if allocations are not measured
+     */
+    public long getMeanAllocatedBytes() {
+        return meanAllocatedBytes;
+    }
+
+    /**
+     * @return Mean commit latency of each environment committed by the method
+     */
+    public Map<String, Long> getMeanCommitNanos() {
+        return meanCommitNanos;
+    }
+}
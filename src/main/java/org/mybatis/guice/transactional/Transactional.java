@@ -101,4 +101,35 @@ public @interface Transactional {
      */
     boolean rollbackOnly() default false;
 
+    /**
+     * Number of statements after which a {@link ExecutorType#BATCH} session flushes automatically,
+     * so a large import never holds more than one batch in memory. The update counts of the automatic
+     * flushes are returned merged by the next {@code flushStatements()}.
+     *
+     * Only the outermost transactional method decides, nested methods inherit its session.
+     *
+     * @return 0 by default, the statements are only flushed on commit.
+     */
+    int batchSize() default 0;
+
+    /**
+     * Estimated size of the pending parameter objects after which a {@link ExecutorType#BATCH} session
+     * flushes automatically, see {@link #batchSize()}.
+     *
+     * @return 0 by default, the size is not limited.
+     */
+    long batchBytes() default 0;
+
+    /**
+     * If true, the transaction only reads. Environments having read replicas open the session
+     * on a replica connection set to read-only, other environments ignore the flag.
+     *
+     * Only the outermost transactional method decides, nested methods inherit its session.
+     *
+     * This parameter is false by default.
+     *
+     * @return if true, the session is opened on a read replica when available.
+     */
+    boolean readOnly() default false;
+
 }
@@ -18,10 +18,6 @@ package org.mybatis.guice.transactional;
 import static java.lang.String.format;
 import static java.lang.Thread.currentThread;
 
-import java.lang.reflect.Constructor;
-import java.lang.reflect.Method;
-import java.util.Arrays;
-
 import javax.inject.Inject;
 
 import org.aopalliance.intercept.MethodInterceptor;
@@ -37,9 +33,10 @@ import org.apache.ibatis.session.SqlSessionManager;
  */
 public final class TransactionalMethodInterceptor implements MethodInterceptor {
 
-    private static final Class<?>[] CAUSE_TYPES = new Class[]{ Throwable.class };
-
-    private static final Class<?>[] MESSAGE_CAUSE_TYPES = new Class[]{ String.class, Throwable.class };
+    /**
+     * Resolved settings of the intercepted methods.
+     */
+    private final TransactionAttributeCache attributes = new TransactionAttributeCache();
 
     /**
      * This class logger.
@@ -65,13 +62,9 @@ public final class TransactionalMethodInterceptor implements MethodInterceptor {
      * {@inheritDoc}
      */
     public Object invoke(MethodInvocation invocation) throws Throwable {
-        Method interceptedMethod = invocation.getMethod();
-        Transactional transactional = interceptedMethod.getAnnotation(Transactional.class);
+        TransactionAttribute attribute = attributes.get(invocation.getMethod());
 
-        String debugPrefix = null;
-        if (this.log.isDebugEnabled()) {
-            debugPrefix = format("[Intercepted method: %s]", interceptedMethod.toGenericString());
-        }
+        String debugPrefix = attribute.getDebugPrefix();
 
         boolean isSessionInherited = this.sqlSessionManager.isManagedSessionStarted();
 
@@ -88,72 +81,25 @@ public final class TransactionalMethodInterceptor implements MethodInterceptor {
                         currentThread().getId()));
             }
 
-            sqlSessionManager.startManagedSession(transactional.executorType(), transactional.isolation().getTransactionIsolationLevel());
+            sqlSessionManager.startManagedSession(attribute.getExecutorType(), attribute.getIsolationLevel());
         }
 
         Object object = null;
         try {
             object = invocation.proceed();
 
-            if (!isSessionInherited && !transactional.rollbackOnly()) {
-                sqlSessionManager.commit(transactional.force());
+            if (!isSessionInherited && !attribute.isRollbackOnly()) {
+                sqlSessionManager.commit(attribute.isForce());
             }
         } catch (Throwable t) {
             // rollback the transaction
-            sqlSessionManager.rollback(transactional.force());
-
-            // check the caught exception is declared in the invoked method
-            for (Class<?> exceptionClass : interceptedMethod.getExceptionTypes()) {
-                if (exceptionClass.isAssignableFrom(t.getClass())) {
-                    throw t;
-                }
-            }
-
-            // check the caught exception is of same rethrow type
-            if (transactional.rethrowExceptionsAs().isAssignableFrom(t.getClass())) {
-                throw t;
-            }
+            sqlSessionManager.rollback(attribute.isForce());
 
-            // rethrow the exception as new exception
-            String errorMessage;
-            Object[] initargs;
-            Class<?>[] initargsType;
-
-            if (transactional.exceptionMessage().length() != 0) {
-                errorMessage = format(transactional.exceptionMessage(), invocation.getArguments());
-                initargs = new Object[]{ errorMessage, t };
-                initargsType = MESSAGE_CAUSE_TYPES;
-            } else {
-                initargs = new Object[]{ t };
-                initargsType = CAUSE_TYPES;
-            }
-
-            Constructor<? extends Throwable> exceptionConstructor = getMatchingConstructor(transactional.rethrowExceptionsAs(), initargsType);
-            Throwable rethrowEx = null;
-            if (exceptionConstructor != null) {
-                try {
-                    rethrowEx = exceptionConstructor.newInstance(initargs);
-                } catch (Exception e) {
-                    errorMessage = format("Impossible to re-throw '%s', it needs the constructor with %s argument(s).",
-                            transactional.rethrowExceptionsAs().getName(),
-                            Arrays.toString(initargsType));
-                    log.error(errorMessage, e);
-                    rethrowEx = new RuntimeException(errorMessage, e);
-                }
-            } else {
-                errorMessage = format("Impossible to re-throw '%s', it needs the constructor with %s or %s argument(s).",
-                        transactional.rethrowExceptionsAs().getName(),
-                        Arrays.toString(CAUSE_TYPES),
-                        Arrays.toString(MESSAGE_CAUSE_TYPES));
-                log.error(errorMessage);
-                rethrowEx = new RuntimeException(errorMessage);
-            }
-
-            throw rethrowEx;
+            throw attribute.translate(t, invocation.getArguments());
         } finally {
             // skip close when the session is inherited from another Transactional method
             if (!isSessionInherited) {
-                if (transactional.rollbackOnly()) {
+                if (attribute.isRollbackOnly()) {
                     if (log.isDebugEnabled()) {
                         log.debug(debugPrefix
                                 + " - SqlSession of thread: "
@@ -181,19 +127,4 @@ public final class TransactionalMethodInterceptor implements MethodInterceptor {
         return object;
     }
 
-    @SuppressWarnings("unchecked")
-    private static <E extends Throwable> Constructor<E> getMatchingConstructor(Class<E> type,
-            Class<?>[] argumentsType) {
-        Class<? super E> currentType = type;
-        while (Object.class != currentType) {
-            for (Constructor<?> constructor : currentType.getConstructors()) {
-                if (Arrays.equals(argumentsType, constructor.getParameterTypes())) {
-                    return (Constructor<E>) constructor;
-                }
-            }
-            currentType = currentType.getSuperclass();
-        }
-        return null;
-    }
-
 }
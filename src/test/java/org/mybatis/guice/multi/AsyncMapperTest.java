@@ -0,0 +1,103 @@
+package org.mybatis.guice.multi;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.util.Providers;
+import junit.framework.Assert;
+import org.junit.Test;
+import org.mybatis.guice.MultiDbModule;
+import org.mybatis.guice.annotation.Database;
+import org.mybatis.guice.datasource.builtin.PooledDataSourceProvider;
+import org.mybatis.guice.mappers.AsyncMapperExecutor;
+import org.mybatis.guice.session.SessionBulkhead;
+import org.mybatis.guice.transactional.MultiTransactionManager;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author ferenczil
+ */
+public class AsyncMapperTest {
+
+    public static class AsyncModule extends MultiDbModule {
+        @Override
+        public void internalConfigure() {
+            PooledDataSourceProvider p = new PooledDataSourceProvider("org.hsqldb.jdbcDriver", "jdbc:hsqldb:mem:async_a", getClass().getClassLoader());
+            p.setUser("sa");
+            p.setPassword("");
+
+            PooledDataSourceProvider p2 = new PooledDataSourceProvider("org.hsqldb.jdbcDriver", "jdbc:hsqldb:mem:async_b", getClass().getClassLoader());
+            p2.setUser("sa");
+            p2.setPassword("");
+
+            add("a")
+                    .annotatedWith(Database.named("a"))
+                    .addAsyncMapper(TestMapperAsync.class, TestMapper.class)
+                    .asyncExecutor(2, 10)
+                    .dataSource(Providers.guicify(p));
+
+            add("b")
+                    .annotatedWith(Database.named("b"))
+                    .addAsyncMapper(TestMapperAsync.class, TestMapper.class)
+                    .dataSource(Providers.guicify(p2));
+
+            PooledDataSourceProvider p3 = new PooledDataSourceProvider("org.hsqldb.jdbcDriver", "jdbc:hsqldb:mem:async_c", getClass().getClassLoader());
+            p3.setUser("sa");
+            p3.setPassword("");
+
+            add("c")
+                    .annotatedWith(Database.named("c"))
+                    .addAsyncMapper(BatchMapperAsync.class, BatchMapper.class)
+                    .bulkhead(1, 10, 0)
+                    .dataSource(Providers.guicify(p3));
+        }
+    }
+
+    @Test
+    public void testFanOut() throws Exception {
+        Injector i = Guice.createInjector(new AsyncModule());
+
+        TestMapperAsync a = i.getInstance(Key.get(TestMapperAsync.class, Database.named("a")));
+        TestMapperAsync b = i.getInstance(Key.get(TestMapperAsync.class, Database.named("b")));
+
+        Future<Integer> fa = a.selectOne();
+        Future<Integer> fb = b.selectOne();
+        Assert.assertEquals(1, (int) fa.get(10, TimeUnit.SECONDS));
+        Assert.assertEquals(1, (int) fb.get(10, TimeUnit.SECONDS));
+
+        // The synchronous mapper is bound as well
+        Assert.assertNotNull(i.getInstance(Key.get(TestMapper.class, Database.named("a"))));
+
+        AsyncMapperExecutor executor = i.getInstance(Key.get(AsyncMapperExecutor.class, Database.named("a")));
+        Assert.assertEquals("a", executor.getEnvironmentId());
+        Assert.assertEquals(0, executor.getRejectedCount());
+    }
+
+    @Test
+    public void testWriteGoesThroughManager() throws Exception {
+        Injector i = Guice.createInjector(new AsyncModule());
+        MultiTransactionManager txManager = i.getInstance(MultiTransactionManager.class);
+        SessionBulkhead bulkhead = i.getInstance(Key.get(SessionBulkhead.class, Database.named("c")));
+        BatchMapperAsync c = i.getInstance(Key.get(BatchMapperAsync.class, Database.named("c")));
+        txManager.clearConsistency();
+
+        c.createTable().get(10, TimeUnit.SECONDS);
+        long created = txManager.getConsistencyToken().getCommittedMillis();
+        Assert.assertTrue(created > 0);
+
+        // Reads are not recorded as commits
+        Assert.assertEquals(0, (int) c.count().get(10, TimeUnit.SECONDS));
+        Assert.assertEquals(created, txManager.getConsistencyToken().getCommittedMillis());
+
+        Thread.sleep(5);
+        c.insert(1).get(10, TimeUnit.SECONDS);
+        Assert.assertTrue(txManager.getConsistencyToken().getCommittedMillis() > created);
+        Assert.assertEquals(1, (int) c.count().get(10, TimeUnit.SECONDS));
+
+        Assert.assertEquals(4, bulkhead.getAcquiredCount());
+        Assert.assertEquals(0, bulkhead.getActiveSessions());
+    }
+
+}
@@ -0,0 +1,187 @@
+package org.mybatis.guice.multi;
+
+import com.google.inject.Guice;
+import com.google.inject.Inject;
+import com.google.inject.Injector;
+import com.google.inject.util.Providers;
+import junit.framework.Assert;
+import org.apache.ibatis.executor.BatchResult;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSession;
+import org.junit.Test;
+import org.mybatis.guice.MultiDbModule;
+import org.mybatis.guice.annotation.DB;
+import org.mybatis.guice.annotation.Database;
+import org.mybatis.guice.datasource.builtin.PooledDataSourceProvider;
+import org.mybatis.guice.session.DbSessionManager;
+import org.mybatis.guice.transactional.Transactional;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @author ferenczil
+ */
+public class AutoFlushTest {
+
+    public static class BatchModule extends MultiDbModule {
+        @Override
+        public void internalConfigure() {
+            PooledDataSourceProvider p = new PooledDataSourceProvider("org.hsqldb.jdbcDriver", url(), getClass().getClassLoader());
+            p.setUser("sa");
+            p.setPassword("");
+
+            add("default")
+                    .annotatedWith(Database.defaultDb())
+                    .addMapper(BatchMapper.class)
+                    .dataSource(Providers.guicify(p));
+
+            bind(BatchTester.class);
+        }
+
+        protected String url() {
+            return "jdbc:hsqldb:mem:batch";
+        }
+    }
+
+    public static class FlushModule extends BatchModule {
+        @Override
+        protected String url() {
+            return "jdbc:hsqldb:mem:flushed";
+        }
+    }
+
+    public static class BatchTester {
+
+        @Inject
+        @DB
+        BatchMapper mapper;
+
+        @Inject
+        @DB
+        SqlSession session;
+
+        @Transactional
+        public void createTable() {
+            mapper.createTable();
+        }
+
+        @Transactional(executorType = ExecutorType.BATCH, batchSize = 3)
+        public List<BatchResult> insert(int rows) {
+            for (int i = 0; i < rows; i++) {
+                mapper.insert(i);
+            }
+            return session.flushStatements();
+        }
+
+        @Inject
+        @DB
+        DbSessionManager manager;
+
+        @Transactional(executorType = ExecutorType.BATCH, batchSize = 3)
+        public List<BatchResult> insertAndCommit(int first, int rows) {
+            for (int i = first; i < first + rows; i++) {
+                mapper.insert(i);
+            }
+            manager.commit();
+            return manager.getCommittedBatchResults();
+        }
+
+        @Transactional(executorType = ExecutorType.BATCH, batchSize = 3, rollbackOnly = true)
+        public int[] flushedBySize() throws SQLException {
+            int[] executed = new int[4];
+            for (int i = 0; i < executed.length; i++) {
+                mapper.insert(i);
+                executed[i] = executedRows();
+            }
+            return executed;
+        }
+
+        @Transactional(executorType = ExecutorType.BATCH, batchBytes = 40, rollbackOnly = true)
+        public int[] flushedByBytes() throws SQLException {
+            int[] executed = new int[4];
+            for (int i = 0; i < executed.length; i++) {
+                // 16 bytes each
+                mapper.insert(i);
+                executed[i] = executedRows();
+            }
+            return executed;
+        }
+
+        @Transactional(executorType = ExecutorType.BATCH, batchBytes = 500, rollbackOnly = true)
+        public int[] flushedBeansByBytes() throws SQLException {
+            char[] label = new char[100];
+            Arrays.fill(label, 'x');
+            int[] executed = new int[3];
+            for (int i = 0; i < executed.length; i++) {
+                // The label alone is estimated at 240 bytes
+                mapper.insertRow(new BatchRow(i, new String(label)));
+                executed[i] = executedRows();
+            }
+            return executed;
+        }
+
+        @Transactional(executorType = ExecutorType.BATCH, batchSize = 100, rollbackOnly = true)
+        public List<BatchResult> insertAroundQuery() {
+            mapper.insert(1);
+            mapper.insert(2);
+            Assert.assertEquals(2, mapper.count());
+            mapper.insert(3);
+            return session.flushStatements();
+        }
+
+        /**
+         * Rows the connection executed, statements still pending in the batch are not visible
+         */
+        private int executedRows() throws SQLException {
+            try (Statement statement = manager.getConnection().createStatement();
+                 ResultSet rs = statement.executeQuery("SELECT COUNT(*) FROM batch_row")) {
+                rs.next();
+                return rs.getInt(1);
+            }
+        }
+
+        @Transactional
+        public int count() {
+            return mapper.count();
+        }
+    }
+
+    @Test
+    public void testAutoFlush() {
+        Injector i = Guice.createInjector(new BatchModule());
+        BatchTester tester = i.getInstance(BatchTester.class);
+        tester.createTable();
+
+        List<BatchResult> results = tester.insert(10);
+        Assert.assertEquals(1, results.size());
+        Assert.assertEquals(10, results.get(0).getUpdateCounts().length);
+        Assert.assertEquals(10, tester.count());
+
+        results = tester.insertAndCommit(10, 7);
+        Assert.assertEquals(1, results.size());
+        Assert.assertEquals(7, results.get(0).getUpdateCounts().length);
+        Assert.assertEquals(17, tester.count());
+    }
+
+    @Test
+    public void testFlushTriggers() throws SQLException {
+        Injector i = Guice.createInjector(new FlushModule());
+        BatchTester tester = i.getInstance(BatchTester.class);
+        tester.createTable();
+
+        Assert.assertTrue(Arrays.equals(new int[] { 0, 0, 3, 3 }, tester.flushedBySize()));
+        Assert.assertTrue(Arrays.equals(new int[] { 0, 0, 3, 3 }, tester.flushedByBytes()));
+        Assert.assertTrue(Arrays.equals(new int[] { 0, 2, 2 }, tester.flushedBeansByBytes()));
+
+        // The counts of the flush before the query are kept
+        List<BatchResult> results = tester.insertAroundQuery();
+        Assert.assertEquals(1, results.size());
+        Assert.assertEquals(3, results.get(0).getUpdateCounts().length);
+        Assert.assertEquals(0, tester.count());
+    }
+
+}
@@ -0,0 +1,27 @@
+package org.mybatis.guice.multi;
+
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+
+/**
+ * @author ferenczil
+ */
+public interface BatchMapper {
+
+    @Update("CREATE TABLE batch_row (val INTEGER)")
+    public void createTable();
+
+    @Insert("INSERT INTO batch_row (val) VALUES (#{val})")
+    public void insert(int val);
+
+    @Insert("INSERT INTO batch_row (val) VALUES (#{val})")
+    public void insertRow(BatchRow row);
+
+    @Select("SELECT COUNT(*) FROM batch_row")
+    public int count();
+
+    @Select("SELECT val FROM batch_row WHERE val >= #{min} ORDER BY val")
+    public Iterable<Integer> cursor(int min);
+
+}
@@ -0,0 +1,16 @@
+package org.mybatis.guice.multi;
+
+import java.util.concurrent.Future;
+
+/**
+ * @author ferenczil
+ */
+public interface BatchMapperAsync {
+
+    public Future<Void> createTable();
+
+    public Future<Void> insert(int val);
+
+    public Future<Integer> count();
+
+}
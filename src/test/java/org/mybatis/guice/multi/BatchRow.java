@@ -0,0 +1,25 @@
+package org.mybatis.guice.multi;
+
+/**
+ * @author ferenczil
+ */
+public class BatchRow {
+
+    private int val;
+
+    private String label;
+
+    public BatchRow(int val, String label) {
+        this.val = val;
+        this.label = label;
+    }
+
+    public int getVal() {
+        return val;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+}
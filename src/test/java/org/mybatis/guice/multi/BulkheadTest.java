@@ -0,0 +1,121 @@
+package org.mybatis.guice.multi;
+
+import com.google.inject.Guice;
+import com.google.inject.Inject;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.util.Providers;
+import junit.framework.Assert;
+import org.junit.Test;
+import org.mybatis.guice.MultiDbModule;
+import org.mybatis.guice.annotation.DB;
+import org.mybatis.guice.annotation.Database;
+import org.mybatis.guice.datasource.builtin.PooledDataSourceProvider;
+import org.mybatis.guice.session.BulkheadFullException;
+import org.mybatis.guice.session.SessionBulkhead;
+import org.mybatis.guice.transactional.Transactional;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * @author ferenczil
+ */
+public class BulkheadTest {
+
+    public static class BulkheadModule extends MultiDbModule {
+        @Override
+        public void internalConfigure() {
+            PooledDataSourceProvider p = new PooledDataSourceProvider("org.hsqldb.jdbcDriver", "jdbc:hsqldb:mem:bulkhead", getClass().getClassLoader());
+            p.setUser("sa");
+            p.setPassword("");
+
+            allowTransactionWithoutContext(true);
+
+            add("bulkhead")
+                    .annotatedWith(Database.named("bulkhead"))
+                    .addMapper(BatchMapper.class)
+                    .bulkhead(1, 0, 0)
+                    .dataSource(Providers.guicify(p));
+
+            bind(BulkheadTester.class);
+        }
+    }
+
+    public static class BulkheadTester {
+
+        @Inject
+        @DB("bulkhead")
+        BatchMapper mapper;
+
+        @Transactional
+        public void holdSession(CountDownLatch started, CountDownLatch release) throws InterruptedException {
+            mapper.count();
+            started.countDown();
+            release.await();
+        }
+
+        @Transactional
+        public int count() {
+            return mapper.count();
+        }
+    }
+
+    @Test
+    public void testSessionRefusedWhileHeld() throws Exception {
+        Injector i = Guice.createInjector(new BulkheadModule());
+        final BulkheadTester tester = i.getInstance(BulkheadTester.class);
+        SessionBulkhead bulkhead = i.getInstance(Key.get(SessionBulkhead.class, Database.named("bulkhead")));
+        tester.mapper.createTable();
+
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        Thread holder = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    tester.holdSession(started, release);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        holder.start();
+        started.await();
+
+        try {
+            tester.count();
+            Assert.fail("The only session is held by another thread");
+        } catch (BulkheadFullException e) {
+            Assert.assertEquals("bulkhead", e.getEnvironmentId());
+        }
+        Assert.assertEquals(1, bulkhead.getActiveSessions());
+        Assert.assertEquals(1, bulkhead.getRejectedCount());
+
+        release.countDown();
+        holder.join();
+        Assert.assertEquals(0, tester.count());
+        Assert.assertEquals(0, bulkhead.getActiveSessions());
+        // The auto-session creating the table, the holder and the last count
+        Assert.assertEquals(3, bulkhead.getAcquiredCount());
+    }
+
+    @Test
+    public void testAcquisitionTimeout() {
+        SessionBulkhead bulkhead = new SessionBulkhead("timeout", 1, 1, 50, false);
+        bulkhead.acquire();
+        long start = System.currentTimeMillis();
+        try {
+            bulkhead.acquire();
+            Assert.fail("The only session is held");
+        } catch (BulkheadFullException e) {
+            Assert.assertTrue(System.currentTimeMillis() - start >= 40);
+        }
+        Assert.assertEquals(1, bulkhead.getTimedOutCount());
+        Assert.assertEquals(0, bulkhead.getWaitingThreads());
+
+        bulkhead.release();
+        bulkhead.acquire();
+        Assert.assertEquals(2, bulkhead.getAcquiredCount());
+    }
+
+}
@@ -0,0 +1,112 @@
+package org.mybatis.guice.multi;
+
+import com.google.inject.Guice;
+import com.google.inject.Inject;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.name.Named;
+import com.google.inject.name.Names;
+import com.google.inject.util.Providers;
+import junit.framework.Assert;
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.datasource.pooled.PooledDataSource;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.junit.Test;
+import org.mybatis.guice.MultiDbModule;
+import org.mybatis.guice.datasource.builtin.PooledDataSourceProvider;
+import org.mybatis.guice.datasource.delegate.DelegatingConnection;
+import org.mybatis.guice.datasource.delegate.DelegatingDataSource;
+import org.mybatis.guice.transactional.Transactional;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * @author ferenczil
+ */
+public class CacheStageTest {
+
+    public static class StageModule extends MultiDbModule {
+        @Override
+        public void internalConfigure() {
+            PooledDataSourceProvider p = new PooledDataSourceProvider("org.hsqldb.jdbcDriver", "jdbc:hsqldb:mem:staged", getClass().getClassLoader());
+            p.setUser("sa");
+            p.setPassword("");
+
+            add("cached")
+                    .annotatedWith(Names.named("cached"))
+                    .addMapper(CachedMapper.class)
+                    .dataSource(Providers.guicify(p));
+
+            add("failing")
+                    .annotatedWith(Names.named("failing"))
+                    .addMapper(BatchMapper.class)
+                    .dataSource(Providers.<DataSource>of(new FailingCommitDataSource(
+                            new PooledDataSource("org.hsqldb.jdbcDriver", "jdbc:hsqldb:mem:failing", "sa", ""))));
+
+            bind(StageTester.class);
+        }
+    }
+
+    public static class FailingCommitDataSource extends DelegatingDataSource {
+
+        public FailingCommitDataSource(DataSource delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            return new DelegatingConnection(delegate.getConnection()) {
+                @Override
+                public void commit() throws SQLException {
+                    throw new SQLException("Commit refused");
+                }
+            };
+        }
+    }
+
+    public static class StageTester {
+
+        @Inject
+        @Named("cached")
+        CachedMapper cachedMapper;
+
+        @Inject
+        @Named("failing")
+        BatchMapper failingMapper;
+
+        @Transactional
+        public int read() {
+            return cachedMapper.selectOne();
+        }
+
+        @Transactional
+        public int readAndWrite() {
+            int result = cachedMapper.selectOne();
+            failingMapper.createTable();
+            return result;
+        }
+    }
+
+    @Test
+    public void testPublishAfterEveryCommit() {
+        Injector i = Guice.createInjector(new StageModule());
+        StageTester tester = i.getInstance(StageTester.class);
+        Cache cache = i.getInstance(Key.get(SqlSessionFactory.class, Names.named("cached")))
+                .getConfiguration().getCache(CachedMapper.class.getName());
+
+        try {
+            tester.readAndWrite();
+            Assert.fail("Commit of the failing environment must fail");
+        }
+        catch (RuntimeException expected) {
+            // the cached environment committed before the failure
+        }
+        Assert.assertEquals(0, cache.getSize());
+
+        Assert.assertEquals(1, tester.read());
+        Assert.assertEquals(1, cache.getSize());
+    }
+
+}
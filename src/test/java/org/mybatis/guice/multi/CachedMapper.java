@@ -0,0 +1,16 @@
+package org.mybatis.guice.multi;
+
+import org.apache.ibatis.annotations.CacheNamespace;
+import org.apache.ibatis.annotations.Select;
+import org.mybatis.guice.cache.OffHeapCache;
+
+/**
+ * @author ferenczil
+ */
+@CacheNamespace(implementation = OffHeapCache.class)
+public interface CachedMapper {
+
+    @Select("SELECT 1 FROM INFORMATION_SCHEMA.SYSTEM_USERS")
+    public int selectOne();
+
+}
@@ -0,0 +1,147 @@
+package org.mybatis.guice.multi;
+
+import junit.framework.Assert;
+import org.apache.ibatis.io.ResolverUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mybatis.guice.index.ClassIndex;
+import org.mybatis.guice.index.ClassIndexProcessor;
+import org.mybatis.guice.index.IndexedResolverUtil;
+
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * @author ferenczil
+ */
+public class ClassIndexTest {
+
+    private File output;
+
+    @Before
+    public void createOutput() throws IOException {
+        output = Files.createTempDirectory("index").toFile();
+    }
+
+    @After
+    public void deleteOutput() throws IOException {
+        delete(output);
+    }
+
+    @Test
+    public void testIndexedPackagesAreNotScanned() throws IOException {
+        compile("-Amybatis.index.packages=idx.mappers",
+                source("idx.mappers.AMapper", "package idx.mappers; public interface AMapper {}"),
+                source("idx.mappers.sub.Holder", "package idx.mappers.sub; public class Holder { public interface Inner {} }"),
+                source("idx.other.Other", "package idx.other; public class Other {}"));
+
+        URLClassLoader classLoader = new URLClassLoader(new URL[] { output.toURI().toURL() }, getClass().getClassLoader());
+        ClassIndex index = ClassIndex.forClassLoader(classLoader);
+        Assert.assertEquals(3, index.size());
+        Assert.assertEquals(Arrays.asList("idx.mappers.AMapper", "idx.mappers.sub.Holder", "idx.mappers.sub.Holder$Inner"), index.getClasses("idx.mappers"));
+        Assert.assertEquals(Arrays.asList("idx.mappers.sub.Holder", "idx.mappers.sub.Holder$Inner"), index.getClasses("idx.mappers.sub"));
+        Assert.assertNull(index.getClasses("idx.other"));
+        Assert.assertNull(index.getClasses("idx.map"));
+
+        // The index does not cover the parent package, where Other lives as well
+        Assert.assertNull(index.getClasses("idx"));
+
+        ResolverUtil<Object> resolver = new IndexedResolverUtil<Object>();
+        resolver.setClassLoader(classLoader);
+        Set<Class<?>> classes = resolver.find(new ResolverUtil.IsA(Object.class), "idx.mappers").getClasses();
+        Assert.assertEquals(3, classes.size());
+
+        // MyBatis lists the resources of a scanned package with the context class loader
+        ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+        Thread.currentThread().setContextClassLoader(classLoader);
+        try {
+            resolver = new IndexedResolverUtil<Object>();
+            resolver.setClassLoader(classLoader);
+            classes = resolver.find(new ResolverUtil.IsA(Object.class), "idx.other").getClasses();
+        } finally {
+            Thread.currentThread().setContextClassLoader(contextClassLoader);
+        }
+        Assert.assertEquals(1, classes.size());
+        Assert.assertEquals("idx.other.Other", classes.iterator().next().getName());
+    }
+
+    @Test
+    public void testUnindexedRootOfPackageScans() throws IOException {
+        compile("-Amybatis.index.packages=idx.shared",
+                source("idx.shared.Indexed", "package idx.shared; public class Indexed {}"));
+        File unindexed = Files.createTempDirectory("unindexed").toFile();
+        try {
+            JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+            Assert.assertTrue(compiler.getTask(null, null, null, Arrays.asList("-d", unindexed.getPath(), "-proc:none"), null,
+                    Collections.singletonList(source("idx.shared.Unindexed", "package idx.shared; public class Unindexed {}"))).call());
+
+            URLClassLoader classLoader = new URLClassLoader(new URL[] { output.toURI().toURL(), unindexed.toURI().toURL() }, getClass().getClassLoader());
+            ClassIndex index = ClassIndex.forClassLoader(classLoader);
+            Assert.assertEquals(1, index.size());
+            Assert.assertNull(index.getClasses("idx.shared"));
+
+            ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+            Thread.currentThread().setContextClassLoader(classLoader);
+            Set<Class<?>> classes;
+            try {
+                ResolverUtil<Object> resolver = new IndexedResolverUtil<Object>();
+                resolver.setClassLoader(classLoader);
+                classes = resolver.find(new ResolverUtil.IsA(Object.class), "idx.shared").getClasses();
+            } finally {
+                Thread.currentThread().setContextClassLoader(contextClassLoader);
+            }
+            Assert.assertEquals(2, classes.size());
+        } finally {
+            delete(unindexed);
+        }
+    }
+
+    @Test
+    public void testMissingIndexScans() {
+        Set<Class<?>> classes = new IndexedResolverUtil<Object>()
+                .find(new ResolverUtil.IsA(TestMapper.class), "org.mybatis.guice.multi")
+                .getClasses();
+        Assert.assertTrue(classes.contains(TestMapper.class));
+    }
+
+    private void compile(String option, JavaFileObject... sources) {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        List<String> options = Arrays.asList("-d", output.getPath(), option);
+        JavaCompiler.CompilationTask task = compiler.getTask(null, null, null, options, null, Arrays.asList(sources));
+        task.setProcessors(Collections.singletonList(new ClassIndexProcessor()));
+        Assert.assertTrue(task.call());
+    }
+
+    private static JavaFileObject source(String className, final String code) {
+        return new SimpleJavaFileObject(URI.create("string:///" + className.replace('.', '/') + ".java"), JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return code;
+            }
+        };
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+}
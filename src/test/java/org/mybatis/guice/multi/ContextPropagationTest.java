@@ -0,0 +1,157 @@
+package org.mybatis.guice.multi;
+
+import com.google.inject.Guice;
+import com.google.inject.Inject;
+import com.google.inject.Injector;
+import junit.framework.Assert;
+import org.junit.After;
+import org.junit.Test;
+import org.mybatis.guice.annotation.DB;
+import org.mybatis.guice.transactional.ContextPropagation;
+import org.mybatis.guice.transactional.MultiTransactionManager;
+import org.mybatis.guice.transactional.ScopedContextStorage;
+import org.mybatis.guice.transactional.Transactional;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * @author ferenczil
+ */
+public class ContextPropagationTest {
+
+    private static final ScopedContextStorage storage = new ScopedContextStorage();
+
+    public static class ScopedModule extends InjectionTest.TestModule {
+        @Override
+        public void internalConfigure() {
+            super.internalConfigure();
+            contextStorage(storage);
+        }
+    }
+
+    public static class Tester {
+
+        @Inject @DB
+        TestMapper mapper;
+
+        @Inject
+        MultiTransactionManager txManager;
+
+        @Transactional
+        public int fork(ExecutorService executor, ContextPropagation propagation) throws Exception {
+            return executor.submit(txManager.wrap(new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    Assert.assertTrue(txManager.isWithinTransactionalContext());
+                    return mapper.selectOne();
+                }
+            }, propagation)).get();
+        }
+
+        @Transactional
+        public Callable<Integer> joinLater() {
+            return txManager.wrap(new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    return mapper.selectOne();
+                }
+            }, ContextPropagation.JOIN);
+        }
+
+        @Transactional
+        public long forkAndReadToken(ExecutorService executor) throws Exception {
+            Assert.assertEquals(0, txManager.getConsistencyToken().getCommittedMillis());
+            executor.submit(txManager.wrap(new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    return mapper.selectOne();
+                }
+            }, ContextPropagation.INDEPENDENT)).get();
+            return txManager.getConsistencyToken().getCommittedMillis();
+        }
+    }
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    @After
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    @Test
+    public void testJoin() throws Exception {
+        Injector i = Guice.createInjector(new InjectionTest.TestModule());
+        MultiTransactionManager txManager = i.getInstance(MultiTransactionManager.class);
+
+        Assert.assertEquals(1, i.getInstance(Tester.class).fork(executor, ContextPropagation.JOIN));
+
+        // The session was opened in the caller's transaction and committed by it
+        Assert.assertEquals(1, txManager.getCompletionStatistics("default").getCommitCount());
+        Assert.assertFalse(txManager.isWithinTransactionalContext());
+    }
+
+    @Test
+    public void testIndependent() throws Exception {
+        Injector i = Guice.createInjector(new ScopedModule());
+        MultiTransactionManager txManager = i.getInstance(MultiTransactionManager.class);
+
+        Assert.assertEquals(1, i.getInstance(Tester.class).fork(executor, ContextPropagation.INDEPENDENT));
+
+        // Committed by the task, the caller enlisted nothing
+        Assert.assertEquals(1, txManager.getCompletionStatistics("default").getCommitCount());
+        Assert.assertNull(storage.get());
+        Assert.assertNull(executor.submit(new Callable<Object>() {
+            @Override
+            public Object call() {
+                return storage.get();
+            }
+        }).get());
+    }
+
+    @Test
+    public void testJoinAfterTransactionEnded() throws Exception {
+        Injector i = Guice.createInjector(new InjectionTest.TestModule());
+        Callable<Integer> task = i.getInstance(Tester.class).joinLater();
+        try {
+            executor.submit(task).get();
+            Assert.fail("The transaction of the task has ended");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        Assert.assertEquals(0, i.getInstance(MultiTransactionManager.class).getCompletionStatistics("default").getCommitCount());
+    }
+
+    @Test
+    public void testIndependentCommitIsVisibleToCaller() throws Exception {
+        Injector i = Guice.createInjector(new InjectionTest.TestModule());
+        Assert.assertTrue(i.getInstance(Tester.class).forkAndReadToken(executor) > 0);
+    }
+
+    @Test
+    public void testWrapWithoutContext() {
+        Injector i = Guice.createInjector(new ScopedModule());
+        MultiTransactionManager txManager = i.getInstance(MultiTransactionManager.class);
+
+        Callable<Integer> task = new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return 1;
+            }
+        };
+        Runnable runnable = new Runnable() {
+            @Override
+            public void run() {
+            }
+        };
+        Assert.assertSame(task, txManager.wrap(task, ContextPropagation.JOIN));
+        Assert.assertSame(runnable, txManager.wrap(runnable, ContextPropagation.INDEPENDENT));
+        Assert.assertNull(txManager.capture());
+
+        // Nothing was bound to the thread
+        Assert.assertNull(storage.get());
+    }
+
+}
@@ -0,0 +1,100 @@
+package org.mybatis.guice.multi;
+
+import com.google.inject.Guice;
+import com.google.inject.Inject;
+import com.google.inject.Injector;
+import com.google.inject.util.Providers;
+import junit.framework.Assert;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSessionException;
+import org.junit.Test;
+import org.mybatis.guice.MultiDbModule;
+import org.mybatis.guice.annotation.DB;
+import org.mybatis.guice.annotation.Database;
+import org.mybatis.guice.datasource.builtin.PooledDataSourceProvider;
+import org.mybatis.guice.session.ResultCursor;
+import org.mybatis.guice.transactional.Transactional;
+
+import java.util.Iterator;
+
+/**
+ * @author ferenczil
+ */
+public class CursorTest {
+
+    public static class CursorModule extends MultiDbModule {
+        @Override
+        public void internalConfigure() {
+            PooledDataSourceProvider p = new PooledDataSourceProvider("org.hsqldb.jdbcDriver", "jdbc:hsqldb:mem:cursor", getClass().getClassLoader());
+            p.setUser("sa");
+            p.setPassword("");
+
+            add("default")
+                    .annotatedWith(Database.defaultDb())
+                    .addMapper(BatchMapper.class)
+                    .dataSource(Providers.guicify(p));
+
+            bind(CursorTester.class);
+        }
+    }
+
+    public static class CursorTester {
+
+        @Inject
+        @DB
+        BatchMapper mapper;
+
+        @Transactional
+        public void createTable() {
+            mapper.createTable();
+        }
+
+        @Transactional(executorType = ExecutorType.BATCH)
+        public int insertAndSum(int rows) {
+            for (int i = 0; i < rows; i++) {
+                mapper.insert(i);
+            }
+            // The pending batch is flushed before the query
+            int sum = 0;
+            for (Integer val : mapper.cursor(0)) {
+                sum += val;
+            }
+            return sum;
+        }
+
+        @Transactional
+        public ResultCursor<Integer> readFirst(int min) {
+            ResultCursor<Integer> cursor = (ResultCursor<Integer>) mapper.cursor(min);
+            Iterator<Integer> rows = cursor.iterator();
+            Assert.assertEquals(min, rows.next().intValue());
+            return cursor;
+        }
+    }
+
+    @Test
+    public void testCursor() {
+        Injector i = Guice.createInjector(new CursorModule());
+        CursorTester tester = i.getInstance(CursorTester.class);
+        tester.createTable();
+
+        Assert.assertEquals(4950, tester.insertAndSum(100));
+
+        // Closed together with the session of the transaction
+        ResultCursor<Integer> cursor = tester.readFirst(90);
+        Assert.assertEquals(1, cursor.getPosition());
+        Assert.assertTrue(cursor.isClosed());
+        try {
+            cursor.hasNext();
+            Assert.fail("The remaining rows were not read");
+        } catch (IllegalStateException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("after 1 row(s)"));
+        }
+    }
+
+    @Test(expected = SqlSessionException.class)
+    public void testCursorWithoutContext() {
+        Injector i = Guice.createInjector(new CursorModule());
+        i.getInstance(CursorTester.class).mapper.cursor(0);
+    }
+
+}
@@ -0,0 +1,163 @@
+package org.mybatis.guice.multi;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.util.Providers;
+import junit.framework.Assert;
+import org.apache.ibatis.session.RowBounds;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mybatis.guice.MultiDbModule;
+import org.mybatis.guice.annotation.Database;
+import org.mybatis.guice.datasource.builtin.PooledDataSourceProvider;
+import org.mybatis.guice.mappers.GeneratedMappers;
+import org.mybatis.guice.mappers.MapperImplementationProcessor;
+
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @author ferenczil
+ */
+public class GeneratedMapperTest {
+
+    private static final String MAPPER = "package gen;\n"
+            + "import java.util.List;\n"
+            + "import org.apache.ibatis.annotations.*;\n"
+            + "@org.mybatis.guice.mappers.GenerateMapper\n"
+            + "public interface ItemMapper {\n"
+            + "  @Update(\"CREATE TABLE item (id INTEGER, name VARCHAR(20))\") void createTable();\n"
+            + "  @Insert(\"INSERT INTO item VALUES (#{id}, #{name})\") int insert(@Param(\"id\") int id, @Param(\"name\") String name);\n"
+            + "  @Select(\"SELECT name FROM item WHERE id = #{id}\") String selectName(int id);\n"
+            + "  @Select(\"SELECT COUNT(*) FROM item\") long count();\n"
+            + "  @Select(\"SELECT name FROM item WHERE id >= #{param1} ORDER BY id\") List<String> selectNames(int min);\n"
+            + "  @Select(\"SELECT name FROM item ORDER BY id\") List<String> selectPage(org.apache.ibatis.session.RowBounds bounds);\n"
+            + "  @Select(\"SELECT COUNT(*) FROM item WHERE id >= #{min} AND name <> #{1}\") int countOthers(@Param(\"min\") int min, String name);\n"
+            + "  @Delete(\"DELETE FROM item WHERE id = #{id}\") boolean delete(int id);\n"
+            + "}\n";
+
+    public static class GeneratedModule extends MultiDbModule {
+
+        private final Class<?> mapperType;
+
+        public GeneratedModule(Class<?> mapperType) {
+            this.mapperType = mapperType;
+        }
+
+        @Override
+        public void internalConfigure() {
+            PooledDataSourceProvider p = new PooledDataSourceProvider("org.hsqldb.jdbcDriver", "jdbc:hsqldb:mem:generated", getClass().getClassLoader());
+            p.setUser("sa");
+            p.setPassword("");
+
+            add("generated")
+                    .annotatedWith(Database.named("generated"))
+                    .addMapper(mapperType)
+                    .dataSource(Providers.guicify(p));
+
+            allowTransactionWithoutContext(true);
+        }
+    }
+
+    private File output;
+
+    @Before
+    public void createOutput() throws IOException {
+        output = Files.createTempDirectory("generated").toFile();
+    }
+
+    @After
+    public void deleteOutput() throws IOException {
+        delete(output);
+    }
+
+    @Test
+    public void testGeneratedMapper() throws Exception {
+        compile(source("gen.ItemMapper", MAPPER));
+        Assert.assertTrue(new File(output, "gen/ItemMapper_GeneratedImpl.class").isFile());
+
+        URLClassLoader classLoader = new URLClassLoader(new URL[] { output.toURI().toURL() }, getClass().getClassLoader());
+        Class<?> mapperType = classLoader.loadClass("gen.ItemMapper");
+        Injector i = Guice.createInjector(new GeneratedModule(mapperType));
+        Object mapper = i.getInstance(Key.get(mapperType, Database.named("generated")));
+        Assert.assertEquals(GeneratedMappers.implementationName(mapperType.getName()), mapper.getClass().getName());
+
+        call(mapper, "createTable");
+        for (int id = 1; id <= 3; id++) {
+            Assert.assertEquals(1, call(mapper, "insert", id, "item" + id));
+        }
+        Assert.assertEquals("item2", call(mapper, "selectName", 2));
+        Assert.assertNull(call(mapper, "selectName", 4));
+        Assert.assertEquals(3L, call(mapper, "count"));
+        Assert.assertEquals(Arrays.asList("item2", "item3"), call(mapper, "selectNames", 2));
+        // Methods with row bounds are called on the proxy
+        Assert.assertEquals(Arrays.asList("item2"), call(mapper, "selectPage", new RowBounds(1, 1)));
+        Assert.assertEquals(1, call(mapper, "countOthers", 2, "item3"));
+        Assert.assertEquals(true, call(mapper, "delete", 1));
+        Assert.assertEquals(false, call(mapper, "delete", 1));
+        Assert.assertEquals(2L, call(mapper, "count"));
+    }
+
+    @Test
+    public void testNotGeneratedMapper() {
+        Injector i = Guice.createInjector(new GeneratedModule(BatchMapper.class));
+        BatchMapper mapper = i.getInstance(Key.get(BatchMapper.class, Database.named("generated")));
+        Assert.assertFalse(mapper.getClass().getName().endsWith("_GeneratedImpl"));
+    }
+
+    private static Object call(Object target, String name, Object... args) throws Exception {
+        for (Method method : target.getClass().getMethods()) {
+            if (method.getName().equals(name) && method.getParameterTypes().length == args.length) {
+                try {
+                    return method.invoke(target, args);
+                } catch (InvocationTargetException e) {
+                    throw (Exception) e.getCause();
+                }
+            }
+        }
+        throw new NoSuchMethodException(name);
+    }
+
+    private void compile(JavaFileObject... sources) {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        List<String> options = Arrays.asList("-d", output.getPath(), "-s", output.getPath());
+        JavaCompiler.CompilationTask task = compiler.getTask(null, null, null, options, null, Arrays.asList(sources));
+        task.setProcessors(Collections.singletonList(new MapperImplementationProcessor()));
+        Assert.assertTrue(task.call());
+    }
+
+    private static JavaFileObject source(String className, final String code) {
+        return new SimpleJavaFileObject(URI.create("string:///" + className.replace('.', '/') + ".java"), JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return code;
+            }
+        };
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+}
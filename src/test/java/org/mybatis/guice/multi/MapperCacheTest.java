@@ -0,0 +1,126 @@
+package org.mybatis.guice.multi;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import junit.framework.Assert;
+import org.apache.ibatis.session.Configuration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mybatis.guice.annotation.Database;
+import org.mybatis.guice.configuration.MapperCache;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+
+/**
+ * @author ferenczil
+ */
+public class MapperCacheTest {
+
+    private static final String MAPPER = "<?xml version=\"1.0\" encoding=\"UTF-8\" ?>\n"
+            + "<!DOCTYPE mapper PUBLIC \"-//mybatis.org//DTD Mapper 3.0//EN\" \"http://mybatis.org/dtd/mybatis-3-mapper.dtd\">\n"
+            + "<mapper namespace=\"cached\">\n"
+            + "    <select id=\"%s\" resultType=\"int\"><![CDATA[ SELECT 1 FROM INFORMATION_SCHEMA.SYSTEM_USERS WHERE 1 < 2 ]]></select>\n"
+            + "</mapper>\n";
+
+    private static File file;
+
+    public static class CachedModule extends InjectionTest.TestModule {
+        @Override
+        public void internalConfigure() {
+            super.internalConfigure();
+            mapperCache(file);
+        }
+    }
+
+    @Before
+    public void createFile() throws IOException {
+        file = File.createTempFile("mappers", ".cache");
+        Assert.assertTrue(file.delete());
+    }
+
+    @After
+    public void deleteFile() {
+        file.delete();
+    }
+
+    @Test
+    public void testCachedAcrossStartups() {
+        Injector first = Guice.createInjector(new CachedModule());
+        Assert.assertEquals(1, first.getInstance(Key.get(TestMapper.class, Database.named("test"))).selectOne());
+        MapperCache cache = first.getInstance(MapperCache.class);
+        Assert.assertEquals(0, cache.getHits());
+        Assert.assertEquals(1, cache.getMisses());
+        Assert.assertTrue(file.isFile());
+
+        Injector second = Guice.createInjector(new CachedModule());
+        Assert.assertEquals(1, second.getInstance(Key.get(TestMapper.class, Database.named("test"))).selectOne());
+        cache = second.getInstance(MapperCache.class);
+        Assert.assertEquals(1, cache.getHits());
+        Assert.assertEquals(0, cache.getMisses());
+    }
+
+    @Test
+    public void testChangedContentIsParsedAgain() throws IOException {
+        MapperCache cache = new MapperCache(file);
+        Configuration configuration = new Configuration();
+        cache.mapperBuilder("cached.xml", mapper("first"), configuration).parse();
+        Assert.assertTrue(configuration.hasStatement("cached.first"));
+        cache.flush();
+
+        cache = new MapperCache(file);
+        Assert.assertEquals(1, cache.size());
+        configuration = new Configuration();
+        cache.mapperBuilder("cached.xml", mapper("first"), configuration).parse();
+        Assert.assertEquals(1, cache.getHits());
+        Assert.assertTrue(configuration.getMappedStatement("cached.first").getBoundSql(null).getSql().contains("1 < 2"));
+
+        configuration = new Configuration();
+        cache.mapperBuilder("cached.xml", mapper("second"), configuration).parse();
+        Assert.assertEquals(1, cache.getMisses());
+        Assert.assertTrue(configuration.hasStatement("cached.second"));
+        Assert.assertFalse(configuration.hasStatement("cached.first"));
+        cache.flush();
+
+        cache = new MapperCache(file);
+        configuration = new Configuration();
+        cache.mapperBuilder("cached.xml", mapper("second"), configuration).parse();
+        Assert.assertEquals(1, cache.getHits());
+        Assert.assertTrue(configuration.hasStatement("cached.second"));
+    }
+
+    @Test
+    public void testUnreadableFileIsIgnored() throws IOException {
+        Files.write(file.toPath(), new byte[] { 1, 2, 3 });
+        MapperCache cache = new MapperCache(file);
+        Assert.assertEquals(0, cache.size());
+        Configuration configuration = new Configuration();
+        cache.mapperBuilder("cached.xml", mapper("first"), configuration).parse();
+        Assert.assertEquals(1, cache.getMisses());
+        cache.flush();
+        Assert.assertEquals(1, new MapperCache(file).size());
+    }
+
+    @Test
+    public void testCorruptedLengthIsIgnored() throws IOException {
+        // Valid header and entry count, negative name length
+        ByteBuffer content = ByteBuffer.allocate(16);
+        content.putInt(0x4D424743).putInt(1).putInt(1).putInt(-5);
+        Files.write(file.toPath(), content.array());
+        Assert.assertEquals(0, new MapperCache(file).size());
+
+        content.putInt(12, Integer.MAX_VALUE);
+        Files.write(file.toPath(), content.array());
+        Assert.assertEquals(0, new MapperCache(file).size());
+    }
+
+    private static ByteArrayInputStream mapper(String id) {
+        return new ByteArrayInputStream(String.format(MAPPER, id).getBytes());
+    }
+
+}
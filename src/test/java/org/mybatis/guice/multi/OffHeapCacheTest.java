@@ -0,0 +1,109 @@
+package org.mybatis.guice.multi;
+
+import com.google.inject.Guice;
+import com.google.inject.Inject;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.util.Providers;
+import junit.framework.Assert;
+import org.junit.Test;
+import org.mybatis.guice.MultiDbModule;
+import org.mybatis.guice.annotation.DB;
+import org.mybatis.guice.annotation.Database;
+import org.mybatis.guice.cache.CacheEviction;
+import org.mybatis.guice.cache.OffHeapCache;
+import org.mybatis.guice.cache.OffHeapStore;
+import org.mybatis.guice.datasource.builtin.PooledDataSourceProvider;
+import org.mybatis.guice.transactional.Transactional;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author ferenczil
+ */
+public class OffHeapCacheTest {
+
+    public static class CacheModule extends MultiDbModule {
+        @Override
+        public void internalConfigure() {
+            PooledDataSourceProvider p = new PooledDataSourceProvider("org.hsqldb.jdbcDriver", "jdbc:hsqldb:mem:offheap", getClass().getClassLoader());
+            p.setUser("sa");
+            p.setPassword("");
+
+            add("default")
+                    .annotatedWith(Database.defaultDb())
+                    .addMapper(CachedMapper.class)
+                    .dataSource(Providers.guicify(p))
+                    .offHeapCache(1 << 20);
+
+            bind(CacheTester.class);
+        }
+    }
+
+    public static class CacheTester {
+
+        @Inject
+        @DB
+        CachedMapper mapper;
+
+        @Transactional
+        public int select() {
+            return mapper.selectOne();
+        }
+    }
+
+    @Test
+    public void testEnvironmentStore() {
+        Injector i = Guice.createInjector(new CacheModule());
+        CacheTester tester = i.getInstance(CacheTester.class);
+
+        Assert.assertEquals(1, tester.select());
+        Assert.assertEquals(1, tester.select());
+
+        OffHeapStore store = i.getInstance(Key.get(OffHeapStore.class, Database.defaultDb()));
+        Assert.assertEquals(1, store.getEntryCount());
+        Assert.assertEquals(1, store.getHitCount());
+        Assert.assertTrue(store.getUsedBytes() > 0);
+    }
+
+    @Test
+    public void testEviction() {
+        OffHeapCache cache = new OffHeapCache("lru", new OffHeapStore(8 * 512, CacheEviction.LRU, false));
+
+        for (int i = 0; i < 4; i++) {
+            cache.putObject(i, "value" + i);
+        }
+        Assert.assertEquals("value0", cache.getObject(0));
+        for (int i = 4; i < 8; i++) {
+            cache.putObject(i, "value" + i);
+        }
+        cache.putObject(8, "value8");
+
+        Assert.assertEquals(8, cache.getSize());
+        Assert.assertEquals(1, cache.getStore().getEvictionCount());
+        Assert.assertEquals("value0", cache.getObject(0));
+        Assert.assertNull(cache.getObject(1));
+
+        cache.clear();
+        Assert.assertEquals(0, cache.getSize());
+        Assert.assertEquals(0, cache.getStore().getAllocatedBytes());
+    }
+
+    @Test
+    public void testCompression() {
+        OffHeapStore store = new OffHeapStore(1 << 20, CacheEviction.LFU, true);
+        OffHeapCache cache = new OffHeapCache("compressed", store);
+
+        List<String> rows = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            rows.add("row");
+        }
+        cache.putObject("rows", rows);
+
+        Assert.assertEquals(rows, cache.getObject("rows"));
+        Assert.assertTrue(store.getUsedBytes() < 1000);
+        Assert.assertEquals(1.0, store.getHitRatio());
+    }
+
+}
@@ -0,0 +1,230 @@
+package org.mybatis.guice.multi;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Inject;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.name.Named;
+import com.google.inject.name.Names;
+import com.google.inject.util.Providers;
+import junit.framework.Assert;
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.datasource.pooled.PooledDataSource;
+import org.apache.ibatis.exceptions.PersistenceException;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.junit.Test;
+import org.mybatis.guice.MultiDbModule;
+import org.mybatis.guice.datasource.builtin.PooledDataSourceProvider;
+import org.mybatis.guice.datasource.delegate.DelegatingConnection;
+import org.mybatis.guice.datasource.delegate.DelegatingDataSource;
+import org.mybatis.guice.transactional.MultiTransactionManager;
+import org.mybatis.guice.transactional.Transactional;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author ferenczil
+ */
+public class ParallelCompletionTest {
+
+    public static class ParallelModule extends InjectionTest.TestModule {
+        @Override
+        public void internalConfigure() {
+            super.internalConfigure();
+            parallelCompletion(2, 5000);
+        }
+    }
+
+    /**
+     * A cached environment completed together with one whose commit blocks and one whose commit fails
+     */
+    public static class OutcomeModule extends MultiDbModule {
+
+        private final SlowCommitDataSource slow;
+
+        public OutcomeModule(SlowCommitDataSource slow) {
+            this.slow = slow;
+        }
+
+        @Override
+        public void internalConfigure() {
+            PooledDataSourceProvider p = new PooledDataSourceProvider("org.hsqldb.jdbcDriver", "jdbc:hsqldb:mem:parallelCached", getClass().getClassLoader());
+            p.setUser("sa");
+            p.setPassword("");
+
+            add("cached")
+                    .annotatedWith(Names.named("cached"))
+                    .addMapper(CachedMapper.class)
+                    .dataSource(Providers.guicify(p));
+
+            add("slow")
+                    .annotatedWith(Names.named("slow"))
+                    .addMapper(BatchMapper.class)
+                    .dataSource(Providers.<DataSource>of(slow));
+
+            add("failing")
+                    .annotatedWith(Names.named("failing"))
+                    .addMapper(BatchMapper.class)
+                    .dataSource(Providers.<DataSource>of(new CacheStageTest.FailingCommitDataSource(
+                            new PooledDataSource("org.hsqldb.jdbcDriver", "jdbc:hsqldb:mem:parallelFailing", "sa", ""))));
+
+            parallelCompletion(3, 200);
+            bind(OutcomeTester.class);
+        }
+    }
+
+    public static class SlowCommitDataSource extends DelegatingDataSource {
+
+        final CountDownLatch commitReleased = new CountDownLatch(1);
+
+        final CountDownLatch closed = new CountDownLatch(1);
+
+        volatile String closingThread;
+
+        public SlowCommitDataSource(DataSource delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            return new DelegatingConnection(delegate.getConnection()) {
+                private boolean committing;
+
+                @Override
+                public void commit() throws SQLException {
+                    committing = true;
+                    try {
+                        commitReleased.await();
+                    }
+                    catch (InterruptedException e) {
+                        throw new SQLException(e);
+                    }
+                    super.commit();
+                }
+
+                @Override
+                public void close() throws SQLException {
+                    super.close();
+                    if (committing) {
+                        // Only the connection of the blocked commit is watched
+                        closingThread = Thread.currentThread().getName();
+                        closed.countDown();
+                    }
+                }
+            };
+        }
+    }
+
+    public static class OutcomeTester {
+
+        @Inject
+        @Named("cached")
+        CachedMapper cachedMapper;
+
+        @Inject
+        @Named("slow")
+        BatchMapper slowMapper;
+
+        @Inject
+        @Named("failing")
+        BatchMapper failingMapper;
+
+        @Transactional
+        public int readAndWriteSlow() {
+            int result = cachedMapper.selectOne();
+            slowMapper.createTable();
+            return result;
+        }
+
+        @Transactional
+        public int readAndWriteFailing() {
+            int result = cachedMapper.selectOne();
+            failingMapper.createTable();
+            return result;
+        }
+    }
+
+    @Test
+    public void testParallelCommit() {
+        Injector i = Guice.createInjector(new ParallelModule(),
+                new AbstractModule() {
+                    @Override
+                    protected void configure() {
+                        bind(TransactionTest.TxTester.class);
+                    }
+                });
+
+        i.getInstance(TransactionTest.TxTester.class).testTransaction();
+
+        MultiTransactionManager manager = i.getInstance(MultiTransactionManager.class);
+        Assert.assertEquals(1, manager.getCompletionStatistics("default").getCommitCount());
+        Assert.assertEquals(1, manager.getCompletionStatistics("test").getCommitCount());
+        Assert.assertEquals(0, manager.getCompletionStatistics("test").getFailureCount());
+        Assert.assertFalse(manager.isWithinTransactionalContext());
+    }
+
+    @Test
+    public void testTimedOutCommit() throws Exception {
+        SlowCommitDataSource slow = new SlowCommitDataSource(
+                new PooledDataSource("org.hsqldb.jdbcDriver", "jdbc:hsqldb:mem:parallelSlow", "sa", ""));
+        Injector i = Guice.createInjector(new OutcomeModule(slow));
+        OutcomeTester tester = i.getInstance(OutcomeTester.class);
+        MultiTransactionManager manager = i.getInstance(MultiTransactionManager.class);
+        Cache cache = i.getInstance(Key.get(SqlSessionFactory.class, Names.named("cached")))
+                .getConfiguration().getCache(CachedMapper.class.getName());
+
+        try {
+            tester.readAndWriteSlow();
+            Assert.fail("The slow commit must time out");
+        }
+        catch (PersistenceException expected) {
+            // reported once every environment was waited for
+        }
+        // The staged result of the committed environment is discarded with the transaction
+        Assert.assertEquals(0, cache.getSize());
+        Assert.assertEquals(1, manager.getCompletionStatistics("cached").getCommitCount());
+        Assert.assertEquals(1, manager.getCompletionStatistics("slow").getFailureCount());
+        Assert.assertFalse(manager.isWithinTransactionalContext());
+
+        // The caller left the session of the running commit alone, the completion closes it once the driver returns
+        Assert.assertEquals(1, slow.closed.getCount());
+        slow.commitReleased.countDown();
+        Assert.assertTrue(slow.closed.await(5, TimeUnit.SECONDS));
+        Assert.assertFalse(Thread.currentThread().getName().equals(slow.closingThread));
+
+        // The outcome was recorded by the caller only
+        Assert.assertEquals(0, manager.getCompletionStatistics("slow").getCommitCount());
+        Assert.assertEquals(1, manager.getCompletionStatistics("slow").getFailureCount());
+    }
+
+    @Test
+    public void testOneEnvironmentFails() {
+        SlowCommitDataSource slow = new SlowCommitDataSource(
+                new PooledDataSource("org.hsqldb.jdbcDriver", "jdbc:hsqldb:mem:parallelUnused", "sa", ""));
+        Injector i = Guice.createInjector(new OutcomeModule(slow));
+        OutcomeTester tester = i.getInstance(OutcomeTester.class);
+        MultiTransactionManager manager = i.getInstance(MultiTransactionManager.class);
+        Cache cache = i.getInstance(Key.get(SqlSessionFactory.class, Names.named("cached")))
+                .getConfiguration().getCache(CachedMapper.class.getName());
+
+        try {
+            tester.readAndWriteFailing();
+            Assert.fail("Commit of the failing environment must fail");
+        }
+        catch (PersistenceException expected) {
+            // the cached environment committed in parallel
+        }
+        Assert.assertEquals(0, cache.getSize());
+        Assert.assertEquals(1, manager.getCompletionStatistics("cached").getCommitCount());
+        Assert.assertEquals(0, manager.getCompletionStatistics("cached").getFailureCount());
+        Assert.assertEquals(0, manager.getCompletionStatistics("failing").getCommitCount());
+        Assert.assertEquals(1, manager.getCompletionStatistics("failing").getFailureCount());
+        Assert.assertFalse(manager.isWithinTransactionalContext());
+    }
+
+}
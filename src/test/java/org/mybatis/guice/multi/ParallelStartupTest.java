@@ -0,0 +1,106 @@
+package org.mybatis.guice.multi;
+
+import com.google.inject.CreationException;
+import com.google.inject.Guice;
+import com.google.inject.Inject;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.util.Providers;
+import junit.framework.Assert;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.junit.Test;
+import org.mybatis.guice.MultiDbModule;
+import org.mybatis.guice.annotation.DB;
+import org.mybatis.guice.annotation.Database;
+import org.mybatis.guice.configuration.ParallelStartup;
+import org.mybatis.guice.datasource.builtin.PooledDataSourceProvider;
+
+/**
+ * @author ferenczil
+ */
+public class ParallelStartupTest {
+
+    public static class ParallelModule extends InjectionTest.TestModule {
+        @Override
+        public void internalConfigure() {
+            super.internalConfigure();
+            parallelStartup(2);
+        }
+    }
+
+    public static class EarlyUser {
+        final Configuration configuration;
+
+        @Inject
+        EarlyUser(@DB("test") SqlSessionFactory sqlSessionFactory) {
+            this.configuration = sqlSessionFactory.getConfiguration();
+        }
+    }
+
+    public static class EarlyModule extends InjectionTest.TestModule {
+        @Override
+        public void internalConfigure() {
+            super.internalConfigure();
+            bind(EarlyUser.class).asEagerSingleton();
+            parallelStartup(2);
+        }
+    }
+
+    public static class BrokenModule extends MultiDbModule {
+        @Override
+        public void internalConfigure() {
+            PooledDataSourceProvider p = new PooledDataSourceProvider("org.hsqldb.jdbcDriver", "jdbc:hsqldb:mem:broken", getClass().getClassLoader());
+            p.setUser("sa");
+            p.setPassword("");
+
+            add("broken")
+                    .annotatedWith(Database.named("broken"))
+                    .addMapperXml("org/mybatis/guice/multi/Missing.xml")
+                    .dataSource(Providers.guicify(p));
+
+            parallelStartup(2);
+        }
+    }
+
+    @Test
+    public void testParallelBuild() {
+        Injector i = Guice.createInjector(new ParallelModule());
+
+        ParallelStartup startup = i.getInstance(ParallelStartup.class);
+        Assert.assertEquals(2, startup.getEnvironmentIds().size());
+        Assert.assertTrue(startup.getEnvironmentIds().contains("default"));
+        Assert.assertTrue(startup.getEnvironmentIds().contains("test"));
+        Assert.assertEquals(startup.getEnvironmentIds(), startup.getPendingEnvironmentIds());
+
+        Configuration configuration = i.getInstance(Key.get(SqlSessionFactory.class, Database.named("test"))).getConfiguration();
+        Assert.assertTrue(configuration.hasStatement("test"));
+        Assert.assertEquals(1, i.getInstance(Key.get(TestMapper.class, Database.named("test"))).selectOne());
+        Assert.assertEquals(1, i.getInstance(Key.get(TestMapper.class, Database.defaultDb())).selectOne());
+
+        // Both configurations came from the startup
+        Assert.assertTrue(startup.getPendingEnvironmentIds().isEmpty());
+    }
+
+    @Test
+    public void testSkipsConfigurationBuiltOnDemand() {
+        Injector i = Guice.createInjector(new EarlyModule());
+
+        ParallelStartup startup = i.getInstance(ParallelStartup.class);
+        Assert.assertEquals(1, startup.getEnvironmentIds().size());
+        Assert.assertTrue(startup.getEnvironmentIds().contains("default"));
+        Assert.assertSame(i.getInstance(EarlyUser.class).configuration,
+                i.getInstance(Key.get(SqlSessionFactory.class, Database.named("test"))).getConfiguration());
+    }
+
+    @Test
+    public void testFailureNamesEnvironment() {
+        try {
+            Guice.createInjector(new BrokenModule());
+            Assert.fail("Missing mapper XML must fail the injector creation");
+        } catch (CreationException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("environment broken"));
+        }
+    }
+
+}
@@ -0,0 +1,169 @@
+package org.mybatis.guice.multi;
+
+import com.google.inject.Guice;
+import com.google.inject.Inject;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.util.Providers;
+import com.jolbox.bonecp.BoneCPDataSource;
+import junit.framework.Assert;
+import org.apache.commons.dbcp.BasicDataSource;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.junit.Test;
+import org.mybatis.guice.MultiDbModule;
+import org.mybatis.guice.annotation.DB;
+import org.mybatis.guice.annotation.Database;
+import org.mybatis.guice.datasource.builtin.PooledDataSourceProvider;
+import org.mybatis.guice.datasource.pool.MeteredDataSource;
+import org.mybatis.guice.datasource.pool.PoolMetrics;
+import org.mybatis.guice.metrics.MBeans;
+import org.mybatis.guice.transactional.Transactional;
+
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * @author ferenczil
+ */
+public class PoolMetricsTest {
+
+    public static class PoolModule extends MultiDbModule {
+        @Override
+        public void internalConfigure() {
+            PooledDataSourceProvider p = new PooledDataSourceProvider("org.hsqldb.jdbcDriver", "jdbc:hsqldb:mem:metered", getClass().getClassLoader());
+            p.setUser("sa");
+            p.setPassword("");
+
+            add("metered")
+                    .annotatedWith(Database.defaultDb())
+                    .addMapper(TestMapper.class)
+                    .dataSource(Providers.guicify(p))
+                    .statementCache(8)
+                    .poolMetrics();
+
+            bind(PoolTester.class);
+        }
+    }
+
+    public static class PoolTester {
+
+        @Inject
+        @DB
+        TestMapper mapper;
+
+        @Transactional
+        public int select() {
+            return mapper.selectOne();
+        }
+    }
+
+    @Test
+    public void testEnvironmentPool() throws Exception {
+        Injector i = Guice.createInjector(new PoolModule());
+        PoolTester tester = i.getInstance(PoolTester.class);
+
+        Assert.assertEquals(1, tester.select());
+        Assert.assertEquals(1, tester.select());
+
+        PoolMetrics metrics = i.getInstance(Key.get(SqlSessionFactory.class, Database.defaultDb()))
+                .getConfiguration().getEnvironment().getDataSource().unwrap(PoolMetrics.class);
+        Assert.assertEquals("PooledDataSource", metrics.getPoolType());
+        Assert.assertEquals(2, metrics.getCheckouts());
+        Assert.assertEquals(0, metrics.getActiveConnections());
+        Assert.assertEquals(1, metrics.getIdleConnections());
+        Assert.assertEquals(1, metrics.getOpenConnections());
+        Assert.assertEquals(0, metrics.getPendingRequests());
+        Assert.assertEquals(0, metrics.getValidationFailures());
+        Assert.assertEquals(-1, metrics.getCreatedConnections());
+        Assert.assertEquals(0, metrics.getTimeouts());
+
+        Assert.assertEquals(2L, ManagementFactory.getPlatformMBeanServer()
+                .getAttribute(MBeans.name(MeteredDataSource.MBEAN_TYPE, "metered"), "Checkouts"));
+    }
+
+    @Test
+    public void testDbcpPool() throws Exception {
+        BasicDataSource pool = new BasicDataSource();
+        pool.setDriverClassName("org.hsqldb.jdbcDriver");
+        pool.setUrl("jdbc:hsqldb:mem:meteredDbcp");
+        pool.setUsername("sa");
+        pool.setPassword("");
+        MeteredDataSource dataSource = new MeteredDataSource(pool);
+
+        Connection connection = dataSource.getConnection();
+        Assert.assertEquals(1, dataSource.getActiveConnections());
+        Assert.assertEquals(1, dataSource.getOpenConnections());
+        connection.close();
+        connection.close();
+
+        Assert.assertEquals("BasicDataSource", dataSource.getPoolType());
+        Assert.assertEquals(0, dataSource.getActiveConnections());
+        Assert.assertEquals(1, dataSource.getIdleConnections());
+        Assert.assertEquals(1, dataSource.getCheckoutWait().getCount());
+        pool.close();
+    }
+
+    @Test
+    public void testBoneCPPool() throws Exception {
+        BoneCPDataSource pool = new BoneCPDataSource();
+        pool.setDriverClass("org.hsqldb.jdbcDriver");
+        pool.setJdbcUrl("jdbc:hsqldb:mem:meteredBoneCP");
+        pool.setUsername("sa");
+        pool.setPassword("");
+        pool.setPartitionCount(1);
+        pool.setMinConnectionsPerPartition(1);
+        pool.setMaxConnectionsPerPartition(2);
+        // Connections are returned on the closing thread, the leased count drops on close
+        pool.setReleaseHelperThreads(0);
+        MeteredDataSource dataSource = new MeteredDataSource(pool);
+        Assert.assertEquals("BoneCPDataSource", dataSource.getPoolType());
+        Assert.assertEquals(0, dataSource.getActiveConnections());
+
+        Connection connection = dataSource.getConnection();
+        Assert.assertEquals(1, dataSource.getActiveConnections());
+        connection.close();
+        Assert.assertEquals(0, dataSource.getActiveConnections());
+        pool.close();
+    }
+
+    @Test
+    public void testTimeoutsAndFailures() throws Exception {
+        BasicDataSource pool = new BasicDataSource();
+        pool.setDriverClassName("org.hsqldb.jdbcDriver");
+        pool.setUrl("jdbc:hsqldb:mem:meteredTimeout");
+        pool.setUsername("sa");
+        pool.setPassword("");
+        pool.setMaxActive(1);
+        pool.setMaxWait(10);
+        MeteredDataSource dataSource = new MeteredDataSource(pool);
+
+        Connection connection = dataSource.getConnection();
+        try {
+            dataSource.getConnection();
+            Assert.fail("The pool is exhausted");
+        } catch (SQLException e) {
+            // Timed out
+        }
+        connection.close();
+        pool.close();
+        Assert.assertEquals(1, dataSource.getTimeouts());
+        Assert.assertEquals(0, dataSource.getCheckoutFailures());
+
+        BasicDataSource refused = new BasicDataSource();
+        refused.setDriverClassName("org.hsqldb.jdbcDriver");
+        refused.setUrl("jdbc:hsqldb:hsql://localhost:1/refused");
+        dataSource = new MeteredDataSource(refused);
+        try {
+            dataSource.getConnection();
+            Assert.fail("There is no database");
+        } catch (SQLException e) {
+            // Failed
+        }
+        refused.close();
+        Assert.assertEquals(0, dataSource.getTimeouts());
+        Assert.assertEquals(1, dataSource.getCheckoutFailures());
+        Assert.assertEquals(1, dataSource.getCheckouts());
+    }
+
+}
@@ -0,0 +1,189 @@
+package org.mybatis.guice.multi;
+
+import com.google.inject.Guice;
+import com.google.inject.Inject;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.util.Providers;
+import junit.framework.Assert;
+import org.apache.ibatis.datasource.unpooled.UnpooledDataSource;
+import org.junit.Test;
+import org.mybatis.guice.MultiDbModule;
+import org.mybatis.guice.annotation.DB;
+import org.mybatis.guice.annotation.Database;
+import org.mybatis.guice.datasource.builtin.PooledDataSourceProvider;
+import org.mybatis.guice.datasource.replica.LoadBalancingPolicies;
+import org.mybatis.guice.datasource.replica.Replica;
+import org.mybatis.guice.datasource.replica.ReplicaLagProbe;
+import org.mybatis.guice.datasource.replica.ReplicaLagProbes;
+import org.mybatis.guice.datasource.replica.ReplicaSet;
+import org.mybatis.guice.transactional.ConsistencyToken;
+import org.mybatis.guice.transactional.MultiTransactionManager;
+import org.mybatis.guice.transactional.Transactional;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * @author ferenczil
+ */
+public class ReplicaTest {
+
+    public static class ReplicaModule extends MultiDbModule {
+        private final boolean lagging;
+
+        public ReplicaModule() {
+            this(false);
+        }
+
+        public ReplicaModule(boolean lagging) {
+            this.lagging = lagging;
+        }
+
+        @Override
+        public void internalConfigure() {
+            PooledDataSourceProvider primary = new PooledDataSourceProvider("org.hsqldb.jdbcDriver", "jdbc:hsqldb:mem:primary", getClass().getClassLoader());
+            primary.setUser("sa");
+            primary.setPassword("");
+
+            PooledDataSourceProvider replica = new PooledDataSourceProvider("org.hsqldb.jdbcDriver", "jdbc:hsqldb:mem:replica", getClass().getClassLoader());
+            replica.setUser("sa");
+            replica.setPassword("");
+
+            add("default")
+                    .annotatedWith(Database.defaultDb())
+                    .addMapper(TestMapper.class)
+                    .dataSource(Providers.guicify(primary))
+                    .addReplica(Providers.guicify(replica))
+                    .loadBalancing(LoadBalancingPolicies.leastOutstandingRequests())
+                    .replicaLagProbe(ReplicaLagProbes.fixed(lagging ? 60000 : 0), 1);
+
+            bind(ReplicaTester.class);
+        }
+    }
+
+    public static class ReplicaTester {
+
+        @Inject
+        @DB
+        TestMapper mapper;
+
+        @Transactional(readOnly = true)
+        public int read() {
+            return mapper.selectOne();
+        }
+
+        @Transactional
+        public int write() {
+            return mapper.selectOne();
+        }
+    }
+
+    @Test
+    public void testReadOnlyOnReplica() throws Exception {
+        Injector i = Guice.createInjector(new ReplicaModule());
+
+        ReplicaTester tester = i.getInstance(ReplicaTester.class);
+        Replica replica = i.getInstance(Key.get(ReplicaSet.class, Database.defaultDb())).getReplicas().get(0);
+
+        Assert.assertEquals(1, tester.read());
+        Assert.assertEquals(1, replica.getRequestCount());
+        Assert.assertEquals(0, replica.getOutstandingRequests());
+        Assert.assertTrue(replica.getLatencyNanos() > 0);
+
+        // The pooled connection is handed back with the settings it had before the read-only session
+        Connection connection = replica.getDataSource().getConnection();
+        try {
+            Assert.assertFalse(connection.isReadOnly());
+        } finally {
+            connection.close();
+        }
+
+        Assert.assertEquals(1, tester.write());
+        Assert.assertEquals(1, replica.getRequestCount());
+    }
+
+    @Test
+    public void testReadYourWrites() {
+        Injector i = Guice.createInjector(new ReplicaModule(true));
+
+        ReplicaTester tester = i.getInstance(ReplicaTester.class);
+        MultiTransactionManager txManager = i.getInstance(MultiTransactionManager.class);
+        ReplicaSet replicas = i.getInstance(Key.get(ReplicaSet.class, Database.defaultDb()));
+        Replica replica = replicas.getReplicas().get(0);
+        txManager.clearConsistency();
+
+        // Nothing committed yet, the lagging replica serves the read
+        Assert.assertEquals(1, tester.read());
+        Assert.assertEquals(1, replica.getRequestCount());
+
+        // After a commit the replica is behind the writes of this thread
+        Assert.assertEquals(1, tester.write());
+        ConsistencyToken token = txManager.getConsistencyToken();
+        Assert.assertTrue(token.getCommittedMillis() > 0);
+        Assert.assertEquals(1, tester.read());
+        Assert.assertEquals(1, replica.getRequestCount());
+        Assert.assertEquals(1, replicas.getFallbackCount());
+
+        txManager.clearConsistency();
+        Assert.assertEquals(1, tester.read());
+        Assert.assertEquals(2, replica.getRequestCount());
+
+        // A token carried from another request routes to the primary as well
+        txManager.requireConsistency(ConsistencyToken.decode(token.encode()));
+        Assert.assertEquals(1, tester.read());
+        Assert.assertEquals(2, replica.getRequestCount());
+        txManager.clearConsistency();
+    }
+
+    @Test
+    public void testProbeRunsInBackground() throws Exception {
+        final CountDownLatch probing = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicReference<String> probeThread = new AtomicReference<>();
+        ReplicaSet replicas = new ReplicaSet(
+                Collections.<DataSource>singletonList(new UnpooledDataSource("org.hsqldb.jdbcDriver", "jdbc:hsqldb:mem:replica", "sa", "")),
+                LoadBalancingPolicies.leastOutstandingRequests(),
+                new ReplicaLagProbe() {
+                    @Override
+                    public long getLagMillis(Replica replica) throws SQLException {
+                        probeThread.set(Thread.currentThread().getName());
+                        probing.countDown();
+                        try {
+                            release.await();
+                        } catch (InterruptedException e) {
+                            throw new SQLException(e);
+                        }
+                        return 0;
+                    }
+                }, 1);
+        try {
+            Assert.assertTrue(probing.await(10, TimeUnit.SECONDS));
+            Assert.assertTrue(probeThread.get().startsWith("mybatis-replica-probe-"));
+
+            // The hanging probe does not block the request, which goes to the primary without a measurement
+            long committed = System.currentTimeMillis();
+            Assert.assertNull(replicas.getConnection(committed));
+            Assert.assertEquals(1, replicas.getFallbackCount());
+
+            release.countDown();
+            Replica replica = replicas.getReplicas().get(0);
+            long deadline = System.currentTimeMillis() + 10000;
+            while (replica.getCaughtUpMillis() < committed && System.currentTimeMillis() < deadline) {
+                Thread.sleep(1);
+            }
+            Connection connection = replicas.getConnection(committed);
+            Assert.assertNotNull(connection);
+            connection.close();
+        } finally {
+            release.countDown();
+            replicas.shutdown();
+        }
+    }
+
+}
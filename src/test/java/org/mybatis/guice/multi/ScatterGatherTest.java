@@ -0,0 +1,154 @@
+package org.mybatis.guice.multi;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.util.Providers;
+import junit.framework.Assert;
+import org.apache.ibatis.exceptions.PersistenceException;
+import org.junit.Before;
+import org.junit.Test;
+import org.mybatis.guice.MultiDbModule;
+import org.mybatis.guice.annotation.Database;
+import org.mybatis.guice.datasource.builtin.PooledDataSourceProvider;
+import org.mybatis.guice.module.ShardGroupBuilder;
+import org.mybatis.guice.session.DbSessionManager;
+import org.mybatis.guice.shard.GatherResult;
+import org.mybatis.guice.shard.PartialResultPolicy;
+import org.mybatis.guice.shard.ResultMerger;
+import org.mybatis.guice.shard.ScatterGather;
+import org.mybatis.guice.shard.ShardGroup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author ferenczil
+ */
+public class ScatterGatherTest {
+
+    private static final String SELECT_NAMES = ShardGroupTest.ItemMapper.class.getName() + ".selectNames";
+
+    public static class ScatterModule extends MultiDbModule {
+        @Override
+        public void internalConfigure() {
+            allowTransactionWithoutContext(true);
+            scatterGather(2, 10);
+
+            ShardGroupBuilder group = shardGroup("scatter").addMapper(ShardGroupTest.ItemMapper.class);
+            for (int i = 0; i < 3; i++) {
+                group.addShard(add("scatter-" + i).dataSource(Providers.guicify(dataSource("scatter" + i))));
+            }
+
+            // Same mapper, without the table
+            add("scatter-broken")
+                    .annotatedWith(Database.named("scatter-broken"))
+                    .addMapper(ShardGroupTest.ItemMapper.class)
+                    .dataSource(Providers.guicify(dataSource("scatterbroken")));
+        }
+
+        private PooledDataSourceProvider dataSource(String name) {
+            PooledDataSourceProvider p = new PooledDataSourceProvider("org.hsqldb.jdbcDriver", "jdbc:hsqldb:mem:" + name, getClass().getClassLoader());
+            p.setUser("sa");
+            p.setPassword("");
+            return p;
+        }
+    }
+
+    private ScatterGather scatterGather;
+
+    private ShardGroup group;
+
+    private DbSessionManager broken;
+
+    private List<String> names;
+
+    @Before
+    public void createShards() {
+        Injector i = Guice.createInjector(new ScatterModule());
+        scatterGather = i.getInstance(ScatterGather.class);
+        group = i.getInstance(Key.get(ShardGroup.class, Database.named("scatter")));
+        broken = i.getInstance(Key.get(DbSessionManager.class, Database.named("scatter-broken")));
+        for (int shard = 0; shard < group.size(); shard++) {
+            ShardGroupTest.ItemMapper shardMapper = group.getMapper(ShardGroupTest.ItemMapper.class, shard);
+            shardMapper.dropTable();
+            shardMapper.createTable();
+        }
+
+        ShardGroupTest.ItemMapper mapper = group.getMapper(ShardGroupTest.ItemMapper.class);
+        names = new ArrayList<>();
+        for (int id = 0; id < 30; id++) {
+            mapper.insert(id, "item" + id);
+            names.add("item" + id);
+        }
+        Collections.sort(names);
+    }
+
+    @Test
+    public void testConcat() {
+        GatherResult<List<String>> result = scatterGather.<String> select(SELECT_NAMES, null)
+                .on(group)
+                .timeout(10, TimeUnit.SECONDS)
+                .concat();
+        Assert.assertTrue(result.isComplete());
+        List<String> rows = new ArrayList<>(result.getValue());
+        Collections.sort(rows);
+        Assert.assertEquals(names, rows);
+    }
+
+    @Test
+    public void testMergeSorted() {
+        GatherResult<List<String>> result = scatterGather.<String> select(SELECT_NAMES, null)
+                .on(group)
+                .mergeSorted(new Comparator<String>() {
+                    @Override
+                    public int compare(String a, String b) {
+                        return a.compareTo(b);
+                    }
+                }, 5);
+        Assert.assertEquals(names.subList(0, 5), result.getValue());
+    }
+
+    @Test
+    public void testReducer() {
+        GatherResult<Integer> result = scatterGather.<String> select(SELECT_NAMES, null)
+                .on(group)
+                .gather(new ResultMerger<String, Integer>() {
+                    @Override
+                    public Integer merge(List<List<String>> shardResults) {
+                        int count = 0;
+                        for (List<String> rows : shardResults) {
+                            count += rows.size();
+                        }
+                        return count;
+                    }
+                });
+        Assert.assertEquals(30, result.getValue().intValue());
+    }
+
+    @Test
+    public void testPartialResults() {
+        try {
+            scatterGather.<String> select(SELECT_NAMES, null)
+                    .on(group)
+                    .on("scatter-broken", broken)
+                    .concat();
+            Assert.fail("A failed shard must fail the query");
+        } catch (PersistenceException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("[scatter-broken]"));
+        }
+
+        GatherResult<List<String>> result = scatterGather.<String> select(SELECT_NAMES, null)
+                .on(group)
+                .on("scatter-broken", broken)
+                .partialResults(PartialResultPolicy.RETURN_AVAILABLE)
+                .concat();
+        Assert.assertFalse(result.isComplete());
+        Assert.assertEquals(Collections.singleton("scatter-broken"), result.getFailures().keySet());
+        Assert.assertEquals(30, result.getValue().size());
+    }
+
+}
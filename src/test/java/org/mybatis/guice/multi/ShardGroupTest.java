@@ -0,0 +1,203 @@
+package org.mybatis.guice.multi;
+
+import com.google.inject.Guice;
+import com.google.inject.Inject;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.util.Providers;
+import junit.framework.Assert;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+import org.junit.Before;
+import org.junit.Test;
+import org.mybatis.guice.MultiDbModule;
+import org.mybatis.guice.annotation.DB;
+import org.mybatis.guice.annotation.Database;
+import org.mybatis.guice.datasource.builtin.PooledDataSourceProvider;
+import org.mybatis.guice.module.ShardGroupBuilder;
+import org.mybatis.guice.shard.ShardGroup;
+import org.mybatis.guice.shard.ShardKey;
+import org.mybatis.guice.shard.ShardRouter;
+import org.mybatis.guice.shard.ShardRouters;
+import org.mybatis.guice.transactional.Transactional;
+
+import java.util.List;
+
+/**
+ * @author ferenczil
+ */
+public class ShardGroupTest {
+
+    public interface ItemMapper {
+
+        @Update("DROP TABLE item IF EXISTS")
+        void dropTable();
+
+        @Update("CREATE TABLE item (id INTEGER, name VARCHAR(20))")
+        void createTable();
+
+        @Insert("INSERT INTO item VALUES (#{id}, #{name})")
+        int insert(@ShardKey @Param("id") int id, @Param("name") String name);
+
+        @Insert("INSERT INTO item VALUES (#{id}, #{name})")
+        int insertItem(@ShardKey("id") Item item);
+
+        @Select("SELECT name FROM item WHERE id = #{id}")
+        String selectName(@ShardKey int id);
+
+        @Select("SELECT COUNT(*) FROM item")
+        int count();
+
+        @Select("SELECT name FROM item ORDER BY name")
+        List<String> selectNames();
+
+    }
+
+    public static class Item {
+        private final int id;
+        private final String name;
+
+        public Item(int id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+
+    public static class ShardModule extends MultiDbModule {
+        @Override
+        public void internalConfigure() {
+            allowTransactionWithoutContext(true);
+
+            ShardGroupBuilder group = shardGroup("items").addMapper(ItemMapper.class);
+            for (int i = 0; i < 3; i++) {
+                PooledDataSourceProvider p = new PooledDataSourceProvider("org.hsqldb.jdbcDriver", "jdbc:hsqldb:mem:shard" + i, getClass().getClassLoader());
+                p.setUser("sa");
+                p.setPassword("");
+                group.addShard(add("items-" + i).dataSource(Providers.guicify(p)));
+            }
+
+            bind(ShardTester.class);
+        }
+    }
+
+    public static class ShardTester {
+
+        @Inject
+        @DB("items")
+        ItemMapper mapper;
+
+        @Inject
+        @DB("items")
+        ShardGroup group;
+
+        @Transactional
+        public int insertAndCountEnlisted(int id) {
+            mapper.insert(id, "item" + id);
+            int enlisted = 0;
+            for (int i = 0; i < group.size(); i++) {
+                if (group.getSessionManager(i).isManagedSessionStarted()) {
+                    enlisted++;
+                }
+            }
+            return enlisted;
+        }
+    }
+
+    private ShardGroup group;
+
+    private ItemMapper mapper;
+
+    private ShardTester tester;
+
+    @Before
+    public void createShards() {
+        Injector i = Guice.createInjector(new ShardModule());
+        group = i.getInstance(Key.get(ShardGroup.class, Database.named("items")));
+        mapper = i.getInstance(Key.get(ItemMapper.class, Database.named("items")));
+        tester = i.getInstance(ShardTester.class);
+        for (int shard = 0; shard < group.size(); shard++) {
+            ItemMapper shardMapper = group.getMapper(ItemMapper.class, shard);
+            shardMapper.dropTable();
+            shardMapper.createTable();
+        }
+    }
+
+    @Test
+    public void testCallsRoutedByKey() {
+        int[] expected = new int[group.size()];
+        for (int id = 0; id < 100; id++) {
+            Assert.assertEquals(1, mapper.insert(id, "item" + id));
+            expected[group.shardOf(id)]++;
+        }
+        Assert.assertEquals(1, mapper.insertItem(new Item(200, "item200")));
+        expected[group.shardOf(200)]++;
+
+        for (int shard = 0; shard < group.size(); shard++) {
+            Assert.assertTrue(expected[shard] > 0);
+            Assert.assertEquals(expected[shard], group.getMapper(ItemMapper.class, shard).count());
+        }
+        Assert.assertEquals("item42", mapper.selectName(42));
+        Assert.assertEquals("item200", mapper.selectName(200));
+        Assert.assertEquals("items-" + group.shardOf(7), group.getEnvironmentIds().get(group.shardOf(7)));
+
+        try {
+            mapper.count();
+            Assert.fail("A call without a shard key can not be routed");
+        } catch (IllegalArgumentException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("No shard key"));
+        }
+    }
+
+    @Test
+    public void testTransactionEnlistsTouchedShard() {
+        Assert.assertEquals(1, tester.insertAndCountEnlisted(300));
+        Assert.assertEquals("item300", mapper.selectName(300));
+    }
+
+    @Test
+    public void testConsistentHashMovesKeysToNewShard() {
+        ShardRouter router = ShardRouters.consistentHash();
+        String[] three = { "a", "b", "c" };
+        String[] four = { "a", "b", "c", "d" };
+        int[] counts = new int[3];
+        for (int key = 0; key < 10000; key++) {
+            int before = router.route(key, three);
+            counts[before]++;
+            int after = router.route(key, four);
+            Assert.assertTrue(after == before || after == 3);
+        }
+        for (int count : counts) {
+            Assert.assertTrue(String.valueOf(count), count > 2000);
+        }
+        // The placement does not depend on the order of the shards
+        String[] reversed = { "c", "b", "a" };
+        Assert.assertEquals(three[router.route("key", three)], reversed[ShardRouters.consistentHash().route("key", reversed)]);
+    }
+
+    @Test
+    public void testRange() {
+        ShardRouter router = ShardRouters.range(100, 200);
+        String[] shards = { "a", "b", "c" };
+        Assert.assertEquals(0, router.route(99, shards));
+        Assert.assertEquals(1, router.route(100, shards));
+        Assert.assertEquals(1, router.route(199, shards));
+        Assert.assertEquals(2, router.route(250, shards));
+        try {
+            router.route(1, new String[] { "a", "b" });
+            Assert.fail("Two split points need three shards");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+}
@@ -0,0 +1,222 @@
+package org.mybatis.guice.multi;
+
+import com.google.inject.Guice;
+import com.google.inject.Inject;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.util.Providers;
+import com.jolbox.bonecp.BoneCPDataSource;
+import com.mchange.v2.c3p0.ComboPooledDataSource;
+import junit.framework.Assert;
+import org.apache.commons.dbcp.BasicDataSource;
+import org.apache.ibatis.datasource.pooled.PooledDataSource;
+import org.apache.ibatis.datasource.unpooled.UnpooledDataSource;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.junit.Test;
+import org.mybatis.guice.MultiDbModule;
+import org.mybatis.guice.annotation.DB;
+import org.mybatis.guice.annotation.Database;
+import org.mybatis.guice.datasource.builtin.PooledDataSourceProvider;
+import org.mybatis.guice.datasource.pool.MeteredDataSource;
+import org.mybatis.guice.datasource.statement.StatementCachingDataSource;
+import org.mybatis.guice.transactional.Transactional;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+
+/**
+ * @author ferenczil
+ */
+public class StatementCacheTest {
+
+    private static final String SELECT_ONE = "SELECT 1 FROM INFORMATION_SCHEMA.SYSTEM_USERS";
+    private static final String SELECT_TWO = "SELECT 2 FROM INFORMATION_SCHEMA.SYSTEM_USERS";
+
+    public static class CacheModule extends MultiDbModule {
+        @Override
+        public void internalConfigure() {
+            PooledDataSourceProvider p = new PooledDataSourceProvider("org.hsqldb.jdbcDriver", "jdbc:hsqldb:mem:cached", getClass().getClassLoader());
+            p.setUser("sa");
+            p.setPassword("");
+
+            add("default")
+                    .annotatedWith(Database.defaultDb())
+                    .addMapper(TestMapper.class)
+                    .dataSource(Providers.guicify(p))
+                    .statementCache(8);
+
+            bind(CacheTester.class);
+        }
+    }
+
+    public static class CacheTester {
+
+        @Inject
+        @DB
+        TestMapper mapper;
+
+        @Transactional
+        public int select() {
+            return mapper.selectOne();
+        }
+    }
+
+    @Test
+    public void testReuseAcrossTransactions() {
+        Injector i = Guice.createInjector(new CacheModule());
+        CacheTester tester = i.getInstance(CacheTester.class);
+
+        Assert.assertEquals(1, tester.select());
+        Assert.assertEquals(1, tester.select());
+
+        StatementCachingDataSource dataSource = (StatementCachingDataSource) i.getInstance(Key.get(SqlSessionFactory.class, Database.defaultDb()))
+                .getConfiguration().getEnvironment().getDataSource();
+        Assert.assertEquals(1, dataSource.getMissCount());
+        Assert.assertEquals(1, dataSource.getHitCount());
+        Assert.assertEquals(1, dataSource.getCachedStatementCount());
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        PooledDataSource pool = new PooledDataSource("org.hsqldb.jdbcDriver", "jdbc:hsqldb:mem:evicted", "sa", "");
+        StatementCachingDataSource dataSource = new StatementCachingDataSource(pool, 1);
+
+        execute(dataSource, SELECT_ONE);
+        execute(dataSource, SELECT_ONE);
+        Assert.assertEquals(1, dataSource.getHitCount());
+
+        execute(dataSource, SELECT_TWO);
+        Assert.assertEquals(1, dataSource.getEvictionCount());
+
+        execute(dataSource, SELECT_ONE);
+        Assert.assertEquals(3, dataSource.getMissCount());
+        Assert.assertEquals(1, dataSource.getHitCount());
+        Assert.assertEquals(1, dataSource.getCachedStatementCount());
+
+        pool.forceCloseAll();
+    }
+
+    @Test
+    public void testRolledBackBatchIsNotReused() throws Exception {
+        PooledDataSource pool = new PooledDataSource("org.hsqldb.jdbcDriver", "jdbc:hsqldb:mem:batched", "sa", "");
+        pool.setPoolMaximumActiveConnections(1);
+        StatementCachingDataSource dataSource = new StatementCachingDataSource(pool, 4);
+        String insert = "INSERT INTO batched_row VALUES (?)";
+
+        Connection connection = dataSource.getConnection();
+        try {
+            connection.createStatement().execute("CREATE TABLE batched_row (val INTEGER)");
+            connection.setAutoCommit(false);
+            PreparedStatement statement = connection.prepareStatement(insert);
+            statement.setInt(1, 1);
+            statement.addBatch();
+            statement.setInt(1, 2);
+            statement.addBatch();
+            connection.rollback();
+            statement.close();
+        } finally {
+            connection.close();
+        }
+
+        connection = dataSource.getConnection();
+        try {
+            connection.setAutoCommit(false);
+            PreparedStatement statement = connection.prepareStatement(insert);
+            statement.setInt(1, 3);
+            statement.addBatch();
+            Assert.assertEquals(1, statement.executeBatch().length);
+            connection.commit();
+            statement.close();
+
+            ResultSet rows = connection.createStatement().executeQuery("SELECT val FROM batched_row");
+            Assert.assertTrue(rows.next());
+            Assert.assertEquals(3, rows.getInt(1));
+            Assert.assertFalse(rows.next());
+            rows.close();
+        } finally {
+            connection.close();
+        }
+        Assert.assertEquals(1, dataSource.getHitCount());
+
+        pool.forceCloseAll();
+    }
+
+    @Test
+    public void testDbcpPool() throws Exception {
+        BasicDataSource pool = new BasicDataSource();
+        pool.setDriverClassName("org.hsqldb.jdbcDriver");
+        pool.setUrl("jdbc:hsqldb:mem:cachedDbcp");
+        pool.setUsername("sa");
+        pool.setPassword("");
+        pool.setMaxActive(1);
+        pool.setAccessToUnderlyingConnectionAllowed(true);
+        assertReusedAcrossCheckouts(new StatementCachingDataSource(new MeteredDataSource(pool), 4));
+        pool.close();
+    }
+
+    @Test
+    public void testC3p0Pool() throws Exception {
+        ComboPooledDataSource pool = new ComboPooledDataSource();
+        pool.setDriverClass("org.hsqldb.jdbcDriver");
+        pool.setJdbcUrl("jdbc:hsqldb:mem:cachedC3p0");
+        pool.setUser("sa");
+        pool.setPassword("");
+        pool.setInitialPoolSize(1);
+        pool.setMinPoolSize(1);
+        pool.setMaxPoolSize(1);
+        assertReusedAcrossCheckouts(new StatementCachingDataSource(pool, 4));
+        pool.close();
+    }
+
+    @Test
+    public void testBoneCPPool() throws Exception {
+        BoneCPDataSource pool = new BoneCPDataSource();
+        pool.setDriverClass("org.hsqldb.jdbcDriver");
+        pool.setJdbcUrl("jdbc:hsqldb:mem:cachedBoneCP");
+        pool.setUsername("sa");
+        pool.setPassword("");
+        pool.setPartitionCount(1);
+        pool.setMinConnectionsPerPartition(1);
+        pool.setMaxConnectionsPerPartition(1);
+        pool.setReleaseHelperThreads(0);
+        assertReusedAcrossCheckouts(new StatementCachingDataSource(pool, 4));
+        pool.close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDbcpWithoutUnderlyingConnectionAccess() {
+        new StatementCachingDataSource(new BasicDataSource(), 4);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnsupportedDataSource() {
+        new StatementCachingDataSource(new UnpooledDataSource("org.hsqldb.jdbcDriver", "jdbc:hsqldb:mem:uncached", "sa", ""), 4);
+    }
+
+    /**
+     * The pools have a single connection, every checkout returns a new wrapper of it
+     */
+    private static void assertReusedAcrossCheckouts(StatementCachingDataSource dataSource) throws Exception {
+        execute(dataSource, SELECT_ONE);
+        execute(dataSource, SELECT_ONE);
+        execute(dataSource, SELECT_ONE);
+        Assert.assertEquals(1, dataSource.getMissCount());
+        Assert.assertEquals(2, dataSource.getHitCount());
+        Assert.assertEquals(1, dataSource.getCachedStatementCount());
+        dataSource.clear();
+    }
+
+    private static void execute(StatementCachingDataSource dataSource, String sql) throws Exception {
+        Connection connection = dataSource.getConnection();
+        try {
+            PreparedStatement statement = connection.prepareStatement(sql);
+            statement.executeQuery().close();
+            statement.close();
+            Assert.assertTrue(statement.isClosed());
+        } finally {
+            connection.close();
+        }
+    }
+
+}
@@ -0,0 +1,94 @@
+package org.mybatis.guice.multi;
+
+import com.google.inject.Guice;
+import com.google.inject.Inject;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.util.Providers;
+import junit.framework.Assert;
+import org.junit.Test;
+import org.mybatis.guice.MultiDbModule;
+import org.mybatis.guice.annotation.DB;
+import org.mybatis.guice.annotation.Database;
+import org.mybatis.guice.datasource.builtin.PooledDataSourceProvider;
+import org.mybatis.guice.metrics.LatencyHistogram;
+import org.mybatis.guice.metrics.MBeans;
+import org.mybatis.guice.metrics.StatementMetrics;
+import org.mybatis.guice.metrics.StatementMetricsInterceptor;
+import org.mybatis.guice.transactional.Transactional;
+
+import javax.management.openmbean.CompositeData;
+import java.lang.management.ManagementFactory;
+
+/**
+ * @author ferenczil
+ */
+public class StatementMetricsTest {
+
+    private static final String SELECT_ONE = TestMapper.class.getName() + ".selectOne";
+
+    public static class MetricsModule extends MultiDbModule {
+        @Override
+        public void internalConfigure() {
+            PooledDataSourceProvider p = new PooledDataSourceProvider("org.hsqldb.jdbcDriver", "jdbc:hsqldb:mem:metrics", getClass().getClassLoader());
+            p.setUser("sa");
+            p.setPassword("");
+
+            add("metrics")
+                    .annotatedWith(Database.defaultDb())
+                    .addMapper(TestMapper.class)
+                    .dataSource(Providers.guicify(p))
+                    .statementMetrics();
+
+            bind(MetricsTester.class);
+        }
+    }
+
+    public static class MetricsTester {
+
+        @Inject
+        @DB
+        TestMapper mapper;
+
+        @Transactional
+        public int select() {
+            return mapper.selectOne();
+        }
+    }
+
+    @Test
+    public void testStatementMetrics() throws Exception {
+        Injector i = Guice.createInjector(new MetricsModule());
+        MetricsTester tester = i.getInstance(MetricsTester.class);
+        tester.select();
+        tester.select();
+
+        StatementMetricsInterceptor interceptor = i.getInstance(Key.get(StatementMetricsInterceptor.class, Database.defaultDb()));
+        StatementMetrics metrics = interceptor.getMetrics(SELECT_ONE);
+        Assert.assertEquals(2, metrics.getLatency().getCount());
+        Assert.assertEquals(2, metrics.getRows());
+        Assert.assertEquals(0, metrics.getErrors());
+
+        CompositeData statement = (CompositeData) ManagementFactory.getPlatformMBeanServer().invoke(
+                MBeans.name(StatementMetricsInterceptor.MBEAN_TYPE, "metrics"), "getStatement",
+                new Object[]{ SELECT_ONE }, new String[]{ String.class.getName() });
+        Assert.assertEquals(2L, statement.get("count"));
+        Assert.assertTrue((Long) statement.get("maxNanos") > 0);
+    }
+
+    @Test
+    public void testHistogramPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 100000; value++) {
+            histogram.record(value * 1000);
+        }
+
+        Assert.assertEquals(100000, histogram.getCount());
+        Assert.assertEquals(100000000L, histogram.getMaxNanos());
+        long p99 = histogram.getPercentileNanos(99);
+        Assert.assertTrue(Math.abs(p99 - 99000000L) <= 99000000L / 32);
+        long p50 = histogram.getPercentileNanos(50);
+        Assert.assertTrue(Math.abs(p50 - 50000000L) <= 50000000L / 32);
+    }
+
+}
@@ -0,0 +1,12 @@
+package org.mybatis.guice.multi;
+
+import java.util.concurrent.Future;
+
+/**
+ * @author ferenczil
+ */
+public interface TestMapperAsync {
+
+    public Future<Integer> selectOne();
+
+}
@@ -0,0 +1,84 @@
+package org.mybatis.guice.multi;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import junit.framework.Assert;
+import org.junit.Test;
+import org.mybatis.guice.metrics.MBeans;
+import org.mybatis.guice.transactional.MethodMetrics;
+import org.mybatis.guice.transactional.TransactionMetrics;
+import org.mybatis.guice.transactional.TransactionStatistics;
+import org.mybatis.guice.transactional.Transactional;
+
+import javax.management.openmbean.CompositeData;
+import java.lang.management.ManagementFactory;
+
+/**
+ * @author ferenczil
+ */
+public class TransactionMetricsTest {
+
+    public static class MetricsModule extends InjectionTest.TestModule {
+        @Override
+        public void internalConfigure() {
+            super.internalConfigure();
+            transactionMetrics(true);
+        }
+    }
+
+    public static class RollbackTester {
+
+        @Transactional(rollbackOnly = true)
+        public void rollback() {
+        }
+    }
+
+    @Test
+    public void testMethodMetrics() throws Exception {
+        Injector i = Guice.createInjector(new MetricsModule(),
+                new AbstractModule() {
+                    @Override
+                    protected void configure() {
+                        bind(TransactionTest.TxTester.class);
+                        bind(RollbackTester.class);
+                    }
+                });
+
+        i.getInstance(TransactionTest.TxTester.class).testTransaction();
+        i.getInstance(RollbackTester.class).rollback();
+
+        TransactionMetrics metrics = i.getInstance(TransactionMetrics.class);
+
+        // The nested method is part of the outermost one
+        MethodMetrics outer = metrics.getMetrics(TransactionTest.TxTester.class.getMethod("testTransaction"));
+        Assert.assertNull(metrics.getMetrics(TransactionTest.TxTester.class.getMethod("testOtherTransaction")));
+        Assert.assertEquals(1, outer.getDuration().getCount());
+        Assert.assertEquals(2, outer.getStatements());
+        Assert.assertEquals(2, outer.getEnvironments());
+        Assert.assertEquals(1, outer.getCommits());
+        Assert.assertEquals(0, outer.getRollbacks());
+        Assert.assertTrue(outer.getJdbcNanos() > 0);
+        Assert.assertTrue(outer.getJdbcNanos() <= outer.getDuration().getTotalNanos());
+        Assert.assertEquals(1, outer.getCommitLatency("default").getCount());
+        Assert.assertEquals(1, outer.getCommitLatency("test").getCount());
+
+        MethodMetrics rolledBack = metrics.getMetrics(RollbackTester.class.getMethod("rollback"));
+        Assert.assertEquals(0, rolledBack.getCommits());
+        Assert.assertEquals(1, rolledBack.getRollbacks());
+        Assert.assertEquals(0, rolledBack.getStatements());
+
+        TransactionStatistics statistics = metrics.getMethod(TransactionTest.TxTester.class.getName() + ".testTransaction()");
+        Assert.assertEquals(2.0, statistics.getMeanStatements());
+        Assert.assertEquals(2, statistics.getMeanCommitNanos().size());
+        if (metrics.isAllocatedBytesMeasured()) {
+            Assert.assertTrue(statistics.getMeanAllocatedBytes() > 0);
+        }
+
+        CompositeData[] exported = (CompositeData[]) ManagementFactory.getPlatformMBeanServer()
+                .getAttribute(MBeans.name(TransactionMetrics.MBEAN_TYPE), "Methods");
+        Assert.assertEquals(2, exported.length);
+        Assert.assertTrue((Long) exported[0].get("totalNanos") >= (Long) exported[1].get("totalNanos"));
+    }
+
+}
@@ -4,10 +4,14 @@ import com.google.inject.AbstractModule;
 import com.google.inject.Guice;
 import com.google.inject.Inject;
 import com.google.inject.Injector;
+import com.google.inject.Key;
 import junit.framework.Assert;
 import org.apache.ibatis.session.ExecutorType;
 import org.junit.Test;
 import org.mybatis.guice.annotation.DB;
+import org.mybatis.guice.annotation.Database;
+import org.mybatis.guice.session.DbSessionManager;
+import org.mybatis.guice.transactional.MultiTransactionManager;
 import org.mybatis.guice.transactional.Transactional;
 
 /**
@@ -47,6 +51,11 @@ public class TransactionTest {
 
         TxTester tx = i.getInstance(TxTester.class);
         tx.testTransaction();
+
+        // Sessions of all enlisted environments are released when the outermost transaction finishes
+        Assert.assertFalse(i.getInstance(MultiTransactionManager.class).isWithinTransactionalContext());
+        Assert.assertFalse(i.getInstance(Key.get(DbSessionManager.class, Database.defaultDb())).isManagedSessionStarted());
+        Assert.assertFalse(i.getInstance(Key.get(DbSessionManager.class, Database.named("test"))).isManagedSessionStarted());
     }
 
 }
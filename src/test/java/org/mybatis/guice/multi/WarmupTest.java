@@ -0,0 +1,109 @@
+package org.mybatis.guice.multi;
+
+import com.google.inject.CreationException;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.util.Providers;
+import junit.framework.Assert;
+import org.apache.commons.dbcp.BasicDataSource;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.junit.Test;
+import org.mybatis.guice.MultiDbModule;
+import org.mybatis.guice.annotation.Database;
+import org.mybatis.guice.environment.Warmup;
+import org.mybatis.guice.environment.WarmupReport;
+
+import javax.sql.DataSource;
+
+/**
+ * @author ferenczil
+ */
+public class WarmupTest {
+
+    public interface BrokenMapper {
+
+        @Select("SELECT 1 FROM INFORMATION_SCHEMA.SYSTEM_USERS")
+        int selectOne();
+
+        @Select("SELECT missing_column FROM missing_table")
+        int selectMissing();
+
+        @Select("SELECT ${column} FROM INFORMATION_SCHEMA.SYSTEM_USERS")
+        int selectColumn(@Param("column") String column);
+
+    }
+
+    public static class WarmupModule extends InjectionTest.TestModule {
+        @Override
+        public void internalConfigure() {
+            super.internalConfigure();
+            parallelStartup(2);
+            warmup(2, false);
+        }
+    }
+
+    public static class BrokenModule extends MultiDbModule {
+
+        private final boolean failOnInvalidStatements;
+
+        public BrokenModule(boolean failOnInvalidStatements) {
+            this.failOnInvalidStatements = failOnInvalidStatements;
+        }
+
+        @Override
+        public void internalConfigure() {
+            BasicDataSource dataSource = new BasicDataSource();
+            dataSource.setDriverClassName("org.hsqldb.jdbcDriver");
+            dataSource.setUrl("jdbc:hsqldb:mem:warmup");
+            dataSource.setUsername("sa");
+            dataSource.setPassword("");
+            dataSource.setMinIdle(3);
+
+            add("broken")
+                    .annotatedWith(Database.named("broken"))
+                    .addMapper(BrokenMapper.class)
+                    .dataSource(Providers.<DataSource>of(dataSource));
+
+            warmup(1, failOnInvalidStatements);
+        }
+    }
+
+    @Test
+    public void testEnvironmentsWarmedUp() {
+        Injector i = Guice.createInjector(new WarmupModule());
+
+        Warmup warmup = i.getInstance(Warmup.class);
+        Assert.assertEquals(2, warmup.getReports().size());
+
+        WarmupReport report = warmup.getReport("test");
+        Assert.assertEquals(1, report.getConnections());
+        // The annotated statement and the one of the XML file next to the mapper
+        Assert.assertEquals(2, report.getPreparedStatements());
+        Assert.assertTrue(report.getInvalidStatements().isEmpty());
+        Assert.assertEquals(2, warmup.getReport("default").getPreparedStatements());
+    }
+
+    @Test
+    public void testInvalidStatementsReported() {
+        Injector i = Guice.createInjector(new BrokenModule(false));
+
+        WarmupReport report = i.getInstance(Warmup.class).getReport("broken");
+        Assert.assertEquals(3, report.getConnections());
+        Assert.assertEquals(1, report.getPreparedStatements());
+        Assert.assertEquals(1, report.getSkippedStatements());
+        Assert.assertEquals(1, report.getInvalidStatements().size());
+        Assert.assertTrue(report.getInvalidStatements().containsKey(BrokenMapper.class.getName() + ".selectMissing"));
+    }
+
+    @Test
+    public void testInvalidStatementsFail() {
+        try {
+            Guice.createInjector(new BrokenModule(true));
+            Assert.fail("An invalid statement must fail the injector creation");
+        } catch (CreationException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("Invalid statements in environment broken"));
+        }
+    }
+
+}